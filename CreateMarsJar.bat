@@ -30,7 +30,9 @@ if %JAVA_VERSION% > 9 (
     echo "Compiling Mars with default javac"
     dir /s /B *.java > sources.txt
     javac @sources.txt
-    jar cfm Mars.jar META-INF/MANIFEST.MF README.md LICENSE.md PseudoOps.txt Config.properties Syscall.properties Settings.properties MipsXRayOpcode.xml registerDatapath.xml controlDatapath.xml ALUcontrolDatapath.xml CreateMarsJar.bat CreateMarsJar.sh Mars.java Mars.class docs help images mars
+    rem Precompute instruction example token lists for faster startup.
+    %_JAVACMD% -cp . mars.mips.instructions.InstructionSetSnapshot InstructionSet.snapshot
+    jar cfm Mars.jar META-INF/MANIFEST.MF README.md LICENSE.md PseudoOps.txt InstructionSet.snapshot Config.properties Syscall.properties Settings.properties MipsXRayOpcode.xml registerDatapath.xml controlDatapath.xml ALUcontrolDatapath.xml CreateMarsJar.bat CreateMarsJar.sh Mars.java Mars.class docs help images mars
 ) else (
     echo "Could not find an appropriate Java installation"
 )
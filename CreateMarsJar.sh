@@ -25,6 +25,9 @@ if [[ "$_java" ]]; then
     fi
 fi
 
-jar cfm Mars.jar META-INF/MANIFEST.MF README.md LICENSE.md PseudoOps.txt Config.properties Syscall.properties Settings.properties MipsXRayOpcode.xml registerDatapath.xml controlDatapath.xml ALUcontrolDatapath.xml CreateMarsJar.bat CreateMarsJar.sh Mars.java Mars.class docs help images mars
+# Precompute instruction example token lists for faster startup.
+"$_java" -cp . mars.mips.instructions.InstructionSetSnapshot InstructionSet.snapshot
+
+jar cfm Mars.jar META-INF/MANIFEST.MF README.md LICENSE.md PseudoOps.txt InstructionSet.snapshot Config.properties Syscall.properties Settings.properties MipsXRayOpcode.xml registerDatapath.xml controlDatapath.xml ALUcontrolDatapath.xml CreateMarsJar.bat CreateMarsJar.sh Mars.java Mars.class docs help images mars
 
 echo "CreateMarsJar finished"
\ No newline at end of file
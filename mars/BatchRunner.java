@@ -0,0 +1,281 @@
+package mars;
+
+import mars.util.OutputBuffer;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Assembles and runs a list of MIPS programs in parallel, for the command line "batch" option.
+ * The programs are given either as a directory, in which case every .asm file in it is run,
+ * or as a manifest file with one program per line.  A manifest line holds the program file
+ * name optionally followed by the name of a file to use as its standard input; blank lines
+ * and lines starting with # are ignored and relative names are relative to the manifest's
+ * directory.  For a directory, program <tt>name.asm</tt> reads standard input from
+ * <tt>name.in</tt> if that file exists.  Programs without input see an empty standard input.
+ * <p>
+ * All other command line options apply to every program.  Each program's output, including
+ * any register or memory display and instruction count, is written to a file named after
+ * the program with <tt>.out</tt> appended.  At most {@value #DEFAULT_MAX_OUTPUT} bytes are kept
+ * for each program unless the option "bo&lt;n&gt;" gives another limit (0 for none); the rest
+ * is discarded.  A program still running after {@value #DEFAULT_MAX_SECONDS} seconds, or the
+ * number given by the option "bl&lt;n&gt;" (0 for no limit), is stopped as the Stop button
+ * would; a Sleep syscall in progress is finished first.  One summary line per program (name,
+ * exit code, elapsed time, and "timed out" or "output truncated" if so) is written to MARS
+ * output, in list order.
+ * <p>
+ * Programs run on a pool of threads (option "bt&lt;n&gt;", default one per processor), each
+ * with its own SimulationContext that it keeps for all the programs it runs.
+ *
+ * @version October 2026
+ */
+
+public class BatchRunner {
+    private static final String BATCH_SWITCH = "batch";
+    private static final String THREADS_SWITCH = "bt";
+    private static final String OUTPUT_LIMIT_SWITCH = "bo";
+    private static final String TIME_LIMIT_SWITCH = "bl";
+    private static final String INPUT_EXTENSION = ".in";
+    private static final String OUTPUT_EXTENSION = ".out";
+    /**
+     * Output limit in bytes for each program unless the "bo" option gives another.
+     */
+    public static final int DEFAULT_MAX_OUTPUT = 1 << 24;
+    /**
+     * Time limit in seconds for each program unless the "bl" option gives another.
+     */
+    public static final int DEFAULT_MAX_SECONDS = 60;
+    // How often to repeat a stop, in case the simulation had not started when the time ran out.
+    private static final int STOP_RETRY_MILLIS = 100;
+
+    private final List<String[]> jobs; // each is program file name and input file name (or null)
+    private final List<String> options;
+    private final int threads;
+    private final int maxOutput;
+    private final long maxMillis;
+    private final PrintStream out;
+
+    /**
+     * @param jobs    programs to run: each element holds program file name and
+     *                standard input file name, or null for empty input
+     * @param options command line options to apply to every program
+     * @param threads number of programs to run at a time
+     * @param out     stream for summary lines
+     */
+    public BatchRunner(List<String[]> jobs, List<String> options, int threads, PrintStream out) {
+        this(jobs, options, threads, DEFAULT_MAX_OUTPUT, DEFAULT_MAX_SECONDS * 1000L, out);
+    }
+
+    /**
+     * @param jobs      programs to run: each element holds program file name and
+     *                  standard input file name, or null for empty input
+     * @param options   command line options to apply to every program
+     * @param threads   number of programs to run at a time
+     * @param maxOutput maximum number of bytes of output kept for a program, 0 or less for no limit
+     * @param maxMillis maximum time in milliseconds a program may run, 0 or less for no limit
+     * @param out       stream for summary lines
+     */
+    public BatchRunner(List<String[]> jobs, List<String> options, int threads, int maxOutput, long maxMillis,
+                       PrintStream out) {
+        this.jobs = jobs;
+        this.options = options;
+        this.threads = Math.max(1, threads);
+        this.maxOutput = maxOutput;
+        this.maxMillis = maxMillis;
+        this.out = out;
+    }
+
+    /**
+     * @param args command line arguments
+     * @return true if the arguments include the "batch" option
+     */
+    public static boolean isBatchCommand(String[] args) {
+        for (String arg : args) {
+            if (arg.toLowerCase().equals(BATCH_SWITCH)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Carry out a command line containing the "batch" option.
+     *
+     * @param args command line arguments
+     * @param out  stream for MARS messages and summary lines
+     * @return 0 if all programs were run (whatever their own exit codes), 1 otherwise
+     */
+    public static int runBatchCommand(String[] args, PrintStream out) {
+        String list = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int maxOutput = DEFAULT_MAX_OUTPUT;
+        int maxSeconds = DEFAULT_MAX_SECONDS;
+        List<String> options = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].toLowerCase().equals("pa")) {
+                options.addAll(Arrays.asList(args).subList(i, args.length));
+                break;
+            }
+            if (args[i].toLowerCase().equals(BATCH_SWITCH) && i + 1 < args.length) {
+                list = args[++i];
+            } else if (args[i].toLowerCase().matches(THREADS_SWITCH + "\\d+")) { // not a file such as btree.asm
+                try {
+                    threads = Integer.decode(args[i].substring(THREADS_SWITCH.length()));
+                } catch (NumberFormatException nfe) {
+                    out.println("Invalid batch thread count: " + args[i]);
+                    return 1;
+                }
+            } else if (args[i].toLowerCase().matches(OUTPUT_LIMIT_SWITCH + "\\d+")) {
+                try {
+                    maxOutput = Integer.parseInt(args[i].substring(OUTPUT_LIMIT_SWITCH.length()));
+                } catch (NumberFormatException nfe) {
+                    out.println("Invalid batch output limit: " + args[i]);
+                    return 1;
+                }
+            } else if (args[i].toLowerCase().matches(TIME_LIMIT_SWITCH + "\\d+")) {
+                try {
+                    maxSeconds = Integer.parseInt(args[i].substring(TIME_LIMIT_SWITCH.length()));
+                } catch (NumberFormatException nfe) {
+                    out.println("Invalid batch time limit: " + args[i]);
+                    return 1;
+                }
+            } else {
+                options.add(args[i]);
+            }
+        }
+        if (list == null) {
+            out.println("Batch command line argument requires a directory or manifest file name.");
+            return 1;
+        }
+        if (!options.contains("nc")) {
+            options.add(0, "nc");  // no copyright notice in each program's output
+        }
+        List<String[]> jobs;
+        try {
+            jobs = readJobs(new File(list));
+        } catch (IOException e) {
+            out.println("Error reading batch list " + list + ": " + e.getMessage());
+            return 1;
+        }
+        return new BatchRunner(jobs, options, threads, maxOutput, maxSeconds * 1000L, out).run();
+    }
+
+    /**
+     * Run all the programs, writing each one's output to its .out file and a summary line to MARS output.
+     *
+     * @return 0 if all programs were run (whatever their own exit codes), 1 otherwise
+     */
+    public int run() {
+        final ThreadLocal<SimulationContext> contexts = new ThreadLocal<>();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "MARS batch watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<Future<String>> results = new ArrayList<>();
+        for (final String[] job : jobs) {
+            results.add(pool.submit(() -> {
+                SimulationContext context = contexts.get();
+                if (context == null) {
+                    context = new SimulationContext();
+                    contexts.set(context);
+                }
+                return runJob(context, watchdog, job[0], job[1]);
+            }));
+        }
+        int status = 0;
+        for (int i = 0; i < results.size(); i++) {
+            try {
+                out.println(results.get(i).get());
+            } catch (InterruptedException | ExecutionException e) {
+                Throwable cause = (e.getCause() == null) ? e : e.getCause();
+                out.println(jobs.get(i)[0] + "\terror\t" + cause);
+                status = 1;
+            }
+        }
+        pool.shutdown();
+        watchdog.shutdown();
+        return status;
+    }
+
+    // Run one program and write its output file.  Returns its summary line.
+    private String runJob(final SimulationContext context, ScheduledExecutorService watchdog, String program,
+                          String input) throws IOException {
+        List<String> args = new ArrayList<>(options);
+        int programArguments = args.indexOf("pa");
+        args.add((programArguments < 0) ? args.size() : programArguments, program);
+        long start = System.currentTimeMillis();
+        int exitCode;
+        // Input is loaded in full beforehand, so the program never waits on the file system to read it.
+        InputStream in = new ByteArrayInputStream((input == null) ? new byte[0] : Files.readAllBytes(Paths.get(input)));
+        OutputBuffer output = new OutputBuffer(maxOutput);
+        final AtomicBoolean timedOut = new AtomicBoolean(false);
+        ScheduledFuture<?> timer = (maxMillis <= 0) ? null : watchdog.scheduleAtFixedRate(() -> {
+            timedOut.set(true);
+            context.stop();
+        }, maxMillis, STOP_RETRY_MILLIS, TimeUnit.MILLISECONDS);
+        try {
+            exitCode = context.run(args.toArray(new String[0]), in, new PrintStream(output, true));
+        } finally {
+            if (timer != null) {
+                timer.cancel(false);
+            }
+        }
+        try (OutputStream file = new FileOutputStream(program + OUTPUT_EXTENSION)) {
+            output.writeTo(file);
+        }
+        return program + "\texit " + exitCode + "\t" + (System.currentTimeMillis() - start) + " ms"
+                + (timedOut.get() ? "\ttimed out" : "") + (output.isTruncated() ? "\toutput truncated" : "");
+    }
+
+    // Build job list from directory or manifest file.
+    private static List<String[]> readJobs(File list) throws IOException {
+        List<String[]> jobs = new ArrayList<>();
+        if (list.isDirectory()) {
+            String[] names = list.list();
+            if (names == null) {
+                throw new IOException("cannot list directory");
+            }
+            Arrays.sort(names);
+            for (String name : names) {
+                if (name.toLowerCase().endsWith(".asm")) {
+                    File input = new File(list, name.substring(0, name.length() - 4) + INPUT_EXTENSION);
+                    jobs.add(new String[]{new File(list, name).getPath(), input.isFile() ? input.getPath() : null});
+                }
+            }
+        } else {
+            File directory = list.getAbsoluteFile().getParentFile();
+            try (BufferedReader reader = new BufferedReader(new FileReader(list))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (line.isEmpty() || line.startsWith("#")) {
+                        continue;
+                    }
+                    String[] fields = line.split("\\s+");
+                    jobs.add(new String[]{resolve(directory, fields[0]),
+                            (fields.length > 1) ? resolve(directory, fields[1]) : null});
+                }
+            }
+        }
+        return jobs;
+    }
+
+    private static String resolve(File directory, String name) {
+        File file = new File(name);
+        return file.isAbsolute() ? file.getPath() : new File(directory, name).getPath();
+    }
+}
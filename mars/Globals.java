@@ -132,6 +132,11 @@ public class Globals {
      * MARS exit code -- useful with SYSCALL 17 when running from command line (not GUI)
      */
     public static int exitCode = 0;
+    /**
+     * Whether MIPS programs may open files (syscall 13) and source files may use .include.
+     * Turned off for programs that are not trusted, such as those run by SimulationServer.
+     */
+    public static boolean fileAccessAllowed = true;
 
     public static boolean runSpeedPanelExists = false;
 
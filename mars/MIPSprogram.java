@@ -5,6 +5,7 @@ import mars.simulator.*;
 import mars.mips.hardware.*;
 
 import java.util.*;
+import java.util.concurrent.*;
 import java.io.*;
 import javax.swing.*;
 
@@ -53,7 +54,7 @@ public class MIPSprogram {
     private String filename;
     private ArrayList sourceList;
     private ArrayList tokenList;
-    private ArrayList parsedList;
+    private ArrayList<ProgramStatement> parsedList;
     private ArrayList machineList;
     private BackStepper backStepper;
     private SymbolTable localSymbolTable;
@@ -137,8 +138,8 @@ public class MIPSprogram {
      * @see ProgramStatement
      **/
 
-    public ArrayList createParsedList() {
-        parsedList = new ArrayList();
+    public ArrayList<ProgramStatement> createParsedList() {
+        parsedList = new ArrayList<>();
         return parsedList;
     }
 
@@ -150,7 +151,7 @@ public class MIPSprogram {
      * @see ProgramStatement
      **/
 
-    public ArrayList getParsedList() {
+    public ArrayList<ProgramStatement> getParsedList() {
         return parsedList;
     }
 
@@ -277,11 +278,30 @@ public class MIPSprogram {
             filenames.add(0, exceptionHandler);
             leadFilePosition = 1;
         }
+        // Files are read and tokenized concurrently, as each has its own tokenizer.  Errors
+        // are reported for the first file in the list that has any, as if done in order.
+        ArrayList<MIPSprogram> preparees = new ArrayList<>(filenames.size());
+        ArrayList<ForkJoinTask<ProcessingException>> preparations = new ArrayList<>(filenames.size());
         for (Object filename1 : filenames) {
             String filename = (String) filename1;
             MIPSprogram preparee = (filename.equals(leadFilename)) ? this : new MIPSprogram();
-            preparee.readSource(filename);
-            preparee.tokenize();
+            preparees.add(preparee);
+            preparations.add(ForkJoinPool.commonPool().submit(() -> {
+                try {
+                    preparee.readSource(filename);
+                    preparee.tokenize();
+                    return null;
+                } catch (ProcessingException e) {
+                    return e;
+                }
+            }));
+        }
+        for (int i = 0; i < preparees.size(); i++) {
+            ProcessingException failure = preparations.get(i).join();
+            if (failure != null) {
+                throw failure;
+            }
+            MIPSprogram preparee = preparees.get(i);
             // I want "this" MIPSprogram to be the first in the list...except for exception handler
             if (preparee == this && MIPSprogramsToAssemble.size() > 0) {
                 MIPSprogramsToAssemble.add(leadFilePosition, preparee);
@@ -330,6 +350,22 @@ public class MIPSprogram {
         return asm.getErrorList();
     }
 
+    /**
+     * Sets up this program as assembled, from the contents of an object file rather than
+     * from source.  Used by ObjectFile.
+     *
+     * @param filename         name of the source file this program was assembled from
+     * @param localSymbolTable its local symbol table
+     * @param machineList      statements of all files assembled, for the program the simulation
+     *                         is run from, otherwise null
+     **/
+    void restoreAssembled(String filename, SymbolTable localSymbolTable, ArrayList<ProgramStatement> machineList) {
+        this.filename = filename;
+        this.localSymbolTable = localSymbolTable;
+        this.machineList = machineList;
+        this.backStepper = (machineList == null) ? null : new BackStepper();
+    }
+
 
     /**
      * Simulates execution of the MIPS program. Program must have already been assembled.
@@ -359,6 +395,23 @@ public class MIPSprogram {
         return this.simulateFromPC(null, maxSteps, null);
     }
 
+
+    /**
+     * Simulates execution of the MIPS program. Program must have already been assembled.
+     * Begins simulation at current program counter address and continues to completion,
+     * a breakpoint or watchpoint, or until the specified maximum number of steps are simulated.
+     *
+     * @param breakPoints breakpoints and watchpoints, which may be conditional.  Can be null.
+     * @param maxSteps    maximum number of steps to simulate.  -1 means no maximum.
+     * @return true if execution completed and false otherwise
+     * @throws ProcessingException Will throw exception if errors occured while simulating.
+     **/
+
+    public boolean simulate(Breakpoints breakPoints, int maxSteps) throws ProcessingException {
+        steppedExecution = false;
+        return Simulator.getInstance().simulate(this, RegisterFile.getProgramCounter(), maxSteps, breakPoints, null);
+    }
+
     /**
      * Simulates execution of the MIPS program. Program must have already been assembled.
      * Begins simulation at current program counter address and continues until stopped,
@@ -388,7 +441,7 @@ public class MIPSprogram {
     public boolean simulateStepAtPC(AbstractAction a) throws ProcessingException {
         steppedExecution = true;
         Simulator sim = Simulator.getInstance();
-        return sim.simulate(this, RegisterFile.getProgramCounter(), 1, null, a);
+        return sim.simulate(this, RegisterFile.getProgramCounter(), 1, (Breakpoints) null, a);
     }
 
     /**
@@ -1,5 +1,6 @@
 package mars;
 
+import mars.assembler.SymbolTable;
 import mars.venus.*;
 import mars.util.*;
 import mars.mips.dump.*;
@@ -7,6 +8,9 @@ import mars.mips.hardware.*;
 import mars.simulator.*;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
 import java.util.*;
 import javax.swing.*;
 
@@ -56,6 +60,15 @@ public class MarsLaunch {
      * ae<n>  -- terminate MARS with integer exit code <n> if an assemble error occurs.<br>
      * ascii  -- display memory or register contents interpreted as ASCII
      * b  -- brief - do not display register/memory address along with contents<br>
+     * bp <location>[,<condition>]  -- stop execution when it reaches the location (label or address), if the<br>
+     * condition holds then.  A condition compares a register ($t0) or memory word (label or address) with an<br>
+     * integer using ==, !=, &lt;, &lt;=, &gt; or &gt;=, e.g. <tt>bp loop,$t0==5</tt>.  Option may be repeated.<br>
+     * batch <dir|manifest>  -- assemble and run every .asm file in the directory, or every program listed in
+     * the manifest file (lines of "program [input-file]"), in parallel.  Each program's output goes to its own
+     * .out file; other options apply to every program.<br>
+     * bl<n>  -- with batch, stop each program after <n> seconds (default: 60, 0 for no limit).<br>
+     * bo<n>  -- with batch, keep at most <n> bytes of each program's output (default: 16 MB, 0 for no limit).<br>
+     * bt<n>  -- with batch, run <n> programs at a time (default: one per processor).<br>
      * d  -- print debugging statements<br>
      * da  -- both a and d<br>
      * db  -- MIPS delayed branching is enabled.<br>
@@ -65,21 +78,31 @@ public class MarsLaunch {
      * an address range (see <i>m-n</i> below).  Current supported <br>
      * segments are <tt>.text</tt> and <tt>.data</tt>.  Current supported dump formats <br>
      * are <tt>Binary</tt>, <tt>HexText</tt>, <tt>BinaryText</tt>.<br>
+     * fast  -- simulate from a predecoded copy of the text segment (faster, same results).<br>
      * h  -- display help.  Use by itself and with no filename</br>
      * hex  -- display memory or register contents in hexadecimal (default)<br>
      * ic  -- display count of MIPS basic instructions 'executed'");
+     * jit  -- like fast, and also compile frequently executed basic blocks to JVM code (same results).<br>
      * mc  -- set memory configuration.  Option has 1 argument, e.g.<br>
      * <tt>mc &lt;config$gt;</tt>, where &lt;config$gt; is <tt>Default</tt><br>
      * for the MARS default 32-bit address space, <tt>CompactDataAtZero</tt> for<br>
-     * a 32KB address space with data segment at address 0, or <tt>CompactTextAtZero</tt><br>
-     * for a 32KB address space with text segment at address 0.<br>
+     * a 32KB address space with data segment at address 0, <tt>CompactTextAtZero</tt><br>
+     * for a 32KB address space with text segment at address 0, or <tt>LargeDirect</tt> or<br>
+     * <tt>LargeMapped</tt> for 256MB data segment and stack held in off-heap buffers or<br>
+     * memory-mapped temporary files.<br>
      * me  -- display MARS messages to standard err instead of standard out. Can separate via redirection.</br>
      * nc  -- do not display copyright notice (for cleaner redirected/piped output).</br>
      * np  -- No Pseudo-instructions allowed ("ne" will work also).<br>
      * p  -- Project mode - assemble all files in the same directory as given file.<br>
      * se<n>  -- terminate MARS with integer exit code <n> if a simulation (run) error occurs.<br>
+     * server [<port>]  -- keep running and carry out simulation requests, given as JSON lines on standard
+     * input or on connections to loopback TCP port <port> (see SimulationServer).  Other options apply to
+     * every request.<br>
      * sm  -- Start execution at Main - Execution will start at program statement globally labeled main.<br>
      * smc  -- Self Modifying Code - Program can write and branch to either text or data segment<br>
+     * st<n>  -- with server, run <n> requests at a time (default: one per processor).<br>
+     * watch <location|condition>  -- stop execution after an instruction that changes the register or memory<br>
+     * word, or makes the condition (as for bp) hold.  Option may be repeated.<br>
      * we  -- assembler Warnings will be considered Errors<br>
      * <n>  -- where <n> is an integer maximum count of steps to simulate.<br>
      * If 0, negative or not specified, there is no maximum.<br>
@@ -90,6 +113,22 @@ public class MarsLaunch {
      * <m>-<n>  -- memory address range from <m> to <n> whose contents to<br>
      * display at end of run. <m> and <n> may be hex or decimal,<br>
      * <m> <= <n>, both must be on word boundary.  Option may be repeated.<br>
+     * prof  -- display an instruction profile at end of run: counts per function, per opcode and for the<br>
+     * most frequently executed instructions.<br>
+     * stacks <file>  -- write instruction counts per call stack to the file at end of run, in the<br>
+     * collapsed stack format of flame graph tools.<br>
+     * callgrind <file>  -- write the call graph, with instruction counts per function, source line and call<br>
+     * site, to the file at end of run in callgrind format (for KCachegrind and similar viewers).<br>
+     * mobj <file>  -- keep the assembled program in the file: load it from there instead of assembling if<br>
+     * it was assembled from the same source files, unchanged, with the same options, else assemble and save it.<br>
+     * in <file>  -- MIPS program standard input is read from the file, loaded into memory before the run.<br>
+     * out <file>  -- MIPS program standard output is kept in memory and written to the file when the program stops.<br>
+     * outlimit <n>  -- keep at most n bytes of MIPS program standard output; the rest is discarded.  Without<br>
+     * the out option, the output kept is written to standard output when the program stops.<br>
+     * vclock  -- run on a virtual clock: Time syscall returns virtual time starting at 0, Sleep advances it<br>
+     * without waiting, and MIDI syscalls are not played (MidiOutSync advances it by the note's duration).<br>
+     * Each Time syscall also advances it by 1 ms, so a loop that waits for a time without sleeping ends.<br>
+     * midilog <file>  -- same as vclock, and also record MIDI syscalls to the file, one line per call.<br>
      * pa  -- Program Arguments follow in a space-separated list.  This<br>
      * option must be placed AFTER ALL FILE NAMES, because everything<br>
      * that follows it is interpreted as a program argument to be<br>
@@ -107,6 +146,20 @@ public class MarsLaunch {
     private boolean startAtMain; // Whether to start execution at statement labeled 'main'
     private boolean countInstructions; // Whether to count and report number of instructions executed
     private boolean selfModifyingCode; // Whether to allow self-modifying code (e.g. write to text segment)
+    private boolean predecodedExecution; // Whether to simulate from a predecoded copy of the text segment
+    private boolean blockCompilation; // Whether to also compile hot basic blocks to JVM code
+    private boolean profile; // Whether to display an instruction profile
+    private String stacksFile; // File to write collapsed call stacks to, or null
+    private String callgrindFile; // File to write call graph to, or null
+    private String objectFile; // File to load or save assembled program, or null
+    private byte[] inputBytes; // MIPS program standard input from in option, or null
+    private String outputFile; // File to write MIPS program standard output to, or null
+    private int outputLimit; // Maximum bytes of MIPS program standard output to keep, 0 for no limit
+    private boolean virtualClock; // Whether to run Time, Sleep and MIDI syscalls on a virtual clock
+    private String midiLogFile; // File to record MIDI syscalls to on the virtual clock, or null
+    private Profiler profiler; // Counts instructions for ic, prof and stacks
+    private ArrayList<String> breakpointList; // bp option arguments
+    private ArrayList<String> watchpointList; // watch option arguments
     private static final String rangeSeparator = "-";
     private static final int splashDuration = 250; // time in MS to show splash screen
     private static final int memoryWordsPerLine = 4; // display 4 memory words, tab separated, per line
@@ -118,7 +171,6 @@ public class MarsLaunch {
     private ArrayList<String> filenameList;
     private MIPSprogram code;
     private int maxSteps;
-    private int instructionCount;
     private PrintStream out; // stream for display of command line output
     private ArrayList<String[]> dumpTriples = null; // each element holds 3 arguments for dump option
     private ArrayList<String> programArgumentList; // optional program args for MIPS program (becomes argc, argv)
@@ -127,43 +179,117 @@ public class MarsLaunch {
 
     public MarsLaunch(String[] args) {
         boolean gui = (args.length == 0);
-        Globals.initialize(gui);
+        try {
+            Globals.initialize(gui);
+        } catch (IllegalStateException e) {
+            // missing or invalid PseudoOps.txt or syscall configuration
+            System.out.println(e.getMessage());
+            System.exit(0);
+        }
         if (gui) {
             launchIDE();
         } else { // running from command line.
             // assure command mode works in headless environment (generates exception if not)
             System.setProperty("java.awt.headless", "true");
-            simulate = true;
-            displayFormat = HEXADECIMAL;
-            verbose = true;
-            assembleProject = false;
-            pseudo = true;
-            delayedBranching = false;
-            warningsAreErrors = false;
-            startAtMain = false;
-            countInstructions = false;
-            selfModifyingCode = false;
-            instructionCount = 0;
-            assembleErrorExitCode = 0;
-            simulateErrorExitCode = 0;
-            registerDisplayList = new ArrayList<>();
-            memoryDisplayList = new ArrayList<>();
-            filenameList = new ArrayList<>();
-            MemoryConfigurations.setCurrentConfiguration(MemoryConfigurations.getDefaultConfiguration());
-            // do NOT use Globals.program for command line MARS -- it triggers 'backstep' log.
-            code = new MIPSprogram();
-            maxSteps = -1;
+            if (BatchRunner.isBatchCommand(args)) {
+                System.exit(BatchRunner.runBatchCommand(args, System.out));
+            }
+            if (SimulationServer.isServerCommand(args)) {
+                System.exit(SimulationServer.runServerCommand(args, System.out));
+            }
+            System.exit(runCommand(args));
+        }
+    }
+
+    // Used by runCommandLine().
+    private MarsLaunch() {
+    }
+
+    /**
+     * Assemble and optionally run a MIPS program as directed by command line arguments,
+     * as the MARS command line does, but return the exit code rather than exiting.  The MIPS
+     * program reads and writes the given streams instead of System.in and System.out, and
+     * MARS output (register and memory display, messages) also goes to the given output stream.
+     * Registers, open files and the debug flag are reset first, so this may be called
+     * repeatedly.  Errors that would end a stand-alone MARS, such as a missing PseudoOps.txt,
+     * are thrown rather than exiting.
+     * The caller should set the java.awt.headless system property beforehand if needed;
+     * it is not set here, since system properties are shared by all simulation contexts.
+     * <p>
+     * SimulationContext calls this in its own copy of the MARS classes.
+     *
+     * @param args command line arguments (not empty)
+     * @param in   standard input for the MIPS program
+     * @param out  standard output for the MIPS program and MARS
+     * @return the MARS exit code
+     */
+    public static int runCommandLine(String[] args, InputStream in, PrintStream out) {
+        Globals.initialize(false);
+        SystemIO.setStandardStreams(in, out);
+        RegisterFile.resetRegisters();
+        Coprocessor1.resetRegisters();
+        Coprocessor0.resetRegisters();
+        Globals.instructionSet.resetSyscallInvocationCounts();
+        Globals.exitCode = 0;
+        Globals.debug = false;
+        SystemIO.resetFiles(); // a program stopped early leaves its files open
+        try {
+            MarsLaunch launch = new MarsLaunch();
+            launch.out = out;
+            return launch.runCommand(args);
+        } finally {
+            out.flush();
+            SystemIO.setStandardStreams(null, null);
+        }
+    }
+
+    // Carry out a command line run; returns exit code.
+    private int runCommand(String[] args) {
+        simulate = true;
+        displayFormat = HEXADECIMAL;
+        verbose = true;
+        assembleProject = false;
+        pseudo = true;
+        delayedBranching = false;
+        warningsAreErrors = false;
+        startAtMain = false;
+        countInstructions = false;
+        selfModifyingCode = false;
+        predecodedExecution = false;
+        blockCompilation = false;
+        profile = false;
+        stacksFile = null;
+        callgrindFile = null;
+        objectFile = null;
+        inputBytes = null;
+        outputFile = null;
+        outputLimit = 0;
+        virtualClock = false;
+        midiLogFile = null;
+        profiler = null;
+        assembleErrorExitCode = 0;
+        simulateErrorExitCode = 0;
+        registerDisplayList = new ArrayList<>();
+        breakpointList = new ArrayList<>();
+        watchpointList = new ArrayList<>();
+        memoryDisplayList = new ArrayList<>();
+        filenameList = new ArrayList<>();
+        MemoryConfigurations.setCurrentConfiguration(MemoryConfigurations.getDefaultConfiguration());
+        // do NOT use Globals.program for command line MARS -- it triggers 'backstep' log.
+        code = new MIPSprogram();
+        maxSteps = -1;
+        if (out == null) {
             out = System.out;
-            if (parseCommandArgs(args)) {
-                if (runCommand()) {
-                    displayMiscellaneousPostMortem();
-                    displayRegistersPostMortem();
-                    displayMemoryPostMortem();
-                }
-                dumpSegments();
+        }
+        if (parseCommandArgs(args)) {
+            if (runCommand()) {
+                displayMiscellaneousPostMortem();
+                displayRegistersPostMortem();
+                displayMemoryPostMortem();
             }
-            System.exit(Globals.exitCode);
+            dumpSegments();
         }
+        return Globals.exitCode;
     }
 
     /////////////////////////////////////////////////////////////
@@ -380,10 +506,112 @@ public class MarsLaunch {
                 selfModifyingCode = true;
                 continue;
             }
+            if (args[i].toLowerCase().equals("fast")) {
+                predecodedExecution = true;
+                continue;
+            }
+            if (args[i].toLowerCase().equals("jit")) {
+                predecodedExecution = true;
+                blockCompilation = true;
+                continue;
+            }
             if (args[i].toLowerCase().equals("ic")) { // added 19-Jul-2012 DPS
                 countInstructions = true;
                 continue;
             }
+            if (args[i].toLowerCase().equals("prof")) {
+                profile = true;
+                continue;
+            }
+            if (args[i].toLowerCase().equals("stacks")) {
+                if (args.length <= (i + 1)) {
+                    out.println("Stacks command line argument requires a file name.");
+                    argsOK = false;
+                } else {
+                    stacksFile = args[++i];
+                }
+                continue;
+            }
+            if (args[i].toLowerCase().equals("bp") || args[i].toLowerCase().equals("watch")) {
+                if (args.length <= (i + 1)) {
+                    out.println("The " + args[i] + " command line argument requires a location.");
+                    argsOK = false;
+                } else if (args[i].toLowerCase().equals("bp")) {
+                    breakpointList.add(args[++i]);
+                } else {
+                    watchpointList.add(args[++i]);
+                }
+                continue;
+            }
+            if (args[i].toLowerCase().equals("callgrind")) {
+                if (args.length <= (i + 1)) {
+                    out.println("Callgrind command line argument requires a file name.");
+                    argsOK = false;
+                } else {
+                    callgrindFile = args[++i];
+                }
+                continue;
+            }
+            if (args[i].toLowerCase().equals("mobj")) {
+                if (args.length <= (i + 1)) {
+                    out.println("Mobj command line argument requires a file name.");
+                    argsOK = false;
+                } else {
+                    objectFile = args[++i];
+                }
+                continue;
+            }
+            if (args[i].toLowerCase().equals("in")) {
+                if (args.length <= (i + 1)) {
+                    out.println("In command line argument requires a file name.");
+                    argsOK = false;
+                } else {
+                    String inputFile = args[++i];
+                    try {
+                        inputBytes = Files.readAllBytes(Paths.get(inputFile));
+                    } catch (IOException | InvalidPathException e) {
+                        out.println("Error while attempting to read program input, file " + inputFile + " could not be read!");
+                        argsOK = false;
+                    }
+                }
+                continue;
+            }
+            if (args[i].toLowerCase().equals("out")) {
+                if (args.length <= (i + 1)) {
+                    out.println("Out command line argument requires a file name.");
+                    argsOK = false;
+                } else {
+                    outputFile = args[++i];
+                }
+                continue;
+            }
+            if (args[i].toLowerCase().equals("outlimit")) {
+                try {
+                    outputLimit = Integer.decode(args[++i]);
+                } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+                    outputLimit = -1;
+                }
+                if (outputLimit < 0) {
+                    out.println("Outlimit command line argument requires a number of bytes.");
+                    outputLimit = 0;
+                    argsOK = false;
+                }
+                continue;
+            }
+            if (args[i].toLowerCase().equals("vclock")) {
+                virtualClock = true;
+                continue;
+            }
+            if (args[i].toLowerCase().equals("midilog")) {
+                if (args.length <= (i + 1)) {
+                    out.println("Midilog command line argument requires a file name.");
+                    argsOK = false;
+                } else {
+                    virtualClock = true;
+                    midiLogFile = args[++i];
+                }
+                continue;
+            }
 
 
             if (args[i].indexOf("$") == 0) {
@@ -444,6 +672,8 @@ public class MarsLaunch {
         try {
             Globals.getSettings().setBooleanSettingNonPersistent(Settings.DELAYED_BRANCHING_ENABLED, delayedBranching);
             Globals.getSettings().setBooleanSettingNonPersistent(Settings.SELF_MODIFYING_CODE_ENABLED, selfModifyingCode);
+            Globals.getSettings().setBooleanSettingNonPersistent(Settings.PREDECODED_EXECUTION_ENABLED, predecodedExecution);
+            Globals.getSettings().setBooleanSettingNonPersistent(Settings.BLOCK_COMPILATION_ENABLED, blockCompilation);
             File mainFile = new File(filenameList.get(0)).getAbsoluteFile();// First file is "main" file
             ArrayList<String> filesToAssemble;
 
@@ -471,31 +701,98 @@ public class MarsLaunch {
             } else {
                 filesToAssemble = FilenameFinder.getFilenameList(filenameList, FilenameFinder.MATCH_ALL_EXTENSIONS);
             }
-            if (Globals.debug) {
-                out.println("--------  TOKENIZING BEGINS  -----------");
-            }
-            ArrayList MIPSprogramsToAssemble =
-                    code.prepareFilesForAssembly(filesToAssemble, mainFile.getAbsolutePath(), null);
-            if (Globals.debug) {
-                out.println("--------  ASSEMBLY BEGINS  -----------");
+            ArrayList MIPSprogramsToAssemble;
+            String assemblyOptions = "pseudo " + pseudo + " we " + warningsAreErrors + " sm " + startAtMain;
+            ObjectFile assembled = (objectFile == null) ? null : ObjectFile.read(new File(objectFile),
+                    filesToAssemble, mainFile.getAbsolutePath(), assemblyOptions, code);
+            if (assembled != null) {
+                MIPSprogramsToAssemble = assembled.getPrograms();
+                if (assembled.getWarnings() != null) {
+                    out.println(assembled.getWarnings());
+                }
+                RegisterFile.initializeProgramCounter(assembled.getStartAddress());
+            } else {
+                if (Globals.debug) {
+                    out.println("--------  TOKENIZING BEGINS  -----------");
+                }
+                MIPSprogramsToAssemble =
+                        code.prepareFilesForAssembly(filesToAssemble, mainFile.getAbsolutePath(), null);
+                if (Globals.debug) {
+                    out.println("--------  ASSEMBLY BEGINS  -----------");
+                }
+                // Added logic to check for warnings and print if any. DPS 11/28/06
+                ErrorList warnings = code.assemble(MIPSprogramsToAssemble, pseudo, warningsAreErrors);
+                String warningReport = null;
+                if (warnings != null && warnings.warningsOccurred()) {
+                    warningReport = warnings.generateWarningReport();
+                    out.println(warningReport);
+                }
+                RegisterFile.initializeProgramCounter(startAtMain); // DPS 3/9/09
+                if (objectFile != null) {
+                    try {
+                        ObjectFile.write(new File(objectFile), filesToAssemble, mainFile.getAbsolutePath(),
+                                assemblyOptions, MIPSprogramsToAssemble, code, warningReport,
+                                RegisterFile.getProgramCounter());
+                    } catch (IOException e) {
+                        out.println("Error while attempting to save assembled program, file " + objectFile + " could not be written!");
+                    }
+                }
             }
-            // Added logic to check for warnings and print if any. DPS 11/28/06
-            ErrorList warnings = code.assemble(MIPSprogramsToAssemble, pseudo, warningsAreErrors);
-            if (warnings != null && warnings.warningsOccurred()) {
-                out.println(warnings.generateWarningReport());
+            String storageWarning = Globals.memory.takeStorageWarning();
+            if (storageWarning != null) {
+                out.println(storageWarning);
             }
-            RegisterFile.initializeProgramCounter(startAtMain); // DPS 3/9/09
             if (simulate) {
                 // store program args (if any) in MIPS memory
                 new ProgramArgumentList(programArgumentList).storeProgramArguments();
-                // establish observer if specified
-                establishObserver();
+                // establish profiler if specified
+                establishProfiler(MIPSprogramsToAssemble);
                 if (Globals.debug) {
                     out.println("--------  SIMULATION BEGINS  -----------");
                 }
+                Breakpoints breakpoints = establishBreakpoints(MIPSprogramsToAssemble);
                 programRan = true;
-                boolean done = code.simulate(maxSteps);
-                if (!done) {
+                boolean done;
+                // redirect MIPS program standard input and output if specified
+                boolean redirect = inputBytes != null || outputFile != null || outputLimit > 0;
+                InputStream standardInput = SystemIO.getStandardInput();
+                PrintStream standardOutput = SystemIO.getStandardOutput();
+                OutputBuffer capture = (outputFile != null || outputLimit > 0) ? new OutputBuffer(outputLimit) : null;
+                if (redirect) {
+                    SystemIO.setStandardStreams((inputBytes == null) ? standardInput : new ByteArrayInputStream(inputBytes),
+                            (capture == null) ? standardOutput : new PrintStream(capture));
+                }
+                PrintStream midiLog = null;
+                if (midiLogFile != null) {
+                    try {
+                        midiLog = new PrintStream(new BufferedOutputStream(new FileOutputStream(midiLogFile)));
+                    } catch (IOException e) {
+                        out.println("Error while attempting to save MIDI log, file " + midiLogFile + " could not be written!");
+                    }
+                }
+                if (virtualClock) {
+                    VirtualClock.start(midiLog);
+                }
+                try {
+                    done = code.simulate(breakpoints, maxSteps);
+                } finally {
+                    VirtualClock.stop();
+                    if (midiLog != null) {
+                        midiLog.close();
+                    }
+                    if (redirect) {
+                        SystemIO.setStandardStreams(standardInput, standardOutput);
+                    }
+                    if (capture != null) {
+                        writeCapturedOutput(capture, standardOutput);
+                    }
+                }
+                if (!done && Simulator.getInstance().getStopReason() == Simulator.BREAKPOINT) {
+                    out.println("\nProgram stopped by breakpoint or watchpoint, program counter "
+                            + Binary.intToHexString(RegisterFile.getProgramCounter()) + ".");
+                } else if (!done && Simulator.getInstance().getStopReason() == Simulator.PAUSE_OR_STOP) {
+                    out.println("\nProgram stopped before completion.");
+                } else if (!done) {
                     out.println("\nProgram terminated when maximum step limit " + maxSteps + " reached.");
                 }
             }
@@ -511,6 +808,27 @@ public class MarsLaunch {
     }
 
 
+    //////////////////////////////////////////////////////////////////////
+    // Write the MIPS program output kept for the out and outlimit options to
+    // the output file, or if none to the standard output it was taken from.
+
+    private void writeCapturedOutput(OutputBuffer capture, PrintStream standardOutput) {
+        if (outputFile == null) {
+            standardOutput.write(capture.toByteArray(), 0, capture.size());
+            standardOutput.flush();
+        } else {
+            try (OutputStream file = new FileOutputStream(outputFile)) {
+                capture.writeTo(file);
+            } catch (IOException e) {
+                out.println("Error while attempting to save program output, file " + outputFile + " could not be written!");
+            }
+        }
+        if (capture.isTruncated()) {
+            out.println("\nProgram output truncated after " + capture.size() + " bytes.");
+        }
+    }
+
+
     //////////////////////////////////////////////////////////////////////
     // Check for memory address subrange.  Has to be two integers separated
     // by "-"; no embedded spaces.  e.g. 0x00400000-0x00400010
@@ -537,35 +855,78 @@ public class MarsLaunch {
     }
 
     /////////////////////////////////////////////////////////////////
-    // Required for counting instructions executed, if that option is specified.
-    // DPS 19 July 2012
-    private void establishObserver() {
-        if (countInstructions) {
-            Observer instructionCounter =
-                    new Observer() {
-                        private int lastAddress = 0;
-
-                        public void update(Observable o, Object obj) {
-                            if (obj instanceof AccessNotice) {
-                                AccessNotice notice = (AccessNotice) obj;
-                                if (!notice.accessIsFromMIPS())
-                                    return;
-                                if (notice.getAccessType() != AccessNotice.READ)
-                                    return;
-                                MemoryAccessNotice m = (MemoryAccessNotice) notice;
-                                int a = m.getAddress();
-                                if (a == lastAddress)
-                                    return;
-                                lastAddress = a;
-                                instructionCount++;
-                            }
-                        }
-                    };
+    // Required for counting instructions executed, profiling or writing call
+    // stacks or graph, if any of those options is specified.  The profiler counts
+    // every instruction executed, in the kernel text segment too.
+    private void establishProfiler(List<?> programs) {
+        if (countInstructions || profile || stacksFile != null || callgrindFile != null) {
+            profiler = new Profiler();
+            profiler.addSymbolTable(Globals.symbolTable);
+            for (Object program : programs) {
+                profiler.addSymbolTable(((MIPSprogram) program).getLocalSymbolTable());
+            }
+        }
+        Simulator.getInstance().setProfiler(profiler);
+    }
+
+    /////////////////////////////////////////////////////////////////
+    // Breakpoints and watchpoints from the bp and watch options, or null if
+    // there are none.  Invalid ones are reported and ignored.
+    private Breakpoints establishBreakpoints(List<?> programs) {
+        if (breakpointList.isEmpty() && watchpointList.isEmpty()) {
+            return null;
+        }
+        Breakpoints breakpoints = new Breakpoints();
+        for (String spec : breakpointList) {
+            String[] parts = spec.split(",", 2);
+            try {
+                int address = resolveAddress(parts[0], programs);
+                breakpoints.add(address, (parts.length > 1) ? parseCondition(parts[1], programs) : null);
+            } catch (IllegalArgumentException e) {
+                out.println("Invalid breakpoint: " + spec);
+            }
+        }
+        for (String spec : watchpointList) {
             try {
-                Globals.memory.addObserver(instructionCounter, Memory.textBaseAddress, Memory.textLimitAddress);
-            } catch (AddressErrorException aee) {
-                out.println("Internal error: MarsLaunch uses incorrect text segment address for instruction observer");
+                if (spec.matches(".*[=<>].*")) {
+                    breakpoints.addWatchpoint(parseCondition(spec, programs));
+                } else if (RegisterFile.getUserRegister(spec) != null) {
+                    breakpoints.addWatchpoint(Breakpoints.registerChanges(RegisterFile.getUserRegister(spec)));
+                } else {
+                    breakpoints.addWatchpoint(Breakpoints.memoryChanges(resolveAddress(spec, programs)));
+                }
+            } catch (IllegalArgumentException e) {
+                out.println("Invalid watchpoint: " + spec);
+            }
+        }
+        return breakpoints;
+    }
+
+    // Condition of the form <register or memory location><comparison><integer>, e.g. $t0>=10
+    private Breakpoints.Condition parseCondition(String condition, List<?> programs) {
+        String[] parts = condition.split("(?<=[^=<>!])(?=[=<>!])|(?<=[=<>])(?=[^=<>])", 3);
+        if (parts.length != 3) {
+            throw new IllegalArgumentException(condition);
+        }
+        int value = Binary.stringToInt(parts[2]);
+        if (RegisterFile.getUserRegister(parts[0]) != null) {
+            return Breakpoints.registerCondition(RegisterFile.getUserRegister(parts[0]), parts[1], value);
+        }
+        return Breakpoints.memoryCondition(resolveAddress(parts[0], programs), parts[1], value);
+    }
+
+    // Address given as a number or a label, local to one of the programs or global
+    private int resolveAddress(String location, List<?> programs) {
+        try {
+            return Binary.stringToInt(location);
+        } catch (NumberFormatException e) {
+            for (Object program : programs) {
+                int address = ((MIPSprogram) program).getLocalSymbolTable().getAddressLocalOrGlobal(location);
+                if (address != SymbolTable.NOT_FOUND) {
+                    return address;
+                }
             }
+            throw new IllegalArgumentException(location);
         }
     }
 
@@ -574,7 +935,24 @@ public class MarsLaunch {
     // DPS 19 July 2012
     private void displayMiscellaneousPostMortem() {
         if (countInstructions) {
-            out.println("\n" + instructionCount);
+            out.println("\n" + profiler.getTextInstructionCount());
+        }
+        if (profile) {
+            profiler.writeFlatProfile(out);
+        }
+        if (stacksFile != null) {
+            try (PrintStream stacks = new PrintStream(new FileOutputStream(stacksFile))) {
+                profiler.writeCollapsedStacks(stacks);
+            } catch (FileNotFoundException e) {
+                out.println("Error while attempting to write stacks, file " + stacksFile + " could not be created!");
+            }
+        }
+        if (callgrindFile != null) {
+            try (PrintStream callgrind = new PrintStream(new FileOutputStream(callgrindFile))) {
+                profiler.writeCallgrind(callgrind);
+            } catch (FileNotFoundException e) {
+                out.println("Error while attempting to write call graph, file " + callgrindFile + " could not be created!");
+            }
         }
     }
 
@@ -760,6 +1138,18 @@ public class MarsLaunch {
         out.println("  ae<n>  -- terminate MARS with integer exit code <n> if an assemble error occurs.");
         out.println("  ascii  -- display memory or register contents interpreted as ASCII codes.");
         out.println("      b  -- brief - do not display register/memory address along with contents");
+        out.println("  batch <dir|manifest> -- assemble and run every .asm file in directory <dir>, or each");
+        out.println("            program listed in file <manifest> (one \"program [input-file]\" per line),");
+        out.println("            in parallel.  Program <p> reads <p minus .asm>.in if no input file is listed");
+        out.println("            and writes its output to <p>.out.  Other options apply to every program.");
+        out.println("  bl<n>  -- with batch, stop each program after <n> seconds (default 60, 0 for no limit)");
+        out.println("  bo<n>  -- with batch, keep at most <n> bytes of each program's output (default 16 MB,");
+        out.println("            0 for no limit)");
+        out.println("  bt<n>  -- with batch, run <n> programs at a time (default one per processor)");
+        out.println(" bp <location>[,<condition>] -- stop execution when it reaches <location> (label or");
+        out.println("            address), if <condition> holds then.  A condition compares a register ($t0)");
+        out.println("            or memory word (label or address) with an integer using ==, !=, <, <=, >");
+        out.println("            or >=, e.g. bp loop,$t0==5.  Option may be repeated.");
         out.println("      d  -- display MARS debugging statements");
         out.println("     db  -- MIPS delayed branching is enabled");
         out.println("    dec  -- display memory or register contents in decimal.");
@@ -769,22 +1159,36 @@ public class MarsLaunch {
         out.println("            Segment and format are case-sensitive and possible values are:");
         out.println("            <segment> = " + segments);
         out.println("            <format> = " + formats);
+        out.println("   fast  -- simulate from a predecoded copy of the text segment.  Same results,");
+        out.println("            less overhead per instruction.  Has no effect with smc.");
         out.println("      h  -- display this help.  Use by itself with no filename.");
         out.println("    hex  -- display memory or register contents in hexadecimal (default)");
         out.println("     ic  -- display count of MIPS basic instructions 'executed'");
+        out.println("    jit  -- like fast, and also compile frequently executed basic blocks to JVM");
+        out.println("            code.  Same results, several times faster for compute-bound programs.");
+        out.println("            Has no effect with db or smc, and is like fast with ic, prof, stacks or callgrind.");
         out.println("     mc <config>  -- set memory configuration.  Argument <config> is");
         out.println("            case-sensitive and possible values are: Default for the default");
         out.println("            32-bit address space, CompactDataAtZero for a 32KB memory with");
-        out.println("            data segment at address 0, or CompactTextAtZero for a 32KB");
-        out.println("            memory with text segment at address 0.");
+        out.println("            data segment at address 0, CompactTextAtZero for a 32KB");
+        out.println("            memory with text segment at address 0, or LargeDirect or");
+        out.println("            LargeMapped for a 256MB data segment and 256MB stack held in");
+        out.println("            off-heap buffers or memory-mapped temporary files.");
         out.println("     me  -- display MARS messages to standard err instead of standard out. ");
         out.println("            Can separate messages from program output using redirection");
         out.println("     nc  -- do not display copyright notice (for cleaner redirected/piped output).");
         out.println("     np  -- use of pseudo instructions and formats not permitted");
         out.println("      p  -- Project mode - assemble all files in the same directory as given file.");
         out.println("  se<n>  -- terminate MARS with integer exit code <n> if a simulation (run) error occurs.");
+        out.println(" server [<port>] -- keep running, reading simulation requests (JSON, one per line) from");
+        out.println("            standard input or from connections to loopback TCP port <port>, and writing");
+        out.println("            a JSON response line for each.  Other options apply to every request.");
         out.println("     sm  -- start execution at statement with global label main, if defined");
         out.println("    smc  -- Self Modifying Code - Program can write and branch to either text or data segment");
+        out.println("  st<n>  -- with server, run <n> requests at a time (default one per processor)");
+        out.println(" watch <location|condition> -- stop execution after an instruction that changes the");
+        out.println("            register or memory word, or makes the condition (as for bp) hold.");
+        out.println("            Option may be repeated.");
         out.println("    <n>  -- where <n> is an integer maximum count of steps to simulate.");
         out.println("            If 0, negative or not specified, there is no maximum.");
         out.println(" $<reg>  -- where <reg> is number or name (e.g. 5, t3, f10) of register whose ");
@@ -795,6 +1199,31 @@ public class MarsLaunch {
         out.println("<m>-<n>  -- memory address range from <m> to <n> whose contents to");
         out.println("            display at end of run. <m> and <n> may be hex or decimal,");
         out.println("            must be on word boundary, <m> <= <n>.  Option may be repeated.");
+        out.println("   prof  -- display an instruction profile at end of run: instructions executed");
+        out.println("            per function (by label, following jal and jr $ra), per opcode with");
+        out.println("            approximate cycles, and for the 20 most frequently executed instructions.");
+        out.println("            Its total includes the kernel text segment, unlike the ic count.");
+        out.println("            Also shows maximum call depth, each function's recursion depth and");
+        out.println("            how many times each syscall service was invoked.");
+        out.println(" stacks <file> -- write instructions executed per call stack to <file> at end");
+        out.println("            of run, in the collapsed stack format used by flame graph tools.");
+        out.println(" callgrind <file> -- write the call graph to <file> at end of run in callgrind");
+        out.println("            format: instructions per function, source line and call site.");
+        out.println("  mobj <file> -- keep the assembled program in <file>.  If it was saved from the");
+        out.println("            same source files, since unchanged, with the same options, it is loaded");
+        out.println("            instead of assembling; otherwise the program is assembled and saved.");
+        out.println("    in <file> -- MIPS program standard input is read from <file>, which is loaded");
+        out.println("            into memory before the program runs.");
+        out.println("   out <file> -- MIPS program standard output is kept in memory while the program");
+        out.println("            runs, then written to <file>.");
+        out.println(" outlimit <n> -- keep at most <n> bytes of MIPS program standard output and");
+        out.println("            discard the rest.  Without out, it is shown when the program stops.");
+        out.println(" vclock  -- run on a virtual clock: Time syscall returns virtual time from 0,");
+        out.println("            Sleep advances it without waiting, MIDI syscalls are not played and");
+        out.println("            MidiOutSync advances it by the note's duration.  Each Time syscall");
+        out.println("            also advances it by 1 ms, so a loop waiting for a time ends.");
+        out.println(" midilog <file> -- same as vclock, and also record MIDI syscalls to <file>,");
+        out.println("            one line per call: time, syscall, pitch, duration, instrument, volume.");
         out.println("     pa  -- Program Arguments follow in a space-separated list.  This");
         out.println("            option must be placed AFTER ALL FILE NAMES, because everything");
         out.println("            that follows it is interpreted as a program argument to be");
@@ -0,0 +1,381 @@
+package mars;
+
+import mars.assembler.*;
+import mars.mips.hardware.*;
+import mars.mips.instructions.Instruction;
+import mars.util.SystemIO;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * An assembled program saved to a file (a ".mobj" file), so that it can be run again
+ * without assembling it.  The file holds the text segment statements, with their binary
+ * code, operands and source line, the initialized data and kernel data segments, the
+ * global and local symbol tables, the starting program counter and any assembler warnings.
+ * <p>
+ * It also records what it was assembled from: the names of the source files, a SHA-256
+ * hash of each of them and of every file they include, the MARS version, the settings
+ * that affect assembly and a hash of the instruction set, which statements refer to by
+ * index.  The file is only loaded if all of those are still the same.
+ *
+ * @version October 2026
+ */
+
+public class ObjectFile {
+    private static final int MAGIC = 0x4d4f424a; // "MOBJ"
+    private static final int FORMAT_VERSION = 1;
+    private static final int PAGE_BYTES = 4096;
+
+    private final ArrayList<MIPSprogram> programs;
+    private final String warnings;
+    private final int startAddress;
+
+    private ObjectFile(ArrayList<MIPSprogram> programs, String warnings, int startAddress) {
+        this.programs = programs;
+        this.warnings = warnings;
+        this.startAddress = startAddress;
+    }
+
+    /**
+     * @return one MIPSprogram for each source file, with its local symbol table, in the
+     * order they were assembled
+     */
+    public ArrayList<MIPSprogram> getPrograms() {
+        return programs;
+    }
+
+    /**
+     * @return report of warnings from assembling the program, or null if there were none
+     */
+    public String getWarnings() {
+        return warnings;
+    }
+
+    /**
+     * @return program counter value to start execution at
+     */
+    public int getStartAddress() {
+        return startAddress;
+    }
+
+    /**
+     * Save an assembled program.  Memory, the global symbol table and the programs must be
+     * as left by assembling it.  The file is written under another name in the same directory
+     * and then renamed, so a run reading it at the same time sees either the old or the new one.
+     *
+     * @param file         object file to write
+     * @param filenames    names of source files as given to MIPSprogram.prepareFilesForAssembly()
+     * @param leadFilename name of the lead source file, likewise
+     * @param options      description of any other options the assembled program depends on
+     * @param programs     MIPSprogram for each source file, as assembled
+     * @param leadProgram  the one of them the program is run from
+     * @param warnings     report of assembler warnings, or null if none
+     * @param startAddress program counter value to start execution at
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(File file, List<?> filenames, String leadFilename, String options,
+                             List<?> programs, MIPSprogram leadProgram, String warnings, int startAddress)
+            throws IOException {
+        // Not Files.createTempFile(), which would leave the object file readable only by its owner.
+        File temporary = File.createTempFile("." + file.getName() + ".", ".tmp", file.getAbsoluteFile().getParentFile());
+        try {
+            writeTo(temporary, filenames, leadFilename, options, programs, leadProgram, warnings, startAddress);
+            try {
+                Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary.toPath()); // only still there if not written and moved
+        }
+    }
+
+    private static void writeTo(File file, List<?> filenames, String leadFilename, String options,
+                                List<?> programs, MIPSprogram leadProgram, String warnings, int startAddress)
+            throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            // What the program was assembled from
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            writeString(out, Globals.version);
+            writeString(out, settings(options));
+            writeStrings(out, filenames);
+            writeString(out, leadFilename);
+            ArrayList<String> sources = sourceFiles(programs);
+            out.writeInt(sources.size());
+            for (String source : sources) {
+                writeString(out, source);
+                byte[] hash = hash(source);
+                out.writeInt(hash.length);
+                out.write(hash);
+            }
+            // The assembled program
+            writeString(out, warnings);
+            out.writeInt(startAddress);
+            out.writeInt(programs.size());
+            out.writeInt(programs.indexOf(leadProgram));
+            writeSymbols(out, Globals.symbolTable);
+            for (Object program : programs) {
+                writeString(out, ((MIPSprogram) program).getFilename());
+                writeSymbols(out, ((MIPSprogram) program).getLocalSymbolTable());
+            }
+            Map<Instruction, Integer> instructionIndexes = new IdentityHashMap<>();
+            List<?> instructionList = Globals.instructionSet.getInstructionList();
+            for (int i = 0; i < instructionList.size(); i++) {
+                instructionIndexes.put((Instruction) instructionList.get(i), i);
+            }
+            List<?> machineList = leadProgram.getMachineList();
+            out.writeInt(machineList.size());
+            for (Object statement : machineList) {
+                out.writeInt(programs.indexOf(((ProgramStatement) statement).getSourceMIPSprogram()));
+                ((ProgramStatement) statement).write(out, instructionIndexes);
+            }
+            writeSegment(out, Memory.dataSegmentBaseAddress, true);
+            writeSegment(out, Memory.kernelDataBaseAddress, false);
+            out.writeInt(0); // end of segments
+        } catch (AddressErrorException e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    /**
+     * Load an assembled program saved by write(), if it is up to date: it was assembled by
+     * this version of MARS, with the same settings and options, from the same source files
+     * and these have not changed since.  Memory, the global symbol table and the lead
+     * program are then set up as if the program had been assembled.
+     *
+     * @param file         object file to read
+     * @param filenames    names of source files that would be assembled
+     * @param leadFilename name of the lead source file
+     * @param options      description of any other options the assembled program depends on
+     * @param leadProgram  MIPSprogram to set up as the one the program is run from
+     * @return the loaded program, or null if the file does not exist, cannot be read or is
+     * out of date
+     */
+    public static ObjectFile read(File file, List<?> filenames, String leadFilename, String options,
+                                  MIPSprogram leadProgram) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION
+                    || !Globals.version.equals(readString(in))
+                    || !settings(options).equals(readString(in))
+                    || !filenames.equals(readStrings(in))
+                    || !leadFilename.equals(readString(in))) {
+                return null;
+            }
+            for (int sources = in.readInt(); sources > 0; sources--) {
+                String source = readString(in);
+                byte[] hash = readBytes(in, in.readInt());
+                if (!new File(source).isFile() || !Arrays.equals(hash, hash(source))) {
+                    return null;
+                }
+            }
+            // Up to date, so set up as the assembler would.
+            String warnings = readString(in);
+            int startAddress = in.readInt();
+            Globals.symbolTable.clear();
+            Globals.memory.clear();
+            ArrayList<MIPSprogram> programs = new ArrayList<>();
+            int programCount = in.readInt();
+            int leadIndex = in.readInt();
+            if (leadIndex < 0 || leadIndex >= programCount) {
+                throw new IOException("invalid lead program " + leadIndex);
+            }
+            readSymbols(in, Globals.symbolTable);
+            for (int i = 0; i < programCount; i++) {
+                String filename = readString(in);
+                SymbolTable localSymbolTable = new SymbolTable(filename);
+                readSymbols(in, localSymbolTable);
+                MIPSprogram program = (i == leadIndex) ? leadProgram : new MIPSprogram();
+                program.restoreAssembled(filename, localSymbolTable, null);
+                programs.add(program);
+            }
+            List<?> instructionList = Globals.instructionSet.getInstructionList();
+            ArrayList<ProgramStatement> machineList = new ArrayList<>();
+            for (int statements = in.readInt(); statements > 0; statements--) {
+                int programIndex = in.readInt();
+                if (programIndex >= programCount) {
+                    throw new IOException("invalid program " + programIndex);
+                }
+                MIPSprogram program = (programIndex < 0) ? null : programs.get(programIndex);
+                ProgramStatement statement = new ProgramStatement(program, in, instructionList);
+                Globals.memory.setStatement(statement.getAddress(), statement);
+                machineList.add(statement);
+            }
+            for (int address = in.readInt(); address != 0; address = in.readInt()) {
+                int words = in.readInt();
+                for (int i = 0; i < words; i++) {
+                    Globals.memory.setRawWord(address + i * Memory.WORD_LENGTH_BYTES, in.readInt());
+                }
+                if (words == 0) {
+                    Globals.memory.setRawWord(address, 0); // allocated, but all zero
+                }
+            }
+            leadProgram.restoreAssembled(leadProgram.getFilename(), leadProgram.getLocalSymbolTable(), machineList);
+            SystemIO.resetFiles();
+            return new ObjectFile(programs, warnings, startAddress);
+        } catch (IOException | AddressErrorException e) {
+            return null; // unreadable or not a valid object file
+        }
+    }
+
+    // Settings, as well as the given options, that an assembled program depends on, and the
+    // instruction set that its statements' instruction indexes refer to.
+    private static String settings(String options) throws IOException {
+        Settings settings = Globals.getSettings();
+        return options
+                + " delayed branching " + settings.getBooleanSetting(Settings.DELAYED_BRANCHING_ENABLED)
+                + " bare machine " + settings.getBooleanSetting(Settings.BARE_MACHINE_ENABLED)
+                + " exception handler " + (settings.getBooleanSetting(Settings.EXCEPTION_HANDLER_ENABLED)
+                ? settings.getExceptionHandler() : null)
+                + " memory " + MemoryConfigurations.getCurrentConfiguration().getConfigurationIdentifier()
+                + " instructions " + instructionSetHash();
+    }
+
+    // Hash of the example format of each instruction in the instruction set, in order.  These
+    // are all different, so the same hash means each index still names the same instruction.
+    private static String instructionSetHash() throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (Object instruction : Globals.instructionSet.getInstructionList()) {
+                digest.update(((Instruction) instruction).getExampleFormat().getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) '\n');
+            }
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e.getMessage()); // every Java platform has SHA-256
+        }
+    }
+
+    // Names of the given programs' source files and of all files they include.
+    private static ArrayList<String> sourceFiles(List<?> programs) {
+        LinkedHashSet<String> sources = new LinkedHashSet<>();
+        for (Object program : programs) {
+            sources.add(((MIPSprogram) program).getFilename());
+            for (SourceLine line : ((MIPSprogram) program).getSourceLineList()) {
+                if (line.getFilename() != null) {
+                    sources.add(line.getFilename());
+                }
+            }
+        }
+        return new ArrayList<>(sources);
+    }
+
+    private static byte[] hash(String filename) throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(new File(filename).toPath()));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e.getMessage()); // every Java platform has SHA-256
+        }
+    }
+
+    private static void writeSymbols(DataOutputStream out, SymbolTable symbolTable) throws IOException {
+        List<?> symbols = symbolTable.getAllSymbols();
+        out.writeInt(symbols.size());
+        for (Object s : symbols) {
+            Symbol symbol = (Symbol) s;
+            writeString(out, symbol.getName());
+            out.writeInt(symbol.getAddress());
+            out.writeBoolean(symbol.getType());
+        }
+    }
+
+    private static void readSymbols(DataInputStream in, SymbolTable symbolTable) throws IOException {
+        ErrorList errors = new ErrorList();
+        for (int symbols = in.readInt(); symbols > 0; symbols--) {
+            String name = readString(in);
+            int address = in.readInt();
+            boolean data = in.readBoolean();
+            symbolTable.addSymbol(new Token(TokenTypes.IDENTIFIER, name, null, 0, 0), address, data, errors);
+        }
+    }
+
+    // Pages of a data segment that have been written to, each as its address, its length in
+    // words and its words, or with length 0 if all of them are zero.
+    private static void writeSegment(DataOutputStream out, int baseAddress, boolean userData)
+            throws IOException, AddressErrorException {
+        int[] words = new int[PAGE_BYTES / Memory.WORD_LENGTH_BYTES];
+        for (int page = baseAddress;
+             userData ? Memory.inDataSegment(page) : Memory.inKernelDataSegment(page);
+             page += PAGE_BYTES) {
+            if (Globals.memory.getRawWordOrNull(page) == null
+                    && Globals.memory.getRawWordOrNull(page + PAGE_BYTES - Memory.WORD_LENGTH_BYTES) == null) {
+                continue; // never written to
+            }
+            boolean allZero = true;
+            for (int i = 0; i < words.length; i++) {
+                Integer word = Globals.memory.getRawWordOrNull(page + i * Memory.WORD_LENGTH_BYTES);
+                words[i] = (word == null) ? 0 : word;
+                allZero &= words[i] == 0;
+            }
+            out.writeInt(page);
+            out.writeInt(allZero ? 0 : words.length);
+            for (int i = 0; !allZero && i < words.length; i++) {
+                out.writeInt(words[i]);
+            }
+        }
+    }
+
+    private static void writeStrings(DataOutputStream out, List<?> strings) throws IOException {
+        out.writeInt(strings.size());
+        for (Object string : strings) {
+            writeString(out, (String) string);
+        }
+    }
+
+    private static ArrayList<String> readStrings(DataInputStream in) throws IOException {
+        ArrayList<String> strings = new ArrayList<>();
+        for (int count = in.readInt(); count > 0; count--) {
+            strings.add(readString(in));
+        }
+        return strings;
+    }
+
+    /**
+     * Write a string, which may be null, in UTF-8.  Unlike writeUTF(), there is no limit on
+     * its length.
+     */
+    static void writeString(DataOutputStream out, String string) throws IOException {
+        if (string == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Read a string written by writeString().
+     */
+    static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        return new String(readBytes(in, length), StandardCharsets.UTF_8);
+    }
+
+    // Read the given number of bytes, which must be no more than are left in the file.
+    private static byte[] readBytes(DataInputStream in, int length) throws IOException {
+        if (length < 0 || length > in.available()) {
+            throw new EOFException("invalid length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
@@ -6,6 +6,7 @@ import mars.mips.hardware.*;
 import mars.util.*;
 import mars.venus.NumberDisplayBaseChooser;
 
+import java.io.*;
 import java.util.*;
 
 /*
@@ -152,6 +153,85 @@ public class ProgramStatement {
         this.basicStatementList = buildBasicStatementListFromBinaryCode(instr, operands, numOperands);
     }
 
+    /**
+     * Constructor for ProgramStatement read back from an object file, in the form written
+     * by write().  There are no token lists, as the statement was not assembled from source.
+     *
+     * @param sourceMIPSprogram The MIPSprogram object that contains this statement, or null
+     * @param in                Stream positioned at the statement
+     * @param instructionList   The instruction set's list of instructions, which the
+     *                          statement's instruction is an index into
+     * @throws IOException if the statement cannot be read
+     **/
+    ProgramStatement(MIPSprogram sourceMIPSprogram, DataInputStream in, List<?> instructionList) throws IOException {
+        this.sourceMIPSprogram = sourceMIPSprogram;
+        this.originalTokenList = this.strippedTokenList = null;
+        this.textAddress = in.readInt();
+        this.sourceLine = in.readInt();
+        this.binaryStatement = in.readInt();
+        int instructionIndex = in.readInt();
+        if (instructionIndex >= instructionList.size()) {
+            throw new IOException("invalid instruction " + instructionIndex);
+        }
+        this.instruction = (instructionIndex < 0) ? null : (Instruction) instructionList.get(instructionIndex);
+        this.numOperands = in.readInt();
+        this.operands = in.readBoolean() ? new int[4] : null;
+        if (numOperands < 0 || numOperands > ((operands == null) ? 0 : operands.length)) {
+            throw new IOException("invalid operand count " + numOperands);
+        }
+        for (int i = 0; i < numOperands; i++) {
+            this.operands[i] = in.readInt();
+        }
+        this.source = ObjectFile.readString(in);
+        this.basicAssemblyStatement = ObjectFile.readString(in);
+        this.machineStatement = ObjectFile.readString(in);
+        this.basicStatementList = new BasicStatementList();
+        for (int elements = in.readInt(); elements > 0; elements--) {
+            int type = in.readByte();
+            if (type == 0) {
+                basicStatementList.addString(ObjectFile.readString(in));
+            } else if (type == 1) {
+                basicStatementList.addAddress(in.readInt());
+            } else {
+                basicStatementList.addValue(in.readInt());
+            }
+        }
+        this.altered = false;
+    }
+
+    /**
+     * Write this statement, other than the program containing it, to an object file.  It is
+     * read back by the constructor that takes a DataInputStream.
+     *
+     * @param out                Stream to write to
+     * @param instructionIndexes Index of each instruction in the instruction set's list
+     * @throws IOException if the statement cannot be written
+     **/
+    void write(DataOutputStream out, Map<Instruction, Integer> instructionIndexes) throws IOException {
+        out.writeInt(textAddress);
+        out.writeInt(sourceLine);
+        out.writeInt(binaryStatement);
+        out.writeInt((instruction == null) ? -1 : instructionIndexes.get(instruction));
+        out.writeInt(numOperands);
+        out.writeBoolean(operands != null);
+        for (int i = 0; i < numOperands; i++) {
+            out.writeInt(operands[i]);
+        }
+        ObjectFile.writeString(out, source);
+        ObjectFile.writeString(out, basicAssemblyStatement);
+        ObjectFile.writeString(out, machineStatement);
+        out.writeInt(basicStatementList.list.size());
+        for (Object element : basicStatementList.list) {
+            BasicStatementList.ListElement e = (BasicStatementList.ListElement) element;
+            out.writeByte(e.type);
+            if (e.type == 0) {
+                ObjectFile.writeString(out, e.sValue);
+            } else {
+                out.writeInt(e.iValue);
+            }
+        }
+    }
+
 
     /////////////////////////////////////////////////////////////////////////////
 
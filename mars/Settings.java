@@ -151,6 +151,16 @@ public class Settings extends Observable {
      * execute that code.
      */
     public static final int SELF_MODIFYING_CODE_ENABLED = 20;
+    /**
+     * Flag to determine whether the simulator runs the program from a predecoded copy of the
+     * text segment instead of fetching each statement from memory.  Command mode only.
+     */
+    public static final int PREDECODED_EXECUTION_ENABLED = 21;
+    /**
+     * Flag to determine whether the predecoded execution loop compiles frequently executed
+     * basic blocks to JVM code.  Command mode only.
+     */
+    public static final int BLOCK_COMPILATION_ENABLED = 22;
 
     // NOTE: key sequence must match up with labels above which are used for array indexes!
     private static final String[] booleanSettingsKeys = {"ExtendedAssembler", "BareMachine", "AssembleOnOpen", "AssembleAll",
@@ -159,7 +169,7 @@ public class Settings extends Observable {
             "WarningsAreErrors", "ProgramArguments", "DataSegmentHighlighting",
             "RegistersHighlighting", "StartAtMain", "EditorCurrentLineHighlighting",
             "PopupInstructionGuidance", "PopupSyscallInput", "GenericTextEditor",
-            "AutoIndent", "SelfModifyingCode"};
+            "AutoIndent", "SelfModifyingCode", "PredecodedExecution", "BlockCompilation"};
 
     /**
      * Last resort default values for boolean settings; will use only  if neither
@@ -169,7 +179,7 @@ public class Settings extends Observable {
      */
     private static final boolean[] defaultBooleanSettingsValues = { // match the above list by position
             true, false, false, false, false, true, true, false, false,
-            true, false, false, true, true, false, true, true, false, false, true, false};
+            true, false, false, true, true, false, true, true, false, false, true, false, false, false};
 
     // STRING SETTINGS.  Each array position has associated name.
     /**
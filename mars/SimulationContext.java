@@ -0,0 +1,230 @@
+package mars;
+
+import mars.mips.hardware.AddressErrorException;
+import mars.mips.hardware.Coprocessor1;
+import mars.mips.hardware.Register;
+import mars.mips.hardware.RegisterFile;
+import mars.simulator.Simulator;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+
+/**
+ * An independent instance of the MARS assembler and simulator, so that several MIPS
+ * programs can be assembled and run at the same time in one JVM.
+ * <p>
+ * MARS keeps its state in static fields (Globals, Memory, RegisterFile, Coprocessor0 and 1,
+ * DelayedBranch, the Simulator, SystemIO and so on), which allows only one program at a time
+ * per set of classes.  A context therefore holds its own copy of the MARS classes, loaded by
+ * a private class loader, and with them its own copy of all that state.  Classes outside MARS
+ * (the Java library) are shared, as are system properties, which a run does not change.
+ * Errors that would end a stand-alone MARS are thrown from run() instead of exiting the JVM.
+ * The instruction set and other one-time initialization is done by the first run in a
+ * context and reused by later ones, so a context should be kept for as many runs as possible.
+ * <p>
+ * A context runs one program at a time; use one context per thread to run programs in parallel.
+ * Runs are described by the same arguments as the MARS command line (see MarsLaunch).
+ * After a run, the final register and memory contents can be read from the context until
+ * its next run.
+ *
+ * @version October 2026
+ */
+
+public class SimulationContext {
+    private final ClassLoader loader;
+    private final Method runCommandLine;
+    private final Method registerValue;
+    private final Method memoryWords;
+    private final Method stopSimulation;
+    private final Method fileAccess;
+
+    /**
+     * Create a context with its own copy of the MARS classes, loaded from the class path.
+     *
+     * @throws IllegalStateException if the MARS classes cannot be loaded
+     */
+    public SimulationContext() {
+        loader = new IsolatingClassLoader(getClassPathURLs(), SimulationContext.class.getClassLoader());
+        try {
+            runCommandLine = loader.loadClass(MarsLaunch.class.getName()).getMethod("runCommandLine",
+                    String[].class, InputStream.class, PrintStream.class);
+            // The context's own copy of this class reads the context's own registers and memory.
+            Class<?> isolated = loader.loadClass(SimulationContext.class.getName());
+            registerValue = isolated.getDeclaredMethod("registerValue", String.class);
+            memoryWords = isolated.getDeclaredMethod("memoryWords", int.class, int.class);
+            stopSimulation = isolated.getDeclaredMethod("stopSimulation");
+            fileAccess = isolated.getDeclaredMethod("fileAccess", boolean.class);
+            registerValue.setAccessible(true);
+            memoryWords.setAccessible(true);
+            stopSimulation.setAccessible(true);
+            fileAccess.setAccessible(true);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unable to load MARS into simulation context: " + e);
+        }
+    }
+
+    /**
+     * Assemble and optionally run a MIPS program in this context, as directed by command
+     * line arguments.  Everything MARS would write to standard output, including the
+     * MIPS program's own output and any register or memory display, goes to the given stream.
+     *
+     * @param args command line arguments, as for MarsLaunch (at least one file name)
+     * @param in   standard input for the MIPS program
+     * @param out  standard output for the MIPS program and MARS messages
+     * @return the MARS exit code (see the "ae", "se" options and syscall 17)
+     * @throws IllegalStateException if MARS cannot be initialized, for instance because
+     *                               PseudoOps.txt is missing, or on an internal MARS error
+     */
+    public synchronized int run(String[] args, InputStream in, PrintStream out) {
+        return (Integer) invoke(runCommandLine, args, in, out);
+    }
+
+    /**
+     * Stop the program being simulated in this context, if any, as the Stop button does.
+     * The run then returns soon after.  May be called from any thread; has no effect while
+     * no program is being simulated.
+     */
+    public void stop() {
+        invoke(stopSimulation);
+    }
+
+    /**
+     * Allow or refuse file access by the programs run in this context: the open file
+     * syscall, and with it reading, writing and closing files, and the .include directive.
+     * A context allows file access until this is called.
+     *
+     * @param allowed true to allow file access, false to refuse it
+     */
+    public synchronized void setFileAccessAllowed(boolean allowed) {
+        invoke(fileAccess, allowed);
+    }
+
+    /**
+     * Get the value of a register as the last run in this context left it.
+     *
+     * @param name register name or number, with or without the leading $ (e.g. $t0, 8, f12),
+     *             or pc, hi or lo
+     * @return register contents, or null if there is no such register
+     */
+    public synchronized Integer getRegisterValue(String name) {
+        return (Integer) invoke(registerValue, name);
+    }
+
+    /**
+     * Get words of memory as the last run in this context left them.
+     *
+     * @param address address of the first word, a multiple of 4
+     * @param count   number of words
+     * @return the words
+     * @throws IllegalArgumentException if the range includes an invalid or unaligned address
+     */
+    public synchronized int[] getMemoryWords(int address, int count) {
+        return (int[]) invoke(memoryWords, address, count);
+    }
+
+    private Object invoke(Method method, Object... args) {
+        try {
+            return method.invoke(null, args);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("MARS run failed: " + cause);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("MARS run failed: " + e);
+        }
+    }
+
+    // The following run in the context's own copy of this class; see constructor.
+
+    private static Integer registerValue(String name) {
+        if (name.equalsIgnoreCase("pc")) {
+            return RegisterFile.getProgramCounter();
+        }
+        if (name.equalsIgnoreCase("hi") || name.equalsIgnoreCase("$hi")) {
+            return RegisterFile.getValue(33);
+        }
+        if (name.equalsIgnoreCase("lo") || name.equalsIgnoreCase("$lo")) {
+            return RegisterFile.getValue(34);
+        }
+        String registerName = name.startsWith("$") ? name : "$" + name;
+        Register register = RegisterFile.getUserRegister(registerName);
+        if (register == null) {
+            register = Coprocessor1.getRegister(registerName);
+        }
+        return (register == null) ? null : register.getValue();
+    }
+
+    private static Object stopSimulation() {
+        Simulator.getInstance().stopExecution(null);
+        return null;
+    }
+
+    private static Object fileAccess(boolean allowed) {
+        Globals.fileAccessAllowed = allowed;
+        return null;
+    }
+
+    private static int[] memoryWords(int address, int count) {
+        int[] words = new int[count];
+        try {
+            for (int i = 0; i < count; i++) {
+                words[i] = Globals.memory.getWordNoNotify(address + 4 * i);
+            }
+        } catch (AddressErrorException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        return words;
+    }
+
+    private static URL[] getClassPathURLs() {
+        ArrayList<URL> urls = new ArrayList<>();
+        for (String element : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            try {
+                urls.add(new File(element).toURI().toURL());
+            } catch (MalformedURLException ignored) {
+            }
+        }
+        return urls.toArray(new URL[0]);
+    }
+
+    /////////////////////////////////////////////////////////////////////////
+    // Loads MARS classes itself rather than asking its parent first, so it gets
+    // fresh copies with their own static fields.  All other classes come from the parent.
+    private static class IsolatingClassLoader extends URLClassLoader {
+        IsolatingClassLoader(URL[] urls, ClassLoader parent) {
+            super(urls, parent);
+        }
+
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!name.startsWith("mars.") && !name.equals("Mars")) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> c = findLoadedClass(name);
+                if (c == null) {
+                    try {
+                        c = findClass(name);
+                    } catch (ClassNotFoundException e) {
+                        c = super.loadClass(name, false);
+                    }
+                }
+                if (resolve) {
+                    resolveClass(c);
+                }
+                return c;
+            }
+        }
+    }
+}
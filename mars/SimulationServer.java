@@ -0,0 +1,456 @@
+package mars;
+
+import mars.mips.hardware.Coprocessor1;
+import mars.mips.hardware.RegisterFile;
+import mars.util.Json;
+import mars.util.OutputBuffer;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Long-running MARS server for the command line "server" option.  It reads simulation
+ * requests, one JSON object per line, and writes one JSON object per line in response.
+ * Requests are read from standard input, or with "server &lt;port&gt;" from any number of
+ * connections to that TCP port on the loopback interface only.  Since the JVM, the
+ * instruction set and the compiled simulator code stay loaded between requests, a request
+ * takes milliseconds rather than the second or so needed to start MARS.
+ * <p>
+ * A request may have these members, all optional except <tt>source</tt>:
+ * <ul>
+ * <li><tt>id</tt>: any value, returned in the response to match it with its request
+ * <li><tt>source</tt>: MIPS program source text
+ * <li><tt>args</tt>: array of strings, program arguments (as for the "pa" option)
+ * <li><tt>stdin</tt>: string, standard input for the program (default empty)
+ * <li><tt>maxSteps</tt>: number, maximum number of instructions to execute
+ * <li><tt>maxMillis</tt>: number, maximum time in milliseconds to run the program
+ * <li><tt>options</tt>: array of strings, other command line options such as "db" or "we"
+ * <li><tt>registers</tt>: array of register names whose final values to report
+ * <li><tt>memory</tt>: array of objects with <tt>address</tt> (number, or string such as
+ * "0x10010000") and <tt>words</tt> (number), memory ranges whose final contents to report
+ * </ul>
+ * The response has <tt>id</tt>, <tt>exitCode</tt>, <tt>output</tt> (what the program and
+ * MARS wrote to standard output, up to the output limit), <tt>registers</tt> (object
+ * mapping each requested name to its value, or null if there is no such register),
+ * <tt>memory</tt> (array of objects with <tt>address</tt> and <tt>words</tt>, or
+ * <tt>error</tt> for an invalid range) and <tt>millis</tt>, plus <tt>timedOut</tt> (true)
+ * if the program was stopped for running too long and <tt>outputTruncated</tt> (true) if
+ * output beyond the limit was discarded.  A request that cannot be carried out at all
+ * gets a response with only <tt>id</tt> and <tt>error</tt>.
+ * <p>
+ * Requests are not trusted as the server's own command line is.  Their options may only
+ * change how the program is assembled, run and displayed: options that name files, such as
+ * "dump", "mobj", "in", "out", "callgrind", "stacks" and "midilog", and the "p", "pa", "me",
+ * "mc" and "d" options are refused.  Programs may not open files (syscall 13) and sources may
+ * not use .include.  Programs run on the virtual clock (as with the "vclock" option), so the
+ * Sleep syscall does not wait.  Every program also runs under a step limit and a time limit,
+ * by default {@value #DEFAULT_MAX_STEPS} instructions and {@value #DEFAULT_MAX_SECONDS} seconds,
+ * and keeps at most {@value #DEFAULT_MAX_OUTPUT} bytes of output.  The server options
+ * "sl&lt;n&gt;", "tl&lt;n&gt;" and "ol&lt;n&gt;" change them (0 for no limit); a request's
+ * <tt>maxSteps</tt> and <tt>maxMillis</tt> can only lower the first two.
+ * <p>
+ * Requests are run on a pool of threads (option "st&lt;n&gt;", default one per processor),
+ * each with its own SimulationContext, so responses may be written in a different order
+ * than their requests were read.  In standard input mode, the server exits at end of input
+ * once all requests are answered.
+ *
+ * @version October 2026
+ */
+
+public class SimulationServer {
+    private static final String SERVER_SWITCH = "server";
+    private static final String THREADS_SWITCH = "st";
+    private static final String STEP_LIMIT_SWITCH = "sl";
+    private static final String TIME_LIMIT_SWITCH = "tl";
+    private static final String OUTPUT_LIMIT_SWITCH = "ol";
+    private static final int MAX_MEMORY_WORDS = 1 << 20;
+    /**
+     * Step limit for each request unless the "sl" option gives another.
+     */
+    public static final int DEFAULT_MAX_STEPS = 100000000;
+    /**
+     * Time limit in seconds for each request unless the "tl" option gives another.
+     */
+    public static final int DEFAULT_MAX_SECONDS = 30;
+    /**
+     * Output limit in bytes for each request unless the "ol" option gives another.
+     */
+    public static final int DEFAULT_MAX_OUTPUT = 1 << 20;
+    // How often to repeat a stop, in case the simulation had not started when the time ran out.
+    private static final int STOP_RETRY_MILLIS = 100;
+
+    // Request options with no value that are allowed, and those allowed with one value.
+    private static final Set<String> REQUEST_SWITCHES = new HashSet<>(Arrays.asList(
+            "a", "b", "nc", "dec", "hex", "ascii", "db", "np", "ne", "we", "sm", "smc",
+            "fast", "jit", "ic", "prof", "vclock"));
+    private static final Set<String> REQUEST_SWITCHES_WITH_VALUE = new HashSet<>(Arrays.asList(
+            "bp", "watch", "outlimit"));
+
+    private final List<String> options;
+    private final int maxSteps;
+    private final long maxMillis;
+    private final int maxOutput;
+    private final ExecutorService pool;
+    private final ScheduledExecutorService watchdog;
+    private final ThreadLocal<SimulationContext> contexts = new ThreadLocal<>();
+
+    /**
+     * @param options command line options to apply to every request
+     * @param threads number of requests to run at a time
+     */
+    public SimulationServer(List<String> options, int threads) {
+        this(options, threads, DEFAULT_MAX_STEPS, DEFAULT_MAX_SECONDS * 1000L, DEFAULT_MAX_OUTPUT);
+    }
+
+    /**
+     * @param options   command line options to apply to every request
+     * @param threads   number of requests to run at a time
+     * @param maxSteps  maximum number of instructions a request may execute, 0 or less for no limit
+     * @param maxMillis maximum time in milliseconds a request may run, 0 or less for no limit
+     * @param maxOutput maximum number of bytes of output kept for a request, 0 or less for no limit
+     */
+    public SimulationServer(List<String> options, int threads, int maxSteps, long maxMillis, int maxOutput) {
+        this.options = new ArrayList<>(options);
+        if (!this.options.contains("vclock")) {
+            this.options.add("vclock"); // so that Sleep cannot outlast the time limit
+        }
+        this.maxSteps = maxSteps;
+        this.maxMillis = maxMillis;
+        this.maxOutput = maxOutput;
+        this.pool = Executors.newFixedThreadPool(Math.max(1, threads));
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "MARS server watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @param args command line arguments
+     * @return true if the arguments include the "server" option
+     */
+    public static boolean isServerCommand(String[] args) {
+        for (String arg : args) {
+            if (arg.toLowerCase().equals(SERVER_SWITCH)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Carry out a command line containing the "server" option.  Returns only when
+     * standard input is exhausted, or if the server cannot start.
+     *
+     * @param args command line arguments
+     * @param out  stream for MARS messages, and responses if reading standard input
+     * @return 0 on normal end, 1 if the server cannot start
+     */
+    public static int runServerCommand(String[] args, PrintStream out) {
+        int port = -1;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int maxSteps = DEFAULT_MAX_STEPS;
+        int maxSeconds = DEFAULT_MAX_SECONDS;
+        int maxOutput = DEFAULT_MAX_OUTPUT;
+        List<String> options = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].toLowerCase().equals(SERVER_SWITCH)) {
+                if (i + 1 < args.length && args[i + 1].matches("\\d+")) {
+                    port = Integer.parseInt(args[++i]);
+                }
+            } else if (args[i].toLowerCase().startsWith(THREADS_SWITCH) && args[i].length() > THREADS_SWITCH.length()
+                    && Character.isDigit(args[i].charAt(THREADS_SWITCH.length()))) { // not "stacks"
+                try {
+                    threads = Integer.decode(args[i].substring(THREADS_SWITCH.length()));
+                } catch (NumberFormatException nfe) {
+                    out.println("Invalid server thread count: " + args[i]);
+                    return 1;
+                }
+            } else if (args[i].toLowerCase().matches("(" + STEP_LIMIT_SWITCH + "|" + TIME_LIMIT_SWITCH
+                    + "|" + OUTPUT_LIMIT_SWITCH + ")\\d+")) {
+                try {
+                    int limit = Integer.parseInt(args[i].substring(2));
+                    if (args[i].toLowerCase().startsWith(STEP_LIMIT_SWITCH)) {
+                        maxSteps = limit;
+                    } else if (args[i].toLowerCase().startsWith(TIME_LIMIT_SWITCH)) {
+                        maxSeconds = limit;
+                    } else {
+                        maxOutput = limit;
+                    }
+                } catch (NumberFormatException nfe) {
+                    out.println("Invalid server limit: " + args[i]);
+                    return 1;
+                }
+            } else {
+                options.add(args[i]);
+            }
+        }
+        if (!options.contains("nc")) {
+            options.add(0, "nc");
+        }
+        SimulationServer server = new SimulationServer(options, threads, maxSteps, maxSeconds * 1000L, maxOutput);
+        if (port < 0) {
+            server.serve(System.in, out);
+            server.shutdown();
+            return 0;
+        }
+        try (ServerSocket listener = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            out.println("MARS server listening on port " + listener.getLocalPort());
+            out.flush();
+            while (true) {
+                final Socket connection = listener.accept();
+                Thread handler = new Thread(() -> {
+                    try (Socket socket = connection) {
+                        server.serve(socket.getInputStream(), new PrintStream(socket.getOutputStream(), true));
+                    } catch (IOException ignored) {
+                        // connection closed by client
+                    }
+                }, "MARS server connection");
+                handler.setDaemon(true);
+                handler.start();
+            }
+        } catch (IOException e) {
+            out.println("MARS server error: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    /**
+     * Read requests from the given stream until end of input and write each response
+     * to the given stream as it is completed.  Returns once all responses are written.
+     *
+     * @param requests stream of requests, one JSON object per line
+     * @param responses stream for responses, one JSON object per line
+     */
+    public void serve(InputStream requests, final PrintStream responses) {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(requests, StandardCharsets.UTF_8));
+        List<Future<?>> pending = new ArrayList<>();
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                final String request = line;
+                pending.add(pool.submit(() -> {
+                    String response = Json.toJson(handle(request));
+                    synchronized (responses) {
+                        responses.println(response);
+                        responses.flush();
+                    }
+                }));
+                pending.removeIf(Future::isDone);
+            }
+        } catch (IOException ignored) {
+            // end of requests
+        }
+        for (Future<?> response : pending) {
+            try {
+                response.get();
+            } catch (Exception ignored) {
+                // handle() reports its own errors
+            }
+        }
+    }
+
+    /**
+     * Stop the threads that run requests, after any requests already accepted.
+     */
+    public void shutdown() {
+        watchdog.shutdown();
+        pool.shutdown();
+        try {
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    // Carry out one request, given as JSON text.  Returns the response.
+    private Map<String, Object> handle(String requestText) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        Object id = null;
+        File source = null;
+        try {
+            Object parsed = Json.parse(requestText);
+            if (!(parsed instanceof Map)) {
+                throw new IllegalArgumentException("request must be a JSON object");
+            }
+            Map<?, ?> request = (Map<?, ?>) parsed;
+            id = request.get("id");
+            response.put("id", id);
+            if (!(request.get("source") instanceof String)) {
+                throw new IllegalArgumentException("request has no source");
+            }
+            source = Files.createTempFile("mars", ".asm").toFile();
+            try (Writer writer = new FileWriter(source)) {
+                writer.write((String) request.get("source"));
+            }
+            List<String> args = new ArrayList<>(options);
+            for (Object option : getList(request, "options")) {
+                args.add(option.toString());
+            }
+            checkRequestOptions(args.subList(options.size(), args.size()));
+            int steps = limit(maxSteps, request.get("maxSteps"));
+            if (steps > 0) {
+                args.add(Integer.toString(steps));
+            }
+            long millis = limit(maxMillis, request.get("maxMillis"));
+            args.add(source.getPath());
+            List<?> programArgs = getList(request, "args");
+            if (!programArgs.isEmpty()) {
+                args.add("pa");
+                for (Object arg : programArgs) {
+                    args.add(arg.toString());
+                }
+            }
+            String stdin = (request.get("stdin") instanceof String) ? (String) request.get("stdin") : "";
+
+            SimulationContext context = contexts.get();
+            if (context == null) {
+                context = new SimulationContext();
+                context.setFileAccessAllowed(false);
+                contexts.set(context);
+            }
+            OutputBuffer output = new OutputBuffer(maxOutput);
+            final SimulationContext running = context;
+            final AtomicBoolean timedOut = new AtomicBoolean(false);
+            ScheduledFuture<?> timer = (millis <= 0) ? null : watchdog.scheduleAtFixedRate(() -> {
+                timedOut.set(true);
+                running.stop();
+            }, millis, STOP_RETRY_MILLIS, TimeUnit.MILLISECONDS);
+            long start = System.currentTimeMillis();
+            int exitCode;
+            try {
+                exitCode = context.run(args.toArray(new String[0]),
+                        new ByteArrayInputStream(stdin.getBytes(StandardCharsets.UTF_8)), new PrintStream(output, true, "UTF-8"));
+            } finally {
+                if (timer != null) {
+                    timer.cancel(false);
+                }
+            }
+            long elapsed = System.currentTimeMillis() - start;
+
+            response.put("exitCode", exitCode);
+            response.put("output", new String(output.toByteArray(), StandardCharsets.UTF_8));
+            Map<String, Object> registers = new LinkedHashMap<>();
+            for (Object name : getList(request, "registers")) {
+                registers.put(name.toString(), context.getRegisterValue(name.toString()));
+            }
+            response.put("registers", registers);
+            List<Object> memory = new ArrayList<>();
+            for (Object range : getList(request, "memory")) {
+                memory.add(readMemory(context, range));
+            }
+            response.put("memory", memory);
+            response.put("millis", elapsed);
+            if (timedOut.get()) {
+                response.put("timedOut", true);
+            }
+            if (output.isTruncated()) {
+                response.put("outputTruncated", true);
+            }
+        } catch (Throwable e) {
+            if (e instanceof Error) {
+                // The context may have been left inconsistent, so start afresh.
+                contexts.remove();
+            }
+            response.clear();
+            response.put("id", id);
+            response.put("error", (e.getMessage() == null) ? e.toString() : e.getMessage());
+        } finally {
+            if (source != null) {
+                source.delete();
+            }
+        }
+        return response;
+    }
+
+    // Refuse request options that could read or write files on the server, or change
+    // how it runs, rather than how the program is assembled, run and displayed.
+    private static void checkRequestOptions(List<String> requestOptions) {
+        for (int i = 0; i < requestOptions.size(); i++) {
+            String option = requestOptions.get(i);
+            String name = option.toLowerCase();
+            if (REQUEST_SWITCHES.contains(name) || name.matches("(ae|se)\\d+")) {
+                continue;
+            }
+            if (REQUEST_SWITCHES_WITH_VALUE.contains(name) && i + 1 < requestOptions.size()) {
+                i++;
+                continue;
+            }
+            String register = option.startsWith("$") ? option : "$" + option;
+            if (RegisterFile.getUserRegister(register) != null || Coprocessor1.getRegister(register) != null) {
+                continue;
+            }
+            // MarsLaunch takes an existing file name for a source file before a memory range.
+            if (option.matches("(0x)?[0-9a-fA-F]+-(0x)?[0-9a-fA-F]+") && !new File(option).exists()) {
+                continue;
+            }
+            throw new IllegalArgumentException("option " + option + " is not allowed in a request");
+        }
+    }
+
+    // The server's limit, or the request's if lower.  0 or less means no limit.
+    private static int limit(long serverLimit, Object requestLimit) {
+        long limit = serverLimit;
+        if (requestLimit instanceof Number) {
+            long requested = ((Number) requestLimit).longValue();
+            if (requested > 0 && (limit <= 0 || requested < limit)) {
+                limit = requested;
+            }
+        }
+        return (int) Math.min(limit, Integer.MAX_VALUE);
+    }
+
+    // Report one requested memory range.
+    private static Map<String, Object> readMemory(SimulationContext context, Object range) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        try {
+            if (!(range instanceof Map)) {
+                throw new IllegalArgumentException("memory range must be an object");
+            }
+            Object address = ((Map<?, ?>) range).get("address");
+            Object words = ((Map<?, ?>) range).get("words");
+            int first = (address instanceof Number) ? ((Number) address).intValue()
+                    : (int) (long) Long.decode(String.valueOf(address));
+            int count = (words instanceof Number) ? ((Number) words).intValue() : 1;
+            if (count < 0 || count > MAX_MEMORY_WORDS) {
+                throw new IllegalArgumentException("memory range must be 0 to " + MAX_MEMORY_WORDS + " words");
+            }
+            result.put("address", first);
+            result.put("words", context.getMemoryWords(first, count));
+        } catch (RuntimeException e) {
+            result.put("error", (e.getMessage() == null) ? e.toString() : e.getMessage());
+        }
+        return result;
+    }
+
+    private static List<?> getList(Map<?, ?> request, String name) {
+        Object value = request.get(name);
+        if (value == null) {
+            return new ArrayList<>();
+        }
+        if (!(value instanceof List)) {
+            throw new IllegalArgumentException("request member " + name + " must be an array");
+        }
+        return (List<?>) value;
+    }
+}
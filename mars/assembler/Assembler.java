@@ -2,7 +2,10 @@ package mars.assembler;
 
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import mars.*;
 import mars.mips.hardware.AddressErrorException;
@@ -64,6 +67,7 @@ public class Assembler {
     private UserKernelAddressSpace textAddress;
     private UserKernelAddressSpace dataAddress;
     private DataSegmentForwardReferences currentFileDataSegmentForwardReferences;
+    private FirstPassAhead firstPassAhead; // set only while running a first pass ahead of time
 
     /**
      * Parse and generate machine code for the given MIPS program. It must have
@@ -180,68 +184,51 @@ public class Assembler {
         // TO SECOND PASS. THIS ASSURES ALL SYMBOL TABLES ARE CORRECTLY BUILT.
         // THERE IS ONE GLOBAL SYMBOL TABLE (for identifiers declared .globl) PLUS
         // ONE LOCAL SYMBOL TABLE FOR EACH SOURCE FILE.
-        for (Object tokenizedProgramFile1 : tokenizedProgramFiles) {
-            if (errors.errorLimitExceeded())
-                break;
-            this.fileCurrentlyBeingAssembled = (MIPSprogram) tokenizedProgramFile1;
-            // List of labels declared ".globl". new list for each file assembled
-            this.globalDeclarationList = new TokenList();
-            // Parser begins by default in text segment until directed otherwise.
-            this.inDataSegment = false;
-            // Macro segment will be started by .macro directive
-            this.inMacroSegment = false;
-            // Default is to align data from directives on appropriate boundary (word, half, byte)
-            // This can be turned off for remainder of current data segment with ".align 0"
-            this.autoAlign = true;
-            // Default data directive is .word for 4 byte data items
-            this.dataDirective = Directives.WORD;
-            // Clear out (initialize) symbol table related structures.
-            fileCurrentlyBeingAssembled.getLocalSymbolTable().clear();
-            currentFileDataSegmentForwardReferences.clear();
-            // sourceList is an ArrayList of String objects, one per source line.
-            // tokenList is an ArrayList of TokenList objects, one per source line;
-            // each ArrayList in tokenList consists of Token objects.
-            ArrayList<SourceLine> sourceLineList = fileCurrentlyBeingAssembled.getSourceLineList();
-            ArrayList tokenList = fileCurrentlyBeingAssembled.getTokenList();
-            ArrayList parsedList = fileCurrentlyBeingAssembled.createParsedList();
-            // each file keeps its own macro definitions
-            MacroPool macroPool = fileCurrentlyBeingAssembled.createMacroPool();
-            // FIRST PASS OF ASSEMBLER VERIFIES SYNTAX, GENERATES SYMBOL TABLE,
-            // INITIALIZES DATA SEGMENT
-            ArrayList<ProgramStatement> statements;
-            for (int i = 0; i < tokenList.size(); i++) {
+        // The first pass of each file after the first is also run ahead of time, concurrently,
+        // by an Assembler of its own as if that file came first.  Going through the files in
+        // order, such a pass is relocated to where its file actually goes when that gives the
+        // same result as running it in order, and is run in order otherwise.  With only one
+        // processor, that would just add work.
+        ArrayList<ForkJoinTask<FirstPassAhead>> firstPassesAhead = new ArrayList<>();
+        int filesAhead = (Runtime.getRuntime().availableProcessors() > 1) ? tokenizedProgramFiles.size() : 1;
+        for (int i = 1; i < filesAhead; i++) {
+            MIPSprogram program = (MIPSprogram) tokenizedProgramFiles.get(i);
+            firstPassesAhead.add(ForkJoinPool.commonPool().submit(
+                    () -> new Assembler().runFirstPassAhead(program, extendedAssemblerEnabled)));
+        }
+        try {
+            for (int i = 0; i < tokenizedProgramFiles.size(); i++) {
                 if (errors.errorLimitExceeded())
                     break;
-                for (int z = 0; z < ((TokenList) tokenList.get(i)).size(); z++) {
-                    Token t = ((TokenList) tokenList.get(i)).get(z);
-                    // record this token's original source program and line #. Differs from final, if .include used
-                    t.setOriginal(sourceLineList.get(i).getMIPSprogram(), sourceLineList.get(i).getLineNumber());
+                MIPSprogram program = (MIPSprogram) tokenizedProgramFiles.get(i);
+                FirstPassAhead ahead = null;
+                if (i > 0 && i < filesAhead) {
+                    ForkJoinTask<FirstPassAhead> task = firstPassesAhead.get(i - 1);
+                    task.quietlyJoin();
+                    // If it failed, running the pass in order reports the failure.
+                    ahead = task.isCompletedNormally() ? task.getRawResult() : null;
                 }
-                statements = this.parseLine((TokenList) tokenList.get(i),
-                        sourceLineList.get(i).getSource(),
-                        sourceLineList.get(i).getLineNumber(),
-                        extendedAssemblerEnabled);
-                if (statements != null) {
-                    parsedList.addAll(statements);
+                if (ahead == null || !this.relocateFirstPass(ahead)) {
+                    this.firstPass(program, extendedAssemblerEnabled);
                 }
+                // move ".globl" symbols from local symtab to global
+                this.transferGlobals();
+                // Attempt to resolve forward label references that were discovered in operand fields
+                // of data segment directives in current file. Those that are not resolved after this
+                // call are either references to global labels not seen yet, or are undefined.
+                // Cannot determine which until all files are parsed, so copy unresolved entries
+                // into accumulated list and clear out this one for re-use with the next source file.
+                currentFileDataSegmentForwardReferences.resolve(fileCurrentlyBeingAssembled
+                        .getLocalSymbolTable());
+                accumulatedDataSegmentForwardReferences.add(currentFileDataSegmentForwardReferences);
+                currentFileDataSegmentForwardReferences.clear();
+            } // end of first-pass loop for each MIPSprogram
+        } finally {
+            // Passes ahead of files not reached still work on those files' tables.
+            for (ForkJoinTask<FirstPassAhead> task : firstPassesAhead) {
+                task.quietlyJoin();
             }
-            if (inMacroSegment) {
-                errors.add(new ErrorMessage(fileCurrentlyBeingAssembled,
-                        fileCurrentlyBeingAssembled.getLocalMacroPool().getCurrent().getFromLine(),
-                        0, "Macro started but not ended (no .end_macro directive)"));
-            }
-            // move ".globl" symbols from local symtab to global
-            this.transferGlobals();
-            // Attempt to resolve forward label references that were discovered in operand fields
-            // of data segment directives in current file. Those that are not resolved after this
-            // call are either references to global labels not seen yet, or are undefined.
-            // Cannot determine which until all files are parsed, so copy unresolved entries
-            // into accumulated list and clear out this one for re-use with the next source file.
-            currentFileDataSegmentForwardReferences.resolve(fileCurrentlyBeingAssembled
-                    .getLocalSymbolTable());
-            accumulatedDataSegmentForwardReferences.add(currentFileDataSegmentForwardReferences);
-            currentFileDataSegmentForwardReferences.clear();
-        } // end of first-pass loop for each MIPSprogram
+        }
 
 
         // Have processed all source files. Attempt to resolve any remaining forward label
@@ -390,6 +377,146 @@ public class Assembler {
         return machineList;
     } // assemble()
 
+    // //////////////////////////////////////////////////////////////////////
+    // First assembly pass over one source file: verifies syntax, builds the file's local
+    // symbol table and list of parsed statements, and initializes its data segment.
+    private void firstPass(MIPSprogram program, boolean extendedAssemblerEnabled) {
+        this.fileCurrentlyBeingAssembled = program;
+        // List of labels declared ".globl". new list for each file assembled
+        this.globalDeclarationList = new TokenList();
+        // Parser begins by default in text segment until directed otherwise.
+        this.inDataSegment = false;
+        // Macro segment will be started by .macro directive
+        this.inMacroSegment = false;
+        // Default is to align data from directives on appropriate boundary (word, half, byte)
+        // This can be turned off for remainder of current data segment with ".align 0"
+        this.autoAlign = true;
+        // Default data directive is .word for 4 byte data items
+        this.dataDirective = Directives.WORD;
+        // Clear out (initialize) symbol table related structures.
+        fileCurrentlyBeingAssembled.getLocalSymbolTable().clear();
+        currentFileDataSegmentForwardReferences.clear();
+        // sourceList is an ArrayList of String objects, one per source line.
+        // tokenList is an ArrayList of TokenList objects, one per source line;
+        // each ArrayList in tokenList consists of Token objects.
+        ArrayList<SourceLine> sourceLineList = fileCurrentlyBeingAssembled.getSourceLineList();
+        ArrayList tokenList = fileCurrentlyBeingAssembled.getTokenList();
+        ArrayList<ProgramStatement> parsedList = fileCurrentlyBeingAssembled.createParsedList();
+        // each file keeps its own macro definitions
+        MacroPool macroPool = fileCurrentlyBeingAssembled.createMacroPool();
+        // FIRST PASS OF ASSEMBLER VERIFIES SYNTAX, GENERATES SYMBOL TABLE,
+        // INITIALIZES DATA SEGMENT
+        ArrayList<ProgramStatement> statements;
+        for (int i = 0; i < tokenList.size(); i++) {
+            if (errors.errorLimitExceeded())
+                break;
+            for (int z = 0; z < ((TokenList) tokenList.get(i)).size(); z++) {
+                Token t = ((TokenList) tokenList.get(i)).get(z);
+                // record this token's original source program and line #. Differs from final, if .include used
+                t.setOriginal(sourceLineList.get(i).getMIPSprogram(), sourceLineList.get(i).getLineNumber());
+            }
+            statements = this.parseLine((TokenList) tokenList.get(i),
+                    sourceLineList.get(i).getSource(),
+                    sourceLineList.get(i).getLineNumber(),
+                    extendedAssemblerEnabled);
+            if (statements != null) {
+                parsedList.addAll(statements);
+            }
+        }
+        if (inMacroSegment) {
+            errors.add(new ErrorMessage(fileCurrentlyBeingAssembled,
+                    fileCurrentlyBeingAssembled.getLocalMacroPool().getCurrent().getFromLine(),
+                    0, "Macro started but not ended (no .end_macro directive)"));
+        }
+    }
+
+    // //////////////////////////////////////////////////////////////////////
+    // Runs the first pass of one source file on this new Assembler as if the file came
+    // first, recording what relocateFirstPass needs to move it to where it actually goes.
+    // Uses neither the global symbol table nor memory, so can run alongside other files.
+    private FirstPassAhead runFirstPassAhead(MIPSprogram program, boolean extendedAssemblerEnabled) {
+        textAddress = new UserKernelAddressSpace(Memory.textBaseAddress,
+                Memory.kernelTextBaseAddress);
+        dataAddress = new UserKernelAddressSpace(Memory.dataBaseAddress,
+                Memory.kernelDataBaseAddress);
+        currentFileDataSegmentForwardReferences = new DataSegmentForwardReferences();
+        errors = new ErrorList();
+        firstPassAhead = new FirstPassAhead(program, this);
+        this.firstPass(program, extendedAssemblerEnabled);
+        return firstPassAhead;
+    }
+
+    // //////////////////////////////////////////////////////////////////////
+    // Takes over a first pass run ahead of time, as if the file had just been through
+    // firstPass: shifts its labels, statements and data to the addresses that follow the
+    // files before it, stores its data, and looks up labels its data refers to that were not
+    // defined locally.  Returns false if that could differ from running the pass in order:
+    // the pass used addresses that do not shift (.extern, segment directives with an address),
+    // produced any message, aligned data to a boundary the shift does not keep, or started
+    // in the wrong address space.  Anything done by then is redone by running it in order.
+    private boolean relocateFirstPass(FirstPassAhead ahead) {
+        Assembler other = ahead.assembler;
+        if (!ahead.relocatable || other.errors.errorsOccurred() || other.errors.warningsOccurred()
+                || textAddress.currentAddressSpace != textAddress.USER
+                || dataAddress.currentAddressSpace != dataAddress.USER) {
+            return false;
+        }
+        int[] textShift = new int[2];
+        int[] dataShift = new int[2];
+        for (int space = 0; space < 2; space++) {
+            textShift[space] = textAddress.address[space] - ahead.textBase[space];
+            dataShift[space] = dataAddress.address[space] - ahead.dataBase[space];
+            if (dataShift[space] % ahead.dataAlignment[space] != 0) {
+                return false;
+            }
+        }
+        for (DataWrite write : ahead.dataWrites) {
+            int address = write.address + dataShift[write.space];
+            int value = write.value;
+            if (write.label != null && write.labelSpace >= 0) {
+                value += (write.labelIsData) ? dataShift[write.labelSpace] : textShift[write.labelSpace];
+            } else if (write.label != null) {
+                value = Globals.symbolTable.getAddress(write.label.getValue());
+                if (value == SymbolTable.NOT_FOUND) {
+                    value = 0;
+                    currentFileDataSegmentForwardReferences.add(address, write.length, write.label);
+                }
+            }
+            try {
+                if (write.isDouble) {
+                    Globals.memory.setDouble(address, write.doubleValue);
+                } else {
+                    Globals.memory.set(address, value, write.length);
+                }
+            } catch (AddressErrorException e) {
+                currentFileDataSegmentForwardReferences.clear();
+                return false;
+            }
+        }
+        MIPSprogram program = ahead.program;
+        program.getLocalSymbolTable().relocate(symbol -> symbol.getAddress()
+                + ((symbol.getType()) ? dataShift : textShift)[ahead.labelSpaces.get(symbol.getName())]);
+        ArrayList<ProgramStatement> parsedList = program.getParsedList();
+        for (int i = 0; i < parsedList.size(); i++) {
+            int shift = textShift[ahead.statementSpaces.get(i)];
+            if (shift != 0) {
+                ProgramStatement statement = parsedList.get(i);
+                parsedList.set(i, new ProgramStatement(program, statement.getSource(),
+                        statement.getOriginalTokenList(), statement.getStrippedTokenList(),
+                        statement.getInstruction(), statement.getAddress() + shift, statement.getSourceLine()));
+            }
+        }
+        for (int space = 0; space < 2; space++) {
+            textAddress.address[space] = other.textAddress.address[space] + textShift[space];
+            dataAddress.address[space] = other.dataAddress.address[space] + dataShift[space];
+        }
+        textAddress.setAddressSpace(other.textAddress.currentAddressSpace);
+        dataAddress.setAddressSpace(other.dataAddress.currentAddressSpace);
+        this.fileCurrentlyBeingAssembled = program;
+        this.globalDeclarationList = other.globalDeclarationList;
+        return true;
+    }
+
     // //////////////////////////////////////////////////////////////////////
     // Will check for duplicate text addresses, which can happen inadvertantly when using
     // operand on .text directive. Will generate error message for each one that occurs.
@@ -575,6 +702,9 @@ public class Assembler {
                     instLength = ((ExtendedInstruction) inst).getCompactInstructionLength();
                 }
                 textAddress.increment(instLength);
+                if (firstPassAhead != null) {
+                    firstPassAhead.statementSpaces.add(textAddress.currentAddressSpace);
+                }
                 ret.add(programStatement);
                 return ret;
             }
@@ -645,6 +775,10 @@ public class Assembler {
                 fileCurrentlyBeingAssembled.getLocalSymbolTable().addSymbol(token,
                         (this.inDataSegment) ? dataAddress.get() : textAddress.get(),
                         this.inDataSegment, this.errors);
+                if (firstPassAhead != null) {
+                    firstPassAhead.labelSpaces.put(token.getValue(), (this.inDataSegment)
+                            ? dataAddress.currentAddressSpace : textAddress.currentAddressSpace);
+                }
                 return true;
             } else {
                 return false;
@@ -728,6 +862,9 @@ public class Assembler {
                     : this.dataAddress.KERNEL);
             if (tokens.size() > 1 && TokenTypes.isIntegerTokenType(tokens.get(1).getType())) {
                 this.dataAddress.set(Binary.stringToInt(tokens.get(1).getValue())); // KENV 1/6/05
+                if (firstPassAhead != null) {
+                    firstPassAhead.relocatable = false;
+                }
             }
         } else if (direct == Directives.TEXT || direct == Directives.KTEXT) {
             this.inDataSegment = false;
@@ -735,6 +872,9 @@ public class Assembler {
                     : this.textAddress.KERNEL);
             if (tokens.size() > 1 && TokenTypes.isIntegerTokenType(tokens.get(1).getType())) {
                 this.textAddress.set(Binary.stringToInt(tokens.get(1).getValue())); // KENV 1/6/05
+                if (firstPassAhead != null) {
+                    firstPassAhead.relocatable = false;
+                }
             }
         } else if (direct == Directives.WORD || direct == Directives.HALF
                 || direct == Directives.BYTE || direct == Directives.FLOAT
@@ -805,6 +945,11 @@ public class Assembler {
                 return;
             }
             int size = Binary.stringToInt(tokens.get(2).getValue());
+            if (firstPassAhead != null) {
+                // Extern addresses depend on the files before, so this file must be done in order.
+                firstPassAhead.relocatable = false;
+                return;
+            }
             // If label already in global symtab, do nothing. If not, add it right now.
             if (Globals.symbolTable.getAddress(tokens.get(1).getValue()) == SymbolTable.NOT_FOUND) {
                 Globals.symbolTable.addSymbol(tokens.get(1), this.externAddress,
@@ -1058,7 +1203,12 @@ public class Assembler {
             }
         } // end of "if integer token type"
         else if (token.getType() == TokenTypes.IDENTIFIER) {
-            if (this.inDataSegment) {
+            if (this.inDataSegment && firstPassAhead != null) {
+                // Global labels are not known yet, so only local ones are looked up now.
+                Symbol symbol = fileCurrentlyBeingAssembled.getLocalSymbolTable().getSymbol(token.getValue());
+                writeToDataSegment((symbol == null) ? 0 : symbol.getAddress(), lengthInBytes, token, errors);
+                firstPassAhead.referToLabel(token, symbol);
+            } else if (this.inDataSegment) {
                 int value = fileCurrentlyBeingAssembled.getLocalSymbolTable()
                         .getAddressLocalOrGlobal(token.getValue());
                 if (value == SymbolTable.NOT_FOUND) {
@@ -1184,7 +1334,7 @@ public class Assembler {
                         }
                     }
                     try {
-                        Globals.memory.set(this.dataAddress.get(), (int) theChar,
+                        storeInDataSegment(this.dataAddress.get(), (int) theChar,
                                 DataTypes.CHAR_SIZE);
                     } catch (AddressErrorException e) {
                         errors.add(new ErrorMessage(token.getSourceMIPSprogram(), token
@@ -1195,7 +1345,7 @@ public class Assembler {
                 }
                 if (direct == Directives.ASCIIZ) {
                     try {
-                        Globals.memory.set(this.dataAddress.get(), 0, DataTypes.CHAR_SIZE);
+                        storeInDataSegment(this.dataAddress.get(), 0, DataTypes.CHAR_SIZE);
                     } catch (AddressErrorException e) {
                         errors.add(new ErrorMessage(token.getSourceMIPSprogram(), token
                                 .getSourceLine(), token.getStartPos(), "\""
@@ -1229,7 +1379,7 @@ public class Assembler {
             this.dataAddress.set(this.alignToBoundary(this.dataAddress.get(), lengthInBytes));
         }
         try {
-            Globals.memory.set(this.dataAddress.get(), value, lengthInBytes);
+            storeInDataSegment(this.dataAddress.get(), value, lengthInBytes);
         } catch (AddressErrorException e) {
             errors.add(new ErrorMessage(token.getSourceMIPSprogram(), token.getSourceLine(), token
                     .getStartPos(), "\"" + this.dataAddress.get()
@@ -1241,6 +1391,18 @@ public class Assembler {
         return address;
     }
 
+    // //////////////////////////////////////////////////////////////////////////////////
+    // Stores a value in memory at the given data segment address or, when running a first
+    // pass ahead of time, records it to be stored once relocated.
+    private void storeInDataSegment(int address, int value, int lengthInBytes) throws AddressErrorException {
+        if (firstPassAhead != null) {
+            firstPassAhead.dataWrites.add(new DataWrite(dataAddress.currentAddressSpace, address,
+                    value, lengthInBytes));
+        } else {
+            Globals.memory.set(address, value, lengthInBytes);
+        }
+    }
+
     // //////////////////////////////////////////////////////////////////////////////////
     // Writes the given double value into current data segment address. Works
     // only for DOUBLE floating
@@ -1252,7 +1414,12 @@ public class Assembler {
             this.dataAddress.set(this.alignToBoundary(this.dataAddress.get(), lengthInBytes));
         }
         try {
-            Globals.memory.setDouble(this.dataAddress.get(), value);
+            if (firstPassAhead != null) {
+                firstPassAhead.dataWrites.add(new DataWrite(dataAddress.currentAddressSpace,
+                        this.dataAddress.get(), value));
+            } else {
+                Globals.memory.setDouble(this.dataAddress.get(), value);
+            }
         } catch (AddressErrorException e) {
             errors.add(new ErrorMessage(token.getSourceMIPSprogram(), token.getSourceLine(), token
                     .getStartPos(), "\"" + this.dataAddress.get()
@@ -1268,6 +1435,9 @@ public class Assembler {
     // For instance if args are 6 and 4, returns 8 (next multiple of 4 higher than 6).
     // NOTE: it will fix any symbol table entries for this address too. See else part.
     private int alignToBoundary(int address, int byteBoundary) {
+        if (firstPassAhead != null) {
+            firstPassAhead.alignedTo(dataAddress.currentAddressSpace, byteBoundary);
+        }
         int remainder = address % byteBoundary;
         if (remainder == 0) {
             return address;
@@ -1344,6 +1514,80 @@ public class Assembler {
         }
     }
 
+    // ///////////////////////////////////////////////////////////////////////////////////
+    // Private class to hold the first pass of one file run ahead of time (see
+    // runFirstPassAhead): the addresses it started from, and what relocateFirstPass needs
+    // to shift it.  Address spaces are the USER and KERNEL indexes of UserKernelAddressSpace.
+    private class FirstPassAhead {
+        final MIPSprogram program;
+        final Assembler assembler;
+        final int[] textBase;
+        final int[] dataBase;
+        boolean relocatable = true;
+        // Largest boundary data was aligned to, per address space
+        final int[] dataAlignment = {1, 1};
+        // Values to store in the data segment, in the order stored
+        final ArrayList<DataWrite> dataWrites = new ArrayList<>();
+        // Address space of each label in the local symbol table
+        final HashMap<String, Integer> labelSpaces = new HashMap<>();
+        // Address space of each statement in the parsed list
+        final ArrayList<Integer> statementSpaces = new ArrayList<>();
+
+        private FirstPassAhead(MIPSprogram program, Assembler assembler) {
+            this.program = program;
+            this.assembler = assembler;
+            this.textBase = assembler.textAddress.address.clone();
+            this.dataBase = assembler.dataAddress.address.clone();
+        }
+
+        private void alignedTo(int space, int byteBoundary) {
+            dataAlignment[space] = Math.max(dataAlignment[space], byteBoundary);
+        }
+
+        // The value last stored is the address of the given label, which is defined locally
+        // if symbol is not null.
+        private void referToLabel(Token label, Symbol symbol) {
+            DataWrite write = dataWrites.get(dataWrites.size() - 1);
+            write.label = label;
+            write.labelSpace = (symbol == null) ? -1 : labelSpaces.get(symbol.getName());
+            write.labelIsData = symbol != null && symbol.getType();
+        }
+    }
+
+    // ///////////////////////////////////////////////////////////////////////////////////
+    // Private class for a value stored in the data segment by a first pass run ahead of
+    // time.  If it is the address of a label, label is that label, and labelSpace is the
+    // address space of its local definition or -1 if not defined locally when stored.
+    private static class DataWrite {
+        final int space;
+        final int address;
+        final int value;
+        final int length;
+        final boolean isDouble;
+        final double doubleValue;
+        Token label = null;
+        int labelSpace = -1;
+        boolean labelIsData = false;
+
+        private DataWrite(int space, int address, int value, int length) {
+            this.space = space;
+            this.address = address;
+            this.value = value;
+            this.length = length;
+            this.isDouble = false;
+            this.doubleValue = 0;
+        }
+
+        private DataWrite(int space, int address, double doubleValue) {
+            this.space = space;
+            this.address = address;
+            this.value = 0;
+            this.length = DataTypes.DOUBLE_SIZE;
+            this.isDouble = true;
+            this.doubleValue = doubleValue;
+        }
+    }
+
     // //////////////////////////////////////////////////////////////////////////
     // Handy class to handle forward label references appearing as data
     // segment operands. This is needed because the data segment is comletely
@@ -3,6 +3,7 @@ package mars.assembler;
 import mars.*;
 
 import java.util.*;
+import java.util.function.ToIntFunction;
 
 /*
 Copyright (c) 2003-2006,  Pete Sanderson and Kenneth Vollmar
@@ -33,7 +34,12 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  */
 
 /**
- * Creats a table of Symbol objects.
+ * Creats a table of Symbol objects.  Symbols are kept in the order they were added,
+ * and indexed by name and by address, so looking a symbol up by either takes constant
+ * time (by name) or logarithmic time (by address) however many symbols there are.
+ * The address index compares addresses as unsigned, so kernel addresses come last.
+ * Addresses must be changed through fixSymbolTableAddress, not Symbol.setAddress, to keep
+ * the address index up to date.
  *
  * @author Jason Bumgarner, Jason Shrewsbury
  * @version June 2003
@@ -41,7 +47,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 
 public class SymbolTable {
     private final String filename;
-    private ArrayList table;
+    // By name, in the order they were added.
+    private LinkedHashMap<String, Symbol> symbolsByName;
+    // Symbols at each address, in the order they were added.
+    private TreeMap<Integer, ArrayList<Symbol>> symbolsByAddress;
     // Note -1 is legal 32 bit address (0xFFFFFFFF) but it is the high address in
     // kernel address space so highly unlikely that any symbol will have this as
     // its associated address!
@@ -55,7 +64,7 @@ public class SymbolTable {
      */
     public SymbolTable(String filename) {
         this.filename = filename;
-        this.table = new ArrayList();
+        clear();
     }
 
     /**
@@ -73,7 +82,8 @@ public class SymbolTable {
             errors.add(new ErrorMessage(token.getSourceMIPSprogram(), token.getSourceLine(), token.getStartPos(), "label \"" + label + "\" already defined"));
         } else {
             Symbol s = new Symbol(label, address, b);
-            table.add(s);
+            symbolsByName.put(label, s);
+            symbolsByAddress.computeIfAbsent(address, k -> new ArrayList<>(1)).add(s);
             if (Globals.debug)
                 System.out.println("The symbol " + label + " with address " + address + " has been added to the " + this.filename + " symbol table.");
         }
@@ -90,13 +100,15 @@ public class SymbolTable {
 
     public void removeSymbol(Token token) {
         String label = token.getValue();
-        for (int i = 0; i < table.size(); i++) {
-            if (((Symbol) (table.get(i))).getName().equals(label)) {
-                table.remove(i);
-                if (Globals.debug)
-                    System.out.println("The symbol " + label + " has been removed from the " + this.filename + " symbol table.");
-                break;
+        Symbol symbol = symbolsByName.remove(label);
+        if (symbol != null) {
+            ArrayList<Symbol> atAddress = symbolsByAddress.get(symbol.getAddress());
+            atAddress.remove(symbol);
+            if (atAddress.isEmpty()) {
+                symbolsByAddress.remove(symbol.getAddress());
             }
+            if (Globals.debug)
+                System.out.println("The symbol " + label + " has been removed from the " + this.filename + " symbol table.");
         }
     }
 
@@ -108,12 +120,8 @@ public class SymbolTable {
      * @return The memory address of the label given, or NOT_FOUND if not found in symbol table.
      **/
     public int getAddress(String s) {
-        for (Object aTable : table) {
-            if (((Symbol) aTable).getName().equals(s)) {
-                return ((Symbol) aTable).getAddress();
-            }
-        }
-        return NOT_FOUND;
+        Symbol symbol = symbolsByName.get(s);
+        return (symbol == null) ? NOT_FOUND : symbol.getAddress();
     }
 
     /**
@@ -138,12 +146,7 @@ public class SymbolTable {
      **/
 
     public Symbol getSymbol(String s) {
-        for (Object aTable : table) {
-            if (((Symbol) aTable).getName().equals(s)) {
-                return (Symbol) aTable;
-            }
-        }
-        return null;
+        return symbolsByName.get(s);
     }
 
     /**
@@ -160,12 +163,50 @@ public class SymbolTable {
         } catch (NumberFormatException e) {
             return null;
         }
-        for (Object aTable : table) {
-            if (((Symbol) aTable).getAddress() == address) {
-                return (Symbol) aTable;
-            }
+        return getSymbolAt(address);
+    }
+
+    /**
+     * Produce Symbol object from symbol table that has the given address.  If several
+     * do, the first one added is produced.
+     *
+     * @param address the address
+     * @return Symbol object having the address, null if none in symbol table.
+     **/
+
+    public Symbol getSymbolAt(int address) {
+        ArrayList<Symbol> atAddress = symbolsByAddress.get(address);
+        return (atAddress == null) ? null : atAddress.get(0);
+    }
+
+    /**
+     * Produce the Symbol object from symbol table with the highest address not above the
+     * given address (comparing addresses as unsigned integers), for naming an address as
+     * label plus offset.  If several symbols have that address, the first one added is
+     * produced.
+     *
+     * @param address the address
+     * @return Symbol object at or before the address, null if there is none.
+     **/
+
+    public Symbol getSymbolAtOrBefore(int address) {
+        Map.Entry<Integer, ArrayList<Symbol>> entry = symbolsByAddress.floorEntry(address);
+        return (entry == null) ? null : entry.getValue().get(0);
+    }
+
+    /**
+     * For obtaining all the Symbols in address order (comparing addresses as unsigned
+     * integers), with symbols at the same address in the order they were added.
+     *
+     * @return An ArrayList of Symbol objects.
+     **/
+
+    public ArrayList getSymbolsInAddressOrder() {
+        ArrayList list = new ArrayList(symbolsByName.size());
+        for (ArrayList<Symbol> atAddress : symbolsByAddress.values()) {
+            list.addAll(atAddress);
         }
-        return null;
+        return list;
     }
 
     /**
@@ -189,9 +230,9 @@ public class SymbolTable {
 
     public ArrayList getDataSymbols() {
         ArrayList list = new ArrayList();
-        for (Object aTable : table) {
-            if (((Symbol) aTable).getType()) {
-                list.add(aTable);
+        for (Symbol symbol : symbolsByName.values()) {
+            if (symbol.getType()) {
+                list.add(symbol);
             }
         }
         return list;
@@ -206,9 +247,9 @@ public class SymbolTable {
 
     public ArrayList getTextSymbols() {
         ArrayList list = new ArrayList();
-        for (Object aTable : table) {
-            if (!((Symbol) aTable).getType()) {
-                list.add(aTable);
+        for (Symbol symbol : symbolsByName.values()) {
+            if (!symbol.getType()) {
+                list.add(symbol);
             }
         }
         return list;
@@ -221,7 +262,7 @@ public class SymbolTable {
      **/
 
     public ArrayList getAllSymbols() {
-        return new ArrayList(table);
+        return new ArrayList(symbolsByName.values());
     }
 
     /**
@@ -231,15 +272,16 @@ public class SymbolTable {
      **/
 
     public int getSize() {
-        return table.size();
+        return symbolsByName.size();
     }
 
     /**
-     * Creates a fresh arrayList for a new table.
+     * Creates fresh indexes for a new table.
      **/
 
     public void clear() {
-        table = new ArrayList();
+        symbolsByName = new LinkedHashMap<>();
+        symbolsByAddress = new TreeMap<>(Integer::compareUnsigned);
     }
 
     /**
@@ -253,10 +295,27 @@ public class SymbolTable {
      */
 
     public void fixSymbolTableAddress(int originalAddress, int replacementAddress) {
-        Symbol label = getSymbolGivenAddress(Integer.toString(originalAddress));
-        while (label != null) {
-            label.setAddress(replacementAddress);
-            label = getSymbolGivenAddress(Integer.toString(originalAddress));
+        ArrayList<Symbol> labels = symbolsByAddress.remove(originalAddress);
+        if (labels != null) {
+            for (Symbol label : labels) {
+                label.setAddress(replacementAddress);
+            }
+            symbolsByAddress.computeIfAbsent(replacementAddress, k -> new ArrayList<>(labels.size())).addAll(labels);
+        }
+    }
+
+    /**
+     * Move every symbol to a new address, as for a file whose first pass was run at
+     * other addresses.  Symbols at the same address stay in the order they were added.
+     *
+     * @param relocation gives the new address of each symbol
+     */
+
+    public void relocate(ToIntFunction<Symbol> relocation) {
+        symbolsByAddress.clear();
+        for (Symbol symbol : symbolsByName.values()) {
+            symbol.setAddress(relocation.applyAsInt(symbol));
+            symbolsByAddress.computeIfAbsent(symbol.getAddress(), k -> new ArrayList<>(1)).add(symbol);
         }
     }
 
@@ -4,6 +4,8 @@ import mars.*;
 import mars.util.*;
 import mars.mips.hardware.*;
 
+import java.util.HashMap;
+
 	/*
 Copyright (c) 2003-2008,  Pete Sanderson and Kenneth Vollmar
 
@@ -42,6 +44,9 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 
 public final class TokenTypes {
 
+    // All token types by name, for lookup by forName().  Must precede the constants below.
+    private static final HashMap<String, TokenTypes> typesByName = new HashMap<>();
+
     public static final String TOKEN_DELIMITERS = "\t ,()";
     public static final TokenTypes COMMENT = new TokenTypes("COMMENT");
     public static final TokenTypes DIRECTIVE = new TokenTypes("DIRECTIVE");
@@ -80,6 +85,18 @@ public final class TokenTypes {
 
     private TokenTypes(String name) {
         descriptor = name;
+        typesByName.put(name, this);
+    }
+
+    /**
+     * Get the token type with the given name, as produced by toString().  Used to restore
+     * token lists that were saved in text or binary form.
+     *
+     * @param name descriptive name of token type (e.g. REGISTER_NAME)
+     * @return the corresponding TokenTypes object, or <tt>null</tt> if there is none.
+     **/
+    public static TokenTypes forName(String name) {
+        return typesByName.get(name);
     }
 
     /**
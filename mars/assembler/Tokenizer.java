@@ -54,6 +54,17 @@ public class Tokenizer {
     private ErrorList errors;
     private MIPSprogram sourceMIPSprogram;
     private HashMap<String, String> equivalents; // DPS 11-July-2012
+    // Token lists of recently tokenized programs, by directory and hash of their lines, so
+    // that reassembling a program tokenizes it again only if it or a file it includes has
+    // been edited.  Keying by content lets programs with the same lines under different
+    // names (such as temporary files written by the simulation server) share an entry.
+    private static final int CACHED_PROGRAMS = 64;
+    private static final Map<String, CachedProgram> cache = Collections.synchronizedMap(
+            new LinkedHashMap<String, CachedProgram>(16, 0.75f, true) {
+                protected boolean removeEldestEntry(Map.Entry<String, CachedProgram> eldest) {
+                    return size() > CACHED_PROGRAMS;
+                }
+            });
     // The 8 escaped characters are: single quote, double quote, backslash, newline (linefeed),
     // tab, backspace, return, form feed.  The characters and their corresponding decimal codes:
     private static final String escapedCharacters = "'\"\\ntbrf0";
@@ -88,10 +99,18 @@ public class Tokenizer {
 
     public ArrayList tokenize(MIPSprogram p) throws ProcessingException {
         sourceMIPSprogram = p;
+        String key = (p.getFilename() == null) ? null : cacheKey(p);
+        CachedProgram cached = (key == null) ? null : cache.get(key);
+        if (cached != null && cached.isCurrent(p)) {
+            equivalents = new HashMap<>(cached.equivalents);
+            p.setSourceLineList(copySourceLines(cached.sourceLines, null, p));
+            return copyTokenLists(cached.tokenLists, null, p);
+        }
         equivalents = new HashMap<>(); // DPS 11-July-2012
         ArrayList tokenList = new ArrayList();
         //ArrayList source = p.getSourceList();
-        ArrayList<SourceLine> source = processIncludes(p, new HashMap<>()); // DPS 9-Jan-2013
+        Map<String, long[]> includedFiles = new HashMap<>();
+        ArrayList<SourceLine> source = processIncludes(p, includedFiles); // DPS 9-Jan-2013
         p.setSourceLineList(source);
         TokenList currentLineTokens;
         String sourceLine;
@@ -111,9 +130,95 @@ public class Tokenizer {
         if (errors.errorsOccurred()) {
             throw new ProcessingException(errors);
         }
+        if (key != null) {
+            // The assembler modifies token lists, so the cache keeps its own copies.  It refers
+            // to the program by null, so as not to keep the program object alive.
+            cache.put(key, new CachedProgram(new ArrayList<Object>((List<?>) p.getSourceList()), includedFiles,
+                    copySourceLines(source, p, null), copyTokenLists(tokenList, p, null),
+                    new HashMap<>(equivalents)));
+        }
         return tokenList;
     }
 
+    // Cache key for a program: its directory, against which includes are resolved, and
+    // the hash of its lines.
+    private static String cacheKey(MIPSprogram p) {
+        return new File(p.getFilename()).getAbsoluteFile().getParent() + File.pathSeparator
+                + p.getSourceList().hashCode();
+    }
+
+    // Tokenized program as cached by tokenize(), with the lines of the program and the
+    // modification time and length of each file it includes as they were when it was tokenized.
+    private static class CachedProgram {
+        private final ArrayList<Object> source;
+        private final Map<String, long[]> includedFiles;
+        private final ArrayList<SourceLine> sourceLines;
+        private final ArrayList<TokenList> tokenLists;
+        private final HashMap<String, String> equivalents;
+
+        private CachedProgram(ArrayList<Object> source, Map<String, long[]> includedFiles,
+                              ArrayList<SourceLine> sourceLines, ArrayList<TokenList> tokenLists,
+                              HashMap<String, String> equivalents) {
+            this.source = source;
+            this.includedFiles = includedFiles;
+            this.sourceLines = sourceLines;
+            this.tokenLists = tokenLists;
+            this.equivalents = equivalents;
+        }
+
+        // True if the program has the same lines and the files it includes have not been
+        // modified, going by their modification times and lengths.
+        private boolean isCurrent(MIPSprogram p) {
+            if (!source.equals(p.getSourceList())) {
+                return false;
+            }
+            for (Map.Entry<String, long[]> included : includedFiles.entrySet()) {
+                if (!Arrays.equals(included.getValue(), fileStamp(included.getKey()))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    // Modification time and length of a file, both 0 if it does not exist.
+    private static long[] fileStamp(String filename) {
+        File file = new File(filename);
+        return new long[]{file.lastModified(), file.length()};
+    }
+
+    // Copies of source lines, and of token lists and their tokens, with references to one
+    // program replaced by another.
+    private static ArrayList<SourceLine> copySourceLines(ArrayList<SourceLine> lines, MIPSprogram from, MIPSprogram to) {
+        ArrayList<SourceLine> result = new ArrayList<>(lines.size());
+        for (SourceLine line : lines) {
+            result.add(new SourceLine(line.getSource(), replace(line.getMIPSprogram(), from, to), line.getLineNumber()));
+        }
+        return result;
+    }
+
+    private static ArrayList<TokenList> copyTokenLists(List<?> tokenLists, MIPSprogram from, MIPSprogram to) {
+        ArrayList<TokenList> result = new ArrayList<>(tokenLists.size());
+        for (Object o : tokenLists) {
+            TokenList tokens = (TokenList) o;
+            TokenList copy = new TokenList();
+            for (int i = 0; i < tokens.size(); i++) {
+                Token t = tokens.get(i);
+                Token token = new Token(t.getType(), t.getValue(), replace(t.getSourceMIPSprogram(), from, to),
+                        t.getSourceLine(), t.getStartPos());
+                token.setOriginal(replace(t.getOriginalProgram(), from, to), t.getOriginalSourceLine());
+                copy.add(token);
+            }
+            copy.setProcessedLine(tokens.getProcessedLine());
+            result.add(copy);
+        }
+        return result;
+    }
+
+    private static MIPSprogram replace(MIPSprogram program, MIPSprogram from, MIPSprogram to) {
+        return (program == from) ? to : program;
+    }
+
 
     // pre-pre-processing pass through source code to process any ".include" directives.
     // When one is encountered, the contents of the included file are inserted at that
@@ -122,7 +227,7 @@ public class Tokenizer {
     // files that themselves have .include.  Plus it will detect and report recursive
     // includes both direct and indirect.
     // DPS 11-Jan-2013
-    private ArrayList<SourceLine> processIncludes(MIPSprogram program, Map<String, String> inclFiles) throws ProcessingException {
+    private ArrayList<SourceLine> processIncludes(MIPSprogram program, Map<String, long[]> inclFiles) throws ProcessingException {
         ArrayList source = program.getSourceList();
         ArrayList<SourceLine> result = new ArrayList<>(source.size());
         for (int i = 0; i < source.size(); i++) {
@@ -133,6 +238,12 @@ public class Tokenizer {
                 if (tl.get(ii).getValue().equalsIgnoreCase(Directives.INCLUDE.getName())
                         && (tl.size() > ii + 1)
                         && tl.get(ii + 1).getType() == TokenTypes.QUOTED_STRING) {
+                    if (!Globals.fileAccessAllowed) {
+                        Token t = tl.get(ii + 1);
+                        errors.add(new ErrorMessage(program, t.getSourceLine(), t.getStartPos(),
+                                "Included files are not allowed"));
+                        throw new ProcessingException(errors);
+                    }
                     String filename = tl.get(ii + 1).getValue();
                     filename = filename.substring(1, filename.length() - 1); // get rid of quotes
                     // Handle either absolute or relative pathname for .include file
@@ -146,7 +257,8 @@ public class Tokenizer {
                                 "Recursive include of file " + filename));
                         throw new ProcessingException(errors);
                     }
-                    inclFiles.put(filename, filename);
+                    // Stamped before reading, so an edit made while reading is seen next time.
+                    inclFiles.put(filename, fileStamp(filename));
                     MIPSprogram incl = new MIPSprogram();
                     try {
                         incl.readSource(filename);
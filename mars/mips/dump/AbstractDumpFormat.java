@@ -1,8 +1,10 @@
 package mars.mips.dump;
 
+import mars.Globals;
 import mars.mips.hardware.*;
 
 import java.io.*;
+import java.util.Arrays;
 /*
 Copyright (c) 2003-2008,  Pete Sanderson and Kenneth Vollmar
 
@@ -122,4 +124,32 @@ public abstract class AbstractDumpFormat implements DumpFormat {
     public abstract void dumpMemoryRange(File file, int firstAddress, int lastAddress)
             throws AddressErrorException, IOException;
 
+    /**
+     * Read the words to be dumped from a memory range, as Memory.getRawWordOrNull() would
+     * read each of them, up to the last address or the first word with no value.  They
+     * are read from memory a block at a time rather than a word at a time.
+     *
+     * @param firstAddress first (lowest) memory address to dump, on a word boundary.
+     * @param lastAddress  last (highest) memory address to dump, on a word boundary.
+     * @return the words, starting with the one at firstAddress.
+     * @throws AddressErrorException if firstAddress is invalid or not on a word boundary.
+     */
+    protected static int[] getWords(int firstAddress, int lastAddress) throws AddressErrorException {
+        int total = Math.max(0, (lastAddress - firstAddress) / Memory.WORD_LENGTH_BYTES + 1);
+        int[] words = new int[Math.min(total, 1024)];
+        int count = 0;
+        while (count < total) {
+            if (count == words.length) {
+                words = Arrays.copyOf(words, Math.min(count * 2, total));
+            }
+            int wanted = words.length - count;
+            int read = Globals.memory.getRawWordsOrNull(firstAddress + count * Memory.WORD_LENGTH_BYTES, words, count, wanted);
+            count += read;
+            if (read < wanted) {
+                break;
+            }
+        }
+        return (count == words.length) ? words : Arrays.copyOf(words, count);
+    }
+
 }
\ No newline at end of file
@@ -1,7 +1,6 @@
 package mars.mips.dump;
 
 import mars.util.Binary;
-import mars.Globals;
 import mars.mips.hardware.*;
 
 import java.io.*;
@@ -76,12 +75,9 @@ public class AsciiTextDumpFormat extends AbstractDumpFormat {
      */
     public void dumpMemoryRange(File file, int firstAddress, int lastAddress)
             throws AddressErrorException, IOException {
-        try (PrintStream out = new PrintStream(new FileOutputStream(file))) {
+        try (PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(file)))) {
             String string = null;
-            for (int address = firstAddress; address <= lastAddress; address += Memory.WORD_LENGTH_BYTES) {
-                Integer temp = Globals.memory.getRawWordOrNull(address);
-                if (temp == null)
-                    break;
+            for (int temp : getWords(firstAddress, lastAddress)) {
                 out.println(Binary.intToAscii(temp));
             }
         }
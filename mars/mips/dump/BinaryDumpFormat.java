@@ -1,6 +1,5 @@
 package mars.mips.dump;
 
-import mars.Globals;
 import mars.mips.hardware.*;
 
 import java.io.*;
@@ -67,12 +66,8 @@ public class BinaryDumpFormat extends AbstractDumpFormat {
      */
     public void dumpMemoryRange(File file, int firstAddress, int lastAddress)
             throws AddressErrorException, IOException {
-        try (PrintStream out = new PrintStream(new FileOutputStream(file))) {
-            for (int address = firstAddress; address <= lastAddress; address += Memory.WORD_LENGTH_BYTES) {
-                Integer temp = Globals.memory.getRawWordOrNull(address);
-                if (temp == null)
-                    break;
-                int word = temp;
+        try (PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            for (int word : getWords(firstAddress, lastAddress)) {
                 for (int i = 0; i < 4; i++)
                     out.write((word >>> (i << 3)) & 0xFF);
             }
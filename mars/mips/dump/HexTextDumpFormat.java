@@ -1,6 +1,5 @@
 package mars.mips.dump;
 
-import mars.Globals;
 import mars.mips.hardware.*;
 
 import java.io.*;
@@ -68,12 +67,9 @@ public class HexTextDumpFormat extends AbstractDumpFormat {
      */
     public void dumpMemoryRange(File file, int firstAddress, int lastAddress)
             throws AddressErrorException, IOException {
-        try (PrintStream out = new PrintStream(new FileOutputStream(file))) {
+        try (PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(file)))) {
             StringBuilder string;
-            for (int address = firstAddress; address <= lastAddress; address += Memory.WORD_LENGTH_BYTES) {
-                Integer temp = Globals.memory.getRawWordOrNull(address);
-                if (temp == null)
-                    break;
+            for (int temp : getWords(firstAddress, lastAddress)) {
                 string = new StringBuilder(Integer.toHexString(temp));
                 while (string.length() < 8) {
                     string.insert(0, '0');
@@ -1,6 +1,5 @@
 package mars.mips.dump;
 
-import mars.Globals;
 import mars.mips.hardware.*;
 
 import java.io.*;
@@ -35,12 +34,12 @@ public class IntelHexDumpFormat extends AbstractDumpFormat {
      */
     public void dumpMemoryRange(File file, int firstAddress, int lastAddress)
             throws AddressErrorException, IOException {
-        try (PrintStream out = new PrintStream(new FileOutputStream(file))) {
+        try (PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(file)))) {
             StringBuilder string;
-            for (int address = firstAddress; address <= lastAddress; address += Memory.WORD_LENGTH_BYTES) {
-                Integer temp = Globals.memory.getRawWordOrNull(address);
-                if (temp == null)
-                    break;
+            int[] words = getWords(firstAddress, lastAddress);
+            for (int i = 0; i < words.length; i++) {
+                int address = firstAddress + i * Memory.WORD_LENGTH_BYTES;
+                int temp = words[i];
                 string = new StringBuilder(Integer.toHexString(temp));
                 while (string.length() < 8) {
                     string.insert(0, '0');
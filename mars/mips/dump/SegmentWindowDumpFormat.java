@@ -82,7 +82,7 @@ public class SegmentWindowDumpFormat extends AbstractDumpFormat {
     public void dumpMemoryRange(File file, int firstAddress, int lastAddress)
             throws AddressErrorException, IOException {
 
-        PrintStream out = new PrintStream(new FileOutputStream(file));
+        PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(file)));
 
         // If address in data segment, print in same format as Data Segment Window
 
@@ -96,17 +96,17 @@ public class SegmentWindowDumpFormat extends AbstractDumpFormat {
                 int offset = 0;
                 StringBuilder string = new StringBuilder();
                 try {
-                    for (int address = firstAddress; address <= lastAddress; address += Memory.WORD_LENGTH_BYTES) {
+                    int[] words = getWords(firstAddress, lastAddress);
+                    for (int i = 0; i < words.length; i++) {
+                        int address = firstAddress + i * Memory.WORD_LENGTH_BYTES;
                         if (offset % 8 == 0) {
                             string = new StringBuilder(((hexAddresses) ? Binary.intToHexString(address) : Binary.unsignedIntToIntString(address)) + "    ");
                         }
                         offset++;
-                        Integer temp = Globals.memory.getRawWordOrNull(address);
-                        if (temp == null)
-                            break;
+                        int temp = words[i];
                         string.append((hexValues)
                                 ? Binary.intToHexString(temp)
-                                : ("           " + temp).substring(temp.toString().length())).append(" ");
+                                : ("           " + temp).substring(Integer.toString(temp).length())).append(" ");
                         if (offset % 8 == 0) {
                             out.println(string);
                             string = new StringBuilder();
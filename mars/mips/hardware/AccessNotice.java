@@ -50,6 +50,7 @@ public abstract class AccessNotice {
 
     private int accessType;
     private Thread thread;
+    private static volatile Thread lastMIPSThread = null;
 
     AccessNotice(int type) {
         if (type != READ && type != WRITE) {
@@ -95,8 +96,23 @@ public abstract class AccessNotice {
      */
     // Thread to execute the MIPS program is instantiated in SwingWorker.java.
     // There it is given the name "MIPS" to replace the default "Thread-x".
+    // Observers call this for nearly every notice, so the most recently recognized
+    // MIPS thread is remembered to avoid comparing thread names each time.
     public boolean accessIsFromMIPS() {
-        return thread.getName().startsWith("MIPS");
+        return isMIPSThread(thread);
+    }
+
+    // Shared with Memory, which applies the same test before recording an access
+    // into a MemoryAccessStream.
+    static boolean isMIPSThread(Thread thread) {
+        if (thread == lastMIPSThread) {
+            return true;
+        }
+        if (thread.getName().startsWith("MIPS")) {
+            lastMIPSThread = thread;
+            return true;
+        }
+        return false;
     }
 
 }
\ No newline at end of file
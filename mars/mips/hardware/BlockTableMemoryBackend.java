@@ -0,0 +1,105 @@
+package mars.mips.hardware;
+
+import java.util.Arrays;
+
+/**
+ * The standard MemoryBackend: a table of references to 4K byte (1024 word) blocks, each
+ * block allocated the first time a word within it is written.  Most programs therefore
+ * use only a few blocks even though each segment can hold 4 MB.  See the comments
+ * on storage structure in Memory.
+ *
+ * @version October 2026
+ */
+
+public class BlockTableMemoryBackend extends MemoryBackend {
+    private static final int BLOCK_SHIFT = 10;  // block length 1024 words == 4K bytes
+    private static final int BLOCK_LENGTH_WORDS = 1 << BLOCK_SHIFT;
+    private static final int OFFSET_MASK = BLOCK_LENGTH_WORDS - 1;
+
+    private final int[][] blockTable;
+
+    /**
+     * @param baseAddress address of the word at index 0
+     * @param descending  true if word indexes increase toward lower addresses (stack)
+     * @param blocks      number of entries in block table; capacity is 4K bytes per block
+     */
+    public BlockTableMemoryBackend(int baseAddress, boolean descending, int blocks) {
+        super(baseAddress, descending);
+        blockTable = new int[blocks][]; // array of null int[] references
+    }
+
+    public int fetchWord(int index) {
+        int[] block = blockTable[index >> BLOCK_SHIFT];
+        // first reference to an address in an unallocated block.  Assume initialized to 0.
+        return (block == null) ? 0 : block[index & OFFSET_MASK];
+    }
+
+    public Integer fetchWordOrNull(int index) {
+        int[] block = blockTable[index >> BLOCK_SHIFT];
+        return (block == null) ? null : block[index & OFFSET_MASK];
+    }
+
+    public int storeWord(int index, int value) {
+        int[] block = blockTable[index >> BLOCK_SHIFT];
+        if (block == null) {
+            // First time writing to this block, so allocate the space.
+            block = allocateBlock(index >> BLOCK_SHIFT);
+        }
+        int offset = index & OFFSET_MASK;
+        int oldValue = block[offset];
+        block[offset] = value;
+        return oldValue;
+    }
+
+    public void fetchWords(int index, int[] words, int offset, int count) {
+        while (count > 0) {
+            int[] block = blockTable[index >> BLOCK_SHIFT];
+            int length = Math.min(count, BLOCK_LENGTH_WORDS - (index & OFFSET_MASK));
+            if (block == null) {
+                Arrays.fill(words, offset, offset + length, 0);
+            } else {
+                System.arraycopy(block, index & OFFSET_MASK, words, offset, length);
+            }
+            index += length;
+            offset += length;
+            count -= length;
+        }
+    }
+
+    public int fetchAllocatedWords(int index, int[] words, int offset, int count) {
+        int fetched = 0;
+        while (fetched < count) {
+            int[] block = blockTable[(index + fetched) >> BLOCK_SHIFT];
+            if (block == null) {
+                break;
+            }
+            int length = Math.min(count - fetched, BLOCK_LENGTH_WORDS - ((index + fetched) & OFFSET_MASK));
+            System.arraycopy(block, (index + fetched) & OFFSET_MASK, words, offset + fetched, length);
+            fetched += length;
+        }
+        return fetched;
+    }
+
+    public void storeWords(int index, int[] words, int offset, int count) {
+        while (count > 0) {
+            int[] block = blockTable[index >> BLOCK_SHIFT];
+            if (block == null) {
+                block = allocateBlock(index >> BLOCK_SHIFT);
+            }
+            int length = Math.min(count, BLOCK_LENGTH_WORDS - (index & OFFSET_MASK));
+            System.arraycopy(words, offset, block, index & OFFSET_MASK, length);
+            index += length;
+            offset += length;
+            count -= length;
+        }
+    }
+
+    // Only allocation is synchronized, so that a GUI edit and the running program
+    // writing to a new block at the same moment cannot each allocate their own.
+    private synchronized int[] allocateBlock(int blockNumber) {
+        if (blockTable[blockNumber] == null) {
+            blockTable[blockNumber] = new int[BLOCK_LENGTH_WORDS];
+        }
+        return blockTable[blockNumber];
+    }
+}
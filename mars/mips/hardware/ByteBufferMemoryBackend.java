@@ -0,0 +1,216 @@
+package mars.mips.hardware;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * MemoryBackend that keeps segment contents outside the Java heap, either in direct
+ * ByteBuffers or in a file mapped into memory.  This allows segments much larger than
+ * the 4 MB of the standard block table without adding to garbage collection work, and
+ * with a mapped file the segment contents can be inspected or copied as a plain file.
+ * <p>
+ * The segment is divided into 1 MB chunks, each allocated (or mapped) the first time a
+ * word within it is written, so a large segment costs nothing until it is used.  Words
+ * are stored in the byte order given to the constructor; with little-endian order and an
+ * ascending segment, file offset <i>n</i> holds the byte at MIPS address base+<i>n</i>.
+ * For a descending segment (the stack), word <i>i</i> is at file offset 4<i>i</i>.
+ *
+ * @version October 2026
+ */
+
+public class ByteBufferMemoryBackend extends MemoryBackend {
+    private static final int CHUNK_SHIFT = 18; // in words: 256K words == 1 MB
+    private static final int CHUNK_LENGTH_WORDS = 1 << CHUNK_SHIFT;
+    private static final int OFFSET_MASK = CHUNK_LENGTH_WORDS - 1;
+
+    private final IntBuffer[] chunks;
+    private final ByteOrder order;
+    private final File file;
+    private RandomAccessFile mappedFile;
+    private boolean temporary = false;
+
+    /**
+     * Create a backend whose chunks are direct (off-heap) ByteBuffers.
+     *
+     * @param baseAddress address of the word at index 0
+     * @param descending  true if word indexes increase toward lower addresses (stack)
+     * @param lengthBytes capacity of the segment in bytes
+     * @param order       byte order in which words are stored
+     */
+    public ByteBufferMemoryBackend(int baseAddress, boolean descending, int lengthBytes, ByteOrder order) {
+        super(baseAddress, descending);
+        this.chunks = new IntBuffer[getChunkCount(lengthBytes)];
+        this.order = order;
+        this.file = null;
+    }
+
+    /**
+     * Create a backend whose contents are mapped from the given file.  The file is
+     * created if necessary and grows as chunks are first written.  Existing contents of
+     * the file are used as the initial segment contents.
+     *
+     * @param baseAddress address of the word at index 0
+     * @param descending  true if word indexes increase toward lower addresses (stack)
+     * @param lengthBytes capacity of the segment in bytes
+     * @param order       byte order in which words are stored
+     * @param file        file holding the segment contents
+     * @throws IOException if the file cannot be opened for reading and writing
+     */
+    public ByteBufferMemoryBackend(int baseAddress, boolean descending, int lengthBytes, ByteOrder order,
+                                   File file) throws IOException {
+        super(baseAddress, descending);
+        this.chunks = new IntBuffer[getChunkCount(lengthBytes)];
+        this.order = order;
+        this.file = file;
+        this.mappedFile = new RandomAccessFile(file, "rw");
+        // Map now whatever part of the segment the file already holds.
+        long existingChunks = (mappedFile.length() + (CHUNK_LENGTH_WORDS << 2) - 1) >>> (CHUNK_SHIFT + 2);
+        for (int i = 0; i < Math.min(existingChunks, chunks.length); i++) {
+            allocateChunk(i);
+        }
+    }
+
+    /**
+     * Create a backend whose contents are mapped from a new temporary file.  The file
+     * is deleted when the backend is released, or else when the JVM exits.
+     *
+     * @param baseAddress address of the word at index 0
+     * @param descending  true if word indexes increase toward lower addresses (stack)
+     * @param lengthBytes capacity of the segment in bytes
+     * @param order       byte order in which words are stored
+     * @param prefix      prefix for the temporary file name
+     * @return the new backend
+     * @throws IOException if the temporary file cannot be created
+     */
+    public static ByteBufferMemoryBackend createTemporary(int baseAddress, boolean descending, int lengthBytes,
+                                                          ByteOrder order, String prefix) throws IOException {
+        File file = File.createTempFile(prefix, ".mem");
+        file.deleteOnExit();
+        ByteBufferMemoryBackend backend = new ByteBufferMemoryBackend(baseAddress, descending, lengthBytes, order, file);
+        backend.temporary = true;
+        return backend;
+    }
+
+    /**
+     * @return the mapped file, or null if this backend uses direct buffers
+     */
+    public File getFile() {
+        return file;
+    }
+
+    public int fetchWord(int index) {
+        IntBuffer chunk = chunks[index >>> CHUNK_SHIFT];
+        // never written, so still 0.
+        return (chunk == null) ? 0 : chunk.get(index & OFFSET_MASK);
+    }
+
+    public Integer fetchWordOrNull(int index) {
+        IntBuffer chunk = chunks[index >>> CHUNK_SHIFT];
+        return (chunk == null) ? null : chunk.get(index & OFFSET_MASK);
+    }
+
+    public int storeWord(int index, int value) {
+        IntBuffer chunk = chunks[index >>> CHUNK_SHIFT];
+        if (chunk == null) {
+            chunk = allocateChunk(index >>> CHUNK_SHIFT);
+        }
+        int offset = index & OFFSET_MASK;
+        int oldValue = chunk.get(offset);
+        chunk.put(offset, value);
+        return oldValue;
+    }
+
+    public void fetchWords(int index, int[] words, int offset, int count) {
+        while (count > 0) {
+            IntBuffer chunk = chunks[index >>> CHUNK_SHIFT];
+            int length = Math.min(count, CHUNK_LENGTH_WORDS - (index & OFFSET_MASK));
+            if (chunk == null) {
+                Arrays.fill(words, offset, offset + length, 0);
+            } else {
+                IntBuffer view = chunk.duplicate(); // own position, so safe alongside other accesses
+                view.position(index & OFFSET_MASK);
+                view.get(words, offset, length);
+            }
+            index += length;
+            offset += length;
+            count -= length;
+        }
+    }
+
+    public int fetchAllocatedWords(int index, int[] words, int offset, int count) {
+        int fetched = 0;
+        while (fetched < count) {
+            IntBuffer chunk = chunks[(index + fetched) >>> CHUNK_SHIFT];
+            if (chunk == null) {
+                break;
+            }
+            int length = Math.min(count - fetched, CHUNK_LENGTH_WORDS - ((index + fetched) & OFFSET_MASK));
+            IntBuffer view = chunk.duplicate();
+            view.position((index + fetched) & OFFSET_MASK);
+            view.get(words, offset + fetched, length);
+            fetched += length;
+        }
+        return fetched;
+    }
+
+    public void storeWords(int index, int[] words, int offset, int count) {
+        while (count > 0) {
+            IntBuffer chunk = chunks[index >>> CHUNK_SHIFT];
+            if (chunk == null) {
+                chunk = allocateChunk(index >>> CHUNK_SHIFT);
+            }
+            int length = Math.min(count, CHUNK_LENGTH_WORDS - (index & OFFSET_MASK));
+            IntBuffer view = chunk.duplicate();
+            view.position(index & OFFSET_MASK);
+            view.put(words, offset, length);
+            index += length;
+            offset += length;
+            count -= length;
+        }
+    }
+
+    /**
+     * Close the mapped file, if any, and delete it if temporary.
+     */
+    public synchronized void release() {
+        if (mappedFile != null) {
+            try {
+                mappedFile.close();
+            } catch (IOException ignored) {
+            }
+            mappedFile = null;
+            if (temporary) {
+                file.delete();
+            }
+        }
+    }
+
+    private static int getChunkCount(int lengthBytes) {
+        return (int) (((lengthBytes & 0xffffffffL) + (CHUNK_LENGTH_WORDS << 2) - 1) >>> (CHUNK_SHIFT + 2));
+    }
+
+    // Only allocation is synchronized; see BlockTableMemoryBackend.
+    private synchronized IntBuffer allocateChunk(int chunkNumber) {
+        if (chunks[chunkNumber] == null) {
+            ByteBuffer bytes;
+            if (file == null) {
+                bytes = ByteBuffer.allocateDirect(CHUNK_LENGTH_WORDS << 2);
+            } else {
+                try {
+                    bytes = mappedFile.getChannel().map(FileChannel.MapMode.READ_WRITE,
+                            (long) chunkNumber << (CHUNK_SHIFT + 2), CHUNK_LENGTH_WORDS << 2);
+                } catch (IOException e) {
+                    throw new IllegalStateException("cannot map " + file + ": " + e.getMessage());
+                }
+            }
+            chunks[chunkNumber] = bytes.order(order).asIntBuffer();
+        }
+        return chunks[chunkNumber];
+    }
+}
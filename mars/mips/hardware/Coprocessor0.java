@@ -59,6 +59,15 @@ public class Coprocessor0 {
                     new Register("$13 (cause)", 13, 0),
                     new Register("$14 (epc)", 14, 0)
             };
+    // Coprocessor0 implements only selected registers, so register numbers are
+    // mapped to Register objects through this table (null if not implemented).
+    private static final Register[] registersByNumber = new Register[32];
+
+    static {
+        for (Register register : registers) {
+            registersByNumber[register.getNumber()] = register;
+        }
+    }
 
 
     /**
@@ -103,13 +112,11 @@ public class Coprocessor0 {
      **/
     public static void updateRegister(int num, int val) {
         int old = 0;
-        for (Register register : registers) {
-            if (register.getNumber() == num) {
-                old = (Globals.getSettings().getBackSteppingEnabled())
-                        ? Globals.program.getBackStepper().addCoprocessor0Restore(num, register.setValue(val))
-                        : register.setValue(val);
-                break;
-            }
+        Register register = getRegister(num);
+        if (register != null) {
+            old = (Globals.getSettings().getBackSteppingEnabled())
+                    ? Globals.program.getBackStepper().addCoprocessor0Restore(num, register.setValue(val))
+                    : register.setValue(val);
         }
     }
 
@@ -122,12 +129,8 @@ public class Coprocessor0 {
      **/
 
     public static int getValue(int num) {
-        for (Register register : registers) {
-            if (register.getNumber() == num) {
-                return register.getValue();
-            }
-        }
-        return 0;
+        Register register = getRegister(num);
+        return (register == null) ? 0 : register.getValue();
     }
 
     /**
@@ -192,6 +195,16 @@ public class Coprocessor0 {
     }
 
 
+    /**
+     * Get register object corresponding to given number.  If not implemented, return null.
+     *
+     * @param num The register number.
+     * @return The register object, or null if not implemented.
+     **/
+    private static Register getRegister(int num) {
+        return (num >= 0 && num < registersByNumber.length) ? registersByNumber[num] : null;
+    }
+
     /**
      * Method to reinitialize the values of the registers.
      **/
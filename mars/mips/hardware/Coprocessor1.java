@@ -345,13 +345,11 @@ public class Coprocessor1 {
 
     public static void updateRegister(int num, int val) {
         int old = 0;
-        for (Register register : registers) {
-            if (register.getNumber() == num) {
-                old = (Globals.getSettings().getBackSteppingEnabled())
-                        ? Globals.program.getBackStepper().addCoprocessor1Restore(num, register.setValue(val))
-                        : register.setValue(val);
-                break;
-            }
+        // Register number is its position in the array, so no need to search for it.
+        if (num >= 0 && num < registers.length) {
+            old = (Globals.getSettings().getBackSteppingEnabled())
+                    ? Globals.program.getBackStepper().addCoprocessor1Restore(num, registers[num].setValue(val))
+                    : registers[num].setValue(val);
         }
     }
 
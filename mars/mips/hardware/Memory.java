@@ -6,6 +6,9 @@ import mars.simulator.*;
 import mars.mips.instructions.*;
 
 import java.util.*;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 	/*
 Copyright (c) 2003-2009,  Pete Sanderson and Kenneth Vollmar
@@ -138,8 +141,23 @@ public class Memory extends Observable {
     // key for insertion into the tree would be based on Comparable using both low 
     // and high end of address range, but retrieval from the tree has to be based
     // on target address being ANYWHERE IN THE RANGE (not an exact key match).
-
-    private Collection observables = getNewMemoryObserversCollection();
+    //
+    // Instead, the collection is indexed by a bitmap with one bit per 4K byte block of
+    // the 32-bit address space (2^20 bits, 128K bytes).  A bit is set if any observable's
+    // range overlaps that block.  An access to an address whose block bit is clear is known
+    // to have no observers, so it costs one bit test instead of a walk through the collection.
+    // The bitmap is rebuilt whenever an observable is added or removed, and replaced as a
+    // whole so the simulator thread never sees a partly built one.
+
+    private static final int OBSERVED_BLOCK_SHIFT = 12; // 4K byte blocks
+    private Collection<MemoryObservable> observables = getNewMemoryObserversCollection();
+    private volatile BitSet observedBlocks = new BitSet();
+    // Cleared while no observer is to be told of any access; see setNotifying().
+    private volatile boolean notifying = true;
+
+    // Told of every store to data segment storage before it is made.  Used by the
+    // simulator's execution history; there is at most one, and initialize() removes it.
+    private StoreListener storeListener = null;
 
     // The data segment is allocated in blocks of 1024 ints (4096 bytes).  Each block is
     // referenced by a "block table" entry, and the table has 1024 entries.  The capacity
@@ -165,10 +183,16 @@ public class Memory extends Observable {
     // the start of the 65'th block -- table entry 64.  That leaves (1024-64) * 4096 = 3,932,160
     // bytes of space available without going indirect.
 
+    //
+    // The block table is implemented by BlockTableMemoryBackend.  Memory decodes each
+    // address to its segment's MemoryBackend once, then works with word indexes.  Aligned
+    // word, halfword and byte accesses (little-endian) go straight to the word holding them;
+    // only unaligned or big-endian multi-byte accesses are assembled a byte at a time.
+
     private static final int BLOCK_LENGTH_WORDS = 1024;  // allocated blocksize 1024 ints == 4K bytes
     private static final int BLOCK_TABLE_LENGTH = 1024; // Each entry of table points to a block.
-    private int[][] dataBlockTable;
-    private int[][] kernelDataBlockTable;
+    private MemoryBackend dataStorage;
+    private MemoryBackend kernelDataStorage;
 
     // The stack is modeled similarly to the data segment.  It cannot share the same
     // data structure because the stack base address is very large.  To store it in the
@@ -185,7 +209,7 @@ public class Memory extends Observable {
     // Everything else works the same, so it shares some private helper methods with
     // data segment algorithms.
 
-    private int[][] stackBlockTable;
+    private MemoryBackend stackStorage;
 
     // Memory mapped I/O is simulated with a separate table using the same structure and
     // logic as data segment.  Memory is allocated in 4K byte blocks.  But since MMIO
@@ -198,7 +222,7 @@ public class Memory extends Observable {
     // into a table offset, this is of no concern.
 
     private static final int MMIO_TABLE_LENGTH = 16; // Each entry of table points to a 4K block.
-    private int[][] memoryMapBlockTable;
+    private MemoryBackend memoryMapStorage;
 
     // I use a similar scheme for storing instructions.  MIPS text segment ranges from
     // 0x00400000 all the way to data segment (0x10000000) a range of about 250 MB!  So
@@ -227,6 +251,10 @@ public class Memory extends Observable {
             BLOCK_LENGTH_WORDS * BLOCK_TABLE_LENGTH * WORD_LENGTH_BYTES;
     private static int memoryMapLimitAddress = memoryMapBaseAddress +
             BLOCK_LENGTH_WORDS * MMIO_TABLE_LENGTH * WORD_LENGTH_BYTES;
+    // How data segments are stored, from the memory configuration.  Also see createStorage().
+    private static int segmentStorage = MemoryConfiguration.HEAP_STORAGE;
+    // Why segments could not be stored as the configuration asks, one line each, until reported.
+    private String storageWarning = null;
     // This will be a Singleton class, only one instance is ever created.  Since I know the 
     // Memory object is always needed, I'll go ahead and create it at the time of class loading.
     // (greedy rather than lazy instantiation).  The constructor is private and getInstance()
@@ -250,6 +278,19 @@ public class Memory extends Observable {
         return uniqueMemoryInstance;
     }
 
+    /**
+     * Returns the message explaining why a data segment could not be stored as the memory
+     * configuration asks, if that has happened since the last call, so the caller can
+     * report it as it reports other configuration problems.
+     *
+     * @return the message, or null if there is none
+     */
+    public String takeStorageWarning() {
+        String warning = storageWarning;
+        storageWarning = null;
+        return warning;
+    }
+
     /**
      * Explicitly clear the contents of memory.  Typically done at start of assembly.
      */
@@ -285,19 +326,25 @@ public class Memory extends Observable {
         kernelDataBaseAddress = MemoryConfigurations.getCurrentConfiguration().getKernelDataBaseAddress(); //0x90000000;
         memoryMapBaseAddress = MemoryConfigurations.getCurrentConfiguration().getMemoryMapBaseAddress(); //0xffff0000;
         kernelHighAddress = MemoryConfigurations.getCurrentConfiguration().getKernelHighAddress(); //0xffffffff;
-        dataSegmentLimitAddress = Math.min(MemoryConfigurations.getCurrentConfiguration().getDataSegmentLimitAddress(),
+        // Limits of data segments stored in block tables are capped at the block table capacity.
+        segmentStorage = MemoryConfigurations.getCurrentConfiguration().getStorage();
+        boolean blockTables = segmentStorage == MemoryConfiguration.HEAP_STORAGE;
+        dataSegmentLimitAddress = !blockTables ? MemoryConfigurations.getCurrentConfiguration().getDataSegmentLimitAddress() :
+                Math.min(MemoryConfigurations.getCurrentConfiguration().getDataSegmentLimitAddress(),
                 dataSegmentBaseAddress +
                         BLOCK_LENGTH_WORDS * BLOCK_TABLE_LENGTH * WORD_LENGTH_BYTES);
         textLimitAddress = Math.min(MemoryConfigurations.getCurrentConfiguration().getTextLimitAddress(),
                 textBaseAddress +
                         TEXT_BLOCK_LENGTH_WORDS * TEXT_BLOCK_TABLE_LENGTH * WORD_LENGTH_BYTES);
-        kernelDataSegmentLimitAddress = Math.min(MemoryConfigurations.getCurrentConfiguration().getKernelDataSegmentLimitAddress(),
+        kernelDataSegmentLimitAddress = !blockTables ? MemoryConfigurations.getCurrentConfiguration().getKernelDataSegmentLimitAddress() :
+                Math.min(MemoryConfigurations.getCurrentConfiguration().getKernelDataSegmentLimitAddress(),
                 kernelDataBaseAddress +
                         BLOCK_LENGTH_WORDS * BLOCK_TABLE_LENGTH * WORD_LENGTH_BYTES);
         kernelTextLimitAddress = Math.min(MemoryConfigurations.getCurrentConfiguration().getKernelTextLimitAddress(),
                 kernelTextBaseAddress +
                         TEXT_BLOCK_LENGTH_WORDS * TEXT_BLOCK_TABLE_LENGTH * WORD_LENGTH_BYTES);
-        stackLimitAddress = Math.max(MemoryConfigurations.getCurrentConfiguration().getStackLimitAddress(),
+        stackLimitAddress = !blockTables ? MemoryConfigurations.getCurrentConfiguration().getStackLimitAddress() :
+                Math.max(MemoryConfigurations.getCurrentConfiguration().getStackLimitAddress(),
                 stackBaseAddress -
                         BLOCK_LENGTH_WORDS * BLOCK_TABLE_LENGTH * WORD_LENGTH_BYTES);
         memoryMapLimitAddress = Math.min(MemoryConfigurations.getCurrentConfiguration().getMemoryMapLimitAddress(),
@@ -326,15 +373,53 @@ public class Memory extends Observable {
 
     private void initialize() {
         heapAddress = heapBaseAddress;
+        storeListener = null;
         textBlockTable = new ProgramStatement[TEXT_BLOCK_TABLE_LENGTH][];
-        dataBlockTable = new int[BLOCK_TABLE_LENGTH][]; // array of null int[] references
         kernelTextBlockTable = new ProgramStatement[TEXT_BLOCK_TABLE_LENGTH][];
-        kernelDataBlockTable = new int[BLOCK_TABLE_LENGTH][];
-        stackBlockTable = new int[BLOCK_TABLE_LENGTH][];
-        memoryMapBlockTable = new int[MMIO_TABLE_LENGTH][];
+        releaseStorage(dataStorage);
+        releaseStorage(kernelDataStorage);
+        releaseStorage(stackStorage);
+        releaseStorage(memoryMapStorage);
+        dataStorage = createStorage("data", dataSegmentBaseAddress, false,
+                dataSegmentLimitAddress - dataSegmentBaseAddress, BLOCK_TABLE_LENGTH);
+        kernelDataStorage = createStorage("kdata", kernelDataBaseAddress, false,
+                kernelDataSegmentLimitAddress - kernelDataBaseAddress, BLOCK_TABLE_LENGTH);
+        stackStorage = createStorage("stack", stackBaseAddress, true,
+                stackBaseAddress - stackLimitAddress + WORD_LENGTH_BYTES, BLOCK_TABLE_LENGTH);
+        memoryMapStorage = createStorage("mmio", memoryMapBaseAddress, false,
+                memoryMapLimitAddress - memoryMapBaseAddress, MMIO_TABLE_LENGTH);
         System.gc(); // call garbage collector on any Table memory just deallocated.
     }
 
+    // Create storage for a data segment as selected by the memory configuration: heap block
+    // table of given length, or off-heap buffers for given number of bytes.  If a temporary
+    // file cannot be mapped, falls back to direct buffers.
+    private MemoryBackend createStorage(String name, int baseAddress, boolean descending, int lengthBytes, int blocks) {
+        ByteOrder order = (byteOrder == LITTLE_ENDIAN) ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+        if (segmentStorage == MemoryConfiguration.MAPPED_FILE_STORAGE) {
+            try {
+                return ByteBufferMemoryBackend.createTemporary(baseAddress, descending, lengthBytes, order, "mars-" + name);
+            } catch (IOException e) {
+                String warning = "Unable to map " + name + " segment to a file, using direct buffers: " + e;
+                if (storageWarning == null) {
+                    storageWarning = warning;
+                } else if (!storageWarning.contains(warning)) { // memory may be set up twice before a report
+                    storageWarning += "\n" + warning;
+                }
+            }
+        }
+        if (segmentStorage != MemoryConfiguration.HEAP_STORAGE) {
+            return new ByteBufferMemoryBackend(baseAddress, descending, lengthBytes, order);
+        }
+        return new BlockTableMemoryBackend(baseAddress, descending, blocks);
+    }
+
+    private void releaseStorage(MemoryBackend storage) {
+        if (storage != null) {
+            storage.release();
+        }
+    }
+
     /**
      * Returns the next available word-aligned heap address.  There is no recycling and
      * no heap management!  There is however nearly 4MB of heap space available in Mars.
@@ -359,6 +444,51 @@ public class Memory extends Observable {
         return result;
     }
 
+    /**
+     * Returns the address that the next heap allocation will start at.
+     *
+     * @return next available heap address
+     */
+    public int getHeapAddress() {
+        return heapAddress;
+    }
+
+    /**
+     * Sets the address that the next heap allocation will start at.  Used to restore an
+     * earlier simulation state; programs allocate heap storage with allocateBytesFromHeap().
+     *
+     * @param address next available heap address, as returned by getHeapAddress()
+     */
+    public void setHeapAddress(int address) {
+        heapAddress = address;
+    }
+
+    /**
+     * Receives notice of each store to data segment, stack, memory mapped I/O or kernel data
+     * segment storage, before the store is made, so it can save the storage's old contents.
+     */
+    public interface StoreListener {
+        /**
+         * Called before bytes are stored.  Stores made directly to a MemoryBackend, rather
+         * than through Memory, are not reported.
+         *
+         * @param storage the storage being written
+         * @param address first byte address to be written
+         * @param length  number of bytes to be written
+         */
+        void beforeStore(MemoryBackend storage, int address, int length);
+    }
+
+    /**
+     * Set the listener to be told of every store to data storage, replacing any previous one.
+     * The listener is removed when memory is cleared, as it is for each assembly.
+     *
+     * @param listener the listener, or null for none
+     */
+    public void setStoreListener(StoreListener listener) {
+        storeListener = listener;
+    }
+
 
     /**
      * Set byte order to either LITTLE_ENDIAN or BIG_ENDIAN.  Default is LITTLE_ENDIAN.
@@ -397,18 +527,20 @@ public class Memory extends Observable {
 
     // Allocates blocks if necessary.
     public int set(int address, int value, int length) throws AddressErrorException {
+        return set(address, value, length, true);
+    }
+
+    // Does the real work, but includes option to NOT notify observers.
+    private int set(int address, int value, int length, boolean notify) throws AddressErrorException {
         int oldValue = 0;
         if (Globals.debug) System.out.println("memory[" + address + "] set to " + value + "(" + length + " bytes)");
-        int relativeByteAddress;
-        if (inDataSegment(address)) {
-            // in data segment.  Will write one byte at a time, w/o regard to boundaries.
-            relativeByteAddress = address - dataSegmentBaseAddress; // relative to data segment start, in bytes
-            oldValue = storeBytesInTable(dataBlockTable, relativeByteAddress, length, value);
-        } else if (address > stackLimitAddress && address <= stackBaseAddress) {
-            // in stack.  Handle similarly to data segment write, except relative byte
-            // address calculated "backward" because stack addresses grow down from base.
-            relativeByteAddress = stackBaseAddress - address;
-            oldValue = storeBytesInTable(stackBlockTable, relativeByteAddress, length, value);
+        MemoryBackend storage = getStorage(address);
+        if (storage != null) {
+            // in data segment, stack, memory mapped I/O or kernel data segment.
+            if (storeListener != null) {
+                storeListener.beforeStore(storage, address, length);
+            }
+            oldValue = storeBytes(storage, address, length, value);
         } else if (inTextSegment(address)) {
             // Burch Mod (Jan 2013): replace throw with call to setStatement
             // DPS adaptation 5-Jul-2013: either throw or call, depending on setting
@@ -424,14 +556,6 @@ public class Memory extends Observable {
                         "Cannot write directly to text segment!",
                         Exceptions.ADDRESS_EXCEPTION_STORE, address);
             }
-        } else if (address >= memoryMapBaseAddress && address < memoryMapLimitAddress) {
-            // memory mapped I/O.
-            relativeByteAddress = address - memoryMapBaseAddress;
-            oldValue = storeBytesInTable(memoryMapBlockTable, relativeByteAddress, length, value);
-        } else if (inKernelDataSegment(address)) {
-            // in kernel data segment.  Will write one byte at a time, w/o regard to boundaries.
-            relativeByteAddress = address - kernelDataBaseAddress; // relative to data segment start, in bytes
-            oldValue = storeBytesInTable(kernelDataBlockTable, relativeByteAddress, length, value);
         } else if (inKernelTextSegment(address)) {
             // DEVELOPER: PLEASE USE setStatement() TO WRITE TO KERNEL TEXT SEGMENT...
             throw new AddressErrorException(
@@ -442,7 +566,7 @@ public class Memory extends Observable {
             throw new AddressErrorException("address out of range ",
                     Exceptions.ADDRESS_EXCEPTION_STORE, address);
         }
-        notifyAnyObservers(AccessNotice.WRITE, address, length, value);
+        if (notify) notifyAnyObservers(AccessNotice.WRITE, address, length, value);
         return oldValue;
     }
 
@@ -459,20 +583,18 @@ public class Memory extends Observable {
      * @throws AddressErrorException If address is not on word boundary.
      **/
     public void setRawWord(int address, int value) throws AddressErrorException {
-        int relative, oldValue = 0;
+        int oldValue = 0;
         if (address % WORD_LENGTH_BYTES != 0) {
             throw new AddressErrorException("store address not aligned on word boundary ",
                     Exceptions.ADDRESS_EXCEPTION_STORE, address);
         }
-        if (inDataSegment(address)) {
-            // in data segment
-            relative = (address - dataSegmentBaseAddress) >> 2; // convert byte address to words
-            oldValue = storeWordInTable(dataBlockTable, relative, value);
-        } else if (address > stackLimitAddress && address <= stackBaseAddress) {
-            // in stack.  Handle similarly to data segment write, except relative
-            // address calculated "backward" because stack addresses grow down from base.
-            relative = (stackBaseAddress - address) >> 2; // convert byte address to words
-            oldValue = storeWordInTable(stackBlockTable, relative, value);
+        MemoryBackend storage = getStorage(address);
+        if (storage != null) {
+            // in data segment, stack, memory mapped I/O or kernel data segment.
+            if (storeListener != null) {
+                storeListener.beforeStore(storage, address, WORD_LENGTH_BYTES);
+            }
+            oldValue = storage.storeWord(storage.getWordIndex(address), value);
         } else if (inTextSegment(address)) {
             // Burch Mod (Jan 2013): replace throw with call to setStatement
             // DPS adaptation 5-Jul-2013: either throw or call, depending on setting
@@ -487,14 +609,6 @@ public class Memory extends Observable {
                         "Cannot write directly to text segment!",
                         Exceptions.ADDRESS_EXCEPTION_STORE, address);
             }
-        } else if (address >= memoryMapBaseAddress && address < memoryMapLimitAddress) {
-            // memory mapped I/O.
-            relative = (address - memoryMapBaseAddress) >> 2; // convert byte address to word
-            oldValue = storeWordInTable(memoryMapBlockTable, relative, value);
-        } else if (inKernelDataSegment(address)) {
-            // in data segment
-            relative = (address - kernelDataBaseAddress) >> 2; // convert byte address to words
-            oldValue = storeWordInTable(kernelDataBlockTable, relative, value);
         } else if (inKernelTextSegment(address)) {
             // DEVELOPER: PLEASE USE setStatement() TO WRITE TO KERNEL TEXT SEGMENT...
             throw new AddressErrorException(
@@ -644,19 +758,10 @@ public class Memory extends Observable {
     // Does the real work, but includes option to NOT notify observers.
     private int get(int address, int length, boolean notify) throws AddressErrorException {
         int value;
-        int relativeByteAddress;
-        if (inDataSegment(address)) {
-            // in data segment.  Will read one byte at a time, w/o regard to boundaries.
-            relativeByteAddress = address - dataSegmentBaseAddress; // relative to data segment start, in bytes
-            value = fetchBytesFromTable(dataBlockTable, relativeByteAddress, length);
-        } else if (address > stackLimitAddress && address <= stackBaseAddress) {
-            // in stack. Similar to data, except relative address computed "backward"
-            relativeByteAddress = stackBaseAddress - address;
-            value = fetchBytesFromTable(stackBlockTable, relativeByteAddress, length);
-        } else if (address >= memoryMapBaseAddress && address < memoryMapLimitAddress) {
-            // memory mapped I/O.
-            relativeByteAddress = address - memoryMapBaseAddress;
-            value = fetchBytesFromTable(memoryMapBlockTable, relativeByteAddress, length);
+        MemoryBackend storage = getStorage(address);
+        if (storage != null) {
+            // in data segment, stack, memory mapped I/O or kernel data segment.
+            value = fetchBytes(storage, address, length);
         } else if (inTextSegment(address)) {
             // Burch Mod (Jan 2013): replace throw with calls to getStatementNoNotify & getBinaryStatement
             // DPS adaptation 5-Jul-2013: either throw or call, depending on setting
@@ -668,10 +773,6 @@ public class Memory extends Observable {
                         "Cannot read directly from text segment!",
                         Exceptions.ADDRESS_EXCEPTION_LOAD, address);
             }
-        } else if (inKernelDataSegment(address)) {
-            // in kernel data segment.  Will read one byte at a time, w/o regard to boundaries.
-            relativeByteAddress = address - kernelDataBaseAddress; // relative to data segment start, in bytes
-            value = fetchBytesFromTable(kernelDataBlockTable, relativeByteAddress, length);
         } else if (inKernelTextSegment(address)) {
             // DEVELOPER: PLEASE USE getStatement() TO READ FROM KERNEL TEXT SEGMENT...
             throw new AddressErrorException(
@@ -706,23 +807,14 @@ public class Memory extends Observable {
     // I decided to keep the duplicate logic.
     public int getRawWord(int address) throws AddressErrorException {
         int value;
-        int relative;
         if (address % WORD_LENGTH_BYTES != 0) {
             throw new AddressErrorException("address for fetch not aligned on word boundary",
                     Exceptions.ADDRESS_EXCEPTION_LOAD, address);
         }
-        if (inDataSegment(address)) {
-            // in data segment
-            relative = (address - dataSegmentBaseAddress) >> 2; // convert byte address to words
-            value = fetchWordFromTable(dataBlockTable, relative);
-        } else if (address > stackLimitAddress && address <= stackBaseAddress) {
-            // in stack. Similar to data, except relative address computed "backward"
-            relative = (stackBaseAddress - address) >> 2; // convert byte address to words
-            value = fetchWordFromTable(stackBlockTable, relative);
-        } else if (address >= memoryMapBaseAddress && address < memoryMapLimitAddress) {
-            // memory mapped I/O.
-            relative = (address - memoryMapBaseAddress) >> 2;
-            value = fetchWordFromTable(memoryMapBlockTable, relative);
+        MemoryBackend storage = getStorage(address);
+        if (storage != null) {
+            // in data segment, stack, memory mapped I/O or kernel data segment.
+            value = storage.fetchWord(storage.getWordIndex(address));
         } else if (inTextSegment(address)) {
             // Burch Mod (Jan 2013): replace throw with calls to getStatementNoNotify & getBinaryStatement
             // DPS adaptation 5-Jul-2013: either throw or call, depending on setting
@@ -734,10 +826,6 @@ public class Memory extends Observable {
                         "Cannot read directly from text segment!",
                         Exceptions.ADDRESS_EXCEPTION_LOAD, address);
             }
-        } else if (inKernelDataSegment(address)) {
-            // in kernel data segment
-            relative = (address - kernelDataBaseAddress) >> 2; // convert byte address to words
-            value = fetchWordFromTable(kernelDataBlockTable, relative);
         } else if (inKernelTextSegment(address)) {
             // DEVELOPER: PLEASE USE getStatement() TO READ FROM KERNEL TEXT SEGMENT...
             throw new AddressErrorException(
@@ -776,28 +864,19 @@ public class Memory extends Observable {
     // See note above, with getRawWord(), concerning duplicated logic.
     public Integer getRawWordOrNull(int address) throws AddressErrorException {
         Integer value = null;
-        int relative;
         if (address % WORD_LENGTH_BYTES != 0) {
             throw new AddressErrorException("address for fetch not aligned on word boundary",
                     Exceptions.ADDRESS_EXCEPTION_LOAD, address);
         }
-        if (inDataSegment(address)) {
-            // in data segment
-            relative = (address - dataSegmentBaseAddress) >> 2; // convert byte address to words
-            value = fetchWordOrNullFromTable(dataBlockTable, relative);
-        } else if (address > stackLimitAddress && address <= stackBaseAddress) {
-            // in stack. Similar to data, except relative address computed "backward"
-            relative = (stackBaseAddress - address) >> 2; // convert byte address to words
-            value = fetchWordOrNullFromTable(stackBlockTable, relative);
+        MemoryBackend storage = getStorage(address);
+        if (storage != null && storage != memoryMapStorage) {
+            // in data segment, stack or kernel data segment.
+            value = storage.fetchWordOrNull(storage.getWordIndex(address));
         } else if (inTextSegment(address) || inKernelTextSegment(address)) {
             try {
                 value = (getStatementNoNotify(address) == null) ? null : getStatementNoNotify(address).getBinaryStatement();
             } catch (AddressErrorException ignored) {
             }
-        } else if (inKernelDataSegment(address)) {
-            // in kernel data segment
-            relative = (address - kernelDataBaseAddress) >> 2; // convert byte address to words
-            value = fetchWordOrNullFromTable(kernelDataBlockTable, relative);
         } else {
             // falls outside Mars addressing range
             throw new AddressErrorException("address out of range ", Exceptions.ADDRESS_EXCEPTION_LOAD, address);
@@ -898,6 +977,303 @@ public class Memory extends Observable {
         return get(address, 1);
     }
 
+
+    /*  *******************************  BULK TRANSFERS  ******************************/
+
+    // The bulk transfer methods below work a 4K block of addresses at a time.  A block in
+    // the data segment, stack, memory mapped I/O or kernel data segment is copied as whole
+    // words to or from the storage, with MemoryBackend.fetchWords() and storeWords(), and
+    // observers are notified once the whole block has been copied, with a word notice per
+    // aligned word rather than one per byte.  With big-endian byte order, or where a block
+    // is not all in that storage (such as the text segment when self-modifying code is
+    // enabled), it is done one byte or word at a time as get() and set() would, and
+    // observers are notified in the same way once the block is done.
+
+    private static final int TRANSFER_BLOCK_BYTES = 4096;
+
+    /**
+     * Read consecutive bytes into an array, as getByte() would read each of them.
+     * Observers are sent a notice for each aligned word read and for each byte at the
+     * unaligned ends.
+     *
+     * @param address Address of the first byte to be read.
+     * @param buffer  Array to hold the bytes read.
+     * @param offset  Index in the array of the first byte.
+     * @param length  Number of bytes to be read.
+     * @throws AddressErrorException If an address cannot be read.  The bytes before it
+     *                               have been read, and observers are notified of them.
+     **/
+    public void readBytes(int address, byte[] buffer, int offset, int length) throws AddressErrorException {
+        int done = 0;
+        try {
+            int[] words = new int[TRANSFER_BLOCK_BYTES / WORD_LENGTH_BYTES + 1];
+            while (done < length) {
+                int blockAddress = address + done;
+                int blockLength = getTransferLength(blockAddress, length - done);
+                MemoryBackend storage = getTransferStorage(blockAddress, blockLength);
+                if (storage == null) {
+                    buffer[offset + done] = (byte) get(blockAddress, 1, false);
+                    done++;
+                    continue;
+                }
+                int firstWord = blockAddress & ~3;
+                fetchWords(storage, firstWord, words, 0, (blockAddress - firstWord + blockLength + 3) >>> 2);
+                for (int i = 0; i < blockLength; i++) {
+                    int byteAddress = blockAddress + i;
+                    buffer[offset + done + i] = (byte) (words[(byteAddress - firstWord) >>> 2] >>> ((byteAddress & 3) << 3));
+                }
+                done += blockLength;
+            }
+        } finally {
+            notifyRangeObservers(AccessNotice.READ, address, done);
+        }
+    }
+
+    /**
+     * Reads bytes at consecutive addresses up to a zero byte, as for a null-terminated string,
+     * as getByte() would read each of them.  They are read a word at a time where readBytes()
+     * would use whole words.  Observers are sent a notice for each aligned word read and for
+     * each byte at the unaligned ends, the zero byte included.
+     *
+     * @param address Address of the first byte to be read.
+     * @param buffer  Array to hold the bytes read.
+     * @return Number of bytes before the zero byte.  If that is the length of the buffer,
+     * the zero byte has not been reached, and reading can continue from address plus that.
+     * @throws AddressErrorException If an address cannot be read.  The bytes before it
+     *                               have been read, and observers are notified of them.
+     **/
+    public int getNullTerminatedBytes(int address, byte[] buffer) throws AddressErrorException {
+        int done = 0;
+        boolean terminated = false;
+        try {
+            while (done < buffer.length) {
+                int blockAddress = address + done;
+                int blockEnd = done + getTransferLength(blockAddress, buffer.length - done);
+                MemoryBackend storage = getTransferStorage(blockAddress, blockEnd - done);
+                if (storage == null) {
+                    int value = get(blockAddress, 1, false);
+                    if (value == 0) {
+                        terminated = true;
+                        return done;
+                    }
+                    buffer[done++] = (byte) value;
+                    continue;
+                }
+                while (done < blockEnd) {
+                    int byteAddress = address + done;
+                    int word = storage.fetchWord(storage.getWordIndex(byteAddress & ~3));
+                    for (int shift = (byteAddress & 3) << 3; shift < 32 && done < blockEnd; shift += 8) {
+                        byte value = (byte) (word >>> shift);
+                        if (value == 0) {
+                            terminated = true;
+                            return done;
+                        }
+                        buffer[done++] = value;
+                    }
+                }
+            }
+            return done;
+        } finally {
+            notifyRangeObservers(AccessNotice.READ, address, terminated ? done + 1 : done);
+        }
+    }
+
+    /**
+     * Write consecutive bytes from an array, as setByte() would write each of them,
+     * including what it records for back-stepping.  Observers are sent a notice for each
+     * aligned word written and for each byte at the unaligned ends.
+     *
+     * @param address Address of the first byte to be written.
+     * @param buffer  Array holding the bytes to write.
+     * @param offset  Index in the array of the first byte.
+     * @param length  Number of bytes to be written.
+     * @throws AddressErrorException If an address cannot be written.  The bytes before it
+     *                               have been written, and observers are notified of them.
+     **/
+    public void writeBytes(int address, byte[] buffer, int offset, int length) throws AddressErrorException {
+        boolean backStepping = Globals.getSettings().getBackSteppingEnabled();
+        int done = 0;
+        try {
+            int[] words = new int[TRANSFER_BLOCK_BYTES / WORD_LENGTH_BYTES + 1];
+            int[] oldWords = backStepping ? new int[words.length] : null;
+            while (done < length) {
+                int blockAddress = address + done;
+                int blockLength = getTransferLength(blockAddress, length - done);
+                MemoryBackend storage = getTransferStorage(blockAddress, blockLength);
+                if (storage == null) {
+                    int oldValue = set(blockAddress, buffer[offset + done], 1, false);
+                    if (backStepping) {
+                        Globals.program.getBackStepper().addMemoryRestoreByte(blockAddress, oldValue);
+                    }
+                    done++;
+                    continue;
+                }
+                if (storeListener != null) {
+                    storeListener.beforeStore(storage, blockAddress, blockLength);
+                }
+                int firstWord = blockAddress & ~3;
+                int count = (blockAddress - firstWord + blockLength + 3) >>> 2;
+                if (backStepping) {
+                    fetchWords(storage, firstWord, oldWords, 0, count);
+                    System.arraycopy(oldWords, 0, words, 0, count);
+                } else {
+                    // Only the first and last words can be partly written.
+                    words[0] = storage.fetchWord(storage.getWordIndex(firstWord));
+                    words[count - 1] = storage.fetchWord(storage.getWordIndex(firstWord + (count - 1) * WORD_LENGTH_BYTES));
+                }
+                for (int i = 0; i < blockLength; i++) {
+                    int byteAddress = blockAddress + i;
+                    int shift = (byteAddress & 3) << 3;
+                    int index = (byteAddress - firstWord) >>> 2;
+                    words[index] = (words[index] & ~(0xFF << shift)) | ((buffer[offset + done + i] & 0xFF) << shift);
+                }
+                storeWords(storage, firstWord, words, 0, count);
+                if (backStepping) {
+                    for (int i = 0; i < count; i++) {
+                        Globals.program.getBackStepper().addMemoryRestoreRawWord(firstWord + i * WORD_LENGTH_BYTES, oldWords[i]);
+                    }
+                }
+                done += blockLength;
+            }
+        } finally {
+            notifyRangeObservers(AccessNotice.WRITE, address, done);
+        }
+    }
+
+    /**
+     * Read consecutive words into an array, as getWord() would read each of them.
+     * Observers are sent one notice for each word read.
+     *
+     * @param address Address of the first word to be read.
+     * @param words   Array to hold the words read.
+     * @param offset  Index in the array of the first word.
+     * @param count   Number of words to be read.
+     * @throws AddressErrorException If address is not on word boundary, or an address
+     *                               cannot be read.  The words before it have been read,
+     *                               and observers are notified of them.
+     **/
+    public void readWords(int address, int[] words, int offset, int count) throws AddressErrorException {
+        if (address % WORD_LENGTH_BYTES != 0) {
+            throw new AddressErrorException("fetch address not aligned on word boundary ",
+                    Exceptions.ADDRESS_EXCEPTION_LOAD, address);
+        }
+        int done = 0;
+        try {
+            while (done < count) {
+                int blockAddress = address + done * WORD_LENGTH_BYTES;
+                int blockCount = getTransferLength(blockAddress,
+                        Math.min(count - done, TRANSFER_BLOCK_BYTES) * WORD_LENGTH_BYTES) / WORD_LENGTH_BYTES;
+                MemoryBackend storage = getTransferStorage(blockAddress, blockCount * WORD_LENGTH_BYTES);
+                if (storage == null) {
+                    words[offset + done] = get(blockAddress, WORD_LENGTH_BYTES, false);
+                    done++;
+                    continue;
+                }
+                fetchWords(storage, blockAddress, words, offset + done, blockCount);
+                done += blockCount;
+            }
+        } finally {
+            notifyRangeObservers(AccessNotice.READ, address, done * WORD_LENGTH_BYTES);
+        }
+    }
+
+    /**
+     * Write consecutive words from an array, as setWord() would write each of them,
+     * including what it records for back-stepping.  Observers are sent one notice for
+     * each word written.
+     *
+     * @param address Address of the first word to be written.
+     * @param words   Array holding the words to write.
+     * @param offset  Index in the array of the first word.
+     * @param count   Number of words to be written.
+     * @throws AddressErrorException If address is not on word boundary, or an address
+     *                               cannot be written.  The words before it have been
+     *                               written, and observers are notified of them.
+     **/
+    public void writeWords(int address, int[] words, int offset, int count) throws AddressErrorException {
+        if (address % WORD_LENGTH_BYTES != 0) {
+            throw new AddressErrorException("store address not aligned on word boundary ",
+                    Exceptions.ADDRESS_EXCEPTION_STORE, address);
+        }
+        boolean backStepping = Globals.getSettings().getBackSteppingEnabled();
+        int done = 0;
+        try {
+            int[] oldWords = backStepping ? new int[TRANSFER_BLOCK_BYTES / WORD_LENGTH_BYTES] : null;
+            while (done < count) {
+                int blockAddress = address + done * WORD_LENGTH_BYTES;
+                int blockCount = getTransferLength(blockAddress,
+                        Math.min(count - done, TRANSFER_BLOCK_BYTES) * WORD_LENGTH_BYTES) / WORD_LENGTH_BYTES;
+                MemoryBackend storage = getTransferStorage(blockAddress, blockCount * WORD_LENGTH_BYTES);
+                if (storage == null) {
+                    int oldValue = set(blockAddress, words[offset + done], WORD_LENGTH_BYTES, false);
+                    if (backStepping) {
+                        Globals.program.getBackStepper().addMemoryRestoreWord(blockAddress, oldValue);
+                    }
+                    done++;
+                    continue;
+                }
+                if (storeListener != null) {
+                    storeListener.beforeStore(storage, blockAddress, blockCount * WORD_LENGTH_BYTES);
+                }
+                if (backStepping) {
+                    fetchWords(storage, blockAddress, oldWords, 0, blockCount);
+                }
+                storeWords(storage, blockAddress, words, offset + done, blockCount);
+                if (backStepping) {
+                    for (int i = 0; i < blockCount; i++) {
+                        Globals.program.getBackStepper().addMemoryRestoreRawWord(blockAddress + i * WORD_LENGTH_BYTES, oldWords[i]);
+                    }
+                }
+                done += blockCount;
+            }
+        } finally {
+            notifyRangeObservers(AccessNotice.WRITE, address, done * WORD_LENGTH_BYTES);
+        }
+    }
+
+    /**
+     * Read consecutive words into an array, as getRawWordOrNull() would read each of them,
+     * up to the first word it would return null for.  Like it, observers are not notified;
+     * this is for memory dumps.
+     *
+     * @param address Address of the first word to be read.
+     * @param words   Array to hold the words read.
+     * @param offset  Index in the array of the first word.
+     * @param count   Number of words to be read at most.
+     * @return Number of words read, less than count if a word with no value was reached.
+     * @throws AddressErrorException If address is not on word boundary, or an address
+     *                               is out of range.
+     **/
+    public int getRawWordsOrNull(int address, int[] words, int offset, int count) throws AddressErrorException {
+        if (address % WORD_LENGTH_BYTES != 0) {
+            throw new AddressErrorException("address for fetch not aligned on word boundary",
+                    Exceptions.ADDRESS_EXCEPTION_LOAD, address);
+        }
+        int done = 0;
+        while (done < count) {
+            int blockAddress = address + done * WORD_LENGTH_BYTES;
+            int blockCount = getTransferLength(blockAddress,
+                        Math.min(count - done, TRANSFER_BLOCK_BYTES) * WORD_LENGTH_BYTES) / WORD_LENGTH_BYTES;
+            MemoryBackend storage = getStorage(blockAddress);
+            if (storage == null || storage == memoryMapStorage || storage.isDescending()
+                    || getStorage(blockAddress + blockCount * WORD_LENGTH_BYTES - 1) != storage) {
+                Integer word = getRawWordOrNull(blockAddress);
+                if (word == null) {
+                    break;
+                }
+                words[offset + done] = word;
+                done++;
+                continue;
+            }
+            int fetched = storage.fetchAllocatedWords(storage.getWordIndex(blockAddress), words, offset + done, blockCount);
+            done += fetched;
+            if (fetched < blockCount) {
+                break;
+            }
+        }
+        return done;
+    }
+
     ////////////////////////////////////////////////////////////////////////////////
 
     /**
@@ -976,6 +1352,32 @@ public class Memory extends Observable {
             return new ProgramStatement(get(address, WORD_LENGTH_BYTES), address);
     }
 
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Gets all ProgramStatements of the (user) Text Segment as one flat array.  Array
+     * element i holds the statement stored at address textBaseAddress + 4*i, or null if
+     * there is none.  The array ends with the last block that contains a statement.
+     * Observers are not notified.
+     *
+     * @return array of ProgramStatement references indexed by word offset from textBaseAddress
+     * @see ProgramStatement
+     **/
+
+    public ProgramStatement[] getTextSegmentStatements() {
+        int blocks = TEXT_BLOCK_TABLE_LENGTH;
+        while (blocks > 0 && textBlockTable[blocks - 1] == null) {
+            blocks--;
+        }
+        ProgramStatement[] statements = new ProgramStatement[blocks * TEXT_BLOCK_LENGTH_WORDS];
+        for (int block = 0; block < blocks; block++) {
+            if (textBlockTable[block] != null) {
+                System.arraycopy(textBlockTable[block], 0, statements, block * TEXT_BLOCK_LENGTH_WORDS, TEXT_BLOCK_LENGTH_WORDS);
+            }
+        }
+        return statements;
+    }
+
 
     /*  THE UTILITIES  */
 
@@ -1131,6 +1533,13 @@ public class Memory extends Observable {
      * @param endAddr   the high end of memory address range, must be on word boundary
      */
     public void addObserver(Observer obs, int startAddr, int endAddr) throws AddressErrorException {
+        checkObservedRange(startAddr, endAddr);
+        observables.add(new MemoryObservable(obs, startAddr, endAddr));
+        rebuildObservedBlocks();
+    }
+
+    // Validate an address range given to addObserver or addAccessStream.
+    private void checkObservedRange(int startAddr, int endAddr) throws AddressErrorException {
         if (startAddr % WORD_LENGTH_BYTES != 0) {
             throw new AddressErrorException("address not aligned on word boundary ",
                     Exceptions.ADDRESS_EXCEPTION_LOAD, startAddr);
@@ -1149,11 +1558,53 @@ public class Memory extends Observable {
             throw new AddressErrorException("end address of range < start address of range ",
                     Exceptions.ADDRESS_EXCEPTION_LOAD, startAddr);
         }
-        observables.add(new MemoryObservable(obs, startAddr, endAddr));
     }
 
     /**
-     * Return number of observers
+     * Method to accept registration of a memory access stream for specific address range.
+     * Accesses made by the executing MIPS program within the range are recorded into the
+     * stream instead of being sent as notices; see MemoryAccessStream.  Range restrictions
+     * are the same as for addObserver.
+     *
+     * @param stream    the stream, which should already be started
+     * @param startAddr the low end of memory address range, must be on word boundary
+     * @param endAddr   the high end of memory address range, must be on word boundary
+     */
+    public void addAccessStream(MemoryAccessStream stream, int startAddr, int endAddr) throws AddressErrorException {
+        checkObservedRange(startAddr, endAddr);
+        observables.add(new MemoryObservable(stream, startAddr, endAddr));
+        rebuildObservedBlocks();
+    }
+
+    /**
+     * Remove all registrations of specified memory access stream.
+     *
+     * @param stream MemoryAccessStream to be removed
+     */
+    public void deleteAccessStream(MemoryAccessStream stream) {
+        ArrayList<MemoryObservable> removed = new ArrayList<>();
+        for (MemoryObservable observable : observables) {
+            if (observable.stream == stream) {
+                removed.add(observable);
+            }
+        }
+        observables.removeAll(removed);
+        rebuildObservedBlocks();
+    }
+
+    /**
+     * Turn reporting of memory accesses to observers and access streams on or off.
+     * The simulator turns it off while it executes earlier steps again to go back to
+     * them, so that tools do not act on those accesses a second time.
+     *
+     * @param notifying true to report accesses (the default), false not to
+     */
+    public void setNotifying(boolean notifying) {
+        this.notifying = notifying;
+    }
+
+    /**
+     * Return number of observers (including access streams)
      */
     public int countObservers() {
         return observables.size();
@@ -1165,9 +1616,20 @@ public class Memory extends Observable {
      * @param obs Observer to be removed
      */
     public void deleteObserver(Observer obs) {
-        for (Object observable : observables) {
-            ((MemoryObservable) observable).deleteObserver(obs);
+        ArrayList<MemoryObservable> unobserved = new ArrayList<>();
+        for (MemoryObservable mo : observables) {
+            if (mo.stream != null) {
+                continue;
+            }
+            mo.deleteObserver(obs);
+            // Drop the observable once it has nobody to notify, so its address range
+            // no longer counts as observed.
+            if (mo.countObservers() == 0) {
+                unobserved.add(mo);
+            }
         }
+        observables.removeAll(unobserved);
+        rebuildObservedBlocks();
     }
 
     /**
@@ -1176,6 +1638,7 @@ public class Memory extends Observable {
     public void deleteObservers() {
         // just drop the collection
         observables = getNewMemoryObserversCollection();
+        observedBlocks = new BitSet();
     }
 
     /**
@@ -1201,23 +1664,54 @@ public class Memory extends Observable {
     }
 
 
-    private Collection getNewMemoryObserversCollection() {
-        return new Vector();  // Vectors are thread-safe
+    private Collection<MemoryObservable> getNewMemoryObserversCollection() {
+        // Thread-safe, and an iteration in progress during simulation is not disturbed
+        // by observers being added or removed from another thread.
+        return new CopyOnWriteArrayList<>();
+    }
+
+    // Recompute the bitmap of 4K blocks that have at least one observer.  See comments
+    // at the declaration of observedBlocks.
+    private void rebuildObservedBlocks() {
+        BitSet blocks = new BitSet();
+        synchronized (observables) {
+            for (Object observable : observables) {
+                MemoryObservable mo = (MemoryObservable) observable;
+                // Ranges never cross 0x80000000 (see addObserver) so unsigned block numbers are ordered.
+                int lowBlock = mo.lowAddress >>> OBSERVED_BLOCK_SHIFT;
+                int highBlock = (mo.highAddress - 1 + WORD_LENGTH_BYTES) >>> OBSERVED_BLOCK_SHIFT;
+                if (highBlock < lowBlock) { // last word wrapped past 0xffffffff
+                    highBlock = -1 >>> OBSERVED_BLOCK_SHIFT;
+                }
+                blocks.set(lowBlock, highBlock + 1);
+            }
+        }
+        observedBlocks = blocks;
     }
 
     /////////////////////////////////////////////////////////////////////////
     // Private class whose objects will represent an observable-observer pair
-    // for a given memory address or range.
+    // for a given memory address or range.  Alternatively the observer may be a
+    // MemoryAccessStream, in which case accesses are recorded into the stream
+    // rather than sent as notices.
     private class MemoryObservable extends Observable implements Comparable {
         private final int lowAddress;
         private final int highAddress;
+        private final MemoryAccessStream stream;
 
         MemoryObservable(Observer obs, int startAddr, int endAddr) {
             lowAddress = startAddr;
             highAddress = endAddr;
+            stream = null;
             this.addObserver(obs);
         }
 
+        MemoryObservable(MemoryAccessStream stream, int startAddr, int endAddr) {
+            lowAddress = startAddr;
+            highAddress = endAddr;
+            this.stream = stream;
+        }
+
         boolean match(int address) {
             return (address >= lowAddress && address <= highAddress - 1 + WORD_LENGTH_BYTES);
         }
@@ -1256,60 +1750,189 @@ public class Memory extends Observable {
     //
     // The "|| Globals.getGui()==null" is a hack added 19 July 2012 DPS.  IF MIPS simulation
     // is from command mode, Globals.program is null but still want ability to observe.
+    //
+    // The observed-block bitmap is checked first, so an access to an unobserved 4K block
+    // returns right away.  Notices are immutable, so one notice is created for the access
+    // and handed to every matching observer rather than one per observer.  Access streams
+    // get no notice; the access is recorded into the stream if it comes from the MIPS thread.
     private void notifyAnyObservers(int type, int address, int length, int value) {
+        if (!observedBlocks.get(address >>> OBSERVED_BLOCK_SHIFT) || !notifying) {
+            return;
+        }
         if ((Globals.program != null || Globals.getGui() == null) && this.observables.size() > 0) {
             Iterator it = this.observables.iterator();
             MemoryObservable mo;
+            MemoryAccessNotice notice = null;
             while (it.hasNext()) {
                 mo = (MemoryObservable) it.next();
                 if (mo.match(address)) {
-                    mo.notifyObserver(new MemoryAccessNotice(type, address, length, value));
+                    if (mo.stream != null) {
+                        if (AccessNotice.isMIPSThread(Thread.currentThread())) {
+                            mo.stream.record(type, address, length, value);
+                        }
+                        continue;
+                    }
+                    if (notice == null) {
+                        notice = new MemoryAccessNotice(type, address, length, value);
+                    }
+                    mo.notifyObserver(notice);
+                }
+            }
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //
+    // Same, for a bulk transfer of length bytes starting at address.  Observers and access
+    // streams see the transfer as the word and byte accesses it stands for: one word notice
+    // for each whole aligned word in the range and one byte notice for each byte at its
+    // unaligned ends, each with the value now in memory.  Nothing is read unless some
+    // observer's block is in the range.
+    private void notifyRangeObservers(int type, int address, int length) {
+        if (length == 0) {
+            return;
+        }
+        int lastAddress = address + length - 1;
+        int firstObserved = observedBlocks.nextSetBit(address >>> OBSERVED_BLOCK_SHIFT);
+        if (firstObserved < 0 || firstObserved > (lastAddress >>> OBSERVED_BLOCK_SHIFT) || !notifying) {
+            return;
+        }
+        int done = 0;
+        while (done < length) {
+            int pieceAddress = address + done;
+            int pieceLength = (pieceAddress % WORD_LENGTH_BYTES == 0 && length - done >= WORD_LENGTH_BYTES)
+                    ? WORD_LENGTH_BYTES : 1;
+            if (observedBlocks.get(pieceAddress >>> OBSERVED_BLOCK_SHIFT)) {
+                int value;
+                try {
+                    value = get(pieceAddress, pieceLength, false);
+                } catch (AddressErrorException e) {
+                    value = 0; // the transfer itself succeeded, so this is not expected
                 }
+                notifyAnyObservers(type, pieceAddress, pieceLength, value);
             }
+            done += pieceLength;
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //
+    // Decode address to the storage of the data segment, stack, memory mapped I/O or
+    // kernel data segment containing it.  Returns null if in none of these (the address
+    // may still be in a text segment).
+    //
+    private MemoryBackend getStorage(int address) {
+        if (inDataSegment(address)) {
+            return dataStorage;
+        } else if (address > stackLimitAddress && address <= stackBaseAddress) {
+            return stackStorage;
+        } else if (address >= memoryMapBaseAddress && address < memoryMapLimitAddress) {
+            return memoryMapStorage;
+        } else if (inKernelDataSegment(address)) {
+            return kernelDataStorage;
         }
+        return null;
     }
 
     ////////////////////////////////////////////////////////////////////////////////
     //
-    // Helper method to store 1, 2 or 4 byte value in table that represents MIPS
-    // memory. Originally used just for data segment, but now also used for stack.
-    // Both use different tables but same storage method and same table size
-    // and block size.
-    // Modified 29 Dec 2005 to return old value of replaced bytes.
+    // Helper method to store 1, 2 or 4 byte value in segment storage that represents
+    // MIPS memory.  Returns old value of replaced bytes.  A little-endian access aligned
+    // to its own length lies within one word, so it is done with one fetch and store of that
+    // word; anything else is done a byte at a time.
     //
     private static final boolean STORE = true;
     private static final boolean FETCH = false;
 
-    private int storeBytesInTable(int[][] blockTable,
-                                  int relativeByteAddress, int length, int value) {
-        return storeOrFetchBytesInTable(blockTable, relativeByteAddress, length, value, STORE);
+    private int storeBytes(MemoryBackend storage, int address, int length, int value) {
+        if (byteOrder == LITTLE_ENDIAN && isAlignedAccess(address, length)) {
+            int index = storage.getWordIndex(address);
+            if (length == WORD_LENGTH_BYTES) {
+                return storage.storeWord(index, value);
+            }
+            int shift = (address & 3) << 3;
+            int mask = ((1 << (length << 3)) - 1) << shift;
+            int word = storage.fetchWord(index);
+            storage.storeWord(index, (word & ~mask) | ((value << shift) & mask));
+            return (word & mask) >>> shift;
+        }
+        return storeOrFetchBytes(storage, address, length, value, STORE);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //
+    // Helper method to fetch 1, 2 or 4 byte value from segment storage that represents
+    // MIPS memory.  Same fast path as storeBytes().
+    //
+    private int fetchBytes(MemoryBackend storage, int address, int length) {
+        if (byteOrder == LITTLE_ENDIAN && isAlignedAccess(address, length)) {
+            int word = storage.fetchWord(storage.getWordIndex(address));
+            if (length == WORD_LENGTH_BYTES) {
+                return word;
+            }
+            return (word >>> ((address & 3) << 3)) & ((1 << (length << 3)) - 1);
+        }
+        return storeOrFetchBytes(storage, address, length, 0, FETCH);
     }
 
     ////////////////////////////////////////////////////////////////////////////////
     //
-    // Helper method to fetch 1, 2 or 4 byte value from table that represents MIPS
-    // memory.  Originally used just for data segment, but now also used for stack.
-    // Both use different tables but same storage method and same table size
-    // and block size.
+    // Helpers for the bulk transfers.  The part of a transfer of length bytes from address
+    // that lies in address's 4K block, and the storage all of that part is in, or null
+    // if it is not all in one storage or must be done a byte or word at a time anyway.
     //
+    private static int getTransferLength(int address, int length) {
+        return Math.min(length, TRANSFER_BLOCK_BYTES - (address & (TRANSFER_BLOCK_BYTES - 1)));
+    }
+
+    private MemoryBackend getTransferStorage(int address, int length) {
+        MemoryBackend storage = getStorage(address);
+        if (storage == null || byteOrder != LITTLE_ENDIAN || getStorage(address + length - 1) != storage) {
+            return null;
+        }
+        return storage;
+    }
+
+    // Words at consecutive (word-aligned) addresses, which are not at consecutive word
+    // indexes in a descending storage.
+    private static void fetchWords(MemoryBackend storage, int address, int[] words, int offset, int count) {
+        if (storage.isDescending()) {
+            for (int i = 0; i < count; i++) {
+                words[offset + i] = storage.fetchWord(storage.getWordIndex(address + i * WORD_LENGTH_BYTES));
+            }
+        } else {
+            storage.fetchWords(storage.getWordIndex(address), words, offset, count);
+        }
+    }
+
+    private static void storeWords(MemoryBackend storage, int address, int[] words, int offset, int count) {
+        if (storage.isDescending()) {
+            for (int i = 0; i < count; i++) {
+                storage.storeWord(storage.getWordIndex(address + i * WORD_LENGTH_BYTES), words[offset + i]);
+            }
+        } else {
+            storage.storeWords(storage.getWordIndex(address), words, offset, count);
+        }
+    }
 
-    private int fetchBytesFromTable(int[][] blockTable, int relativeByteAddress, int length) {
-        return storeOrFetchBytesInTable(blockTable, relativeByteAddress, length, 0, FETCH);
+    // True if access is a word, halfword or byte aligned on a boundary of its own length.
+    private static boolean isAlignedAccess(int address, int length) {
+        return (length == WORD_LENGTH_BYTES || length == 2 || length == 1) && (address & (length - 1)) == 0;
     }
 
     ////////////////////////////////////////////////////////////////////////////////
     //
-    // The helper's helper.  Works for either storing or fetching, little or big endian.
-    // When storing/fetching bytes, most of the work is calculating the correct array element(s)
-    // and element byte(s).  This method performs either store or fetch, as directed by its
-    // client using STORE or FETCH in last arg.
+    // The helpers' helper, for accesses not handled by their fast path.  Works for either
+    // storing or fetching, little or big endian, one byte at a time.  Most of the work is
+    // calculating the correct word(s) and word byte(s).  This method performs either store
+    // or fetch, as directed by its client using STORE or FETCH in last arg.
     // Modified 29 Dec 2005 to return old value of replaced bytes, for STORE.
     //
-    private synchronized int storeOrFetchBytesInTable(int[][] blockTable,
-                                                      int relativeByteAddress, int length, int value, boolean op) {
-        int relativeWordAddress, block, offset, bytePositionInMemory, bytePositionInValue;
+    private int storeOrFetchBytes(MemoryBackend storage, int address, int length, int value, boolean op) {
+        int relativeWordAddress, bytePositionInMemory, bytePositionInValue, word;
         int oldValue = 0; // for STORE, return old values of replaced bytes
         int loopStopper = 3 - length;
+        int relativeByteAddress;
         // IF added DPS 22-Dec-2008. NOTE: has NOT been tested with Big-Endian.
         // Fix provided by Saul Spatz; comments that follow are his.
         // If address in stack segment is 4k + m, with 0 < m < 4, then the
@@ -1317,31 +1940,31 @@ public class Memory extends Observable {
         // address actually passed in is stackBaseAddress - (4k + m), so we
         // need to add 2m.  Because of the change in sign, we get the
         // expression 4-delta below in place of m.
-        if (blockTable == stackBlockTable) {
+        if (storage.isDescending()) {
+            relativeByteAddress = storage.getBaseAddress() - address;
             int delta = relativeByteAddress % 4;
             if (delta != 0) {
                 relativeByteAddress += (4 - delta) << 1;
             }
+        } else {
+            relativeByteAddress = address - storage.getBaseAddress();
         }
         for (bytePositionInValue = 3; bytePositionInValue > loopStopper; bytePositionInValue--) {
             bytePositionInMemory = relativeByteAddress % 4;
             relativeWordAddress = relativeByteAddress >> 2;
-            block = relativeWordAddress / BLOCK_LENGTH_WORDS;  // Block number
-            offset = relativeWordAddress % BLOCK_LENGTH_WORDS; // Word within that block
-            if (blockTable[block] == null) {
-                if (op == STORE)
-                    blockTable[block] = new int[BLOCK_LENGTH_WORDS];
-                else
-                    return 0;
-            }
             if (byteOrder == LITTLE_ENDIAN) bytePositionInMemory = 3 - bytePositionInMemory;
             if (op == STORE) {
-                oldValue = replaceByte(blockTable[block][offset], bytePositionInMemory,
+                word = storage.fetchWord(relativeWordAddress);
+                oldValue = replaceByte(word, bytePositionInMemory,
                         oldValue, bytePositionInValue);
-                blockTable[block][offset] = replaceByte(value, bytePositionInValue,
-                        blockTable[block][offset], bytePositionInMemory);
+                storage.storeWord(relativeWordAddress, replaceByte(value, bytePositionInValue,
+                        word, bytePositionInMemory));
             } else {// op == FETCH
-                value = replaceByte(blockTable[block][offset], bytePositionInMemory,
+                Integer fetched = storage.fetchWordOrNull(relativeWordAddress);
+                if (fetched == null) {
+                    return 0;
+                }
+                value = replaceByte(fetched, bytePositionInMemory,
                         value, bytePositionInValue);
             }
             relativeByteAddress++;
@@ -1349,74 +1972,6 @@ public class Memory extends Observable {
         return (op == STORE) ? oldValue : value;
     }
 
-    ////////////////////////////////////////////////////////////////////////////////
-    //
-    // Helper method to store 4 byte value in table that represents MIPS memory.
-    // Originally used just for data segment, but now also used for stack.
-    // Both use different tables but same storage method and same table size
-    // and block size.  Assumes address is word aligned, no endian processing.
-    // Modified 29 Dec 2005 to return overwritten value.
-
-    private synchronized int storeWordInTable(int[][] blockTable, int relative, int value) {
-        int block, offset, oldValue;
-        block = relative / BLOCK_LENGTH_WORDS;
-        offset = relative % BLOCK_LENGTH_WORDS;
-        if (blockTable[block] == null) {
-            // First time writing to this block, so allocate the space.
-            blockTable[block] = new int[BLOCK_LENGTH_WORDS];
-        }
-        oldValue = blockTable[block][offset];
-        blockTable[block][offset] = value;
-        return oldValue;
-    }
-
-    ////////////////////////////////////////////////////////////////////////////////
-    //
-    // Helper method to fetch 4 byte value from table that represents MIPS memory.
-    // Originally used just for data segment, but now also used for stack.
-    // Both use different tables but same storage method and same table size
-    // and block size.  Assumes word alignment, no endian processing.
-    //
-
-    private synchronized int fetchWordFromTable(int[][] blockTable, int relative) {
-        int value = 0;
-        int block, offset;
-        block = relative / BLOCK_LENGTH_WORDS;
-        offset = relative % BLOCK_LENGTH_WORDS;
-        if (blockTable[block] == null) {
-            // first reference to an address in this block.  Assume initialized to 0.
-        } else {
-            value = blockTable[block][offset];
-        }
-        return value;
-    }
-
-    ////////////////////////////////////////////////////////////////////////////////
-    //
-    // Helper method to fetch 4 byte value from table that represents MIPS memory.
-    // Originally used just for data segment, but now also used for stack.
-    // Both use different tables but same storage method and same table size
-    // and block size.  Assumes word alignment, no endian processing.
-    //
-    // This differs from "fetchWordFromTable()" in that it returns an Integer and
-    // returns null instead of 0 if the 4K table has not been allocated.  Developed
-    // by Greg Gibeling of UC Berkeley, fall 2007.
-    //
-
-    private synchronized Integer fetchWordOrNullFromTable(int[][] blockTable, int relative) {
-        int value;
-        int block, offset;
-        block = relative / BLOCK_LENGTH_WORDS;
-        offset = relative % BLOCK_LENGTH_WORDS;
-        if (blockTable[block] == null) {
-            // first reference to an address in this block.  Assume initialized to 0.
-            return null;
-        } else {
-            value = blockTable[block][offset];
-        }
-        return value;
-    }
-
     ////////////////////////////////////////////////////////////////////////////////////
     // Returns result of substituting specified byte of source value into specified byte
     // of destination value. Byte positions are 0-1-2-3, listed from most to least
@@ -0,0 +1,212 @@
+package mars.mips.hardware;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Alternative to Observer registration for clients that need to see every memory
+ * access made by the running MIPS program but do not need to react to each one
+ * immediately, such as the cache simulator or instruction statistics tools.
+ * <p>
+ * Each access is recorded as four ints (access type, address, length, value) in a
+ * fixed-size ring buffer, without creating a MemoryAccessNotice.  A separate consumer
+ * thread drains the buffer and hands the records to the Listener in batches.  If the
+ * buffer fills up, the MIPS thread waits for the consumer to catch up, so no record is
+ * lost.  Only accesses made by the MIPS thread are recorded, corresponding to
+ * filtering notices with <code>AccessNotice.accessIsFromMIPS()</code>.
+ * <p>
+ * Register a stream with <code>Memory.addAccessStream()</code> after calling
+ * <code>start()</code>, and call <code>stop()</code> after removing it with
+ * <code>Memory.deleteAccessStream()</code>.  If the listener throws a RuntimeException, the
+ * batch is skipped and the stream carries on; the first such exception is kept for the
+ * client to report (see <code>getFailure()</code>).
+ *
+ * @version October 2026
+ */
+
+public class MemoryAccessStream {
+    /**
+     * Receives batches of recorded memory accesses on the stream's consumer thread.
+     */
+    public interface Listener {
+        /**
+         * Process a batch of recorded accesses.  The batch is only valid until this method returns.
+         *
+         * @param batch the accesses recorded since the previous batch, oldest first
+         */
+        void processMemoryAccesses(Batch batch);
+    }
+
+    private static final int DEFAULT_CAPACITY = 1 << 16; // records; must be power of 2
+    private static final long IDLE_WAIT_NANOS = 1000000; // consumer poll interval when buffer empty
+
+    private final int[] types;
+    private final int[] addresses;
+    private final int[] lengths;
+    private final int[] values;
+    private final int mask;
+    private final Listener listener;
+    private final Batch batch;
+    // Sequence numbers.  head is only written by the MIPS thread, tail only by the consumer.
+    private volatile long head = 0;
+    private volatile long tail = 0;
+    private volatile boolean running = false;
+    private volatile RuntimeException failure = null;
+    private Thread consumer = null;
+
+    /**
+     * Create a stream with the default buffer capacity (65536 records).
+     *
+     * @param listener receives the recorded accesses
+     */
+    public MemoryAccessStream(Listener listener) {
+        this(listener, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a stream with the given buffer capacity.
+     *
+     * @param listener receives the recorded accesses
+     * @param capacity number of records the buffer holds; rounded up to a power of 2
+     */
+    public MemoryAccessStream(Listener listener, int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.types = new int[size];
+        this.addresses = new int[size];
+        this.lengths = new int[size];
+        this.values = new int[size];
+        this.mask = size - 1;
+        this.listener = listener;
+        this.batch = new Batch();
+    }
+
+    /**
+     * Start the consumer thread.
+     */
+    public synchronized void start() {
+        if (consumer == null) {
+            running = true;
+            consumer = new Thread(this::drain, "MemoryAccessStream");
+            consumer.setDaemon(true);
+            consumer.start();
+        }
+    }
+
+    /**
+     * Stop the consumer thread after it has passed any records still in the buffer
+     * to the listener.  Records arriving after this call are ignored.
+     */
+    public synchronized void stop() {
+        if (consumer != null) {
+            running = false;
+            LockSupport.unpark(consumer);
+            if (consumer != Thread.currentThread()) {
+                try {
+                    consumer.join();
+                } catch (InterruptedException ignored) {
+                }
+            }
+            consumer = null;
+        }
+    }
+
+    /**
+     * @return the first RuntimeException thrown by the listener, or null if none has been
+     */
+    public RuntimeException getFailure() {
+        return failure;
+    }
+
+    // Called by Memory, on the MIPS thread, for each access in a registered range.
+    void record(int type, int address, int length, int value) {
+        long h = head;
+        while (h - tail > mask) {
+            // Buffer full.  Wait for the consumer, unless there no longer is one.
+            if (!running) {
+                return;
+            }
+            Thread.yield();
+        }
+        int i = (int) h & mask;
+        types[i] = type;
+        addresses[i] = address;
+        lengths[i] = length;
+        values[i] = value;
+        head = h + 1; // volatile write publishes the record to the consumer
+    }
+
+    // Body of the consumer thread.
+    private void drain() {
+        while (true) {
+            long h = head;
+            long t = tail;
+            if (h == t) {
+                if (!running) {
+                    return;
+                }
+                LockSupport.parkNanos(IDLE_WAIT_NANOS);
+                continue;
+            }
+            batch.first = t;
+            batch.size = (int) (h - t);
+            try {
+                listener.processMemoryAccesses(batch);
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e; // don't let one bad batch stop the stream
+                }
+            }
+            tail = h;
+        }
+    }
+
+    /**
+     * A batch of recorded accesses, a view onto part of the stream's buffer.  Records
+     * are indexed from 0 (oldest) to size()-1 (newest).
+     */
+    public class Batch {
+        private long first;
+        private int size;
+
+        private Batch() {
+        }
+
+        /**
+         * @return number of records in this batch
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @param i record index
+         * @return access type of record, either AccessNotice.READ or AccessNotice.WRITE
+         */
+        public int getAccessType(int i) {
+            return types[(int) (first + i) & mask];
+        }
+
+        /**
+         * @param i record index
+         * @return memory address accessed
+         */
+        public int getAddress(int i) {
+            return addresses[(int) (first + i) & mask];
+        }
+
+        /**
+         * @param i record index
+         * @return length in bytes of the access (4, 2, 1)
+         */
+        public int getLength(int i) {
+            return lengths[(int) (first + i) & mask];
+        }
+
+        /**
+         * @param i record index
+         * @return value read or written
+         */
+        public int getValue(int i) {
+            return values[(int) (first + i) & mask];
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package mars.mips.hardware;
+
+/**
+ * Storage for one segment of simulated MIPS data memory (data segment, stack, memory
+ * mapped I/O or kernel data segment).  The segment is seen as an array of 32-bit words
+ * indexed from the segment's base address; for a segment that grows downward, such as
+ * the stack, index 0 is the word at the base address and indexes increase toward lower
+ * addresses.  Words never written read as 0.
+ * <p>
+ * Memory decodes an address to its segment once, then works on the backend only through
+ * word indexes.  Byte and halfword accesses are made by Memory from word fetches and stores,
+ * so a backend only needs to supply the three word operations.  Implementations do not
+ * synchronize on each access; Memory is used by one simulation thread at a time.
+ *
+ * @version October 2026
+ */
+
+public abstract class MemoryBackend {
+    private final int baseAddress;
+    private final boolean descending;
+
+    /**
+     * @param baseAddress address of the word at index 0
+     * @param descending  true if word indexes increase toward lower addresses (stack)
+     */
+    protected MemoryBackend(int baseAddress, boolean descending) {
+        this.baseAddress = baseAddress;
+        this.descending = descending;
+    }
+
+    /**
+     * @return address of the word at index 0
+     */
+    public int getBaseAddress() {
+        return baseAddress;
+    }
+
+    /**
+     * @return true if word indexes increase toward lower addresses, as for the stack
+     */
+    public boolean isDescending() {
+        return descending;
+    }
+
+    /**
+     * Get index of the word containing the given byte address.
+     *
+     * @param address a byte address within this segment
+     * @return index of the word holding that byte
+     */
+    public final int getWordIndex(int address) {
+        return descending ? (baseAddress - (address & ~3)) >> 2 : ((address & ~3) - baseAddress) >> 2;
+    }
+
+    /**
+     * Fetch the word at given index.
+     *
+     * @param index word index
+     * @return the word, 0 if never written
+     */
+    public abstract int fetchWord(int index);
+
+    /**
+     * Fetch the word at given index, or null if the storage for it has not been allocated
+     * (used by memory dumps to find the extent of used memory).
+     *
+     * @param index word index
+     * @return the word, or null if its storage has never been written to
+     */
+    public abstract Integer fetchWordOrNull(int index);
+
+    /**
+     * Store a word at given index.
+     *
+     * @param index word index
+     * @param value new value
+     * @return previous value of the word
+     */
+    public abstract int storeWord(int index, int value);
+
+    /**
+     * Fetch consecutive words, from the given index upward, into an array.  By default
+     * fetches each word with fetchWord(); implementations override it to copy whole blocks.
+     *
+     * @param index  word index of the first word
+     * @param words  array to hold the words
+     * @param offset index in the array of the first word
+     * @param count  number of words to fetch
+     */
+    public void fetchWords(int index, int[] words, int offset, int count) {
+        for (int i = 0; i < count; i++) {
+            words[offset + i] = fetchWord(index + i);
+        }
+    }
+
+    /**
+     * Fetch consecutive words, from the given index upward, up to the first one whose
+     * storage has not been allocated (that fetchWordOrNull() would return null for).
+     *
+     * @param index  word index of the first word
+     * @param words  array to hold the words
+     * @param offset index in the array of the first word
+     * @param count  number of words to fetch at most
+     * @return number of words fetched
+     */
+    public int fetchAllocatedWords(int index, int[] words, int offset, int count) {
+        for (int i = 0; i < count; i++) {
+            Integer word = fetchWordOrNull(index + i);
+            if (word == null) {
+                return i;
+            }
+            words[offset + i] = word;
+        }
+        return count;
+    }
+
+    /**
+     * Store consecutive words, from the given index upward, from an array.  By default
+     * stores each word with storeWord(); implementations override it to copy whole blocks.
+     *
+     * @param index  word index of the first word
+     * @param words  array holding the words
+     * @param offset index in the array of the first word
+     * @param count  number of words to store
+     */
+    public void storeWords(int index, int[] words, int offset, int count) {
+        for (int i = 0; i < count; i++) {
+            storeWord(index + i, words[offset + i]);
+        }
+    }
+
+    /**
+     * Release any resources held outside the Java heap, such as open files.  Called when
+     * Memory replaces this backend; it is not used afterward.  By default does nothing.
+     */
+    public void release() {
+    }
+}
@@ -41,18 +41,42 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 
 
 public class MemoryConfiguration {
+    /**
+     * Segment contents held in Java heap arrays allocated in 4K byte blocks.  Each
+     * data segment is limited to 4 MB.
+     */
+    public static final int HEAP_STORAGE = 0;
+    /**
+     * Segment contents held in direct (off-heap) buffers allocated in 1 MB chunks.
+     */
+    public static final int DIRECT_BUFFER_STORAGE = 1;
+    /**
+     * Segment contents held in temporary files mapped into memory in 1 MB chunks.
+     */
+    public static final int MAPPED_FILE_STORAGE = 2;
+
     // Identifier is used for saving setting; name is used for display
     private final String configurationIdentifier;
     private final String configurationName;
     private final String[] configurationItemNames;
     private final int[] configurationItemValues;
+    private final int storage;
 
 
     public MemoryConfiguration(String ident, String name, String[] items, int[] values) {
+        this(ident, name, items, values, HEAP_STORAGE);
+    }
+
+    /**
+     * @param storage how data segments are stored: HEAP_STORAGE, DIRECT_BUFFER_STORAGE
+     *                or MAPPED_FILE_STORAGE
+     */
+    public MemoryConfiguration(String ident, String name, String[] items, int[] values, int storage) {
         this.configurationIdentifier = ident;
         this.configurationName = name;
         this.configurationItemNames = items;
         this.configurationItemValues = values;
+        this.storage = storage;
     }
 
     public String getConfigurationIdentifier() {
@@ -71,6 +95,14 @@ public class MemoryConfiguration {
         return configurationItemNames;
     }
 
+    /**
+     * @return how data segments (data, stack, kernel data, MMIO) are stored; one of
+     * HEAP_STORAGE, DIRECT_BUFFER_STORAGE or MAPPED_FILE_STORAGE
+     */
+    public int getStorage() {
+        return storage;
+    }
+
     public int getTextBaseAddress() {
         return configurationItemValues[0];
     }
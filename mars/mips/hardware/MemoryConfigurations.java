@@ -44,7 +44,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 
 public class MemoryConfigurations {
 
-    private static ArrayList configurations = null;
+    private static ArrayList<MemoryConfiguration> configurations = null;
     private static MemoryConfiguration defaultConfiguration;
     private static MemoryConfiguration currentConfiguration;
 
@@ -153,6 +153,34 @@ public class MemoryConfigurations {
     };
 
 
+    // Large keeps the default layout but gives the data segment (including heap) 256 MB
+    // and the stack 256 MB.  Too large for heap block tables, so only offered with
+    // off-heap storage.
+    private static final int[] largeConfigurationItemValues = {
+            0x00400000, // .text Base Address
+            0x10000000, // Data Segment base address
+            0x10000000, // .extern Base Address
+            0x10008000, // Global Pointer $gp)
+            0x10010000, // .data base Address
+            0x10040000, // heap base address
+            0x7fffeffc, // stack pointer $sp (from SPIM not MIPS)
+            0x7ffffffc, // stack base address
+            0x7fffffff, // highest address in user space
+            0x80000000, // lowest address in kernel space
+            0x80000000, // .ktext base address
+            0x80000180, // exception handler address
+            0x90000000, // .kdata base address
+            0xffff0000, // MMIO base address
+            0xffffffff, // highest address in kernel (and memory)
+            0x20000000, // data segment limit address
+            0x0ffffffc, // text limit address
+            0x90400000, // kernel data segment limit address
+            0x8ffffffc, // kernel text limit address
+            0x6ffffffc, // stack limit address
+            0xffffffff  // memory map limit address
+    };
+
+
     public MemoryConfigurations() {
 
     }
@@ -160,11 +188,15 @@ public class MemoryConfigurations {
 
     public static void buildConfigurationCollection() {
         if (configurations == null) {
-            configurations = new ArrayList();
+            configurations = new ArrayList<>();
             configurations.add(new MemoryConfiguration("Default", "Default", configurationItemNames, defaultConfigurationItemValues));
             configurations.add(new MemoryConfiguration("CompactDataAtZero", "Compact, Data at Address 0", configurationItemNames, dataBasedCompactConfigurationItemValues));
             configurations.add(new MemoryConfiguration("CompactTextAtZero", "Compact, Text at Address 0", configurationItemNames, textBasedCompactConfigurationItemValues));
-            defaultConfiguration = (MemoryConfiguration) configurations.get(0);
+            configurations.add(new MemoryConfiguration("LargeDirect", "Large, Off-Heap Buffers", configurationItemNames, largeConfigurationItemValues,
+                    MemoryConfiguration.DIRECT_BUFFER_STORAGE));
+            configurations.add(new MemoryConfiguration("LargeMapped", "Large, Memory-Mapped Files", configurationItemNames, largeConfigurationItemValues,
+                    MemoryConfiguration.MAPPED_FILE_STORAGE));
+            defaultConfiguration = configurations.get(0);
             currentConfiguration = defaultConfiguration;
             // Get current config from settings
             //String currentConfigurationIdentifier = Globals.getSettings().getMemoryConfiguration();
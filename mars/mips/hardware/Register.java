@@ -46,6 +46,10 @@ public class Register extends Observable {
     // are the only methods here used by the register collection
     // (RegisterFile, Coprocessor0, Coprocessor1) methods.
     private volatile int value;
+    // True while at least one Observer is registered.  Checked on every
+    // getValue and setValue so that an unobserved register does not pay
+    // for Observable's synchronized countObservers() or for allocating notices.
+    private volatile boolean observed = false;
 
     /**
      * Creates a new register with specified name, number, and value.
@@ -79,8 +83,8 @@ public class Register extends Observable {
      * @return value The value of the Register.
      */
 
-    public synchronized int getValue() {
-        notifyAnyObservers(AccessNotice.READ);
+    public int getValue() {
+        if (observed) notifyAnyObservers(AccessNotice.READ);
         return value;
     }
 
@@ -92,7 +96,7 @@ public class Register extends Observable {
      * @return value The value of the Register.
      */
 
-    public synchronized int getValueNoNotify() {
+    public int getValueNoNotify() {
         return value;
     }
 
@@ -125,10 +129,10 @@ public class Register extends Observable {
      * @return previous value of register
      */
 
-    public synchronized int setValue(int val) {
+    public int setValue(int val) {
         int old = value;
         value = val;
-        notifyAnyObservers(AccessNotice.WRITE);
+        if (observed) notifyAnyObservers(AccessNotice.WRITE);
         return old;
     }
 
@@ -150,6 +154,38 @@ public class Register extends Observable {
         resetValue = reset;
     }
 
+    /**
+     * Adds an observer to be notified of accesses to this register.  Overridden only
+     * to keep track of whether anyone is observing.
+     *
+     * @param o the observer to be added
+     */
+    @SuppressWarnings("deprecation")
+    public synchronized void addObserver(Observer o) {
+        super.addObserver(o);
+        observed = this.countObservers() > 0;
+    }
+
+    /**
+     * Deletes an observer of this register.  Overridden only to keep track of
+     * whether anyone is observing.
+     *
+     * @param o the observer to be deleted
+     */
+    @SuppressWarnings("deprecation")
+    public synchronized void deleteObserver(Observer o) {
+        super.deleteObserver(o);
+        observed = this.countObservers() > 0;
+    }
+
+    /**
+     * Deletes all observers of this register.
+     */
+    public synchronized void deleteObservers() {
+        super.deleteObservers();
+        observed = false;
+    }
+
     //
     // Method to notify any observers of register operation that has just occurred.
     //
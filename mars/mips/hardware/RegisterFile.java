@@ -97,17 +97,12 @@ public class RegisterFile {
         int old = 0;
         if (num == 0) {
             //System.out.println("You can not change the value of the zero register.");
-        } else {
-            for (Register aRegFile : regFile) {
-                if (aRegFile.getNumber() == num) {
-                    old = (Globals.getSettings().getBackSteppingEnabled())
-                            ? Globals.program.getBackStepper().addRegisterFileRestore(num, aRegFile.setValue(val))
-                            : aRegFile.setValue(val);
-                    break;
-                }
-            }
-        }
-        if (num == 33) {//updates the hi register
+        } else if (num > 0 && num < regFile.length) {
+            // Register number is its position in regFile, so no need to search for it.
+            old = (Globals.getSettings().getBackSteppingEnabled())
+                    ? Globals.program.getBackStepper().addRegisterFileRestore(num, regFile[num].setValue(val))
+                    : regFile[num].setValue(val);
+        } else if (num == 33) {//updates the hi register
             old = (Globals.getSettings().getBackSteppingEnabled())
                     ? Globals.program.getBackStepper().addRegisterFileRestore(num, hi.setValue(val))
                     : hi.setValue(val);
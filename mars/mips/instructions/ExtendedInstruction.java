@@ -68,7 +68,6 @@ public class ExtendedInstruction extends Instruction {
         this.exampleFormat = example;
         this.description = description;
         this.mnemonic = this.extractOperator(example);
-        this.createExampleTokenList();
         this.translationStrings = buildTranslationList(translation);
         this.compactTranslationStrings = buildTranslationList(compactTranslation);
     }
@@ -86,7 +85,6 @@ public class ExtendedInstruction extends Instruction {
         this.exampleFormat = example;
         this.description = description;
         this.mnemonic = this.extractOperator(example);
-        this.createExampleTokenList();
         this.translationStrings = buildTranslationList(translation);
         this.compactTranslationStrings = null;
     }
@@ -148,4 +148,12 @@ public abstract class Instruction {
             System.out.println("CONFIGURATION ERROR: Instruction example \"" + exampleFormat + "\" contains invalid token(s).");
         }
     }
+
+    /**
+     * Used to install a token list for the example instruction that was created
+     * earlier, such as one read from an instruction set snapshot.
+     **/
+    void setExampleTokenList(TokenList tokens) {
+        tokenList = tokens;
+    }
 }
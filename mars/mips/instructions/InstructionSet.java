@@ -41,6 +41,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  * The list of Instruction objects, each of which represents a MIPS instruction.
  * The instruction may either be basic (translates into binary machine code) or
  * extended (translates into sequence of one or more basic instructions).
+ * <p>
+ * Once populated, an instruction set does not change, so one set can be shared by
+ * any number of assemble and simulate operations.  Populating it is done once per
+ * MARS session (see Globals.initialize) and uses a precomputed snapshot of the
+ * instruction example token lists when available (see InstructionSetSnapshot).
  *
  * @author Pete Sanderson and Ken Vollmar
  * @version August 2003-5
@@ -48,34 +53,58 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 
 public class InstructionSet {
     private final ArrayList instructionList;
+    private final List<?> unmodifiableInstructionList;
     private ArrayList opcodeMatchMaps;
     private SyscallLoader syscallLoader;
+    // Instructions by lower case mnemonic, each list in instruction list order.  The
+    // sorted copy answers prefix queries, and each instruction's position in the
+    // instruction list puts their results back in that order.  Built once all
+    // instructions are added.
+    private HashMap<String, ArrayList<Object>> operatorIndex;
+    private TreeMap<String, ArrayList<Object>> sortedOperatorIndex;
+    private IdentityHashMap<Object, Integer> listPositions;
 
     /**
      * Creates a new InstructionSet object.
      */
     public InstructionSet() {
         instructionList = new ArrayList();
-
+        unmodifiableInstructionList = Collections.unmodifiableList((List<?>) instructionList);
     }
 
     /**
-     * Retrieve the current instruction set.
+     * Retrieve the current instruction set.  The list cannot be modified.
      */
-    public ArrayList getInstructionList() {
-        return instructionList;
+    public List<?> getInstructionList() {
+        return unmodifiableInstructionList;
 
     }
 
     /**
      * Adds all instructions to the set.  A given extended instruction may have
      * more than one Instruction object, depending on how many formats it can have.
+     * Has no effect if the set has already been populated.
      *
+     * @throws IllegalStateException if the pseudo-instructions or syscalls cannot be loaded
+     *                               or are misconfigured
      * @see Instruction
      * @see BasicInstruction
      * @see ExtendedInstruction
      */
     public void populate() {
+        populate(true);
+    }
+
+    /**
+     * Adds all instructions to the set, as for populate(), optionally taking example
+     * token lists from the instruction set snapshot instead of tokenizing the examples.
+     *
+     * @param useSnapshot true to use the snapshot if it is present and up to date
+     */
+    void populate(boolean useSnapshot) {
+        if (opcodeMatchMaps != null) {
+            return;
+        }
         /* Here is where the parade begins.  Every instruction is added to the set here.*/
 
         // ////////////////////////////////////   BASIC INSTRUCTIONS START HERE ////////////////////////////////
@@ -2347,15 +2376,29 @@ public class InstructionSet {
         ////////////// READ PSEUDO-INSTRUCTION SPECS FROM DATA FILE AND ADD //////////////////////
         addPseudoInstructions();
 
+        // Index the mnemonics before tokenizing the examples below, which looks them up.
+        HashMap<String, ArrayList<Object>> index = new HashMap<>();
+        listPositions = new IdentityHashMap<>();
+        for (Object instruction : instructionList) {
+            index.computeIfAbsent(((Instruction) instruction).getName().toLowerCase(Locale.ROOT), k -> new ArrayList<>())
+                    .add(instruction);
+            listPositions.put(instruction, listPositions.size());
+        }
+        sortedOperatorIndex = new TreeMap<>(index);
+        operatorIndex = index;
+
         ////////////// GET AND CREATE LIST OF SYSCALL FUNCTION OBJECTS ////////////////////
         syscallLoader = new SyscallLoader();
         syscallLoader.loadSyscalls();
 
         // Initialization step.  Create token list for each instruction example.  This is
-        // used by parser to determine user program correct syntax.
-        for (Object anInstructionList : instructionList) {
-            Instruction inst = (Instruction) anInstructionList;
-            inst.createExampleTokenList();
+        // used by parser to determine user program correct syntax.  Done only now that
+        // all operators are known, since tokenizing recognizes them.
+        if (!useSnapshot || !InstructionSetSnapshot.load(instructionList)) {
+            for (Object anInstructionList : instructionList) {
+                Instruction inst = (Instruction) anInstructionList;
+                inst.createExampleTokenList();
+            }
         }
 
         HashMap maskMap = new HashMap();
@@ -2399,9 +2442,8 @@ public class InstructionSet {
             is = this.getClass().getResourceAsStream("/PseudoOps.txt");
             in = new BufferedReader(new InputStreamReader(is));
         } catch (NullPointerException e) {
-            System.out.println(
+            throw new IllegalStateException(
                     "Error: MIPS pseudo-instruction file PseudoOps.txt not found.");
-            System.exit(0);
         }
         try {
             String line;
@@ -2447,27 +2489,30 @@ public class InstructionSet {
             }
             in.close();
         } catch (IOException ioe) {
-            System.out.println(
+            throw new IllegalStateException(
                     "Internal Error: MIPS pseudo-instructions could not be loaded.");
-            System.exit(0);
         } catch (Exception ioe) {
-            System.out.println(
+            throw new IllegalStateException(
                     "Error: Invalid MIPS pseudo-instruction specification.");
-            System.exit(0);
         }
 
     }
 
     /**
      * Given an operator mnemonic, will return the corresponding Instruction object(s)
-     * from the instruction set.  Uses straight linear search technique.
+     * from the instruction set.  Case-insensitive.  Uses a hash index of the mnemonics
+     * once the set is populated.
      *
      * @param name operator mnemonic (e.g. addi, sw,...)
      * @return list of corresponding Instruction object(s), or null if not found.
      */
     public ArrayList matchOperator(String name) {
+        if (operatorIndex != null) {
+            ArrayList<Object> matches = operatorIndex.get(name.toLowerCase(Locale.ROOT));
+            return (matches == null) ? null : new ArrayList<>(matches);
+        }
         ArrayList matchingInstructions = null;
-        // Linear search for now....
+        // Linear search if not populated yet.
         for (Object anInstructionList : instructionList) {
             if (((Instruction) anInstructionList).getName().equalsIgnoreCase(name)) {
                 if (matchingInstructions == null)
@@ -2482,15 +2527,31 @@ public class InstructionSet {
     /**
      * Given a string, will return the Instruction object(s) from the instruction
      * set whose operator mnemonic prefix matches it.  Case-insensitive.  For example
-     * "s" will match "sw", "sh", "sb", etc.  Uses straight linear search technique.
+     * "s" will match "sw", "sh", "sb", etc.  Matches are in instruction set order.  Uses
+     * the sorted mnemonic index once the set is populated, so only matching mnemonics are
+     * visited.
      *
      * @param name a string
      * @return list of matching Instruction object(s), or null if none match.
      */
     public ArrayList prefixMatchOperator(String name) {
         ArrayList matchingInstructions = null;
-        // Linear search for now....
-        if (name != null) {
+        if (name != null && sortedOperatorIndex != null) {
+            String prefix = name.toLowerCase(Locale.ROOT);
+            ArrayList<Object> matches = null;
+            for (Map.Entry<String, ArrayList<Object>> entry : sortedOperatorIndex.tailMap(prefix).entrySet()) {
+                if (!entry.getKey().startsWith(prefix)) {
+                    break;
+                }
+                if (matches == null)
+                    matches = new ArrayList<>();
+                matches.addAll(entry.getValue());
+            }
+            if (matches != null) {
+                matches.sort(Comparator.comparingInt(listPositions::get));
+            }
+            matchingInstructions = matches;
+        } else if (name != null) {
             for (Object anInstructionList : instructionList) {
                 if (((Instruction) anInstructionList).getName().toLowerCase().startsWith(name.toLowerCase())) {
                     if (matchingInstructions == null)
@@ -2502,6 +2563,23 @@ public class InstructionSet {
         return matchingInstructions;
     }
 
+    /**
+     * Get the syscall services invoked by the running program since the instruction
+     * set was populated or the counts were last reset, and how many times each was.
+     *
+     * @return invocation count of each service invoked at least once, in order of service number
+     */
+    public Map<Syscall, Long> getSyscallInvocationCounts() {
+        return syscallLoader.getInvocationCounts();
+    }
+
+    /**
+     * Set the invocation counts of all syscall services to 0.
+     */
+    public void resetSyscallInvocationCounts() {
+        syscallLoader.resetInvocationCounts();
+    }
+
    	/*
    	 * Method to find and invoke a syscall given its service number.  Each syscall
    	 * function is represented by an object in an array list.  Each object is of
@@ -2510,7 +2588,7 @@ public class InstructionSet {
 
     private void findAndSimulateSyscall(int number, ProgramStatement statement)
             throws ProcessingException {
-        Syscall service = syscallLoader.findSyscall(number);
+        Syscall service = syscallLoader.dispatch(number);
         if (service != null) {
             service.simulate(statement);
             return;
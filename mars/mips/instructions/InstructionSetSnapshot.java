@@ -0,0 +1,130 @@
+package mars.mips.instructions;
+
+import mars.Globals;
+import mars.assembler.Token;
+import mars.assembler.TokenList;
+import mars.assembler.TokenTypes;
+
+import java.io.*;
+import java.util.List;
+
+/**
+ * Saves and restores the example token lists of an instruction set, the most costly part
+ * of building it.  Every instruction example (e.g. "lw $t1,-100($t2)") is tokenized at
+ * startup so the parser can check statement syntax, and classifying each token searches
+ * the instruction set and register tables.  A snapshot holds those token lists in a
+ * compact binary form so that InstructionSet.populate() can read them instead.
+ * <p>
+ * A snapshot is made at build time by running this class (see CreateMarsJar) and is
+ * stored in the MARS jar as resource <tt>InstructionSet.snapshot</tt>.  Each entry
+ * holds the instruction example it was made from, and the whole snapshot is rejected
+ * unless every example matches the instruction set being populated, in the same order.
+ * Since the operator names are themselves taken from the examples, a snapshot that is
+ * accepted produces exactly the token lists that tokenizing would.  If the resource is
+ * missing or out of date, populate() tokenizes as before.
+ *
+ * @version October 2026
+ */
+
+public class InstructionSetSnapshot {
+    /**
+     * Name of the snapshot resource and of the file written by main().
+     */
+    public static final String RESOURCE_NAME = "InstructionSet.snapshot";
+    private static final int MAGIC = 0x4d415253; // "MARS"
+    private static final int FORMAT_VERSION = 1;
+
+    private InstructionSetSnapshot() {
+    }
+
+    /**
+     * Install example token lists from the snapshot resource, if there is one and it
+     * matches the given instructions.
+     *
+     * @param instructionList the instructions, in the order added to the instruction set
+     * @return true if every instruction received its token list, false if none did
+     */
+    static boolean load(List<?> instructionList) {
+        InputStream resource = InstructionSetSnapshot.class.getResourceAsStream("/" + RESOURCE_NAME);
+        if (resource == null) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(resource))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || in.readInt() != instructionList.size()) {
+                return false;
+            }
+            TokenList[] tokenLists = new TokenList[instructionList.size()];
+            for (int i = 0; i < tokenLists.length; i++) {
+                String example = in.readUTF();
+                if (!example.equals(((Instruction) instructionList.get(i)).getExampleFormat())) {
+                    return false;
+                }
+                TokenList tokens = new TokenList();
+                int count = in.readUnsignedShort();
+                for (int j = 0; j < count; j++) {
+                    TokenTypes type = TokenTypes.forName(in.readUTF());
+                    if (type == null) {
+                        return false;
+                    }
+                    tokens.add(new Token(type, in.readUTF(), null, 0, in.readInt()));
+                }
+                tokenLists[i] = tokens;
+            }
+            // Install only once the whole snapshot has been checked.
+            for (int i = 0; i < tokenLists.length; i++) {
+                ((Instruction) instructionList.get(i)).setExampleTokenList(tokenLists[i]);
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Write a snapshot of the example token lists of the given instructions.
+     *
+     * @param instructionList the instructions, each with its example token list
+     * @param out             stream to write snapshot to
+     * @throws IOException if the snapshot cannot be written
+     */
+    static void save(List<?> instructionList, OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeInt(FORMAT_VERSION);
+        data.writeInt(instructionList.size());
+        for (Object element : instructionList) {
+            Instruction instruction = (Instruction) element;
+            data.writeUTF(instruction.getExampleFormat());
+            TokenList tokens = instruction.getTokenList();
+            data.writeShort(tokens.size());
+            for (int i = 0; i < tokens.size(); i++) {
+                Token token = tokens.get(i);
+                data.writeUTF(token.getType().toString());
+                data.writeUTF(token.getValue());
+                data.writeInt(token.getStartPos());
+            }
+        }
+        data.flush();
+    }
+
+    /**
+     * Build the instruction set by tokenizing every example, and write its snapshot.
+     *
+     * @param args name of snapshot file to write; default is InstructionSet.snapshot
+     *             in the current directory
+     */
+    public static void main(String[] args) {
+        Globals.initialize(false);
+        InstructionSet instructionSet = new InstructionSet();
+        instructionSet.populate(false);
+        String fileName = (args.length > 0) ? args[0] : RESOURCE_NAME;
+        try (OutputStream out = new FileOutputStream(fileName)) {
+            save(instructionSet.getInstructionList(), out);
+        } catch (IOException e) {
+            System.out.println("Error writing instruction set snapshot " + fileName + ": " + e);
+            System.exit(1);
+        }
+        System.out.println("Wrote snapshot of " + instructionSet.getInstructionList().size()
+                + " instructions to " + fileName);
+    }
+}
@@ -51,7 +51,17 @@ class SyscallLoader {
     private static final String SYSCALL_ABSTRACT = "AbstractSyscall.class";
     private static final String CLASS_EXTENSION = "class";
 
+    // Service numbers above this, possible only through config file overrides, are
+    // kept out of the dispatch table so it stays small.
+    private static final int MAX_TABLE_NUMBER = 4095;
+
     private ArrayList syscallList;
+    // Built once loading is complete.  Each service has a position in services and
+    // invocationCounts; dispatchTable maps service number to position, or -1 if none.
+    private Syscall[] services;
+    private long[] invocationCounts;
+    private int[] dispatchTable;
+    private HashMap<Integer, Integer> otherNumbers; // service number -> position, numbers outside table
 
     /*
        *  Dynamically loads Syscalls into an ArrayList.  This method is adapted from
@@ -91,12 +101,36 @@ class SyscallLoader {
                                 findSyscall(syscall.getNumber()).getName());
                     }
                 } catch (Exception e) {
-                    System.out.println("Error instantiating Syscall from file " + file + ": " + e);
-                    System.exit(0);
+                    throw new IllegalStateException("Error instantiating Syscall from file " + file + ": " + e);
                 }
             }
         }
         processSyscallNumberOverrides(syscallList);
+        buildDispatchTable();
+    }
+
+    // Index services by number, so dispatch does not search.  Numbers are final once
+    // overrides are processed.
+    private void buildDispatchTable() {
+        services = ((List<?>) syscallList).toArray(new Syscall[0]);
+        invocationCounts = new long[services.length];
+        int maxNumber = -1;
+        for (Syscall service : services) {
+            if (service.getNumber() <= MAX_TABLE_NUMBER) {
+                maxNumber = Math.max(maxNumber, service.getNumber());
+            }
+        }
+        dispatchTable = new int[maxNumber + 1];
+        Arrays.fill(dispatchTable, -1);
+        otherNumbers = new HashMap<>();
+        for (int i = 0; i < services.length; i++) {
+            int number = services[i].getNumber();
+            if (number >= 0 && number < dispatchTable.length) {
+                dispatchTable[number] = i;
+            } else {
+                otherNumbers.put(number, i);
+            }
+        }
     }
 
     // Will get any syscall number override specifications from MARS config file and
@@ -117,9 +151,8 @@ class SyscallLoader {
                 }
             }
             if (!match) {
-                System.out.println("Error: syscall name '" + override.getName() +
+                throw new IllegalStateException("Error: syscall name '" + override.getName() +
                         "' in config file does not match any name in syscall list");
-                System.exit(0);
             }
         }
         // Wait until end to check for duplicate numbers.  To do so earlier
@@ -129,20 +162,22 @@ class SyscallLoader {
         // of a new Syscall subclass to the collection, even if the config file
         // does not contain any overrides.
         Syscall syscallA, syscallB;
-        boolean duplicates = false;
+        StringBuilder duplicates = new StringBuilder();
         for (int i = 0; i < syscallList.size(); i++) {
             syscallA = (Syscall) syscallList.get(i);
             for (int j = i + 1; j < syscallList.size(); j++) {
                 syscallB = (Syscall) syscallList.get(j);
                 if (syscallA.getNumber() == syscallB.getNumber()) {
-                    System.out.println("Error: syscalls " + syscallA.getName() + " and " +
+                    if (duplicates.length() > 0) {
+                        duplicates.append("\n");
+                    }
+                    duplicates.append("Error: syscalls " + syscallA.getName() + " and " +
                             syscallB.getName() + " are both assigned same number " + syscallA.getNumber());
-                    duplicates = true;
                 }
             }
         }
-        if (duplicates) {
-            System.exit(0);
+        if (duplicates.length() > 0) {
+            throw new IllegalStateException(duplicates.toString());
         }
     }
 
@@ -152,16 +187,62 @@ class SyscallLoader {
      */
     Syscall findSyscall(int number) {
         // linear search is OK since number of syscalls is small.
-        Syscall service, match = null;
         if (syscallList == null) {
             loadSyscalls();
         }
         for (Object aSyscallList : syscallList) {
-            service = (Syscall) aSyscallList;
+            Syscall service = (Syscall) aSyscallList;
             if (service.getNumber() == number) {
-                match = service;
+                return service;
             }
         }
-        return match;
+        return null;
+    }
+
+    /*
+     * Method to find the Syscall object to carry out a syscall instruction with the
+     * given service number, and count the invocation.  Returns null if there is none.
+     */
+    Syscall dispatch(int number) {
+        if (dispatchTable == null) {
+            loadSyscalls();
+        }
+        int position;
+        if (number >= 0 && number < dispatchTable.length) {
+            position = dispatchTable[number];
+        } else {
+            Integer other = otherNumbers.get(number);
+            position = (other == null) ? -1 : other;
+        }
+        if (position < 0) {
+            return null;
+        }
+        invocationCounts[position]++;
+        return services[position];
+    }
+
+    /*
+     * Services dispatched at least once since loading or the last reset, in order of
+     * service number, each with the number of times it was dispatched.
+     */
+    Map<Syscall, Long> getInvocationCounts() {
+        Map<Syscall, Long> counts = new TreeMap<>(Comparator.comparingInt(Syscall::getNumber));
+        if (dispatchTable != null) {
+            for (int i = 0; i < services.length; i++) {
+                if (invocationCounts[i] > 0) {
+                    counts.put(services[i], invocationCounts[i]);
+                }
+            }
+        }
+        return counts;
+    }
+
+    /*
+     * Set all invocation counts to 0.
+     */
+    void resetInvocationCounts() {
+        if (invocationCounts != null) {
+            Arrays.fill(invocationCounts, 0);
+        }
     }
 }
@@ -1,6 +1,7 @@
 package mars.mips.instructions.syscalls;
 
 import mars.mips.hardware.*;
+import mars.util.*;
 import mars.*;
 
 
@@ -63,7 +64,8 @@ public class SyscallMidiOut extends AbstractSyscall {
      * $a2=0, $a3=100.<br>
      * See MARS documentation elsewhere or www.midi.org for more information.  Note that the pitch,
      * instrument and volume value ranges 0-127 are from javax.sound.midi; actual MIDI instruments
-     * use the range 1-128.
+     * use the range 1-128.<br>
+     * With the virtual clock running, the call is recorded to its MIDI log instead of played.
      */
     public void simulate(ProgramStatement statement) {
         int pitch = RegisterFile.getValue(4); // $a0
@@ -74,7 +76,11 @@ public class SyscallMidiOut extends AbstractSyscall {
         if (duration < 0) duration = ToneGenerator.DEFAULT_DURATION;
         if (instrument < rangeLowEnd || instrument > rangeHighEnd) instrument = ToneGenerator.DEFAULT_INSTRUMENT;
         if (volume < rangeLowEnd || volume > rangeHighEnd) volume = ToneGenerator.DEFAULT_VOLUME;
-        new ToneGenerator().generateTone((byte) pitch, duration, (byte) instrument, (byte) volume);
+        if (VirtualClock.isRunning()) {
+            VirtualClock.recordMidi(getName(), pitch, duration, instrument, volume, false);
+        } else {
+            new ToneGenerator().generateTone((byte) pitch, duration, (byte) instrument, (byte) volume);
+        }
     }
 
 }
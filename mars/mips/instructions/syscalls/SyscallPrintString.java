@@ -50,16 +50,9 @@ public class SyscallPrintString extends AbstractSyscall {
      * Performs syscall function to print string stored starting at address in $a0.
      */
     public void simulate(ProgramStatement statement) throws ProcessingException {
-        int byteAddress = RegisterFile.getValue(4);
-        char ch;
         try {
-            ch = (char) Globals.memory.getByte(byteAddress);
             // won't stop until NULL byte reached!
-            while (ch != 0) {
-                SystemIO.printString(Character.toString(ch));
-                byteAddress++;
-                ch = (char) Globals.memory.getByte(byteAddress);
-            }
+            SystemIO.printStringAt(RegisterFile.getValue(4));
         } catch (AddressErrorException e) {
             throw new ProcessingException(statement, e);
         }
@@ -1,6 +1,7 @@
 package mars.mips.instructions.syscalls;
 
 import mars.mips.hardware.*;
+import mars.util.*;
 import mars.*;
 
 /*
@@ -48,14 +49,12 @@ public class SyscallSleep extends AbstractSyscall {
     /**
      * System call to cause the MARS Java thread to sleep for (at least) the specified number of milliseconds.
      * This timing will not be precise as the Java implementation will add some overhead.
+     * With the virtual clock running, advances the virtual time instead of sleeping.
      */
     public void simulate(ProgramStatement statement) {
         // Input arguments: $a0 is the length of time to sleep in milliseconds.
 
-        try {
-            Thread.sleep(RegisterFile.getValue(4)); // units of milliseconds  1000 millisec = 1 sec.
-        } catch (InterruptedException ignored) {
-        }
+        VirtualClock.sleep(RegisterFile.getValue(4)); // units of milliseconds  1000 millisec = 1 sec.
     }
 
 }
@@ -48,10 +48,10 @@ public class SyscallTime extends AbstractSyscall {
 
     /**
      * Performs syscall function to place current system time into $a0 (low order 32 bits)
-     * and $a1 (high order 32 bits).
+     * and $a1 (high order 32 bits).  With the virtual clock running, this is the virtual time.
      */
     public void simulate(ProgramStatement statement) {
-        long value = new java.util.Date().getTime();
+        long value = VirtualClock.currentTimeMillis();
         RegisterFile.updateRegister(4, Binary.lowOrderLongToInt(value)); // $a0
         RegisterFile.updateRegister(5, Binary.highOrderLongToInt(value)); // $a1
     }
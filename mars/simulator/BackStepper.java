@@ -34,6 +34,11 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 
 /**
  * Used to "step backward" through execution, undoing each instruction.
+ * <p>
+ * The undo actions for the most recent steps are kept here, enough for the last
+ * Globals.maximumBacksteps changes to registers and memory.  Earlier steps are reached
+ * through the ExecutionHistory, which restores the checkpoint before the wanted step and
+ * executes forward to it.
  *
  * @author Pete Sanderson
  * @version February 2006
@@ -41,7 +46,6 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 
 public class BackStepper {
     // The types of "undo" actions.  Under 1.5, these would be enumerated type.
-    // These fit better in the BackStep class below but inner classes cannot have static members.
     private static final int MEMORY_RESTORE_RAW_WORD = 0;
     private static final int MEMORY_RESTORE_WORD = 1;
     private static final int MEMORY_RESTORE_HALF = 2;
@@ -53,20 +57,41 @@ public class BackStepper {
     private static final int COPROC1_CONDITION_CLEAR = 8;
     private static final int COPROC1_CONDITION_SET = 9;
     private static final int DO_NOTHING = 10;  // instruction does not write anything.
+    // Added to the action if its instruction executed in the "delay slot" of a delayed branch.
+    private static final int IN_DELAY_SLOT = 0x100;
+    private static final int ACTION_MASK = 0xff;
 
-    // Flag to mark BackStep object as prepresenting specific situation: user manipulates
-    // memory/register value via GUI after assembling program but before running it.
+    // Flag to mark an action as not belonging to an instruction: user manipulates
+    // memory/register value via GUI, or a tool writes memory, between steps.
     private static final int NOT_PC_VALUE = -1;
 
     private boolean engaged;
-    private final BackstepStack backSteps;
-
-    // One can argue using java.util.Stack, given its clumsy implementation.
-    // A homegrown linked implementation will be more streamlined, but
-    // I anticipate that backstepping will only be used during timed
-    // (currently max 30 instructions/second) or stepped execution, where
-    // performance is not an issue.  Its Vector implementation may result
-    // in quicker garbage collection than a pure linked list implementation.
+    private final ExecutionHistory history;
+
+    // Undo actions, on a circular stack.  When full, the newly-pushed action overwrites the
+    // oldest one.  Each action is kept in parallel arrays rather than an object, and records
+    // the number of the step it belongs to.  All actions of a step are undone together, so
+    // once any action of a step has been overwritten, that step and those before it can only
+    // be reached through the history.  The stack is not synchronized: actions are pushed by
+    // the simulator while holding Globals.memoryAndRegistersLock, by tools that write memory
+    // while holding it, or from the GUI while the simulator is not running.
+    private final int capacity;
+    private final int[] actions;
+    private final int[] pcs;
+    private final int[] params1;
+    private final int[] params2;
+    private final long[] stepNumbers;
+    private int size;
+    private int top;
+    private long lostStep;
+
+    // Steps are numbered from 0 since assembly.  "step" is the number of steps executed,
+    // and so the number of the step being or next to be executed.
+    private long step;
+    private int stepPC;
+    private boolean inStep;
+    private boolean stepHasAction;
+    private Thread stepThread;
 
     /**
      * Create a fresh BackStepper.  It is enabled, which means all
@@ -75,7 +100,14 @@ public class BackStepper {
      */
     public BackStepper() {
         engaged = true;
-        backSteps = new BackstepStack();
+        capacity = Globals.maximumBacksteps;
+        actions = new int[capacity];
+        pcs = new int[capacity];
+        params1 = new int[capacity];
+        params2 = new int[capacity];
+        stepNumbers = new long[capacity];
+        restart(0);
+        history = new ExecutionHistory(this);
     }
 
     /**
@@ -102,7 +134,18 @@ public class BackStepper {
      * @return true if there are no steps to be undone, false otherwise.
      */
     public boolean notEmpty() {
-        return !backSteps.empty();
+        return hasRecentSteps() || history.canTravelTo(previousStep());
+    }
+
+    /**
+     * Test whether the latest step can be undone directly from the undo actions kept here.
+     * If not, but notEmpty() is true, backStep() executes forward from a checkpoint
+     * instead, without telling memory observers of the accesses made on the way.
+     *
+     * @return true if the latest step has its undo actions, false otherwise.
+     */
+    public boolean hasRecentSteps() {
+        return size > 0 && stepNumbers[top] > lostStep;
     }
 
     /**
@@ -114,7 +157,17 @@ public class BackStepper {
      */
     // Added 25 June 2007
     public boolean inDelaySlot() {
-        return notEmpty() && backSteps.peek().inDelaySlot;
+        return size > 0 && (actions[top] & IN_DELAY_SLOT) != 0;
+    }
+
+    /**
+     * Get the number of steps executed since the program was assembled, which is also the
+     * number of the step to be executed next.
+     *
+     * @return step count
+     */
+    public long getStepCount() {
+        return step;
     }
 
     /**
@@ -125,76 +178,168 @@ public class BackStepper {
     // Note that there may be more than one "step" in an instruction execution; for
     // instance the multiply, divide, and double-precision floating point operations
     // all store their result in register pairs which results in two store operations.
-    // Both must be undone transparently, so we need to detect that multiple steps happen
-    // together and carry out all of them here.
-    // Use a do-while loop based on the backstep's program statement reference.
+    // Both must be undone transparently, so all actions with the step number of the
+    // latest one are carried out here.
     public void backStep() {
-        if (engaged && !backSteps.empty()) {
-            ProgramStatement statement = backSteps.peek().ps;
-            engaged = false; // GOTTA DO THIS SO METHOD CALL IN SWITCH WILL NOT RESULT IN NEW ACTION ON STACK!
-            do {
-                BackStep step = backSteps.pop();
-            /*
-                System.out.println("backstep POP: action "+step.action+" pc "+mars.util.Binary.intToHexString(step.pc)+
-            	                   " source "+((step.ps==null)? "none":step.ps.getSource())+
-            							 " parm1 "+step.param1+" parm2 "+step.param2);
-            */
-                if (step.pc != NOT_PC_VALUE) {
-                    RegisterFile.setProgramCounter(step.pc);
-                }
-                try {
-                    switch (step.action) {
-                        case MEMORY_RESTORE_RAW_WORD:
-                            Globals.memory.setRawWord(step.param1, step.param2);
-                            break;
-                        case MEMORY_RESTORE_WORD:
-                            Globals.memory.setWord(step.param1, step.param2);
-                            break;
-                        case MEMORY_RESTORE_HALF:
-                            Globals.memory.setHalf(step.param1, step.param2);
-                            break;
-                        case MEMORY_RESTORE_BYTE:
-                            Globals.memory.setByte(step.param1, step.param2);
-                            break;
-                        case REGISTER_RESTORE:
-                            RegisterFile.updateRegister(step.param1, step.param2);
-                            break;
-                        case PC_RESTORE:
-                            RegisterFile.setProgramCounter(step.param1);
-                            break;
-                        case COPROC0_REGISTER_RESTORE:
-                            Coprocessor0.updateRegister(step.param1, step.param2);
-                            break;
-                        case COPROC1_REGISTER_RESTORE:
-                            Coprocessor1.updateRegister(step.param1, step.param2);
-                            break;
-                        case COPROC1_CONDITION_CLEAR:
-                            Coprocessor1.clearConditionFlag(step.param1);
-                            break;
-                        case COPROC1_CONDITION_SET:
-                            Coprocessor1.setConditionFlag(step.param1);
-                            break;
-                        case DO_NOTHING:
-                            break;
-                    }
-                } catch (Exception e) {
-                    // if the original action did not cause an exception this will not either.
-                    System.out.println("Internal MARS error: address exception while back-stepping.");
-                    System.exit(0);
+        if (!engaged) {
+            return;
+        }
+        if (!hasRecentSteps()) {
+            history.travelTo(previousStep());
+            return;
+        }
+        history.recordInputs();
+        long stepNumber = stepNumbers[top];
+        engaged = false; // GOTTA DO THIS SO METHOD CALL IN SWITCH WILL NOT RESULT IN NEW ACTION ON STACK!
+        history.setRestoring(true);
+        do {
+            int action = actions[top] & ACTION_MASK;
+            int pc = pcs[top];
+            int param1 = params1[top];
+            int param2 = params2[top];
+            top = (top + capacity - 1) % capacity;
+            size--;
+            if (pc != NOT_PC_VALUE) {
+                RegisterFile.setProgramCounter(pc);
+            }
+            try {
+                switch (action) {
+                    case MEMORY_RESTORE_RAW_WORD:
+                        Globals.memory.setRawWord(param1, param2);
+                        break;
+                    case MEMORY_RESTORE_WORD:
+                        Globals.memory.setWord(param1, param2);
+                        break;
+                    case MEMORY_RESTORE_HALF:
+                        Globals.memory.setHalf(param1, param2);
+                        break;
+                    case MEMORY_RESTORE_BYTE:
+                        Globals.memory.setByte(param1, param2);
+                        break;
+                    case REGISTER_RESTORE:
+                        RegisterFile.updateRegister(param1, param2);
+                        break;
+                    case PC_RESTORE:
+                        RegisterFile.setProgramCounter(param1);
+                        break;
+                    case COPROC0_REGISTER_RESTORE:
+                        Coprocessor0.updateRegister(param1, param2);
+                        break;
+                    case COPROC1_REGISTER_RESTORE:
+                        Coprocessor1.updateRegister(param1, param2);
+                        break;
+                    case COPROC1_CONDITION_CLEAR:
+                        Coprocessor1.clearConditionFlag(param1);
+                        break;
+                    case COPROC1_CONDITION_SET:
+                        Coprocessor1.setConditionFlag(param1);
+                        break;
+                    case DO_NOTHING:
+                        break;
                 }
-            } while (!backSteps.empty() && statement == backSteps.peek().ps);
-            engaged = true;  // RESET IT (was disabled at top of loop -- see comment)
+            } catch (Exception e) {
+                // if the original action did not cause an exception this will not either.
+                history.setRestoring(false);
+                engaged = true;
+                throw new IllegalStateException("Internal MARS error: address exception while back-stepping.", e);
+            }
+        } while (size > 0 && stepNumbers[top] == stepNumber);
+        history.setRestoring(false);
+        engaged = true;  // RESET IT (was disabled at top of loop -- see comment)
+        step = Math.max(stepNumber, 0);
+        inStep = false;
+        history.positionChanged();
+    }
+
+    /**
+     * Return to the state just before the given step was executed, by undoing steps
+     * or by executing forward from an earlier checkpoint.
+     *
+     * @param target number of the step, from 0 to the number of steps executed
+     * @return true if done, false if that step is not in the execution history
+     */
+    public boolean backStepTo(long target) {
+        return engaged && history.travelTo(target);
+    }
+
+    /**
+     * Return to the latest earlier point in the execution at which the program counter was
+     * at one of the given breakpoints, that is, where execution would have stopped.
+     *
+     * @param breakPoints breakpoint addresses
+     * @return true if done, false if no such point is in the execution history
+     */
+    public boolean backStepToBreakpoint(int[] breakPoints) {
+        return engaged && history.travelToBreakpoint(breakPoints);
+    }
+
+    /*
+     * Called by the simulator before executing each instruction, before incrementing the
+     * program counter.
+     */
+    void beginStep(int pc, ProgramStatement statement) {
+        startStep(pc);
+        history.beginStep(statement);
+    }
+
+    /*
+     * Called by the simulator after each instruction has been executed, including any
+     * delayed branch taken at the end of it.  Not called if execution ended during it.
+     */
+    void endStep() {
+        history.endStep();
+        finishStep();
+    }
+
+    /*
+     * Called by the simulator when an external interrupt is taken in place of the
+     * current instruction.
+     */
+    void addExternalInterrupt(int deviceInterruptCode) {
+        history.recordInterrupt(deviceInterruptCode);
+    }
+
+    // Step bookkeeping shared with the execution history, which executes steps itself.
+    void startStep(int pc) {
+        stepPC = pc;
+        stepHasAction = false;
+        stepThread = Thread.currentThread();
+        inStep = true;
+    }
+
+    void finishStep() {
+        // Every instruction gets at least one action, so that when the user is stepping
+        // backward through the program, instruction highlighting does not skip over
+        // instructions that do not write anything, such as "nop" and branches not taken.
+        if (!stepHasAction && engaged) {
+            push(DO_NOTHING, 0, 0);
         }
+        step++;
+        inStep = false;
+    }
+
+    boolean isBetweenSteps() {
+        return !inStep;
+    }
+
+    boolean isStepThread() {
+        return inStep && Thread.currentThread() == stepThread;
     }
-  
-     
-      /* Convenience method called below to get program counter value.  If it needs to be
-   	 * be modified (e.g. to subtract 4) that can be done here in one place.
-   	 */
-
-    private int pc() {
-        // PC incremented prior to instruction simulation, so need to adjust for that.
-        return RegisterFile.getProgramCounter() - Instruction.INSTRUCTION_LENGTH;
+
+    // Discard all undo actions and continue numbering from the given step.
+    void restart(long newStep) {
+        size = 0;
+        top = -1;
+        lostStep = -2;
+        step = newStep;
+        inStep = false;
+        stepHasAction = false;
+    }
+
+    // The step boundary that "back step" returns to: the start of the current step if
+    // execution ended during it, otherwise the start of the previous one.
+    private long previousStep() {
+        return inStep ? step : step - 1;
     }
 
     /**
@@ -206,7 +351,7 @@ public class BackStepper {
      * @return the argument value
      */
     public void addMemoryRestoreRawWord(int address, int value) {
-        backSteps.push(MEMORY_RESTORE_RAW_WORD, pc(), address, value);
+        push(MEMORY_RESTORE_RAW_WORD, address, value);
     }
 
     /**
@@ -218,7 +363,7 @@ public class BackStepper {
      * @return the argument value
      */
     public void addMemoryRestoreWord(int address, int value) {
-        backSteps.push(MEMORY_RESTORE_WORD, pc(), address, value);
+        push(MEMORY_RESTORE_WORD, address, value);
     }
 
     /**
@@ -230,7 +375,7 @@ public class BackStepper {
      * @return the argument value
      */
     public void addMemoryRestoreHalf(int address, int value) {
-        backSteps.push(MEMORY_RESTORE_HALF, pc(), address, value);
+        push(MEMORY_RESTORE_HALF, address, value);
     }
 
     /**
@@ -242,7 +387,7 @@ public class BackStepper {
      * @return the argument value
      */
     public void addMemoryRestoreByte(int address, int value) {
-        backSteps.push(MEMORY_RESTORE_BYTE, pc(), address, value);
+        push(MEMORY_RESTORE_BYTE, address, value);
     }
 
     /**
@@ -254,7 +399,9 @@ public class BackStepper {
      * @return the argument value
      */
     public int addRegisterFileRestore(int register, int value) {
-        backSteps.push(REGISTER_RESTORE, pc(), register, value);
+        if (!push(REGISTER_RESTORE, register, value)) {
+            history.registerInput(ExecutionHistory.REGISTER, register);
+        }
         return value;
     }
 
@@ -268,9 +415,9 @@ public class BackStepper {
     public void addPCRestore(int value) {
         // adjust for value reflecting incremented PC.
         value -= Instruction.INSTRUCTION_LENGTH;
-        // Use "value" insead of "pc()" for second arg because RegisterFile.getProgramCounter()
-        // returns branch target address at this point.
-        backSteps.push(PC_RESTORE, value, value);
+        if (!push(PC_RESTORE, value, 0)) {
+            history.registerInput(ExecutionHistory.PROGRAM_COUNTER, 0);
+        }
     }
 
     /**
@@ -282,7 +429,9 @@ public class BackStepper {
      * @return the argument value
      */
     public int addCoprocessor0Restore(int register, int value) {
-        backSteps.push(COPROC0_REGISTER_RESTORE, pc(), register, value);
+        if (!push(COPROC0_REGISTER_RESTORE, register, value)) {
+            history.registerInput(ExecutionHistory.COPROC0_REGISTER, register);
+        }
         return value;
     }
 
@@ -295,7 +444,9 @@ public class BackStepper {
      * @return the argument value
      */
     public int addCoprocessor1Restore(int register, int value) {
-        backSteps.push(COPROC1_REGISTER_RESTORE, pc(), register, value);
+        if (!push(COPROC1_REGISTER_RESTORE, register, value)) {
+            history.registerInput(ExecutionHistory.COPROC1_REGISTER, register);
+        }
         return value;
     }
 
@@ -307,7 +458,9 @@ public class BackStepper {
      * @return the argument value
      */
     public void addConditionFlagSet(int flag) {
-        backSteps.push(COPROC1_CONDITION_SET, pc(), flag);
+        if (!push(COPROC1_CONDITION_SET, flag, 0)) {
+            history.registerInput(ExecutionHistory.CONDITION_FLAGS, 0);
+        }
     }
 
     /**
@@ -318,144 +471,50 @@ public class BackStepper {
      * @return the argument value
      */
     public void addConditionFlagClear(int flag) {
-        backSteps.push(COPROC1_CONDITION_CLEAR, pc(), flag);
+        if (!push(COPROC1_CONDITION_CLEAR, flag, 0)) {
+            history.registerInput(ExecutionHistory.CONDITION_FLAGS, 0);
+        }
     }
 
     /**
      * Add a new "back step" (the undo action) to the stack.  The action here
      * is to do nothing!  This is just a place holder so when user is backstepping
-     * through the program no instructions will be skipped.  Cosmetic. If the top of the
-     * stack has the same PC counter, the do-nothing action will not be added.
+     * through the program no instructions will be skipped.  Cosmetic.  It is added
+     * only if the instruction being executed has no other action.
      *
-     * @return 0
+     * @param pc ignored; the action belongs to the instruction being executed
+     * @deprecated every instruction now gets a do-nothing action when it completes
+     * without any other, so this need not be called.
      */
+    @Deprecated
     public void addDoNothing(int pc) {
-        if (backSteps.empty() || backSteps.peek().pc != pc) {
-            backSteps.push(pc);
+        if (isStepThread() && !stepHasAction) {
+            push(DO_NOTHING, 0, 0);
         }
     }
 
-
-    // Represents a "back step" (undo action) on the stack.
-    private class BackStep {
-        private int action;  // what do do MEMORY_RESTORE_WORD, etc
-        private int pc;      // program counter value when original step occurred
-        private ProgramStatement ps;   // statement whose action is being "undone" here
-        private int param1;  // first parameter required by that action
-        private int param2;  // optional second parameter required by that action
-        private boolean inDelaySlot; // true if instruction executed in "delay slot" (delayed branching enabled)
-
-        // it is critical that BackStep object get its values by calling this method
-        // rather than assigning to individual members, because of the technique used
-        // to set its ps member (and possibly pc).
-        private void assign(int act, int programCounter, int parm1, int parm2) {
-            action = act;
-            pc = programCounter;
-            try {
-                // Client does not have direct access to program statement, and rather than making all
-                // of them go through the methods below to obtain it, we will do it here.
-                // Want the program statement but do not want observers notified.
-                ps = Globals.memory.getStatementNoNotify(programCounter);
-            } catch (Exception e) {
-                // The only situation causing this so far: user modifies memory or register
-                // contents through direct manipulation on the GUI, after assembling the program but
-                // before starting to run it (or after backstepping all the way to the start).
-                // The action will not be associated with any instruction, but will be carried out
-                // when popped.
-                ps = null;
-                pc = NOT_PC_VALUE; // Backstep method above will see this as flag to not set PC
-            }
-            param1 = parm1;
-            param2 = parm2;
-            inDelaySlot = Simulator.inDelaySlot(); // ADDED 25 June 2007
-         /*				
-            System.out.println("backstep PUSH: action "+action+" pc "+mars.util.Binary.intToHexString(pc)+
-         		                   " source "+((ps==null)? "none":ps.getSource())+
-         								 " parm1 "+param1+" parm2 "+param2);
-         */
+    // Push an undo action.  Returns true if it belongs to the instruction being executed,
+    // false if it was made from outside the program.  An action from outside belongs with
+    // the step before it, so that it is undone along with that step.
+    private boolean push(int action, int param1, int param2) {
+        boolean fromStep = isStepThread();
+        top = (top + 1) % capacity;
+        if (size < capacity) {
+            size++;
+        } else { // overwriting oldest action (goodbye!)
+            lostStep = Math.max(lostStep, stepNumbers[top]);
         }
-    }
-
-    // *****************************************************************************
-    // special purpose stack class for backstepping.  You've heard of circular queues
-    // implemented with an array, right?  This is a circular stack!  When full, the
-    // newly-pushed item overwrites the oldest item, with circular top!  All operations
-    // are constant time.  It's synchronized too, to be safe (is used by both the
-    // simulation thread and the GUI thread for the back-step button).
-    // Upon construction, it is filled with newly-created empty BackStep objects which
-    // will exist for the life of the stack.  Push does not create a BackStep object
-    // but instead overwrites the contents of the existing one.  Thus during MIPS
-    // program (simulated) execution, BackStep objects are never created or junked
-    // regardless of how many steps are executed.  This will speed things up a bit
-    // and make life easier for the garbage collector.
-
-    private class BackstepStack {
-        private final int capacity;
-        private int size;
-        private int top;
-        private final BackStep[] stack;
-
-        // Stack is created upon successful assembly or reset.  The one-time overhead of
-        // creating all the BackStep objects will not be noticed by the user, and enhances
-        // runtime performance by not having to create or recycle them during MIPS
-        // program execution.
-        private BackstepStack() {
-            this.capacity = Globals.maximumBacksteps;
-            this.size = 0;
-            this.top = -1;
-            this.stack = new BackStep[Globals.maximumBacksteps];
-            for (int i = 0; i < Globals.maximumBacksteps; i++) {
-                this.stack[i] = new BackStep();
-            }
-        }
-
-        private synchronized boolean empty() {
-            return size == 0;
-        }
-
-        private synchronized void push(int act, int programCounter, int parm1, int parm2) {
-            if (size == 0) {
-                top = 0;
-                size++;
-            } else if (size < capacity) {
-                top = (top + 1) % capacity;
-                size++;
-            } else { // size == capacity.  The top moves up one, replacing oldest entry (goodbye!)
-                top = (top + 1) % capacity;
-            }
-            // We'll re-use existing objects rather than create/discard each time.
-            // Must use assign() method rather than series of assignment statements!
-            stack[top].assign(act, programCounter, parm1, parm2);
+        actions[top] = Simulator.inDelaySlot() ? action | IN_DELAY_SLOT : action; // ADDED 25 June 2007
+        if (fromStep) {
+            pcs[top] = stepPC;
+            stepNumbers[top] = step;
+            stepHasAction = true;
+        } else {
+            pcs[top] = NOT_PC_VALUE;
+            stepNumbers[top] = previousStep();
         }
-
-        private synchronized void push(int act, int programCounter, int parm1) {
-            push(act, programCounter, parm1, 0);
-        }
-
-        private synchronized void push(int programCounter) {
-            push(BackStepper.DO_NOTHING, programCounter, 0, 0);
-        }
-
-        // NO PROTECTION.  This class is used only within this file so there is no excuse
-        // for trying to pop from empty stack.
-        private synchronized BackStep pop() {
-            BackStep bs;
-            bs = stack[top];
-            if (size == 1) {
-                top = -1;
-            } else {
-                top = (top + capacity - 1) % capacity;
-            }
-            size--;
-            return bs;
-        }
-
-        // NO PROTECTION.  This class is used only within this file so there is no excuse
-        // for trying to peek from empty stack.
-        private synchronized BackStep peek() {
-            return stack[top];
-        }
-
+        params1[top] = param1;
+        params2[top] = param2;
+        return fromStep;
     }
-
-}
\ No newline at end of file
+}
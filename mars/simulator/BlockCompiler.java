@@ -0,0 +1,755 @@
+package mars.simulator;
+
+import mars.ProgramStatement;
+import mars.mips.instructions.Instruction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static mars.simulator.BytecodeWriter.*;
+
+/**
+ * Second tier of the predecoded execution loop: counts how often execution enters each
+ * basic block of the predecoded text segment, and translates blocks entered often enough
+ * into JVM classes (see CompiledBlock), which the JVM then compiles to machine code.
+ * <p>
+ * A block starts where execution arrives by a branch or jump, or after another compiled
+ * block, and runs through consecutive instructions up to and including the next branch or
+ * jump.  It ends before any instruction not translated here (syscall, break, trap,
+ * coprocessor instructions and a few others), which the interpreter then runs, and before
+ * any breakpoint, so that the interpreter loop stops there.  The
+ * translated code does exactly what the instructions' SimulationCode does, with delayed
+ * branching disabled.
+ * <p>
+ * Like the predecoded copy, compiled blocks are only valid while the text segment cannot
+ * change, that is with self-modifying code disabled.
+ *
+ * @version October 2026
+ */
+
+class BlockCompiler {
+    // Number of entries into a block before it is compiled.
+    private static final int COMPILE_THRESHOLD = 50;
+    private static final int MAX_BLOCK_LENGTH = 256;
+    // Marks a block start that cannot be compiled, in entryCounts.
+    private static final int NOT_COMPILABLE = -1;
+
+    private static final String REGISTER_FILE = "mars/mips/hardware/RegisterFile";
+    private static final String MEMORY = "mars/mips/hardware/Memory";
+    private static final String INTEGER = "java/lang/Integer";
+
+    // Local variables of the generated execute(int budget) method.
+    private static final int BUDGET = 1, DONE = 2, MEMORY_LOCAL = 3, POSITION = 4, TEMP = 5, LONG_TEMP = 6;
+    private static final int FIRST_REGISTER_LOCAL = 8;
+
+    private static final Set<String> STRAIGHT_LINE = new HashSet<>(Arrays.asList(
+            "nop", "add $t1,$t2,$t3", "sub $t1,$t2,$t3", "addi $t1,$t2,-100", "addu $t1,$t2,$t3",
+            "subu $t1,$t2,$t3", "addiu $t1,$t2,-100", "mult $t1,$t2", "multu $t1,$t2", "mul $t1,$t2,$t3",
+            "div $t1,$t2", "divu $t1,$t2", "mfhi $t1", "mflo $t1", "mthi $t1", "mtlo $t1",
+            "and $t1,$t2,$t3", "or $t1,$t2,$t3", "andi $t1,$t2,100", "ori $t1,$t2,100", "nor $t1,$t2,$t3",
+            "xor $t1,$t2,$t3", "xori $t1,$t2,100", "sll $t1,$t2,10", "sllv $t1,$t2,$t3", "srl $t1,$t2,10",
+            "sra $t1,$t2,10", "srav $t1,$t2,$t3", "srlv $t1,$t2,$t3", "lui $t1,100", "slt $t1,$t2,$t3",
+            "sltu $t1,$t2,$t3", "slti $t1,$t2,-100", "sltiu $t1,$t2,-100", "movn $t1,$t2,$t3",
+            "movz $t1,$t2,$t3", "lw $t1,-100($t2)", "sw $t1,-100($t2)", "lb $t1,-100($t2)",
+            "lh $t1,-100($t2)", "lhu $t1,-100($t2)", "lbu $t1,-100($t2)", "sb $t1,-100($t2)",
+            "sh $t1,-100($t2)"));
+    private static final Set<String> BRANCHES = new HashSet<>(Arrays.asList(
+            "beq $t1,$t2,label", "bne $t1,$t2,label", "bgez $t1,label", "bgezal $t1,label",
+            "bgtz $t1,label", "blez $t1,label", "bltz $t1,label", "bltzal $t1,label", "j target",
+            "jr $t1", "jal target", "jalr $t1,$t2", "jalr $t1"));
+
+    private final ProgramStatement[] statements;
+    private final int baseAddress;
+    private final int[] entryCounts;
+    private final CompiledBlock[] blocks;
+    private final int[] lengths;
+    private final Breakpoints breakpoints;
+    private final BlockClassLoader loader = new BlockClassLoader();
+
+    /**
+     * @param program     predecoded text segment whose blocks are to be compiled
+     * @param breakpoints breakpoints that blocks must not contain, or null if none
+     */
+    BlockCompiler(PredecodedProgram program, Breakpoints breakpoints) {
+        this.breakpoints = breakpoints;
+        this.statements = program.getStatements();
+        this.baseAddress = program.getBaseAddress();
+        this.entryCounts = new int[statements.length];
+        this.blocks = new CompiledBlock[statements.length];
+        this.lengths = new int[statements.length];
+    }
+
+    /**
+     * Count an entry into the block starting at the given statement, compiling the block
+     * once it has been entered often enough.
+     *
+     * @param index index of the statement in the predecoded text segment
+     * @return the compiled block starting there, or null if it is not (yet) compiled
+     */
+    CompiledBlock enter(int index) {
+        CompiledBlock block = blocks[index];
+        if (block == null && entryCounts[index] != NOT_COMPILABLE && ++entryCounts[index] >= COMPILE_THRESHOLD) {
+            block = compile(index);
+            if (block == null) {
+                entryCounts[index] = NOT_COMPILABLE;
+            }
+            blocks[index] = block;
+        }
+        return block;
+    }
+
+    /**
+     * @param index index of the statement starting a compiled block
+     * @return number of instructions in the block
+     */
+    int getLength(int index) {
+        return lengths[index];
+    }
+
+    private CompiledBlock compile(int index) {
+        int length = 0;
+        boolean endsInBranch = false;
+        while (length < MAX_BLOCK_LENGTH && index + length < statements.length && !endsInBranch) {
+            if (breakpoints != null && breakpoints.contains(baseAddress + ((index + length) << 2))) {
+                break;
+            }
+            String format = getFormat(statements[index + length]);
+            if (BRANCHES.contains(format)) {
+                endsInBranch = true;
+            } else if (!STRAIGHT_LINE.contains(format)) {
+                break;
+            }
+            length++;
+        }
+        if (length == 0) {
+            return null;
+        }
+        try {
+            byte[] classFile = new Translation(index, length).translate();
+            Class<?> blockClass = loader.define(classFile);
+            CompiledBlock block = (CompiledBlock) blockClass.getDeclaredConstructor().newInstance();
+            lengths[index] = length;
+            return block;
+        } catch (ReflectiveOperationException | LinkageError | IllegalStateException e) {
+            return null; // leave it to the interpreter
+        }
+    }
+
+    // Defines the generated classes, which use only public MARS classes and methods.  There
+    // is one loader per compiler, so the classes can be unloaded along with it, and each is
+    // named after the address of its block, which is compiled at most once.
+    private static class BlockClassLoader extends ClassLoader {
+        BlockClassLoader() {
+            super(BlockCompiler.class.getClassLoader());
+        }
+
+        Class<?> define(byte[] classFile) {
+            return defineClass(null, classFile, 0, classFile.length);
+        }
+    }
+
+    // Example format identifies the basic instruction, even where two share a mnemonic.
+    private static String getFormat(ProgramStatement statement) {
+        Instruction instruction = (statement == null) ? null : statement.getInstruction();
+        return (instruction == null) ? "" : instruction.getExampleFormat();
+    }
+
+    /*
+     * Translation of one block into a class.  Registers are given local variables as they
+     * are first used, so the prologue that loads them is written after the body and
+     * reached by a jump from the start of the method.
+     */
+    private class Translation {
+        private final int first;
+        private final int length;
+        private final int startAddress;
+        private final BytecodeWriter writer;
+        private final int[] registerLocals = new int[35];
+        private final boolean[] written = new boolean[35];
+        private final List<Integer> usedRegisters = new ArrayList<>();
+        private final List<int[]> overflowExits = new ArrayList<>(); // {label, position}
+        private final int loop, exit, fault;
+
+        Translation(int first, int length) {
+            this.first = first;
+            this.length = length;
+            this.startAddress = baseAddress + (first << 2);
+            this.writer = new BytecodeWriter("mars/simulator/Block" + Integer.toHexString(startAddress),
+                    "mars/simulator/CompiledBlock");
+            Arrays.fill(registerLocals, -1);
+            writer.beginMethod("execute", "(I)I");
+            loop = writer.newLabel();
+            exit = writer.newLabel();
+            fault = writer.newLabel();
+        }
+
+        byte[] translate() {
+            int prologue = writer.newLabel();
+            int handler = writer.newLabel();
+            int bodyEnd = writer.newLabel();
+            writer.jump(GOTO, prologue);
+            writer.mark(loop);
+            for (int position = 0; position < length; position++) {
+                translate(position, statements[first + position]);
+            }
+            if (!BRANCHES.contains(getFormat(statements[first + length - 1]))) {
+                exitTo(startAddress + (length << 2));
+            }
+            writer.mark(bodyEnd);
+
+            // Arithmetic overflow: record the position and stop before the instruction.
+            for (int[] overflow : overflowExits) {
+                writer.mark(overflow[0]);
+                writer.pushInt(overflow[1]);
+                writer.local(ISTORE, POSITION);
+                writer.jump(GOTO, fault);
+            }
+            // Address error: the position was recorded before the memory access.
+            writer.mark(handler);
+            writer.op(POP);
+            writer.jump(GOTO, fault);
+            writer.handler(loop, bodyEnd, handler, "mars/mips/hardware/AddressErrorException");
+
+            // Normal exit, with the new program counter on the stack.
+            writer.mark(exit);
+            writer.invoke(INVOKESTATIC, REGISTER_FILE, "setProgramCounter", "(I)V");
+            writeBack();
+            writer.local(ILOAD, DONE);
+            writer.op(IRETURN);
+
+            // Stop before the instruction at POSITION.
+            writer.mark(fault);
+            writer.local(ILOAD, DONE);
+            writer.local(ILOAD, POSITION);
+            writer.op(IADD);
+            writer.local(ISTORE, DONE);
+            writer.pushInt(startAddress);
+            writer.local(ILOAD, POSITION);
+            writer.pushInt(2);
+            writer.op(ISHL);
+            writer.op(IADD);
+            writer.invoke(INVOKESTATIC, REGISTER_FILE, "setProgramCounter", "(I)V");
+            writeBack();
+            writer.local(ILOAD, DONE);
+            writer.pushInt(-1);
+            writer.op(IXOR);
+            writer.op(IRETURN);
+
+            writer.mark(prologue);
+            writer.pushInt(0);
+            writer.local(ISTORE, DONE);
+            writer.pushInt(0);
+            writer.local(ISTORE, POSITION);
+            writer.pushInt(0);
+            writer.local(ISTORE, TEMP);
+            writer.getStatic("mars/Globals", "memory", "L" + MEMORY + ";");
+            writer.local(ASTORE, MEMORY_LOCAL);
+            for (int register : usedRegisters) {
+                writer.pushInt(register);
+                writer.invoke(INVOKESTATIC, REGISTER_FILE, "getValue", "(I)I");
+                writer.local(ISTORE, registerLocals[register]);
+            }
+            writer.jump(GOTO, loop);
+            writer.endMethod(6, FIRST_REGISTER_LOCAL + usedRegisters.size());
+            return writer.toByteArray();
+        }
+
+        private void translate(int position, ProgramStatement statement) {
+            int[] operands = statement.getOperands();
+            int address = startAddress + (position << 2);
+            int next = address + 4;
+            int skip;
+            switch (getFormat(statement)) {
+                case "nop":
+                    break;
+                case "add $t1,$t2,$t3":
+                    addWithOverflow(position, operands[0], operands[1], true, operands[2]);
+                    break;
+                case "addi $t1,$t2,-100":
+                    addWithOverflow(position, operands[0], operands[1], false, operands[2] << 16 >> 16);
+                    break;
+                case "sub $t1,$t2,$t3":
+                    // overflow when A and B have opposite signs and A-B has B's sign
+                    load(operands[1]);
+                    load(operands[2]);
+                    writer.op(ISUB);
+                    writer.local(ISTORE, TEMP);
+                    load(operands[1]);
+                    load(operands[2]);
+                    writer.op(IXOR);
+                    load(operands[1]);
+                    writer.local(ILOAD, TEMP);
+                    writer.op(IXOR);
+                    writer.op(IAND);
+                    writer.jump(IFLT, overflowExit(position));
+                    writer.local(ILOAD, TEMP);
+                    store(operands[0]);
+                    break;
+                case "addu $t1,$t2,$t3":
+                    registerOp(operands, IADD);
+                    break;
+                case "subu $t1,$t2,$t3":
+                    registerOp(operands, ISUB);
+                    break;
+                case "and $t1,$t2,$t3":
+                    registerOp(operands, IAND);
+                    break;
+                case "or $t1,$t2,$t3":
+                    registerOp(operands, IOR);
+                    break;
+                case "xor $t1,$t2,$t3":
+                    registerOp(operands, IXOR);
+                    break;
+                case "nor $t1,$t2,$t3":
+                    load(operands[1]);
+                    load(operands[2]);
+                    writer.op(IOR);
+                    writer.pushInt(-1);
+                    writer.op(IXOR);
+                    store(operands[0]);
+                    break;
+                case "addiu $t1,$t2,-100":
+                    immediateOp(operands, operands[2] << 16 >> 16, IADD);
+                    break;
+                case "andi $t1,$t2,100":
+                    immediateOp(operands, operands[2] & 0x0000FFFF, IAND);
+                    break;
+                case "ori $t1,$t2,100":
+                    immediateOp(operands, operands[2] & 0x0000FFFF, IOR);
+                    break;
+                case "xori $t1,$t2,100":
+                    immediateOp(operands, operands[2] & 0x0000FFFF, IXOR);
+                    break;
+                case "sll $t1,$t2,10":
+                    immediateOp(operands, operands[2], ISHL);
+                    break;
+                case "srl $t1,$t2,10":
+                    immediateOp(operands, operands[2], IUSHR);
+                    break;
+                case "sra $t1,$t2,10":
+                    immediateOp(operands, operands[2], ISHR);
+                    break;
+                case "sllv $t1,$t2,$t3":
+                    variableShift(operands, ISHL);
+                    break;
+                case "srlv $t1,$t2,$t3":
+                    variableShift(operands, IUSHR);
+                    break;
+                case "srav $t1,$t2,$t3":
+                    variableShift(operands, ISHR);
+                    break;
+                case "lui $t1,100":
+                    writer.pushInt(operands[1] << 16);
+                    store(operands[0]);
+                    break;
+                case "slt $t1,$t2,$t3":
+                    load(operands[1]);
+                    load(operands[2]);
+                    setIf(IF_ICMPLT, operands[0]);
+                    break;
+                case "slti $t1,$t2,-100":
+                    load(operands[1]);
+                    writer.pushInt(operands[2] << 16 >> 16);
+                    setIf(IF_ICMPLT, operands[0]);
+                    break;
+                case "sltu $t1,$t2,$t3":
+                    // unsigned comparison: flip the sign bits and compare signed
+                    load(operands[1]);
+                    writer.pushInt(Integer.MIN_VALUE);
+                    writer.op(IXOR);
+                    load(operands[2]);
+                    writer.pushInt(Integer.MIN_VALUE);
+                    writer.op(IXOR);
+                    setIf(IF_ICMPLT, operands[0]);
+                    break;
+                case "sltiu $t1,$t2,-100":
+                    load(operands[1]);
+                    writer.pushInt(Integer.MIN_VALUE);
+                    writer.op(IXOR);
+                    writer.pushInt((operands[2] << 16 >> 16) ^ Integer.MIN_VALUE);
+                    setIf(IF_ICMPLT, operands[0]);
+                    break;
+                case "movn $t1,$t2,$t3":
+                case "movz $t1,$t2,$t3":
+                    skip = writer.newLabel();
+                    load(operands[2]);
+                    writer.jump(getFormat(statement).startsWith("movn") ? IFEQ : IFNE, skip);
+                    load(operands[1]);
+                    store(operands[0]);
+                    writer.mark(skip);
+                    break;
+                case "mult $t1,$t2":
+                    load(operands[0]);
+                    writer.op(I2L);
+                    load(operands[1]);
+                    writer.op(I2L);
+                    writer.op(LMUL);
+                    storeProduct();
+                    break;
+                case "multu $t1,$t2":
+                    load(operands[0]);
+                    writer.op(I2L);
+                    writer.pushLong(0xFFFFFFFFL);
+                    writer.op(LAND);
+                    load(operands[1]);
+                    writer.op(I2L);
+                    writer.pushLong(0xFFFFFFFFL);
+                    writer.op(LAND);
+                    writer.op(LMUL);
+                    storeProduct();
+                    break;
+                case "mul $t1,$t2,$t3":
+                    load(operands[1]);
+                    writer.op(I2L);
+                    load(operands[2]);
+                    writer.op(I2L);
+                    writer.op(LMUL);
+                    writer.op(DUP2);
+                    writer.op(L2I);
+                    store(operands[0]);
+                    storeProduct();
+                    break;
+                case "div $t1,$t2":
+                    // no exception and no result for zero divide
+                    skip = writer.newLabel();
+                    load(operands[1]);
+                    writer.jump(IFEQ, skip);
+                    load(operands[0]);
+                    load(operands[1]);
+                    writer.op(IREM);
+                    store(33);
+                    load(operands[0]);
+                    load(operands[1]);
+                    writer.op(IDIV);
+                    store(34);
+                    writer.mark(skip);
+                    break;
+                case "divu $t1,$t2":
+                    skip = writer.newLabel();
+                    load(operands[1]);
+                    writer.jump(IFEQ, skip);
+                    load(operands[0]);
+                    load(operands[1]);
+                    writer.invoke(INVOKESTATIC, INTEGER, "remainderUnsigned", "(II)I");
+                    store(33);
+                    load(operands[0]);
+                    load(operands[1]);
+                    writer.invoke(INVOKESTATIC, INTEGER, "divideUnsigned", "(II)I");
+                    store(34);
+                    writer.mark(skip);
+                    break;
+                case "mfhi $t1":
+                    load(33);
+                    store(operands[0]);
+                    break;
+                case "mflo $t1":
+                    load(34);
+                    store(operands[0]);
+                    break;
+                case "mthi $t1":
+                    load(operands[0]);
+                    store(33);
+                    break;
+                case "mtlo $t1":
+                    load(operands[0]);
+                    store(34);
+                    break;
+                case "lw $t1,-100($t2)":
+                    memoryAddress(position, operands[2], operands[1]);
+                    writer.invoke(INVOKEVIRTUAL, MEMORY, "getWord", "(I)I");
+                    store(operands[0]);
+                    break;
+                case "lb $t1,-100($t2)":
+                    memoryAddress(position, operands[2], operands[1] << 16 >> 16);
+                    writer.invoke(INVOKEVIRTUAL, MEMORY, "getByte", "(I)I");
+                    writer.pushInt(24);
+                    writer.op(ISHL);
+                    writer.pushInt(24);
+                    writer.op(ISHR);
+                    store(operands[0]);
+                    break;
+                case "lbu $t1,-100($t2)":
+                    memoryAddress(position, operands[2], operands[1] << 16 >> 16);
+                    writer.invoke(INVOKEVIRTUAL, MEMORY, "getByte", "(I)I");
+                    writer.pushInt(0x000000ff);
+                    writer.op(IAND);
+                    store(operands[0]);
+                    break;
+                case "lh $t1,-100($t2)":
+                    memoryAddress(position, operands[2], operands[1] << 16 >> 16);
+                    writer.invoke(INVOKEVIRTUAL, MEMORY, "getHalf", "(I)I");
+                    writer.pushInt(16);
+                    writer.op(ISHL);
+                    writer.pushInt(16);
+                    writer.op(ISHR);
+                    store(operands[0]);
+                    break;
+                case "lhu $t1,-100($t2)":
+                    memoryAddress(position, operands[2], operands[1] << 16 >> 16);
+                    writer.invoke(INVOKEVIRTUAL, MEMORY, "getHalf", "(I)I");
+                    writer.pushInt(0x0000ffff);
+                    writer.op(IAND);
+                    store(operands[0]);
+                    break;
+                case "sw $t1,-100($t2)":
+                    memoryAddress(position, operands[2], operands[1]);
+                    load(operands[0]);
+                    writer.invoke(INVOKEVIRTUAL, MEMORY, "setWord", "(II)V");
+                    break;
+                case "sb $t1,-100($t2)":
+                    memoryAddress(position, operands[2], operands[1] << 16 >> 16);
+                    load(operands[0]);
+                    writer.pushInt(0x000000ff);
+                    writer.op(IAND);
+                    writer.invoke(INVOKEVIRTUAL, MEMORY, "setByte", "(II)V");
+                    break;
+                case "sh $t1,-100($t2)":
+                    memoryAddress(position, operands[2], operands[1] << 16 >> 16);
+                    load(operands[0]);
+                    writer.pushInt(0x0000ffff);
+                    writer.op(IAND);
+                    writer.invoke(INVOKEVIRTUAL, MEMORY, "setHalf", "(II)V");
+                    break;
+
+                // Branches and jumps, always the last instruction of the block.
+                case "beq $t1,$t2,label":
+                    load(operands[0]);
+                    load(operands[1]);
+                    branch(IF_ICMPNE, next + (operands[2] << 2), next, -1);
+                    break;
+                case "bne $t1,$t2,label":
+                    load(operands[0]);
+                    load(operands[1]);
+                    branch(IF_ICMPEQ, next + (operands[2] << 2), next, -1);
+                    break;
+                case "bgez $t1,label":
+                    load(operands[0]);
+                    branch(IFLT, next + (operands[1] << 2), next, -1);
+                    break;
+                case "bgezal $t1,label":
+                    load(operands[0]);
+                    branch(IFLT, next + (operands[1] << 2), next, 31);
+                    break;
+                case "bgtz $t1,label":
+                    load(operands[0]);
+                    branch(IFLE, next + (operands[1] << 2), next, -1);
+                    break;
+                case "blez $t1,label":
+                    load(operands[0]);
+                    branch(IFGT, next + (operands[1] << 2), next, -1);
+                    break;
+                case "bltz $t1,label":
+                    load(operands[0]);
+                    branch(IFGE, next + (operands[1] << 2), next, -1);
+                    break;
+                case "bltzal $t1,label":
+                    load(operands[0]);
+                    branch(IFGE, next + (operands[1] << 2), next, 31);
+                    break;
+                case "j target":
+                    jumpTo((next & 0xF0000000) | (operands[0] << 2));
+                    break;
+                case "jal target":
+                    writer.pushInt(next);
+                    store(31);
+                    jumpTo((next & 0xF0000000) | (operands[0] << 2));
+                    break;
+                case "jr $t1":
+                    addDone(length);
+                    load(operands[0]);
+                    writer.jump(GOTO, exit);
+                    break;
+                case "jalr $t1,$t2":
+                    // return address first, as the SimulationCode does
+                    writer.pushInt(next);
+                    store(operands[0]);
+                    addDone(length);
+                    load(operands[1]);
+                    writer.jump(GOTO, exit);
+                    break;
+                case "jalr $t1":
+                    writer.pushInt(next);
+                    store(31);
+                    addDone(length);
+                    load(operands[0]);
+                    writer.jump(GOTO, exit);
+                    break;
+                default:
+                    throw new IllegalStateException("instruction not translated: " + statement.getInstruction().getName());
+            }
+        }
+
+        // Conditional branch, with its operands on the stack: jumps to notTaken on the
+        // given condition, otherwise links (unless link is -1) and goes to the target.
+        private void branch(int notTakenCondition, int target, int notTaken, int link) {
+            int fallThrough = writer.newLabel();
+            writer.jump(notTakenCondition, fallThrough);
+            if (link >= 0) {
+                writer.pushInt(notTaken);
+                store(link);
+            }
+            jumpTo(target);
+            writer.mark(fallThrough);
+            exitTo(notTaken);
+        }
+
+        // Go to a constant address; to the start of this block if there is budget for another pass.
+        private void jumpTo(int target) {
+            addDone(length);
+            if (target == startAddress) {
+                writer.local(ILOAD, DONE);
+                writer.pushInt(length);
+                writer.op(IADD);
+                writer.local(ILOAD, BUDGET);
+                writer.jump(IF_ICMPLE, loop);
+            }
+            writer.pushInt(target);
+            writer.jump(GOTO, exit);
+        }
+
+        private void exitTo(int address) {
+            addDone(length);
+            writer.pushInt(address);
+            writer.jump(GOTO, exit);
+        }
+
+        private void addDone(int count) {
+            writer.local(ILOAD, DONE);
+            writer.pushInt(count);
+            writer.op(IADD);
+            writer.local(ISTORE, DONE);
+        }
+
+        private void addWithOverflow(int position, int destination, int source, boolean registerOperand, int operand) {
+            // overflow when A and B have the same sign and A+B has the other sign
+            load(source);
+            pushOperand(registerOperand, operand);
+            writer.op(IADD);
+            writer.local(ISTORE, TEMP);
+            load(source);
+            writer.local(ILOAD, TEMP);
+            writer.op(IXOR);
+            pushOperand(registerOperand, operand);
+            writer.local(ILOAD, TEMP);
+            writer.op(IXOR);
+            writer.op(IAND);
+            writer.jump(IFLT, overflowExit(position));
+            writer.local(ILOAD, TEMP);
+            store(destination);
+        }
+
+        private int overflowExit(int position) {
+            int label = writer.newLabel();
+            overflowExits.add(new int[]{label, position});
+            return label;
+        }
+
+        private void pushOperand(boolean register, int operand) {
+            if (register) {
+                load(operand);
+            } else {
+                writer.pushInt(operand);
+            }
+        }
+
+        private void registerOp(int[] operands, int opcode) {
+            load(operands[1]);
+            load(operands[2]);
+            writer.op(opcode);
+            store(operands[0]);
+        }
+
+        private void immediateOp(int[] operands, int immediate, int opcode) {
+            load(operands[1]);
+            writer.pushInt(immediate);
+            writer.op(opcode);
+            store(operands[0]);
+        }
+
+        private void variableShift(int[] operands, int opcode) {
+            load(operands[1]);
+            load(operands[2]);
+            writer.pushInt(0x0000001F);
+            writer.op(IAND);
+            writer.op(opcode);
+            store(operands[0]);
+        }
+
+        // Store 1 in the register if the comparison of the two stack values holds, else 0.
+        private void setIf(int comparison, int register) {
+            int isTrue = writer.newLabel();
+            int done = writer.newLabel();
+            writer.jump(comparison, isTrue);
+            writer.pushInt(0);
+            writer.jump(GOTO, done);
+            writer.mark(isTrue);
+            writer.pushInt(1);
+            writer.mark(done);
+            store(register);
+        }
+
+        // Store the long product on the stack into hi (register 33) and lo (register 34).
+        private void storeProduct() {
+            writer.local(LSTORE, LONG_TEMP);
+            writer.local(LLOAD, LONG_TEMP);
+            writer.pushInt(32);
+            writer.op(LSHR);
+            writer.op(L2I);
+            store(33);
+            writer.local(LLOAD, LONG_TEMP);
+            writer.op(L2I);
+            store(34);
+        }
+
+        // Record the position for an address error, then push Globals.memory and the address.
+        private void memoryAddress(int position, int base, int offset) {
+            writer.pushInt(position);
+            writer.local(ISTORE, POSITION);
+            writer.local(ALOAD, MEMORY_LOCAL);
+            load(base);
+            if (offset != 0) {
+                writer.pushInt(offset);
+                writer.op(IADD);
+            }
+        }
+
+        private void load(int register) {
+            if (register == 0) {
+                writer.pushInt(0);
+            } else {
+                writer.local(ILOAD, localFor(register));
+            }
+        }
+
+        // Writes to $zero are ignored, as in RegisterFile.updateRegister.
+        private void store(int register) {
+            if (register == 0) {
+                writer.op(POP);
+            } else {
+                writer.local(ISTORE, localFor(register));
+                written[register] = true;
+            }
+        }
+
+        private int localFor(int register) {
+            if (registerLocals[register] < 0) {
+                registerLocals[register] = FIRST_REGISTER_LOCAL + usedRegisters.size();
+                usedRegisters.add(register);
+            }
+            return registerLocals[register];
+        }
+
+        private void writeBack() {
+            for (int register : usedRegisters) {
+                if (written[register]) {
+                    writer.pushInt(register);
+                    writer.local(ILOAD, registerLocals[register]);
+                    writer.invoke(INVOKESTATIC, REGISTER_FILE, "updateRegister", "(II)V");
+                }
+            }
+        }
+    }
+}
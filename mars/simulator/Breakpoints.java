@@ -0,0 +1,278 @@
+package mars.simulator;
+
+import mars.Globals;
+import mars.mips.hardware.AddressErrorException;
+import mars.mips.hardware.Memory;
+import mars.mips.hardware.Register;
+
+import java.util.*;
+
+/**
+ * Breakpoints and watchpoints for one simulation.  A breakpoint stops execution when
+ * the program counter reaches its address, either always or only if its condition holds
+ * then.  A watchpoint stops execution after any instruction that makes its condition
+ * hold (it does not stop again until the condition has stopped holding in between).
+ * <p>
+ * Breakpoint addresses are kept in a bitmap, one bit per word, in pages that cover the
+ * text segment from its base address, so checking the program counter after each
+ * instruction takes a few array accesses however many breakpoints there are.  Addresses
+ * elsewhere (such as the kernel text segment) are kept in a set.  Conditions are only
+ * evaluated at their own addresses, and there is no per-instruction cost for watchpoints
+ * unless there are some.
+ *
+ * @version October 2026
+ */
+
+public class Breakpoints {
+    private static final int PAGE_SHIFT = 12; // 4 KB, 1024 words, 16 longs per page
+
+    /**
+     * A condition of a conditional breakpoint or watchpoint.  It is evaluated by the
+     * simulation thread between instructions.
+     */
+    public interface Condition {
+        boolean holds();
+    }
+
+    private final int baseAddress;
+    private final int limitOffset; // offset of the text segment's last word from baseAddress
+    private long[][] pages = new long[0][];
+    private final Set<Integer> otherAddresses = new HashSet<>();
+    private final Map<Integer, Condition> conditions = new HashMap<>();
+    private final List<Condition> watchpoints = new ArrayList<>();
+    private boolean[] watchpointHeld = new boolean[0];
+
+    /**
+     * Create an empty set of breakpoints, for the current text segment base address.
+     */
+    public Breakpoints() {
+        baseAddress = Memory.textBaseAddress;
+        limitOffset = Memory.textLimitAddress - Memory.textBaseAddress;
+    }
+
+    /**
+     * Create a set of unconditional breakpoints.
+     *
+     * @param addresses breakpoint addresses
+     */
+    public Breakpoints(int[] addresses) {
+        this();
+        for (int address : addresses) {
+            add(address);
+        }
+    }
+
+    /**
+     * Add an unconditional breakpoint.  Execution stops when the program counter
+     * reaches the address, before the instruction there is executed.
+     *
+     * @param address breakpoint address
+     */
+    public void add(int address) {
+        int offset = address - baseAddress;
+        if (offset >= 0 && offset <= limitOffset && !Memory.wordNotAligned(offset)) {
+            int page = offset >>> PAGE_SHIFT;
+            if (page >= pages.length) {
+                pages = Arrays.copyOf(pages, page + 1);
+            }
+            if (pages[page] == null) {
+                pages[page] = new long[1 << (PAGE_SHIFT - 8)];
+            }
+            int word = offset >>> 2;
+            pages[page][(word >>> 6) & ((1 << (PAGE_SHIFT - 8)) - 1)] |= 1L << word;
+        } else {
+            otherAddresses.add(address);
+        }
+    }
+
+    /**
+     * Add a conditional breakpoint.  Execution stops when the program counter reaches
+     * the address if the condition holds then.
+     *
+     * @param address   breakpoint address
+     * @param condition condition, or null for none
+     */
+    public void add(int address, Condition condition) {
+        add(address);
+        if (condition != null) {
+            conditions.put(address, condition);
+        }
+    }
+
+    /**
+     * Add a watchpoint.  Execution stops after any instruction that makes the condition
+     * hold, when it did not hold before.
+     *
+     * @param condition condition to watch for
+     */
+    public void addWatchpoint(Condition condition) {
+        watchpoints.add(condition);
+        watchpointHeld = Arrays.copyOf(watchpointHeld, watchpoints.size());
+    }
+
+    /**
+     * @return true if there are no breakpoints or watchpoints
+     */
+    public boolean isEmpty() {
+        return pages.length == 0 && otherAddresses.isEmpty() && watchpoints.isEmpty();
+    }
+
+    /**
+     * @return true if there are watchpoints, which must be checked after every instruction
+     */
+    public boolean hasWatchpoints() {
+        return !watchpoints.isEmpty();
+    }
+
+    /**
+     * Whether there is a breakpoint, conditional or not, at an address.
+     *
+     * @param address instruction address
+     * @return true if there is a breakpoint at the address
+     */
+    public boolean contains(int address) {
+        int offset = address - baseAddress;
+        if (offset >= 0 && (offset >>> PAGE_SHIFT) < pages.length && !Memory.wordNotAligned(offset)) {
+            long[] page = pages[offset >>> PAGE_SHIFT];
+            int word = offset >>> 2;
+            return page != null && (page[(word >>> 6) & ((1 << (PAGE_SHIFT - 8)) - 1)] & (1L << word)) != 0;
+        }
+        return !otherAddresses.isEmpty() && otherAddresses.contains(address);
+    }
+
+    /**
+     * Whether execution should stop with the program counter at the given address.
+     *
+     * @param address new program counter value
+     * @return true if there is a breakpoint there and its condition, if any, holds
+     */
+    boolean breaksAt(int address) {
+        if (!contains(address)) {
+            return false;
+        }
+        Condition condition = conditions.get(address);
+        return condition == null || condition.holds();
+    }
+
+    /**
+     * Note which watchpoint conditions hold before execution starts, so that only
+     * changes from that state stop execution.
+     */
+    void startWatching() {
+        for (int i = 0; i < watchpoints.size(); i++) {
+            watchpointHeld[i] = watchpoints.get(i).holds();
+        }
+    }
+
+    /**
+     * Evaluate the watchpoint conditions after an instruction.
+     *
+     * @return true if any condition holds now that did not hold before
+     */
+    boolean watchpointTriggered() {
+        boolean triggered = false;
+        for (int i = 0; i < watchpoints.size(); i++) {
+            boolean holds = watchpoints.get(i).holds();
+            triggered |= holds && !watchpointHeld[i];
+            watchpointHeld[i] = holds;
+        }
+        return triggered;
+    }
+
+    /**
+     * Condition comparing a register with a value.
+     *
+     * @param register   the register
+     * @param comparison one of ==, !=, &lt;, &lt;=, &gt; or &gt;= (signed)
+     * @param value      value to compare with
+     * @return the condition
+     * @throws IllegalArgumentException if the comparison is not one of those
+     */
+    public static Condition registerCondition(Register register, String comparison, int value) {
+        Comparison compare = comparison(comparison);
+        return () -> compare.test(register.getValue(), value);
+    }
+
+    /**
+     * Condition comparing a memory word with a value.  It does not hold if the address
+     * cannot be read.
+     *
+     * @param address    address of the word
+     * @param comparison one of ==, !=, &lt;, &lt;=, &gt; or &gt;= (signed)
+     * @param value      value to compare with
+     * @return the condition
+     * @throws IllegalArgumentException if the comparison is not one of those
+     */
+    public static Condition memoryCondition(int address, String comparison, int value) {
+        Comparison compare = comparison(comparison);
+        return () -> {
+            try {
+                return compare.test(Globals.memory.getWordNoNotify(address), value);
+            } catch (AddressErrorException e) {
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Condition that holds each time a register's value differs from its value when last
+     * evaluated, for watching all changes to the register.
+     *
+     * @param register the register
+     * @return the condition
+     */
+    public static Condition registerChanges(Register register) {
+        int[] last = {register.getValue()};
+        return () -> {
+            int value = register.getValue();
+            boolean changed = value != last[0];
+            last[0] = value;
+            return changed;
+        };
+    }
+
+    /**
+     * Condition that holds each time a memory word differs from its value when last
+     * evaluated, for watching all changes to the word.
+     *
+     * @param address address of the word
+     * @return the condition
+     */
+    public static Condition memoryChanges(int address) {
+        Integer[] last = {null};
+        return () -> {
+            Integer value;
+            try {
+                value = Globals.memory.getWordNoNotify(address);
+            } catch (AddressErrorException e) {
+                value = null;
+            }
+            boolean changed = last[0] != null && !last[0].equals(value);
+            last[0] = value;
+            return changed;
+        };
+    }
+
+    private interface Comparison {
+        boolean test(int left, int right);
+    }
+
+    private static Comparison comparison(String comparison) {
+        switch (comparison) {
+            case "==":
+                return (left, right) -> left == right;
+            case "!=":
+                return (left, right) -> left != right;
+            case "<":
+                return (left, right) -> left < right;
+            case "<=":
+                return (left, right) -> left <= right;
+            case ">":
+                return (left, right) -> left > right;
+            case ">=":
+                return (left, right) -> left >= right;
+            default:
+                throw new IllegalArgumentException("invalid comparison " + comparison);
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package mars.simulator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal writer of JVM class files, just enough for the classes generated by BlockCompiler:
+ * one class implementing one interface, with a default constructor and methods that use int
+ * and long arithmetic, static and virtual calls, local jumps and exception handlers.
+ * <p>
+ * Class files are written in version 49 format, which the JVM verifies by type inference,
+ * so no stack map frames are needed.  Jump offsets are 16 bits, which limits a method to
+ * 32K bytes of code.
+ *
+ * @version October 2026
+ */
+
+class BytecodeWriter {
+    static final int ICONST_0 = 0x03, BIPUSH = 0x10, SIPUSH = 0x11, LDC = 0x12, LDC_W = 0x13, LDC2_W = 0x14;
+    static final int ILOAD = 0x15, LLOAD = 0x16, ALOAD = 0x19, ISTORE = 0x36, LSTORE = 0x37, ASTORE = 0x3a;
+    static final int POP = 0x57, DUP2 = 0x5c;
+    static final int IADD = 0x60, ISUB = 0x64, LMUL = 0x69, IDIV = 0x6c, IREM = 0x70;
+    static final int ISHL = 0x78, ISHR = 0x7a, LSHR = 0x7b, IUSHR = 0x7c;
+    static final int IAND = 0x7e, LAND = 0x7f, IOR = 0x80, IXOR = 0x82;
+    static final int I2L = 0x85, L2I = 0x88;
+    static final int IFEQ = 0x99, IFNE = 0x9a, IFLT = 0x9b, IFGE = 0x9c, IFGT = 0x9d, IFLE = 0x9e;
+    static final int IF_ICMPEQ = 0x9f, IF_ICMPNE = 0xa0, IF_ICMPLT = 0xa1, IF_ICMPLE = 0xa4;
+    static final int GOTO = 0xa7, IRETURN = 0xac, RETURN = 0xb1;
+    static final int GETSTATIC = 0xb2, INVOKEVIRTUAL = 0xb6, INVOKESPECIAL = 0xb7, INVOKESTATIC = 0xb8;
+
+    private static final int CLASS_FILE_VERSION = 49;
+    private static final int ACC_PUBLIC = 0x0001, ACC_FINAL = 0x0010, ACC_SUPER = 0x0020;
+
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final DataOutputStream poolOut = new DataOutputStream(pool);
+    private final Map<String, Integer> poolIndex = new HashMap<>();
+    private int poolCount = 1;
+
+    private final int thisClass;
+    private final int superClass;
+    private final int anInterface;
+    private final ByteArrayOutputStream methods = new ByteArrayOutputStream();
+    private int methodCount = 0;
+
+    // Method being written
+    private ByteArrayOutputStream code;
+    private int methodName, methodDescriptor;
+    private final List<Integer> labels = new ArrayList<>();
+    private final List<int[]> jumps = new ArrayList<>(); // {opcode position, label}
+    private final List<int[]> handlers = new ArrayList<>(); // {start label, end label, handler label, class}
+
+    /**
+     * @param className     internal name (with slashes) of the class to write
+     * @param interfaceName internal name of the interface it implements
+     */
+    BytecodeWriter(String className, String interfaceName) {
+        thisClass = classRef(className);
+        superClass = classRef("java/lang/Object");
+        anInterface = classRef(interfaceName);
+        beginMethod("<init>", "()V");
+        code.write(ALOAD);
+        code.write(0);
+        invoke(INVOKESPECIAL, "java/lang/Object", "<init>", "()V");
+        code.write(RETURN);
+        endMethod(1, 1);
+    }
+
+    /**
+     * @return the complete class file
+     */
+    byte[] toByteArray() {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(result);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(CLASS_FILE_VERSION);
+            out.writeShort(poolCount);
+            pool.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(1);
+            out.writeShort(anInterface);
+            out.writeShort(0); // fields
+            out.writeShort(methodCount);
+            methods.writeTo(out);
+            out.writeShort(0); // attributes
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // cannot happen writing to a byte array
+        }
+        return result.toByteArray();
+    }
+
+    // Constant pool
+
+    private int constant(String key, int slots, PoolEntry entry) {
+        Integer index = poolIndex.get(key);
+        if (index == null) {
+            try {
+                entry.write(poolOut);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            index = poolCount;
+            poolCount += slots;
+            poolIndex.put(key, index);
+        }
+        return index;
+    }
+
+    private interface PoolEntry {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private int utf8(String value) {
+        return constant("U" + value, 1, out -> {
+            out.writeByte(1);
+            out.writeUTF(value);
+        });
+    }
+
+    private int classRef(String name) {
+        int nameIndex = utf8(name);
+        return constant("C" + name, 1, out -> {
+            out.writeByte(7);
+            out.writeShort(nameIndex);
+        });
+    }
+
+    private int memberRef(int tag, String owner, String name, String descriptor) {
+        int ownerIndex = classRef(owner);
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        int nameAndType = constant("N" + name + " " + descriptor, 1, out -> {
+            out.writeByte(12);
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+        });
+        return constant(tag + owner + "." + name + " " + descriptor, 1, out -> {
+            out.writeByte(tag);
+            out.writeShort(ownerIndex);
+            out.writeShort(nameAndType);
+        });
+    }
+
+    // Methods
+
+    /**
+     * Start writing a public method.  Code is added by the other methods until endMethod.
+     *
+     * @param name       method name
+     * @param descriptor method descriptor
+     */
+    void beginMethod(String name, String descriptor) {
+        code = new ByteArrayOutputStream();
+        methodName = utf8(name);
+        methodDescriptor = utf8(descriptor);
+        labels.clear();
+        jumps.clear();
+        handlers.clear();
+    }
+
+    /**
+     * Finish the method started by beginMethod, resolving its jumps.
+     *
+     * @param maxStack  maximum operand stack depth, in slots
+     * @param maxLocals number of local variable slots, including parameters
+     */
+    void endMethod(int maxStack, int maxLocals) {
+        byte[] bytes = code.toByteArray();
+        for (int[] jump : jumps) {
+            int offset = labels.get(jump[1]) - jump[0];
+            if (offset != (short) offset) {
+                throw new IllegalStateException("method too long");
+            }
+            bytes[jump[0] + 1] = (byte) (offset >> 8);
+            bytes[jump[0] + 2] = (byte) offset;
+        }
+        int codeAttribute = utf8("Code");
+        DataOutputStream out = new DataOutputStream(methods);
+        try {
+            out.writeShort(ACC_PUBLIC);
+            out.writeShort(methodName);
+            out.writeShort(methodDescriptor);
+            out.writeShort(1);
+            out.writeShort(codeAttribute);
+            out.writeInt(12 + bytes.length + 8 * handlers.size());
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            out.writeShort(handlers.size());
+            for (int[] handler : handlers) {
+                out.writeShort(labels.get(handler[0]));
+                out.writeShort(labels.get(handler[1]));
+                out.writeShort(labels.get(handler[2]));
+                out.writeShort(handler[3]);
+            }
+            out.writeShort(0); // attributes
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        methodCount++;
+        code = null;
+    }
+
+    // Code
+
+    /**
+     * @return a new label, to be placed with mark()
+     */
+    int newLabel() {
+        labels.add(-1);
+        return labels.size() - 1;
+    }
+
+    /**
+     * Place a label at the current position in the code.
+     */
+    void mark(int label) {
+        labels.set(label, code.size());
+    }
+
+    /**
+     * Add an instruction with no operands.
+     */
+    void op(int opcode) {
+        code.write(opcode);
+    }
+
+    /**
+     * Add a jump or conditional branch to a label.
+     */
+    void jump(int opcode, int label) {
+        jumps.add(new int[]{code.size(), label});
+        code.write(opcode);
+        code.write(0);
+        code.write(0);
+    }
+
+    /**
+     * Push an int constant using the shortest suitable instruction.
+     */
+    void pushInt(int value) {
+        if (value >= -1 && value <= 5) {
+            code.write(ICONST_0 + value);
+        } else if (value == (byte) value) {
+            code.write(BIPUSH);
+            code.write(value);
+        } else if (value == (short) value) {
+            code.write(SIPUSH);
+            writeShort(value);
+        } else {
+            int index = constant("I" + value, 1, out -> {
+                out.writeByte(3);
+                out.writeInt(value);
+            });
+            if (index < 256) {
+                code.write(LDC);
+                code.write(index);
+            } else {
+                code.write(LDC_W);
+                writeShort(index);
+            }
+        }
+    }
+
+    /**
+     * Push a long constant.
+     */
+    void pushLong(long value) {
+        int index = constant("J" + value, 2, out -> {
+            out.writeByte(5);
+            out.writeLong(value);
+        });
+        code.write(LDC2_W);
+        writeShort(index);
+    }
+
+    /**
+     * Add a load or store instruction (such as ILOAD or ASTORE) for a local variable.
+     */
+    void local(int opcode, int local) {
+        code.write(opcode);
+        code.write(local);
+    }
+
+    /**
+     * Add a getstatic instruction.
+     */
+    void getStatic(String owner, String name, String descriptor) {
+        code.write(GETSTATIC);
+        writeShort(memberRef(9, owner, name, descriptor));
+    }
+
+    /**
+     * Add an invokestatic, invokevirtual or invokespecial instruction for a class method.
+     */
+    void invoke(int opcode, String owner, String name, String descriptor) {
+        code.write(opcode);
+        writeShort(memberRef(10, owner, name, descriptor));
+    }
+
+    /**
+     * Handle exceptions of the given class thrown between two labels by jumping to a
+     * third, with the exception on the stack.
+     */
+    void handler(int start, int end, int handler, String exceptionClass) {
+        handlers.add(new int[]{start, end, handler, classRef(exceptionClass)});
+    }
+
+    private void writeShort(int value) {
+        code.write(value >> 8);
+        code.write(value);
+    }
+}
@@ -0,0 +1,26 @@
+package mars.simulator;
+
+/**
+ * A basic block of MIPS instructions translated to JVM code by BlockCompiler.  The
+ * block keeps the registers it uses in JVM local variables while it runs, and writes
+ * them back to the register file before returning.
+ *
+ * @version October 2026
+ */
+
+public interface CompiledBlock {
+
+    /**
+     * Run the block from its first instruction.  A block that branches back to its own
+     * start keeps running as long as another full pass fits within the budget.
+     * <p>
+     * If an instruction would cause an exception (arithmetic overflow or an address
+     * error), the block stops just before it, with the program counter at that instruction
+     * and the instruction not executed, so that the interpreter can run it and take the
+     * exception.  The result is then the bitwise complement (~) of the instruction count.
+     *
+     * @param budget maximum number of instructions to execute, at least the block length
+     * @return number of instructions executed, or its complement if stopped before a faulting instruction
+     */
+    int execute(int budget);
+}
@@ -60,10 +60,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  **/
 
 public class DelayedBranch {
-    // Class states.
-    private static final int CLEARED = 0;
-    private static final int REGISTERED = 1;
-    private static final int TRIGGERED = 2;
+    // Class states.  Package visibility, for the codes returned by getState().
+    static final int CLEARED = 0;
+    static final int REGISTERED = 1;
+    static final int TRIGGERED = 2;
 
     // Initially nothing is happening.
 
@@ -158,4 +158,27 @@ public class DelayedBranch {
         return branchTargetAddress;
     }
 
+    /**
+     * Return the current state (cleared, registered or triggered) as a code that can be
+     * given to restore() along with the branch target address.  Used to save simulation
+     * state for the execution history.  This method has package visibility.
+     *
+     * @return code for the current state
+     */
+    static int getState() {
+        return state;
+    }
+
+    /**
+     * Restore a state saved with getState() and getBranchTargetAddress().  This method
+     * has package visibility.
+     *
+     * @param savedState    code returned by getState()
+     * @param targetAddress branch target address at the time
+     */
+    static void restore(int savedState, int targetAddress) {
+        state = savedState;
+        branchTargetAddress = targetAddress;
+    }
+
 }  // DelayedBranch
\ No newline at end of file
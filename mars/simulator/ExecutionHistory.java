@@ -0,0 +1,755 @@
+package mars.simulator;
+
+import mars.Globals;
+import mars.ProcessingException;
+import mars.ProgramStatement;
+import mars.Settings;
+import mars.mips.hardware.*;
+import mars.mips.instructions.BasicInstruction;
+import mars.util.Binary;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+
+/**
+ * Record of a program's execution that lets BackStepper return to any earlier step, not
+ * just the few thousand it keeps undo actions for.
+ * <p>
+ * Every CHECKPOINT_INTERVAL steps, a checkpoint saves the registers, program counter,
+ * delayed branch state and heap pointer.  Memory is too large to copy each time, so instead
+ * the first store to each 4K byte page after a checkpoint saves that page as it was at the
+ * checkpoint.  Returning to step N puts back the pages saved since the checkpoint at or
+ * before N, then that checkpoint's registers, and executes forward to step N.
+ * <p>
+ * Executing forward repeats the original execution except for syscalls, external
+ * interrupts and changes made from outside the program (editing registers or memory in
+ * the GUI, or a tool writing to memory mapped I/O).  So the changes each syscall made to
+ * registers and memory are recorded and applied in its place, which also means nothing is
+ * printed or read again.  Outside changes are recorded and applied before the step they
+ * preceded, and interrupts are raised again at the same step.  Files used by syscalls are
+ * not rewound.  Executing again from an earlier step discards the history after it.
+ * <p>
+ * The history is kept only while backstepping is enabled, and not if self-modifying code
+ * is allowed.  When the saved pages and records grow past a limit, the oldest checkpoints
+ * are discarded, so the earliest steps can no longer be reached.
+ *
+ * @version October 2026
+ */
+
+class ExecutionHistory implements Memory.StoreListener {
+    static final int CHECKPOINT_INTERVAL = 1 << 16; // steps
+    private static final int PAGE_SHIFT = 10; // 1024 words == 4K bytes
+    private static final int PAGE_WORDS = 1 << PAGE_SHIFT;
+    private static final long MAX_SAVED_WORDS = 1 << 24; // 64 MB
+    private static final int RECORD_WORDS = 5;
+
+    // Kinds of record.  Records with INPUT added are applied before their step is executed,
+    // the others in place of executing it (a syscall).
+    static final int REGISTER = 1;
+    static final int COPROC0_REGISTER = 2;
+    static final int COPROC1_REGISTER = 3;
+    static final int CONDITION_FLAGS = 4;
+    static final int PROGRAM_COUNTER = 5;
+    private static final int MEMORY_WORD = 6;    // id is address, value is raw word
+    private static final int HEAP_ADDRESS = 7;
+    private static final int DELAYED_BRANCH = 8; // id is state, value is target address
+    private static final int INTERRUPT = 9;      // value is device interrupt code
+    private static final int INPUT = 0x100;
+
+    // Layout of a saved register state.  Elements 0-31 are the general purpose registers.
+    private static final int HI = 32;
+    private static final int LO = 33;
+    private static final int PC = 34;
+    private static final int FLAGS = 35;
+    private static final int HEAP = 36;
+    private static final int DELAY_STATE = 37;
+    private static final int DELAY_TARGET = 38;
+    private static final int COPROC1 = 39;
+    private static final int COPROC0 = COPROC1 + 32;
+
+    private final BackStepper stepper;
+    private boolean started = false;
+    private boolean active = false;
+    // Set while restoring or executing forward, when changes are not to be recorded.
+    private boolean restoring = false;
+
+    private final ArrayList<Checkpoint> checkpoints = new ArrayList<>();
+    private Checkpoint current = null; // checkpoint at or before the current step
+    private MemoryBackend lastStorage = null; // last storage looked up in current.savedPages
+    private BitSet lastSavedPages = null;
+    private long savedWords = 0;
+    private long horizon = 0; // number of steps in the recorded execution
+
+    // Records, in order of step number, as parallel arrays.  Those before nextRecord have
+    // been applied to the current state.
+    private long[] recordSteps = new long[64];
+    private int[] recordKinds = new int[64];
+    private int[] recordIds = new int[64];
+    private int[] recordValues = new int[64];
+    private int recordCount = 0;
+    private int nextRecord = 0;
+
+    // Words stored during a syscall, or from outside the program since the last step.
+    private MemoryBackend[] writtenStorages = new MemoryBackend[16];
+    private int[] writtenIndexes = new int[16];
+    private int writtenCount = 0;
+    private boolean recording = false;
+    private int[] stateBefore = null;
+    private int[] stateAfter = null;
+
+    ExecutionHistory(BackStepper stepper) {
+        this.stepper = stepper;
+    }
+
+    // The simulator is about to execute the current step.
+    void beginStep(ProgramStatement statement) {
+        if (!started) {
+            start();
+        }
+        if (!active) {
+            return;
+        }
+        recordInputs();
+        truncateFuture();
+        recording = isSyscall(statement);
+        if (recording) {
+            stateBefore = captureState(stateBefore);
+        }
+    }
+
+    // The simulator has finished executing the current step.
+    void endStep() {
+        if (!active) {
+            return;
+        }
+        long step = stepper.getStepCount();
+        if (recording) {
+            recordSyscall(step);
+            recording = false;
+        }
+        horizon = Math.max(horizon, step + 1);
+        stepCompleted(step + 1);
+    }
+
+    // The simulator is taking an external interrupt in place of the current step.
+    void recordInterrupt(int deviceInterruptCode) {
+        if (!active || restoring) {
+            return;
+        }
+        recording = false;
+        writtenCount = 0;
+        record(stepper.getStepCount(), INTERRUPT | INPUT, 0, deviceInterruptCode);
+    }
+
+    // A register has been changed from outside the program.
+    void registerInput(int kind, int id) {
+        if (!active || restoring) {
+            return;
+        }
+        recordInputs();
+        truncateFuture();
+        record(stepper.getStepCount(), kind | INPUT, id, getValue(kind, id));
+    }
+
+    // Record memory changed from outside the program, as inputs to the current step.
+    void recordInputs() {
+        if (writtenCount == 0) {
+            return;
+        }
+        truncateFuture();
+        for (int i = 0; i < writtenCount; i++) {
+            record(stepper.getStepCount(), MEMORY_WORD | INPUT, getAddress(writtenStorages[i], writtenIndexes[i]),
+                    writtenStorages[i].fetchWord(writtenIndexes[i]));
+            writtenStorages[i] = null;
+        }
+        writtenCount = 0;
+    }
+
+    void setRestoring(boolean restoring) {
+        this.restoring = restoring;
+    }
+
+    // BackStepper has undone steps.
+    void positionChanged() {
+        if (active) {
+            nextRecord = firstRecord(stepper.getStepCount());
+            setCurrent(checkpoints.get(floorIndex(stepper.getStepCount())));
+        }
+    }
+
+    boolean canTravelTo(long target) {
+        return active && target >= checkpoints.get(0).step
+                && target <= Math.max(horizon, stepper.getStepCount());
+    }
+
+    // Return to the state just before the target step.
+    boolean travelTo(long target) {
+        if (!canTravelTo(target)) {
+            return false;
+        }
+        synchronized (Globals.memoryAndRegistersLock) {
+            recordInputs();
+            restoring = true;
+            try {
+                // Saved pages only lead back, so a later step is reached from the current one.
+                long ringFrom = target - Globals.maximumBacksteps;
+                if (target < stepper.getStepCount() || !stepper.isBetweenSteps()) {
+                    restoreCheckpoint(floorIndex(target));
+                } else if (ringFrom > stepper.getStepCount()) {
+                    stepper.restart(stepper.getStepCount());
+                }
+                replay(target, ringFrom, null);
+            } finally {
+                restoring = false;
+                stepper.setEnabled(true);
+            }
+        }
+        return true;
+    }
+
+    // Return to the latest earlier step boundary with the program counter at a breakpoint.
+    // Works back one checkpoint interval at a time, executing forward through each.
+    boolean travelToBreakpoint(int[] breakPoints) {
+        long origin = stepper.getStepCount();
+        if (!active || breakPoints == null || breakPoints.length == 0 || origin == 0) {
+            return false;
+        }
+        int[] sorted = breakPoints.clone();
+        Arrays.sort(sorted);
+        synchronized (Globals.memoryAndRegistersLock) {
+            recordInputs();
+            restoring = true;
+            try {
+                long end = origin;
+                for (int i = floorIndex(end - 1); i >= 0; i--) {
+                    restoreCheckpoint(i);
+                    long found = replay(end, Long.MAX_VALUE, sorted);
+                    if (found >= 0) {
+                        restoreCheckpoint(i);
+                        replay(found, found - Globals.maximumBacksteps, null);
+                        return true;
+                    }
+                    end = checkpoints.get(i).step;
+                }
+                restoreCheckpoint(floorIndex(origin));
+                replay(origin, origin - Globals.maximumBacksteps, null);
+                return false;
+            } finally {
+                restoring = false;
+                stepper.setEnabled(true);
+            }
+        }
+    }
+
+    /**
+     * Save the pages containing the words about to be stored, if not already saved since the
+     * latest checkpoint, and note words stored by a syscall or from outside the program.  A
+     * bulk transfer stores up to a block of words at once, so every word in the range is noted.
+     */
+    public void beforeStore(MemoryBackend storage, int address, int length) {
+        int first = storage.getWordIndex(address);
+        int last = storage.getWordIndex(address + length - 1);
+        for (int page = first >>> PAGE_SHIFT; page <= last >>> PAGE_SHIFT; page++) {
+            savePage(storage, Math.max(first, page << PAGE_SHIFT));
+        }
+        if (!restoring && (recording || !stepper.isStepThread())) {
+            for (int index = first; index <= last; index++) {
+                noteWritten(storage, index);
+            }
+        }
+    }
+
+    private void start() {
+        started = true;
+        active = !Globals.getSettings().getBooleanSetting(Settings.SELF_MODIFYING_CODE_ENABLED);
+        if (active) {
+            Checkpoint checkpoint = new Checkpoint(stepper.getStepCount(), captureState(null));
+            checkpoints.add(checkpoint);
+            setCurrent(checkpoint);
+            savedWords = checkpoint.state.length;
+            horizon = checkpoint.step;
+            Globals.memory.setStoreListener(this);
+        }
+    }
+
+    // Record the changes a syscall made, to be applied in its place.  The program counter
+    // and delayed branch state are recorded only if not as they would be after any other
+    // instruction that does not branch.
+    private void recordSyscall(long step) {
+        int[] before = stateBefore;
+        int[] after = captureState(stateAfter);
+        stateAfter = after;
+        for (int i = 1; i < 32; i++) {
+            if (after[i] != before[i]) {
+                record(step, REGISTER, i, after[i]);
+            }
+        }
+        if (after[HI] != before[HI]) {
+            record(step, REGISTER, 33, after[HI]);
+        }
+        if (after[LO] != before[LO]) {
+            record(step, REGISTER, 34, after[LO]);
+        }
+        for (int i = 0; i < 32; i++) {
+            if (after[COPROC1 + i] != before[COPROC1 + i]) {
+                record(step, COPROC1_REGISTER, i, after[COPROC1 + i]);
+            }
+        }
+        if (after[FLAGS] != before[FLAGS]) {
+            record(step, CONDITION_FLAGS, 0, after[FLAGS]);
+        }
+        Register[] coprocessor0 = Coprocessor0.getRegisters();
+        for (int i = 0; i < coprocessor0.length; i++) {
+            if (after[COPROC0 + i] != before[COPROC0 + i]) {
+                record(step, COPROC0_REGISTER, coprocessor0[i].getNumber(), after[COPROC0 + i]);
+            }
+        }
+        for (int i = 0; i < writtenCount; i++) {
+            record(step, MEMORY_WORD, getAddress(writtenStorages[i], writtenIndexes[i]),
+                    writtenStorages[i].fetchWord(writtenIndexes[i]));
+            writtenStorages[i] = null;
+        }
+        writtenCount = 0;
+        if (after[HEAP] != before[HEAP]) {
+            record(step, HEAP_ADDRESS, 0, after[HEAP]);
+        }
+        int expectedPC = before[PC] + 4;
+        int expectedState = DelayedBranch.CLEARED;
+        if (before[DELAY_STATE] == DelayedBranch.TRIGGERED) {
+            expectedPC = before[DELAY_TARGET];
+        } else if (before[DELAY_STATE] == DelayedBranch.REGISTERED) {
+            expectedState = DelayedBranch.TRIGGERED;
+        }
+        if (after[PC] != expectedPC || after[DELAY_STATE] != expectedState
+                || (expectedState != DelayedBranch.CLEARED && after[DELAY_TARGET] != before[DELAY_TARGET])) {
+            record(step, PROGRAM_COUNTER, 0, after[PC]);
+            record(step, DELAYED_BRANCH, after[DELAY_STATE], after[DELAY_TARGET]);
+        }
+    }
+
+    // Restore the state at a checkpoint.  Pages are put back from the current checkpoint
+    // interval down to that of the target, so each ends up as it was at the target.
+    private void restoreCheckpoint(int index) {
+        stepper.setEnabled(false);
+        for (int i = floorIndex(stepper.getStepCount()); i >= index; i--) {
+            for (SavedPage page : checkpoints.get(i).pages) {
+                page.restore();
+            }
+        }
+        Checkpoint checkpoint = checkpoints.get(index);
+        restoreState(checkpoint.state);
+        stepper.restart(checkpoint.step);
+        nextRecord = firstRecord(checkpoint.step);
+        setCurrent(checkpoint);
+    }
+
+    // Execute forward until the target step, with undo actions kept for steps from
+    // ringFrom on.  If breakpoints are given, returns the latest step before the target
+    // that began at one of them, or -1.  Memory observers are not told of the accesses,
+    // since they already saw these steps, and memory mapped I/O tools would otherwise
+    // repeat their output.
+    private long replay(long target, long ringFrom, int[] breakPoints) {
+        long found = -1;
+        Globals.memory.setNotifying(false);
+        try {
+            while (stepper.getStepCount() < target) {
+                if (breakPoints != null && Arrays.binarySearch(breakPoints, RegisterFile.getProgramCounter()) >= 0) {
+                    found = stepper.getStepCount();
+                }
+                stepper.setEnabled(stepper.getStepCount() >= ringFrom);
+                if (!replayStep()) {
+                    break;
+                }
+            }
+        } finally {
+            Globals.memory.setNotifying(true);
+            stepper.setEnabled(true);
+        }
+        return found;
+    }
+
+    // Execute one step as the simulator does, applying records in place of executing a
+    // syscall.  Returns false if the step cannot be completed.
+    private boolean replayStep() {
+        long step = stepper.getStepCount();
+        int pc = RegisterFile.getProgramCounter();
+        ProgramStatement statement;
+        try {
+            statement = Globals.memory.getStatementNoNotify(pc);
+        } catch (AddressErrorException e) {
+            return false;
+        }
+        if (statement == null) {
+            return false;
+        }
+        stepper.startStep(pc);
+        int deviceInterruptCode = applyRecords(step, true);
+        RegisterFile.incrementPC();
+        boolean branchRecorded = false;
+        try {
+            if (deviceInterruptCode != 0) {
+                throw new ProcessingException(statement, "External Interrupt", deviceInterruptCode);
+            }
+            BasicInstruction instruction = (BasicInstruction) statement.getInstruction();
+            if (instruction == null) {
+                throw new ProcessingException(statement,
+                        "undefined instruction (" + Binary.intToHexString(statement.getBinaryStatement()) + ")",
+                        Exceptions.RESERVED_INSTRUCTION_EXCEPTION);
+            }
+            if (isSyscall(statement)) {
+                branchRecorded = applyRecords(step, false) != 0;
+            } else {
+                instruction.getSimulationCode().simulate(statement);
+            }
+        } catch (ProcessingException pe) {
+            if (pe.errors() == null) {
+                return false;
+            }
+            ProgramStatement exceptionHandler = null;
+            try {
+                exceptionHandler = Globals.memory.getStatementNoNotify(Memory.exceptionHandlerAddress);
+            } catch (AddressErrorException ignored) {
+            }
+            if (exceptionHandler == null) {
+                return false;
+            }
+            RegisterFile.setProgramCounter(Memory.exceptionHandlerAddress);
+        }
+        if (!branchRecorded) {
+            if (DelayedBranch.isTriggered()) {
+                RegisterFile.setProgramCounter(DelayedBranch.getBranchTargetAddress());
+                DelayedBranch.clear();
+            } else if (DelayedBranch.isRegistered()) {
+                DelayedBranch.trigger();
+            }
+        }
+        while (nextRecord < recordCount && recordSteps[nextRecord] <= step) {
+            nextRecord++;
+        }
+        stepper.finishStep();
+        stepCompleted(step + 1);
+        return true;
+    }
+
+    // Apply the next records for the given step: inputs, or else the changes made by a
+    // syscall.  For inputs, returns the code of a recorded interrupt, and for a syscall,
+    // nonzero if it recorded the program counter.  Otherwise returns 0.
+    private int applyRecords(long step, boolean inputs) {
+        int result = 0;
+        while (nextRecord < recordCount && recordSteps[nextRecord] == step
+                && ((recordKinds[nextRecord] & INPUT) != 0) == inputs) {
+            int kind = recordKinds[nextRecord] & ~INPUT;
+            int id = recordIds[nextRecord];
+            int value = recordValues[nextRecord];
+            nextRecord++;
+            switch (kind) {
+                case REGISTER:
+                    RegisterFile.updateRegister(id, value);
+                    break;
+                case COPROC0_REGISTER:
+                    Coprocessor0.updateRegister(id, value);
+                    break;
+                case COPROC1_REGISTER:
+                    Coprocessor1.updateRegister(id, value);
+                    break;
+                case CONDITION_FLAGS:
+                    setConditionFlags(value);
+                    break;
+                case PROGRAM_COUNTER:
+                    RegisterFile.setProgramCounter(value);
+                    result = 1;
+                    break;
+                case MEMORY_WORD:
+                    try {
+                        Globals.memory.setRawWord(id, value);
+                    } catch (AddressErrorException ignored) {
+                        // it was stored there before
+                    }
+                    break;
+                case HEAP_ADDRESS:
+                    Globals.memory.setHeapAddress(value);
+                    break;
+                case DELAYED_BRANCH:
+                    DelayedBranch.restore(id, value);
+                    break;
+                case INTERRUPT:
+                    result = value;
+                    break;
+            }
+        }
+        return result;
+    }
+
+    // A step has been completed.  Take a checkpoint if one is due, or move on to the
+    // next one if it was taken already.
+    private void stepCompleted(long steps) {
+        if (steps % CHECKPOINT_INTERVAL != 0) {
+            return;
+        }
+        int index = floorIndex(steps);
+        if (checkpoints.get(index).step == steps) {
+            setCurrent(checkpoints.get(index));
+            return;
+        }
+        Checkpoint checkpoint = new Checkpoint(steps, captureState(null));
+        checkpoints.add(index + 1, checkpoint);
+        setCurrent(checkpoint);
+        savedWords += checkpoint.state.length;
+        trim();
+    }
+
+    // If the current step is earlier than the end of the recorded execution, it is being
+    // executed differently, so discard the records and checkpoints after it.
+    private void truncateFuture() {
+        long step = stepper.getStepCount();
+        if (step >= horizon && nextRecord == recordCount) {
+            return;
+        }
+        recordCount = nextRecord;
+        while (checkpoints.get(checkpoints.size() - 1).step > step) {
+            savedWords -= checkpoints.remove(checkpoints.size() - 1).getSavedWords();
+        }
+        horizon = step;
+    }
+
+    // Discard the oldest checkpoints and their records while over the size limit, always
+    // keeping the two latest.
+    private void trim() {
+        while (savedWords + (long) recordCount * RECORD_WORDS > MAX_SAVED_WORDS && checkpoints.size() > 2) {
+            savedWords -= checkpoints.remove(0).getSavedWords();
+            int discard = firstRecord(checkpoints.get(0).step);
+            int keep = recordCount - discard;
+            System.arraycopy(recordSteps, discard, recordSteps, 0, keep);
+            System.arraycopy(recordKinds, discard, recordKinds, 0, keep);
+            System.arraycopy(recordIds, discard, recordIds, 0, keep);
+            System.arraycopy(recordValues, discard, recordValues, 0, keep);
+            recordCount = keep;
+            nextRecord = Math.max(0, nextRecord - discard);
+        }
+    }
+
+    private void record(long step, int kind, int id, int value) {
+        if (recordCount == recordSteps.length) {
+            int length = recordCount * 2;
+            recordSteps = Arrays.copyOf(recordSteps, length);
+            recordKinds = Arrays.copyOf(recordKinds, length);
+            recordIds = Arrays.copyOf(recordIds, length);
+            recordValues = Arrays.copyOf(recordValues, length);
+        }
+        recordSteps[recordCount] = step;
+        recordKinds[recordCount] = kind;
+        recordIds[recordCount] = id;
+        recordValues[recordCount] = value;
+        recordCount++;
+        nextRecord = recordCount;
+    }
+
+    // Index of the first record for the given step or later.
+    private int firstRecord(long step) {
+        int low = 0;
+        int high = recordCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (recordSteps[middle] < step) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // Index of the latest checkpoint at or before the given step, or 0 if none.
+    private int floorIndex(long step) {
+        int low = 0;
+        int high = checkpoints.size() - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (checkpoints.get(middle).step <= step) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    private void setCurrent(Checkpoint checkpoint) {
+        current = checkpoint;
+        lastStorage = null;
+        lastSavedPages = null;
+    }
+
+    private void savePage(MemoryBackend storage, int index) {
+        if (current == null) {
+            return;
+        }
+        if (storage != lastStorage) {
+            lastSavedPages = current.savedPages.get(storage);
+            if (lastSavedPages == null) {
+                lastSavedPages = new BitSet();
+                current.savedPages.put(storage, lastSavedPages);
+            }
+            lastStorage = storage;
+        }
+        int page = index >>> PAGE_SHIFT;
+        if (!lastSavedPages.get(page)) {
+            lastSavedPages.set(page);
+            SavedPage saved = new SavedPage(storage, page);
+            current.pages.add(saved);
+            savedWords += saved.getSavedWords();
+        }
+    }
+
+    private void noteWritten(MemoryBackend storage, int index) {
+        if (writtenCount == writtenIndexes.length) {
+            writtenStorages = Arrays.copyOf(writtenStorages, writtenCount * 2);
+            writtenIndexes = Arrays.copyOf(writtenIndexes, writtenCount * 2);
+        }
+        writtenStorages[writtenCount] = storage;
+        writtenIndexes[writtenCount] = index;
+        writtenCount++;
+    }
+
+    private static boolean isSyscall(ProgramStatement statement) {
+        return statement.getInstruction() != null && statement.getInstruction().getName().equals("syscall");
+    }
+
+    private static int getAddress(MemoryBackend storage, int index) {
+        return storage.isDescending() ? storage.getBaseAddress() - (index << 2) : storage.getBaseAddress() + (index << 2);
+    }
+
+    private static int getValue(int kind, int id) {
+        switch (kind) {
+            case REGISTER:
+                return RegisterFile.getValue(id);
+            case COPROC0_REGISTER:
+                return Coprocessor0.getValue(id);
+            case COPROC1_REGISTER:
+                return Coprocessor1.getValue(id);
+            case CONDITION_FLAGS:
+                return Coprocessor1.getConditionFlags();
+            default: // PROGRAM_COUNTER
+                return RegisterFile.getProgramCounter();
+        }
+    }
+
+    private static void setConditionFlags(int flags) {
+        for (int flag = 0; flag < Coprocessor1.getConditionFlagCount(); flag++) {
+            if (((flags >> flag) & 1) != 0) {
+                Coprocessor1.setConditionFlag(flag);
+            } else {
+                Coprocessor1.clearConditionFlag(flag);
+            }
+        }
+    }
+
+    private static int[] captureState(int[] state) {
+        Register[] coprocessor0 = Coprocessor0.getRegisters();
+        if (state == null) {
+            state = new int[COPROC0 + coprocessor0.length];
+        }
+        for (int i = 0; i < 32; i++) {
+            state[i] = RegisterFile.getValue(i);
+        }
+        state[HI] = RegisterFile.getValue(33);
+        state[LO] = RegisterFile.getValue(34);
+        state[PC] = RegisterFile.getProgramCounter();
+        state[FLAGS] = Coprocessor1.getConditionFlags();
+        state[HEAP] = Globals.memory.getHeapAddress();
+        state[DELAY_STATE] = DelayedBranch.getState();
+        state[DELAY_TARGET] = DelayedBranch.getBranchTargetAddress();
+        for (int i = 0; i < 32; i++) {
+            state[COPROC1 + i] = Coprocessor1.getValue(i);
+        }
+        for (int i = 0; i < coprocessor0.length; i++) {
+            state[COPROC0 + i] = coprocessor0[i].getValue();
+        }
+        return state;
+    }
+
+    private static void restoreState(int[] state) {
+        for (int i = 1; i < 32; i++) {
+            RegisterFile.updateRegister(i, state[i]);
+        }
+        RegisterFile.updateRegister(33, state[HI]);
+        RegisterFile.updateRegister(34, state[LO]);
+        RegisterFile.setProgramCounter(state[PC]);
+        setConditionFlags(state[FLAGS]);
+        Globals.memory.setHeapAddress(state[HEAP]);
+        DelayedBranch.restore(state[DELAY_STATE], state[DELAY_TARGET]);
+        for (int i = 0; i < 32; i++) {
+            Coprocessor1.updateRegister(i, state[COPROC1 + i]);
+        }
+        Register[] coprocessor0 = Coprocessor0.getRegisters();
+        for (int i = 0; i < coprocessor0.length; i++) {
+            Coprocessor0.updateRegister(coprocessor0[i].getNumber(), state[COPROC0 + i]);
+        }
+    }
+
+    // Registers at the start of a checkpoint interval, and the pages saved during it.
+    private static class Checkpoint {
+        private final long step;
+        private final int[] state;
+        private final ArrayList<SavedPage> pages = new ArrayList<>();
+        private final IdentityHashMap<MemoryBackend, BitSet> savedPages = new IdentityHashMap<>();
+
+        private Checkpoint(long step, int[] state) {
+            this.step = step;
+            this.state = state;
+        }
+
+        private long getSavedWords() {
+            long words = state.length;
+            for (SavedPage page : pages) {
+                words += page.getSavedWords();
+            }
+            return words;
+        }
+    }
+
+    // Contents of one page of storage.  A page of zeros is not copied.
+    private static class SavedPage {
+        private final MemoryBackend storage;
+        private final int firstIndex;
+        private int[] words = null;
+
+        private SavedPage(MemoryBackend storage, int page) {
+            this.storage = storage;
+            this.firstIndex = page << PAGE_SHIFT;
+            try {
+                for (int i = 0; i < PAGE_WORDS; i++) {
+                    int word = storage.fetchWord(firstIndex + i);
+                    if (word != 0) {
+                        if (words == null) {
+                            words = new int[PAGE_WORDS];
+                        }
+                        words[i] = word;
+                    }
+                }
+            } catch (IndexOutOfBoundsException e) {
+                // page extends past end of storage
+            }
+        }
+
+        private long getSavedWords() {
+            return (words == null) ? 0 : PAGE_WORDS;
+        }
+
+        // Stores only the words that differ, so blocks of storage never written stay unallocated.
+        private void restore() {
+            try {
+                for (int i = 0; i < PAGE_WORDS; i++) {
+                    int word = (words == null) ? 0 : words[i];
+                    if (storage.fetchWord(firstIndex + i) != word) {
+                        storage.storeWord(firstIndex + i, word);
+                    }
+                }
+            } catch (IndexOutOfBoundsException e) {
+                // page extends past end of storage
+            }
+        }
+    }
+}
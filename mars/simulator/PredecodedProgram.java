@@ -0,0 +1,81 @@
+package mars.simulator;
+
+import mars.*;
+import mars.mips.hardware.*;
+import mars.mips.instructions.*;
+
+/**
+ * Predecoded copy of the (user) text segment, used by the simulator's fast
+ * execution loop.  Each text segment word is represented by the ProgramStatement
+ * stored there and the SimulationCode of its instruction, both held in flat arrays
+ * indexed by <tt>(pc - textBaseAddress) &gt;&gt; 2</tt>.  The operands were already
+ * extracted into the ProgramStatement at assembly time, so executing a statement
+ * from here costs two array loads and one call.
+ * <p>
+ * The copy is taken when simulation starts and is not updated afterward, so it may only
+ * be used when the text segment cannot change during execution (self-modifying code disabled).
+ * Addresses outside the copy, such as the kernel text segment, are not covered and must be
+ * fetched from memory as usual.
+ *
+ * @version October 2026
+ */
+
+public class PredecodedProgram {
+    private final int baseAddress;
+    private final ProgramStatement[] statements;
+    private final SimulationCode[] handlers;
+
+    private PredecodedProgram(int baseAddress, ProgramStatement[] statements) {
+        this.baseAddress = baseAddress;
+        this.statements = statements;
+        this.handlers = new SimulationCode[statements.length];
+        for (int i = 0; i < statements.length; i++) {
+            if (statements[i] != null) {
+                handlers[i] = getSimulationCode(statements[i]);
+            }
+        }
+    }
+
+    /**
+     * Predecode the text segment currently stored in the given memory.
+     *
+     * @param memory the simulated MIPS memory holding the assembled program
+     * @return predecoded copy of its (user) text segment
+     */
+    public static PredecodedProgram decode(Memory memory) {
+        return new PredecodedProgram(Memory.textBaseAddress, memory.getTextSegmentStatements());
+    }
+
+    /**
+     * Get the SimulationCode for the instruction of the given statement.
+     *
+     * @param statement a text segment statement
+     * @return its SimulationCode, or null if the statement does not hold a valid basic instruction.
+     */
+    public static SimulationCode getSimulationCode(ProgramStatement statement) {
+        Instruction instruction = statement.getInstruction();
+        return (instruction instanceof BasicInstruction) ? ((BasicInstruction) instruction).getSimulationCode() : null;
+    }
+
+    /**
+     * @return address of the statement at index 0
+     */
+    public int getBaseAddress() {
+        return baseAddress;
+    }
+
+    /**
+     * @return statements indexed by word offset from the base address; null where there is none
+     */
+    public ProgramStatement[] getStatements() {
+        return statements;
+    }
+
+    /**
+     * @return SimulationCode of each statement, same indexing as getStatements();
+     * null where there is no statement or its instruction is undefined
+     */
+    public SimulationCode[] getHandlers() {
+        return handlers;
+    }
+}
@@ -0,0 +1,596 @@
+package mars.simulator;
+
+import mars.Globals;
+import mars.ProgramStatement;
+import mars.Settings;
+import mars.assembler.Symbol;
+import mars.assembler.SymbolTable;
+import mars.mips.hardware.Memory;
+import mars.mips.instructions.Instruction;
+import mars.mips.instructions.syscalls.Syscall;
+import mars.util.Binary;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.*;
+
+/**
+ * Instruction profiler built into the simulator's execution loops.  Set one with
+ * Simulator.setProfiler() before simulating, and every instruction fetched for execution
+ * is counted: once for its address in the text segment, and once for the function it is
+ * in.  Nothing is sampled and no observers are involved, so counts are exact and the
+ * cost is a few array and field updates per instruction.
+ * <p>
+ * Functions are found by following calls (jal, jalr, bgezal, bltzal) and returns
+ * (jr $ra, or jr to the return address of the latest call) on a shadow call stack.
+ * This gives a tree of calling contexts rooted at the function execution started in,
+ * and the cost of each call from each call site.  A function is named by the label at
+ * its address.  From these counts the profiler writes
+ * a flat profile (per function, per opcode and hottest instructions), a collapsed stack
+ * listing, one line per calling context, for flame graph tools, and a call graph in the
+ * callgrind format of KCachegrind and similar viewers.
+ * <p>
+ * Cycle totals are approximate: each opcode is charged the result latency of a classic
+ * MIPS R3000 with R3010 floating point unit, with no pipeline stalls or cache effects.
+ *
+ * @version October 2026
+ */
+
+public class Profiler {
+    private static final int HOTTEST_INSTRUCTIONS = 20;
+    // Kinds of control transfer, for following calls and returns.
+    private static final byte PLAIN = 0, CALL = 1, RETURN = 2, JUMP_REGISTER = 3;
+    private static final Map<String, Integer> cycles = new HashMap<>();
+
+    static {
+        for (String load : new String[]{"lb", "lbu", "lh", "lhu", "lw", "lwl", "lwr", "ll", "lwc1", "ldc1"}) {
+            cycles.put(load, 2);
+        }
+        for (String multiply : new String[]{"mult", "multu", "mul", "madd", "maddu", "msub", "msubu"}) {
+            cycles.put(multiply, 12);
+        }
+        cycles.put("div", 35);
+        cycles.put("divu", 35);
+        for (String add : new String[]{"add.s", "add.d", "sub.s", "sub.d", "abs.s", "abs.d", "neg.s", "neg.d",
+                "c.eq.s", "c.eq.d", "c.le.s", "c.le.d", "c.lt.s", "c.lt.d"}) {
+            cycles.put(add, 2);
+        }
+        cycles.put("mul.s", 4);
+        cycles.put("mul.d", 5);
+        cycles.put("div.s", 12);
+        cycles.put("div.d", 19);
+        cycles.put("sqrt.s", 12);
+        cycles.put("sqrt.d", 19);
+    }
+
+    // Counts per text segment word, indexed by (address - baseAddress) >> 2, and for any
+    // other address (such as the kernel text segment) in a map.
+    private int baseAddress;
+    private long[] hits;
+    private ProgramStatement[] statements;
+    private byte[] kinds;
+    private final Map<Integer, long[]> otherHits = new HashMap<>();
+    private final Map<Integer, ProgramStatement> otherStatements = new HashMap<>();
+    private long total = 0;
+    private boolean delayedBranching;
+    // The count reported by the ic option, which has always counted instruction fetches
+    // from the user text segment, skipping a fetch from the same address as the last one.
+    private long textTotal = 0;
+    private int lastTextAddress = 0;
+
+    // Calling context tree, and the control transfer made by the last instruction
+    private Frame root;
+    private Frame current;
+    private byte transfer = PLAIN;
+    private int transferAddress;
+    private boolean inDelaySlot;
+
+    // Shadow call stack: for each call not yet returned from, its call site and the
+    // instruction count before the call.  Its depth is that of the current frame.
+    private int depth = 0;
+    private int maxDepth = 0;
+    private int[] callSites = new int[64];
+    private long[] callStarts = new long[64];
+    // Per call site and callee (call site address in the high 32 bits): {calls, inclusive instructions}
+    private final Map<Long, long[]> calls = new HashMap<>();
+
+    private final List<SymbolTable> symbolTables = new ArrayList<>();
+
+    /*
+     * One calling context: a function called by way of the contexts above it.
+     */
+    private static class Frame {
+        final int address;
+        final Frame caller;
+        long instructions = 0;
+        long calls = 0;
+        Map<Integer, Frame> callees = null;
+
+        Frame(int address, Frame caller) {
+            this.address = address;
+            this.caller = caller;
+        }
+
+        Frame callee(int address) {
+            if (callees == null) {
+                callees = new HashMap<>();
+            }
+            Frame callee = callees.get(address);
+            if (callee == null) {
+                callee = new Frame(address, this);
+                callees.put(address, callee);
+            }
+            callee.calls++;
+            return callee;
+        }
+    }
+
+    /**
+     * Use the labels in the given symbol table to name functions and instruction addresses.
+     *
+     * @param table a symbol table, either the global one or that of a program file
+     */
+    public void addSymbolTable(SymbolTable table) {
+        symbolTables.add(table);
+    }
+
+    /**
+     * Get ready to count, if not already counting.  Called by the simulator when it starts
+     * executing, with the program to be profiled in memory.
+     *
+     * @param startAddress address of the first instruction to be executed
+     */
+    void start(int startAddress) {
+        if (hits == null) {
+            baseAddress = Memory.textBaseAddress;
+            statements = Globals.memory.getTextSegmentStatements();
+            hits = new long[statements.length];
+            kinds = new byte[statements.length];
+            for (int i = 0; i < statements.length; i++) {
+                kinds[i] = kindOf(statements[i]);
+            }
+            root = current = new Frame(startAddress, null);
+            root.calls = 1;
+        }
+        delayedBranching = Globals.getSettings().getBooleanSetting(Settings.DELAYED_BRANCHING_ENABLED);
+    }
+
+    /**
+     * Count one instruction fetched for execution.  Called by the simulator for each
+     * instruction, whether or not it completes normally.
+     *
+     * @param address   address of the instruction
+     * @param statement the instruction
+     */
+    void count(int address, ProgramStatement statement) {
+        total++;
+        if (address != lastTextAddress && address >= Memory.textBaseAddress && address <= Memory.textLimitAddress) {
+            textTotal++;
+            lastTextAddress = address;
+        }
+        if (transfer != PLAIN) {
+            followTransfer(address);
+        }
+        int index = (address - baseAddress) >> 2;
+        byte kind;
+        if (index >= 0 && index < hits.length && !Memory.wordNotAligned(address)) {
+            if (statements[index] != statement) { // self-modifying code
+                statements[index] = statement;
+                kinds[index] = kindOf(statement);
+            }
+            hits[index]++;
+            kind = kinds[index];
+        } else {
+            long[] count = otherHits.get(address);
+            if (count == null) {
+                otherHits.put(address, count = new long[1]);
+            }
+            count[0]++;
+            otherStatements.put(address, statement);
+            kind = kindOf(statement);
+        }
+        current.instructions++;
+        if (kind != PLAIN) {
+            transfer = kind;
+            transferAddress = address;
+        }
+    }
+
+    // Follow the call or return made by the previous instruction, now that we know the
+    // address of the next.  A call that did not go anywhere (branch and link not taken)
+    // continues with the following instruction, or the one after the delay slot.  A
+    // delay slot instruction counts for the function the branch is in.
+    private void followTransfer(int address) {
+        if (delayedBranching && !inDelaySlot && address == transferAddress + 4) {
+            inDelaySlot = true;
+            return;
+        }
+        if (transfer == CALL) {
+            if (address != transferAddress + (inDelaySlot ? 8 : 4)) {
+                call(address);
+            }
+        } else if (depth > 0 && (transfer == RETURN
+                || address == callSites[depth - 1] + (delayedBranching ? 8 : 4))) {
+            depth--;
+            long[] call = calls.get(callKey(callSites[depth], current.address));
+            call[1] += total - 1 - callStarts[depth];
+            current = current.caller;
+        }
+        transfer = PLAIN;
+        inDelaySlot = false;
+    }
+
+    private void call(int address) {
+        if (depth == callSites.length) {
+            callSites = Arrays.copyOf(callSites, 2 * depth);
+            callStarts = Arrays.copyOf(callStarts, 2 * depth);
+        }
+        callSites[depth] = transferAddress;
+        callStarts[depth] = total - 1; // the callee's first instruction has been counted
+        depth++;
+        maxDepth = Math.max(maxDepth, depth);
+        calls.computeIfAbsent(callKey(transferAddress, address), k -> new long[2])[0]++;
+        current = current.callee(address);
+    }
+
+    private static long callKey(int callSite, int callee) {
+        return ((long) callSite << 32) | (callee & 0xFFFFFFFFL);
+    }
+
+    private static byte kindOf(ProgramStatement statement) {
+        Instruction instruction = (statement == null) ? null : statement.getInstruction();
+        if (instruction == null) {
+            return PLAIN;
+        }
+        switch (instruction.getName()) {
+            case "jal":
+            case "jalr":
+            case "bgezal":
+            case "bltzal":
+                return CALL;
+            case "jr":
+                return (statement.getOperands()[0] == 31) ? RETURN : JUMP_REGISTER;
+            default:
+                return PLAIN;
+        }
+    }
+
+    /**
+     * @return total number of instructions counted
+     */
+    public long getInstructionCount() {
+        return total;
+    }
+
+    /**
+     * Get the instruction count as the ic option reports it: instructions executed from the
+     * user text segment, not counting those in the kernel text segment, and counting an
+     * instruction that branches to itself once for each time it is reached from elsewhere.
+     *
+     * @return number of instructions counted that way
+     */
+    public long getTextInstructionCount() {
+        return textTotal;
+    }
+
+    /**
+     * @return greatest number of calls in progress at one time
+     */
+    public int getMaxCallDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Write the flat profile: instructions and approximate cycles in total, then per
+     * function (self, and including the functions it called), per opcode, and for the
+     * most frequently executed instructions, then how often each syscall service was invoked.
+     *
+     * @param out where to write
+     */
+    public void writeFlatProfile(PrintStream out) {
+        Map<Integer, ProgramStatement> statementsByAddress = new TreeMap<>();
+        Map<Integer, Long> hitsByAddress = new HashMap<>();
+        collectHits(statementsByAddress, hitsByAddress);
+
+        Map<String, long[]> opcodes = new TreeMap<>(); // {count, cycles}
+        long totalCycles = 0;
+        for (Map.Entry<Integer, ProgramStatement> entry : statementsByAddress.entrySet()) {
+            Instruction instruction = entry.getValue().getInstruction();
+            String name = (instruction == null) ? "(undefined)" : instruction.getName();
+            long count = hitsByAddress.get(entry.getKey());
+            long[] opcode = opcodes.computeIfAbsent(name, k -> new long[2]);
+            opcode[0] += count;
+            opcode[1] += count * cycles.getOrDefault(name, 1);
+            totalCycles += count * cycles.getOrDefault(name, 1);
+        }
+
+        out.println();
+        out.println("Instruction profile: " + total + " instructions, about " + totalCycles + " cycles, "
+                + "maximum call depth " + maxDepth);
+        out.println();
+        out.println("        self   self%        total  total%        calls  recursion  function");
+        Map<Integer, long[]> functions = getFunctionCounts(); // {self, total, calls, recursion}
+        List<Map.Entry<Integer, long[]>> byFunction = new ArrayList<>(functions.entrySet());
+        byFunction.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+        for (Map.Entry<Integer, long[]> entry : byFunction) {
+            long[] counts = entry.getValue();
+            out.println(String.format("%12d %6.2f%% %12d %6.2f%% %12d %10d  %s", counts[0], percent(counts[0]),
+                    counts[1], percent(counts[1]), counts[2], counts[3], getFunctionName(entry.getKey())));
+        }
+
+        out.println();
+        out.println("       count   count%       cycles  opcode");
+        List<Map.Entry<String, long[]>> byOpcode = new ArrayList<>(opcodes.entrySet());
+        byOpcode.sort((a, b) -> Long.compare(b.getValue()[1], a.getValue()[1]));
+        for (Map.Entry<String, long[]> entry : byOpcode) {
+            long[] counts = entry.getValue();
+            out.println(String.format("%12d %7.2f%% %12d  %s", counts[0], percent(counts[0]), counts[1], entry.getKey()));
+        }
+
+        out.println();
+        out.println("       count   count%  address     location              instruction");
+        List<Integer> byCount = new ArrayList<>(hitsByAddress.keySet());
+        byCount.sort((a, b) -> (!hitsByAddress.get(a).equals(hitsByAddress.get(b)))
+                ? Long.compare(hitsByAddress.get(b), hitsByAddress.get(a)) : Integer.compareUnsigned(a, b));
+        for (int address : byCount.subList(0, Math.min(HOTTEST_INSTRUCTIONS, byCount.size()))) {
+            long count = hitsByAddress.get(address);
+            out.println(String.format("%12d %7.2f%%  %s  %-20s  %s", count, percent(count), Binary.intToHexString(address),
+                    getLocation(address), describe(statementsByAddress.get(address))));
+        }
+
+        Map<Syscall, Long> syscalls = Globals.instructionSet.getSyscallInvocationCounts();
+        if (!syscalls.isEmpty()) {
+            out.println();
+            out.println("       count  service  syscall");
+            for (Map.Entry<Syscall, Long> entry : syscalls.entrySet()) {
+                out.println(String.format("%12d %8d  %s", entry.getValue(), entry.getKey().getNumber(),
+                        entry.getKey().getName()));
+            }
+        }
+    }
+
+    /**
+     * Write one line per calling context in which instructions were executed: the names
+     * of the functions from the outermost in, separated by semicolons, then a space and
+     * the number of instructions executed in the innermost.  This is the "collapsed stack"
+     * input format of flame graph tools.
+     *
+     * @param out where to write
+     */
+    public void writeCollapsedStacks(PrintStream out) {
+        if (root == null) {
+            return;
+        }
+        Deque<Frame> pending = new ArrayDeque<>();
+        Deque<String> paths = new ArrayDeque<>();
+        pending.push(root);
+        paths.push(getFunctionName(root.address));
+        while (!pending.isEmpty()) {
+            Frame frame = pending.pop();
+            String path = paths.pop();
+            if (frame.instructions > 0) {
+                out.println(path + " " + frame.instructions);
+            }
+            if (frame.callees != null) {
+                for (Frame callee : frame.callees.values()) {
+                    pending.push(callee);
+                    paths.push(path + ";" + getFunctionName(callee.address));
+                }
+            }
+        }
+    }
+
+    /**
+     * Write the call graph in callgrind format, with positions given by source line
+     * number.  Each function has the instructions executed in it, per source line, and
+     * for each call site, the calls made from it and the instructions executed by the
+     * callee and the functions it called (so a recursive call's cost includes that of the
+     * calls below it).  A function's code runs from its address to the next function's.
+     *
+     * @param out where to write
+     */
+    public void writeCallgrind(PrintStream out) {
+        Map<Integer, ProgramStatement> statementsByAddress = new TreeMap<>();
+        Map<Integer, Long> hitsByAddress = new HashMap<>();
+        collectHits(statementsByAddress, hitsByAddress);
+        TreeSet<Integer> entries = new TreeSet<>();
+        if (root != null) {
+            entries.add(root.address);
+        }
+        if (statementsByAddress.containsKey(Memory.exceptionHandlerAddress)) {
+            entries.add(Memory.exceptionHandlerAddress);
+        }
+        for (long key : calls.keySet()) {
+            entries.add((int) key);
+        }
+        // Calls not yet returned from when execution ended also count.
+        Map<Long, long[]> allCalls = new HashMap<>();
+        for (Map.Entry<Long, long[]> entry : calls.entrySet()) {
+            allCalls.put(entry.getKey(), entry.getValue().clone());
+        }
+        Frame frame = current;
+        for (int i = depth - 1; i >= 0; i--) {
+            allCalls.get(callKey(callSites[i], frame.address))[1] += total - callStarts[i];
+            frame = frame.caller;
+        }
+
+        Map<Integer, TreeMap<Integer, Long>> lines = new TreeMap<>(); // per function: instructions per line
+        for (Map.Entry<Integer, ProgramStatement> entry : statementsByAddress.entrySet()) {
+            int function = getFunction(entry.getKey(), entries);
+            lines.computeIfAbsent(function, k -> new TreeMap<>())
+                    .merge(getLine(entry.getValue()), hitsByAddress.get(entry.getKey()), Long::sum);
+        }
+        Map<Integer, List<long[]>> callsFrom = new TreeMap<>(); // per function: {call site, callee, calls, inclusive}
+        for (Map.Entry<Long, long[]> entry : allCalls.entrySet()) {
+            int callSite = (int) (entry.getKey() >> 32);
+            callsFrom.computeIfAbsent(getFunction(callSite, entries), k -> new ArrayList<>())
+                    .add(new long[]{callSite, (int) (long) entry.getKey(), entry.getValue()[0], entry.getValue()[1]});
+            lines.computeIfAbsent(getFunction(callSite, entries), k -> new TreeMap<>());
+        }
+
+        out.println("# callgrind format");
+        out.println("version: 1");
+        out.println("creator: MARS " + Globals.version);
+        out.println("positions: line");
+        out.println("events: Instructions");
+        out.println("summary: " + total);
+        for (Map.Entry<Integer, TreeMap<Integer, Long>> function : lines.entrySet()) {
+            out.println();
+            out.println("fl=" + getFile(function.getKey()));
+            out.println("fn=" + getFunctionName(function.getKey()));
+            for (Map.Entry<Integer, Long> line : function.getValue().entrySet()) {
+                out.println(line.getKey() + " " + line.getValue());
+            }
+            List<long[]> functionCalls = callsFrom.getOrDefault(function.getKey(), new ArrayList<>());
+            functionCalls.sort((a, b) -> (a[0] != b[0]) ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+            for (long[] call : functionCalls) {
+                int callee = (int) call[1];
+                out.println("cfl=" + getFile(callee));
+                out.println("cfn=" + getFunctionName(callee));
+                out.println("calls=" + call[2] + " " + getLine(getStatement(callee)));
+                out.println(getLine(getStatement((int) call[0])) + " " + call[3]);
+            }
+        }
+    }
+
+    // Function an address is in: the nearest function entry (address called, where
+    // execution started or the exception handler) at or before it, else the nearest label, in the same segment.
+    private int getFunction(int address, TreeSet<Integer> entries) {
+        Integer entry = entries.floor(address);
+        if (entry != null && sameSegment(entry, address)) {
+            return entry;
+        }
+        Symbol label = getLabelAtOrBefore(address);
+        return (label != null && sameSegment(label.getAddress(), address)) ? label.getAddress() : address;
+    }
+
+    private ProgramStatement getStatement(int address) {
+        int index = (address - baseAddress) >> 2;
+        if (statements != null && index >= 0 && index < statements.length && !Memory.wordNotAligned(address)) {
+            return statements[index];
+        }
+        return otherStatements.get(address);
+    }
+
+    private static int getLine(ProgramStatement statement) {
+        return (statement == null) ? 0 : Math.max(statement.getSourceLine(), 0);
+    }
+
+    private String getFile(int address) {
+        ProgramStatement statement = getStatement(address);
+        return (statement == null || statement.getSourceFile() == null) ? "???" : statement.getSourceFile();
+    }
+
+    // Self and total (including callees) instruction counts, calls and greatest recursion
+    // depth, per function address.  A recursive function's total counts each instruction
+    // once, in its outermost context.
+    private Map<Integer, long[]> getFunctionCounts() {
+        Map<Integer, long[]> functions = new HashMap<>();
+        if (root == null) {
+            return functions;
+        }
+        // Walk the calling context tree depth first.  The number of calls of each function
+        // on the path to the current context is kept up to date as contexts are entered and
+        // left, which gives the recursion depth.  The total of each context and those below
+        // it is added up as it is left, and counts for its function only if it is the
+        // outermost call of that function on the path.
+        Map<Integer, int[]> active = new HashMap<>();
+        Deque<Frame> path = new ArrayDeque<>();
+        Deque<Iterator<Frame>> unvisited = new ArrayDeque<>();
+        Deque<long[]> subtotals = new ArrayDeque<>();
+        unvisited.push(Collections.singletonList(root).iterator());
+        subtotals.push(new long[1]);
+        while (!unvisited.isEmpty()) {
+            Iterator<Frame> callees = unvisited.peek();
+            if (callees.hasNext()) {
+                Frame frame = callees.next();
+                int recursion = ++active.computeIfAbsent(frame.address, k -> new int[1])[0];
+                long[] counts = functions.computeIfAbsent(frame.address, k -> new long[4]);
+                counts[0] += frame.instructions;
+                counts[2] += frame.calls;
+                counts[3] = Math.max(counts[3], recursion);
+                path.push(frame);
+                unvisited.push((frame.callees == null) ? Collections.<Frame>emptyIterator()
+                        : frame.callees.values().iterator());
+                subtotals.push(new long[]{frame.instructions});
+            } else {
+                unvisited.pop();
+                if (path.isEmpty()) {
+                    break;
+                }
+                Frame frame = path.pop();
+                long subtotal = subtotals.pop()[0];
+                subtotals.peek()[0] += subtotal;
+                if (active.get(frame.address)[0]-- == 1) {
+                    functions.get(frame.address)[1] += subtotal;
+                }
+            }
+        }
+        return functions;
+    }
+
+    private void collectHits(Map<Integer, ProgramStatement> statementsByAddress, Map<Integer, Long> hitsByAddress) {
+        if (hits != null) {
+            for (int i = 0; i < hits.length; i++) {
+                if (hits[i] > 0) {
+                    statementsByAddress.put(baseAddress + (i << 2), statements[i]);
+                    hitsByAddress.put(baseAddress + (i << 2), hits[i]);
+                }
+            }
+        }
+        for (Map.Entry<Integer, long[]> entry : otherHits.entrySet()) {
+            statementsByAddress.put(entry.getKey(), otherStatements.get(entry.getKey()));
+            hitsByAddress.put(entry.getKey(), entry.getValue()[0]);
+        }
+    }
+
+    private double percent(long count) {
+        return (total == 0) ? 0 : 100.0 * count / total;
+    }
+
+    private static String describe(ProgramStatement statement) {
+        if (statement == null) {
+            return "";
+        }
+        String description = statement.getPrintableBasicAssemblyStatement();
+        if (statement.getSourceFile() != null && statement.getSourceLine() > 0) {
+            description = String.format("%-24s %s:%d", description,
+                    new File(statement.getSourceFile()).getName(), statement.getSourceLine());
+        }
+        return description;
+    }
+
+    // Function name: the label at its address, else the address.
+    private String getFunctionName(int address) {
+        Symbol label = getLabelAtOrBefore(address);
+        return (label != null && label.getAddress() == address) ? label.getName() : Binary.intToHexString(address);
+    }
+
+    // Instruction location: nearest label at or before the address, plus offset.
+    private String getLocation(int address) {
+        Symbol label = getLabelAtOrBefore(address);
+        if (label == null || !sameSegment(label.getAddress(), address)) {
+            return "";
+        }
+        return (label.getAddress() == address) ? label.getName() : label.getName() + "+" + (address - label.getAddress());
+    }
+
+    private static boolean sameSegment(int labelAddress, int address) {
+        return Memory.inTextSegment(labelAddress) == Memory.inTextSegment(address)
+                && Memory.inKernelTextSegment(labelAddress) == Memory.inKernelTextSegment(address);
+    }
+
+    // Text label with the highest address at or before the given one, from the address
+    // indexes of all symbol tables.  Of several labels at one address, the first one found is used.
+    private Symbol getLabelAtOrBefore(int address) {
+        Symbol nearest = null;
+        for (SymbolTable table : symbolTables) {
+            Symbol label = table.getSymbolAtOrBefore(address);
+            if (label != null && !label.getType()
+                    && (nearest == null || Integer.compareUnsigned(label.getAddress(), nearest.getAddress()) > 0)) {
+                nearest = label;
+            }
+        }
+        return nearest;
+    }
+}
@@ -189,8 +189,7 @@ public class ProgramArgumentList {
             //RegisterFile.updateRegister("$a0",argStartAddress.length); // argc
             //RegisterFile.updateRegister("$a1",stackAddress+Memory.WORD_LENGTH_BYTES+Memory.WORD_LENGTH_BYTES); // argv
         } catch (AddressErrorException aee) {
-            System.out.println("Internal Error: Memory write error occurred while storing program arguments! " + aee);
-            System.exit(0);
+            throw new IllegalStateException("Internal Error: Memory write error occurred while storing program arguments! " + aee);
         }
     }
 
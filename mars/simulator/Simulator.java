@@ -45,8 +45,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  **/
 
 public class Simulator extends Observable {
-    private SimThread simulatorThread;
+    private volatile SimThread simulatorThread; // also read by stopExecution() on other threads
     private static Simulator simulator = null;  // Singleton object
+    private Profiler profiler = null;
+    private int stopReason = 0;
     private static Runnable interactiveGUIUpdater = null;
     // Others can set this true to indicate external interrupt.  Initially used
     // to simulate keyboard and display interrupts.  The device is identified
@@ -63,6 +65,12 @@ public class Simulator extends Observable {
     public static final int NORMAL_TERMINATION = 4;
     public static final int CLIFF_TERMINATION = 5; // run off bottom of program
     public static final int PAUSE_OR_STOP = 6;
+    // Number of instructions the predecoded execution loop simulates per acquisition
+    // of Globals.memoryAndRegistersLock.
+    private static final int PREDECODED_BATCH_LENGTH = 1024;
+    // Maximum number of instructions a compiled block may run (by looping) in one call,
+    // which bounds the delay in responding to stopSimulation().
+    private static final int COMPILED_BLOCK_BUDGET = 1 << 16;
 
     /**
      * Returns the Simulator object
@@ -88,6 +96,25 @@ public class Simulator extends Observable {
     }
 
 
+    /**
+     * Set the profiler that counts the instructions executed in following simulations.
+     * While profiling, frequently executed code is not compiled to JVM code, so that
+     * every instruction is counted individually.
+     *
+     * @param profiler profiler to use, or null for none
+     */
+    public void setProfiler(Profiler profiler) {
+        this.profiler = profiler;
+    }
+
+    /**
+     * @return the profiler set by setProfiler, or null if none
+     */
+    public Profiler getProfiler() {
+        return profiler;
+    }
+
+
     /**
      * Determine whether or not the next instruction to be executed is in a
      * "delay slot".  This means delayed branching is enabled, the branch
@@ -116,15 +143,38 @@ public class Simulator extends Observable {
      **/
 
     public boolean simulate(MIPSprogram p, int pc, int maxSteps, int[] breakPoints, AbstractAction actor) throws ProcessingException {
-        simulatorThread = new SimThread(p, pc, maxSteps, breakPoints, actor);
-        simulatorThread.start();
+        return simulate(p, pc, maxSteps,
+                (breakPoints == null || breakPoints.length == 0) ? null : new Breakpoints(breakPoints), actor);
+    }
+
+
+    /**
+     * Simulate execution of given MIPS program, stopping at breakpoints and watchpoints
+     * that may be conditional.  It must have already been assembled.
+     *
+     * @param p           The MIPSprogram to be simulated.
+     * @param pc          address of first instruction to simulate; this goes into program counter
+     * @param maxSteps    maximum number of steps to perform before returning false (0 or less means no max)
+     * @param breakPoints breakpoints and watchpoints, use null if none
+     * @param actor       the GUI component responsible for this call, usually GO or STEP.  null if none.
+     * @return true if execution completed, false otherwise
+     * @throws ProcessingException Throws exception if run-time exception occurs.
+     **/
+
+    public boolean simulate(MIPSprogram p, int pc, int maxSteps, Breakpoints breakPoints, AbstractAction actor) throws ProcessingException {
+        SimThread thread = new SimThread(p, pc, maxSteps, breakPoints, actor);
+        simulatorThread = thread;
+        thread.start();
 
         // Condition should only be true if run from command-line instead of GUI.
         // If so, just stick around until execution thread is finished.
+        // stopExecution() may clear simulatorThread meanwhile, so use the local copy.
         if (actor == null) {
-            Object dun = simulatorThread.get(); // this should emulate join()
-            ProcessingException pe = simulatorThread.pe;
-            boolean done = simulatorThread.done;
+            Object dun = thread.get(); // this should emulate join()
+            SystemIO.flushOutput();
+            ProcessingException pe = thread.pe;
+            boolean done = thread.done;
+            stopReason = thread.constructReturnReason;
             if (done) SystemIO.resetFiles(); // close any files opened in MIPS progra
             this.simulatorThread = null;
             if (pe != null) {
@@ -136,6 +186,30 @@ public class Simulator extends Observable {
     }
 
 
+    /**
+     * Reason the last simulation run from the command line (with no actor) returned:
+     * BREAKPOINT, EXCEPTION, MAX_STEPS, NORMAL_TERMINATION, CLIFF_TERMINATION or
+     * PAUSE_OR_STOP.
+     *
+     * @return the reason
+     */
+    public int getStopReason() {
+        return stopReason;
+    }
+
+
+    /**
+     * Make the running simulation check its stop conditions and run speed after each
+     * instruction, for instance because the run speed has been changed.
+     */
+    public void requestAttention() {
+        SimThread thread = simulatorThread;
+        if (thread != null) {
+            thread.attention = true;
+        }
+    }
+
+
     /**
      * Set the volatile stop boolean variable checked by the execution
      * thread at the end of each MIPS instruction execution.  If variable
@@ -186,6 +260,7 @@ public class Simulator extends Observable {
     }
 
     private void notifyObserversOfExecutionStop(int maxSteps, int programCounter) {
+        SystemIO.flushOutput(); // program output so far, before anything reports the stop
         this.setChanged();
         this.notifyObservers(new SimulatorNotice(SimulatorNotice.SIMULATOR_STOP,
                 maxSteps, RunSpeedPanel.getInstance().getRunSpeed(), programCounter));
@@ -206,10 +281,14 @@ public class Simulator extends Observable {
         private final MIPSprogram p;
         private final int pc;
         private final int maxSteps;
-        private int[] breakPoints;
+        private Breakpoints breakPoints;
         private boolean done;
         private ProcessingException pe;
         private volatile boolean stop = false;
+        // Set if anything other than the instructions themselves may end the run or slow it
+        // down: a stop request, breakpoints or watchpoints, a step limit or a run speed
+        // below unlimited.  Only then are those checked after each instruction.
+        private volatile boolean attention = false;
         private volatile AbstractAction stopper;
         private final AbstractAction starter;
         private int constructReturnReason;
@@ -221,10 +300,10 @@ public class Simulator extends Observable {
          * @param p           the MIPSprogram to be simulated
          * @param pc          address in text segment of first instruction to simulate
          * @param maxSteps    maximum number of instruction steps to simulate.  Default of -1 means no maximum
-         * @param breakPoints array of breakpoints (instruction addresses) specified by user
+         * @param breakPoints breakpoints and watchpoints specified by user, or null
          * @param starter     the GUI component responsible for this call, usually GO or STEP.  null if none.
          */
-        SimThread(MIPSprogram p, int pc, int maxSteps, int[] breakPoints, AbstractAction starter) {
+        SimThread(MIPSprogram p, int pc, int maxSteps, Breakpoints breakPoints, AbstractAction starter) {
             super(Globals.getGui() != null);
             this.p = p;
             this.pc = pc;
@@ -246,6 +325,7 @@ public class Simulator extends Observable {
         void setStop(AbstractAction actor) {
             stop = true;
             stopper = actor;
+            attention = true;
         }
 
 
@@ -265,13 +345,15 @@ public class Simulator extends Observable {
             Thread.currentThread().setPriority(Thread.NORM_PRIORITY - 1);
             Thread.yield();  // let the main thread run a bit to finish updating the GUI
 
-            if (breakPoints == null || breakPoints.length == 0) {
+            if (breakPoints != null && breakPoints.isEmpty()) {
                 breakPoints = null;
-            } else {
-                Arrays.sort(breakPoints);  // must be pre-sorted for binary search
             }
 
             Simulator.getInstance().notifyObserversOfExecutionStart(maxSteps, pc);
+            if (breakPoints != null || maxSteps > 0
+                    || RunSpeedPanel.getInstance().getRunSpeed() < RunSpeedPanel.UNLIMITED_SPEED) {
+                attention = true;
+            }
 
             RegisterFile.initializeProgramCounter(pc);
             ProgramStatement statement;
@@ -292,6 +374,15 @@ public class Simulator extends Observable {
                 Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
                 return done;
             }
+            if (profiler != null) {
+                profiler.start(pc);
+            }
+            if (breakPoints != null) {
+                breakPoints.startWatching();
+            }
+            if (usePredecodedExecution()) {
+                return constructPredecoded(PredecodedProgram.decode(Globals.memory));
+            }
             int steps = 0;
 
             // *******************  PS addition 26 July 2006  **********************
@@ -306,9 +397,9 @@ public class Simulator extends Observable {
             // is to add a "do nothing" stack entry for instructions that do no write anything.
             // To keep this invisible to the "simulate()" method writer, we
             // will push such an entry onto the stack here if there is none for this instruction
-            // by the time it has completed simulating.  This is done by the IF statement
-            // just after the call to the simulate method itself.  The BackStepper method does
-            // the aforementioned check and decides whether to push or not.  The result
+            // by the time it has completed simulating.  This is done by the call to
+            // BackStepper.endStep() at the end of each step, which does the aforementioned
+            // check and decides whether to push or not.  The result
             // is a a smoother interaction experience.  But it comes at the cost of slowing
             // simulation speed for flat-out runs, for every MIPS instruction executed even
             // though very few will require the "do nothing" stack entry.  For stepped or
@@ -328,16 +419,29 @@ public class Simulator extends Observable {
 
             while (statement != null) {
                 pc = RegisterFile.getProgramCounter(); // added: 7/26/06 (explanation above)
-                RegisterFile.incrementPC();
                 // Perform the MIPS instruction in synchronized block.  If external threads agree
                 // to access MIPS memory and registers only through synchronized blocks on same
                 // lock variable, then full (albeit heavy-handed) protection of MIPS memory and
                 // registers is assured.  Not as critical for reading from those resources.
+                // The whole step is in the block, so that the backstepper sees any change made
+                // by another thread as coming between two steps.
                 synchronized (Globals.memoryAndRegistersLock) {
+                    BackStepper backStepper = Globals.getSettings().getBackSteppingEnabled()
+                            ? Globals.program.getBackStepper() : null;
+                    if (backStepper != null) {
+                        backStepper.beginStep(pc, statement);
+                    }
+                    if (profiler != null) {
+                        profiler.count(pc, statement);
+                    }
+                    RegisterFile.incrementPC();
                     try {
                         if (Simulator.externalInterruptingDevice != NO_DEVICE) {
                             int deviceInterruptCode = externalInterruptingDevice;
                             Simulator.externalInterruptingDevice = NO_DEVICE;
+                            if (backStepper != null) {
+                                backStepper.addExternalInterrupt(deviceInterruptCode);
+                            }
                             throw new ProcessingException(statement, "External Interrupt", deviceInterruptCode);
                         }
                         BasicInstruction instruction = (BasicInstruction) statement.getInstruction();
@@ -348,11 +452,6 @@ public class Simulator extends Observable {
                         }
                         // THIS IS WHERE THE INSTRUCTION EXECUTION IS ACTUALLY SIMULATED!
                         instruction.getSimulationCode().simulate(statement);
-
-                        // IF statement added 7/26/06 (explanation above)
-                        if (Globals.getSettings().getBackSteppingEnabled()) {
-                            Globals.program.getBackStepper().addDoNothing(pc);
-                        }
                     } catch (ProcessingException pe) {
                         if (pe.errors() == null) {
                             this.constructReturnReason = NORMAL_TERMINATION;
@@ -383,54 +482,57 @@ public class Simulator extends Observable {
                             }
                         }
                     }
+
+                    ///////// DPS 15 June 2007.  Handle delayed branching if it occurs./////
+                    if (DelayedBranch.isTriggered()) {
+                        RegisterFile.setProgramCounter(DelayedBranch.getBranchTargetAddress());
+                        DelayedBranch.clear();
+                    } else if (DelayedBranch.isRegistered()) {
+                        DelayedBranch.trigger();
+                    }//////////////////////////////////////////////////////////////////////
+
+                    // (explanation above)
+                    if (backStepper != null) {
+                        backStepper.endStep();
+                    }
                 }// end synchronized block
 
-                ///////// DPS 15 June 2007.  Handle delayed branching if it occurs./////
-                if (DelayedBranch.isTriggered()) {
-                    RegisterFile.setProgramCounter(DelayedBranch.getBranchTargetAddress());
-                    DelayedBranch.clear();
-                } else if (DelayedBranch.isRegistered()) {
-                    DelayedBranch.trigger();
-                }//////////////////////////////////////////////////////////////////////
-
-                // Volatile variable initialized false but can be set true by the main thread.
-                // Used to stop or pause a running MIPS program.  See stopSimulation() above.
-                if (stop) {
-                    this.constructReturnReason = PAUSE_OR_STOP;
-                    this.done = false;
-                    Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
-                    return done;
-                }
-                //	Return if we've reached a breakpoint.
-                if ((breakPoints != null) &&
-                        (Arrays.binarySearch(breakPoints, RegisterFile.getProgramCounter()) >= 0)) {
-                    this.constructReturnReason = BREAKPOINT;
-                    this.done = false;
-                    Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
-                    return done; // false;
-                }
-                // Check number of MIPS instructions executed.  Return if at limit (-1 is no limit).
-                if (maxSteps > 0) {
-                    steps++;
-                    if (steps >= maxSteps) {
-                        this.constructReturnReason = MAX_STEPS;
+                // Everything that can end or slow down the run, other than the instructions
+                // themselves, is checked only if the attention flag is set (see above).
+                if (attention) {
+                    // Volatile variable initialized false but can be set true by the main thread.
+                    // Used to stop or pause a running MIPS program.  See stopSimulation() above.
+                    if (stop) {
+                        this.constructReturnReason = PAUSE_OR_STOP;
                         this.done = false;
                         Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
-                        return done;// false;
+                        return done;
+                    }
+                    //	Return if we've reached a breakpoint or a watchpoint has triggered.
+                    if (breakPoints != null && atBreakpoint()) {
+                        this.constructReturnReason = BREAKPOINT;
+                        this.done = false;
+                        Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
+                        return done; // false;
+                    }
+                    // Check number of MIPS instructions executed.  Return if at limit (-1 is no limit).
+                    if (maxSteps > 0) {
+                        steps++;
+                        if (steps >= maxSteps) {
+                            this.constructReturnReason = MAX_STEPS;
+                            this.done = false;
+                            Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
+                            return done;// false;
+                        }
                     }
-                }
 
-                // schedule GUI update only if: there is in fact a GUI! AND
-                //                              using Run,  not Step (maxSteps > 1) AND
-                //                              running slowly enough for GUI to keep up
-                //if (Globals.getGui() != null && maxSteps != 1 &&
-                if (interactiveGUIUpdater != null && maxSteps != 1 &&
-                        RunSpeedPanel.getInstance().getRunSpeed() < RunSpeedPanel.UNLIMITED_SPEED) {
-                    SwingUtilities.invokeLater(interactiveGUIUpdater);
-                }
-                if (Globals.getGui() != null || Globals.runSpeedPanelExists) { // OR added by DPS 24 July 2008 to enable speed control by stand-alone tool
-                    if (maxSteps != 1 &&
-                            RunSpeedPanel.getInstance().getRunSpeed() < RunSpeedPanel.UNLIMITED_SPEED) {
+                    // schedule GUI update only if: there is in fact a GUI! AND
+                    //                              using Run,  not Step (maxSteps > 1) AND
+                    //                              running slowly enough for GUI to keep up
+                    if (maxSteps != 1 && RunSpeedPanel.getInstance().getRunSpeed() < RunSpeedPanel.UNLIMITED_SPEED) {
+                        if (interactiveGUIUpdater != null) {
+                            SwingUtilities.invokeLater(interactiveGUIUpdater);
+                        }
                         try {
                             Thread.sleep((int) (1000 / RunSpeedPanel.getInstance().getRunSpeed())); // make sure it's never zero!
                         } catch (InterruptedException ignored) {
@@ -477,6 +579,193 @@ public class Simulator extends Observable {
         }
 
 
+        // The predecoded loop does not fetch through Memory, record back-steps or throttle run
+        // speed, so use it only when selected and none of those can make a difference.
+        private boolean usePredecodedExecution() {
+            return Globals.getSettings().getBooleanSetting(Settings.PREDECODED_EXECUTION_ENABLED)
+                    && !Globals.getSettings().getBooleanSetting(Settings.SELF_MODIFYING_CODE_ENABLED)
+                    && !Globals.getSettings().getBackSteppingEnabled()
+                    && Globals.memory.countObservers() == 0
+                    && Globals.getGui() == null
+                    // The panel also exists once a simulation has notified its observers, so check its speed.
+                    && !(Globals.runSpeedPanelExists && RunSpeedPanel.getInstance().getRunSpeed() < RunSpeedPanel.UNLIMITED_SPEED);
+        }
+
+        // Compiled blocks run several instructions between the stop, breakpoint and interrupt
+        // checks (so they are not compiled across breakpoints, and not at all with watchpoints),
+        // implement branches without delay slots and do not count for the profiler.
+        private boolean useBlockCompilation() {
+            return Globals.getSettings().getBooleanSetting(Settings.BLOCK_COMPILATION_ENABLED)
+                    && !Globals.getSettings().getBooleanSetting(Settings.DELAYED_BRANCHING_ENABLED)
+                    && (breakPoints == null || !breakPoints.hasWatchpoints())
+                    && profiler == null;
+        }
+
+        // Whether to stop at the program counter's breakpoint, if any, or because a
+        // watchpoint has triggered.  Watchpoints are evaluated after every instruction.
+        private boolean atBreakpoint() {
+            boolean stopping = breakPoints.breaksAt(RegisterFile.getProgramCounter());
+            if (breakPoints.hasWatchpoints()) {
+                stopping |= breakPoints.watchpointTriggered();
+            }
+            return stopping;
+        }
+
+        /**
+         * Fast alternative to the execution loop in construct().  Statements and their
+         * SimulationCode come from a predecoded copy of the text segment, and the
+         * memory/register lock is taken once per batch of instructions instead of once per
+         * instruction.  Everything else (exception handling, delayed branching, stop,
+         * breakpoint and step limit checks) is done exactly as in construct(), so register
+         * and memory results are the same.
+         * <p>
+         * With block compilation enabled, basic blocks that are entered often are run as
+         * compiled code instead (see BlockCompiler), also with the same results.
+         *
+         * @param decoded predecoded text segment of the program
+         * @return boolean value true if execution done, false otherwise
+         */
+        private Object constructPredecoded(PredecodedProgram decoded) {
+            final ProgramStatement[] statements = decoded.getStatements();
+            final SimulationCode[] handlers = decoded.getHandlers();
+            final int baseAddress = decoded.getBaseAddress();
+            final BlockCompiler compiler = useBlockCompilation() ? new BlockCompiler(decoded, breakPoints) : null;
+            boolean blockEntry = true; // arrived by branch or jump, so a block may start here
+            int steps = 0;
+            int pc = 0;
+            while (true) {
+                synchronized (Globals.memoryAndRegistersLock) {
+                    for (int batch = 0; batch < PREDECODED_BATCH_LENGTH; batch++) {
+                        ProgramStatement statement;
+                        SimulationCode handler;
+                        int next = RegisterFile.getProgramCounter();
+                        int index = (next - baseAddress) >> 2;
+                        if (compiler != null && blockEntry && index >= 0 && index < statements.length
+                                && !Memory.wordNotAligned(next) && Simulator.externalInterruptingDevice == NO_DEVICE) {
+                            CompiledBlock block = compiler.enter(index);
+                            int budget = (maxSteps > 0) ? Math.min(maxSteps - steps, COMPILED_BLOCK_BUDGET) : COMPILED_BLOCK_BUDGET;
+                            if (block != null && budget >= compiler.getLength(index)) {
+                                int executed = block.execute(budget);
+                                // If stopped before a faulting instruction, let the interpreter run it.
+                                blockEntry = executed >= 0;
+                                if (!blockEntry) {
+                                    executed = ~executed;
+                                }
+                                pc = next;
+                                if (attention) {
+                                    if (stop) {
+                                        return finish(PAUSE_OR_STOP, false, pc);
+                                    }
+                                    // No breakpoint is inside the block, but one may be where it ended.
+                                    if (breakPoints != null && breakPoints.breaksAt(RegisterFile.getProgramCounter())) {
+                                        return finish(BREAKPOINT, false, pc);
+                                    }
+                                    if (maxSteps > 0) {
+                                        steps += executed;
+                                        if (steps >= maxSteps) {
+                                            return finish(MAX_STEPS, false, pc);
+                                        }
+                                    }
+                                }
+                                continue;
+                            }
+                        }
+                        if (index >= 0 && index < statements.length && !Memory.wordNotAligned(next)) {
+                            statement = statements[index];
+                            handler = handlers[index];
+                        } else {
+                            // Not in the predecoded copy (e.g. kernel text), so fetch it from memory.
+                            try {
+                                statement = Globals.memory.getStatement(next);
+                            } catch (AddressErrorException e) {
+                                ErrorList el = new ErrorList();
+                                el.add(new ErrorMessage((MIPSprogram) null, 0, 0, "invalid program counter value: " + Binary.intToHexString(next)));
+                                this.pe = new ProcessingException(el, e);
+                                // See construct() for explanation of this EPC hack.
+                                Coprocessor0.updateRegister(Coprocessor0.EPC, next);
+                                return finish(EXCEPTION, true, pc);
+                            }
+                            handler = (statement == null) ? null : PredecodedProgram.getSimulationCode(statement);
+                        }
+                        if (statement == null) {
+                            // Program counter "fell off the end" of the program.  See construct().
+                            if (DelayedBranch.isTriggered() || DelayedBranch.isRegistered()) {
+                                DelayedBranch.clear();
+                            }
+                            return finish(CLIFF_TERMINATION, true, pc);
+                        }
+                        pc = next;
+                        if (profiler != null) {
+                            profiler.count(pc, statement);
+                        }
+                        RegisterFile.incrementPC();
+                        try {
+                            if (Simulator.externalInterruptingDevice != NO_DEVICE) {
+                                int deviceInterruptCode = externalInterruptingDevice;
+                                Simulator.externalInterruptingDevice = NO_DEVICE;
+                                throw new ProcessingException(statement, "External Interrupt", deviceInterruptCode);
+                            }
+                            if (handler == null) {
+                                throw new ProcessingException(statement,
+                                        "undefined instruction (" + Binary.intToHexString(statement.getBinaryStatement()) + ")",
+                                        Exceptions.RESERVED_INSTRUCTION_EXCEPTION);
+                            }
+                            handler.simulate(statement);
+                        } catch (ProcessingException pe) {
+                            if (pe.errors() == null) {
+                                return finish(NORMAL_TERMINATION, true, pc); // execution completed without error.
+                            }
+                            ProgramStatement exceptionHandler = null;
+                            try {
+                                exceptionHandler = Globals.memory.getStatement(Memory.exceptionHandlerAddress);
+                            } catch (AddressErrorException ignored) {
+                            } // will not occur with this well-known addres
+                            if (exceptionHandler == null) {
+                                this.pe = pe;
+                                return finish(EXCEPTION, true, pc);
+                            }
+                            RegisterFile.setProgramCounter(Memory.exceptionHandlerAddress);
+                        }
+
+                        if (DelayedBranch.isTriggered()) {
+                            RegisterFile.setProgramCounter(DelayedBranch.getBranchTargetAddress());
+                            DelayedBranch.clear();
+                        } else if (DelayedBranch.isRegistered()) {
+                            DelayedBranch.trigger();
+                        }
+                        blockEntry = RegisterFile.getProgramCounter() != pc + Instruction.INSTRUCTION_LENGTH;
+
+                        if (attention) {
+                            if (stop) {
+                                return finish(PAUSE_OR_STOP, false, pc);
+                            }
+                            if (breakPoints != null && atBreakpoint()) {
+                                return finish(BREAKPOINT, false, pc);
+                            }
+                            if (maxSteps > 0) {
+                                steps++;
+                                if (steps >= maxSteps) {
+                                    return finish(MAX_STEPS, false, pc);
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        // Record why construct() is returning and notify observers, same as each of the
+        // return points in construct() does.  Returns the done value.
+        private Object finish(int reason, boolean done, int pc) {
+            this.constructReturnReason = reason;
+            this.done = done;
+            if (done) {
+                SystemIO.resetFiles(); // close any files opened in MIPS program
+            }
+            Simulator.getInstance().notifyObserversOfExecutionStop(maxSteps, pc);
+            return done;
+        }
+
         /**
          * This method is invoked by the SwingWorker when the "construct" method returns.
          * It will update the GUI appropriately.  According to Sun's documentation, it
@@ -76,6 +76,19 @@ public abstract class AbstractMarsToolAndApplication extends JFrame implements M
     // For app, is set true when "Assemble and Run" clicked, false when program terminates.
     private volatile boolean observing = false;
 
+    // For tools that receive memory accesses in batches through a MemoryAccessStream
+    // (see addAsStreamObserver).  The display is then refreshed by a timer at a fixed
+    // rate, and only if something was processed since the last refresh.
+    private static final int STREAM_DISPLAY_INTERVAL = 33; // milliseconds, about 30 refreshes per second
+    private MemoryAccessStream accessStream = null;
+    private javax.swing.Timer streamDisplayTimer = null;
+    private volatile boolean displayOutOfDate = false;
+    private boolean streamFailureReported = false;
+    // Batches are processed on the stream's own thread while the GUI thread refreshes and
+    // resets the tool.  Both hold this lock, so tool state is never read or reset halfway
+    // through a batch.  Subclasses that change that state from other GUI handlers hold it too.
+    final Object streamLock = new Object();
+
     // Several structures required for stand-alone use only (not MarsTool use)
     private File mostRecentlyOpenedFile = null;
     private Runnable interactiveGUIUpdater = new GUIUpdater();
@@ -230,6 +243,13 @@ public abstract class AbstractMarsToolAndApplication extends JFrame implements M
     void reset() {
     }
 
+    // Reset while no batch of memory accesses is being processed.
+    private void resetUnderStreamLock() {
+        synchronized (streamLock) {
+            reset();
+        }
+    }
+
 
     /**
      * Constructs GUI header as label with default positioning and font.  May be overridden.
@@ -273,7 +293,7 @@ public abstract class AbstractMarsToolAndApplication extends JFrame implements M
         JButton resetButton = new JButton("Reset");
         resetButton.setToolTipText("Reset all counters and other structures");
         resetButton.addActionListener(
-                e -> reset());
+                e -> resetUnderStreamLock());
         resetButton.addKeyListener(new EnterKeyListener(resetButton));
 
         JButton closeButton = new JButton("Close");
@@ -383,7 +403,7 @@ public abstract class AbstractMarsToolAndApplication extends JFrame implements M
         JButton resetButton = new JButton("Reset");
         resetButton.setToolTipText("Reset all counters and other structures");
         resetButton.addActionListener(
-                e -> reset());
+                e -> resetUnderStreamLock());
         resetButton.addKeyListener(new EnterKeyListener(resetButton));
 
         JButton closeButton = new JButton("Exit");
@@ -456,6 +476,18 @@ public abstract class AbstractMarsToolAndApplication extends JFrame implements M
     void processMIPSUpdate(AccessNotice notice) {
     }
 
+    /**
+     * Override this method to process a batch of memory accesses recorded by the MIPS program
+     * in a range registered with addAsStreamObserver().  It is called on the stream's own thread,
+     * not the MIPS thread, and only with accesses made by MIPS instruction execution.  By default
+     * it does nothing.  Unlike processMIPSUpdate(), it is not followed by a call to updateDisplay();
+     * the display is instead refreshed at a fixed rate while the stream is registered.
+     *
+     * @param batch the memory accesses, oldest first.  Valid only until this method returns.
+     */
+    void processMIPSUpdates(MemoryAccessStream.Batch batch) {
+    }
+
     /**
      * This method is called when tool/app is exited either through the close/exit button or the window's X box.
      * Override it to perform any special housecleaning needed.  By default it does nothing.
@@ -506,6 +538,65 @@ public abstract class AbstractMarsToolAndApplication extends JFrame implements M
         }
     }
 
+    /**
+     * Register this app/tool to receive MIPS program accesses to the specified subrange of
+     * MIPS memory in batches, through processMIPSUpdates(), instead of one notice at a time
+     * through processMIPSUpdate().  This is much cheaper for tools that watch a busy range
+     * such as the text segment.  The default deleteAsObserver() also removes this
+     * registration, processing any accesses still pending and refreshing the display
+     * one last time.
+     *
+     * @param lowEnd  low end of memory address range.
+     * @param highEnd high end of memory address range; must be >= lowEnd
+     */
+
+    void addAsStreamObserver(int lowEnd, int highEnd) {
+        if (accessStream == null) {
+            accessStream = new MemoryAccessStream(
+                    new MemoryAccessStream.Listener() {
+                        public void processMemoryAccesses(MemoryAccessStream.Batch batch) {
+                            synchronized (streamLock) {
+                                processMIPSUpdates(batch);
+                            }
+                            displayOutOfDate = true;
+                        }
+                    });
+            accessStream.start();
+            streamFailureReported = false;
+            streamDisplayTimer = new javax.swing.Timer(STREAM_DISPLAY_INTERVAL,
+                    new ActionListener() {
+                        public void actionPerformed(ActionEvent e) {
+                            if (accessStream != null && accessStream.getFailure() != null && !streamFailureReported) {
+                                streamFailureReported = true;
+                                String errorMessage = "Error processing MIPS memory accesses: " + accessStream.getFailure();
+                                if (isBeingUsedAsAMarsTool) {
+                                    headingLabel.setText(errorMessage);
+                                } else {
+                                    operationStatusMessages.displayTerminatingMessage(errorMessage);
+                                }
+                            }
+                            if (displayOutOfDate) {
+                                displayOutOfDate = false;
+                                synchronized (streamLock) {
+                                    updateDisplay();
+                                }
+                            }
+                        }
+                    });
+            streamDisplayTimer.start();
+        }
+        String errorMessage = "Error connecting to MIPS memory";
+        try {
+            Globals.memory.addAccessStream(accessStream, lowEnd, highEnd);
+        } catch (AddressErrorException aee) {
+            if (this.isBeingUsedAsAMarsTool) {
+                headingLabel.setText(errorMessage);
+            } else {
+                operationStatusMessages.displayTerminatingMessage(errorMessage);
+            }
+        }
+    }
+
     /**
      * Add this app/tool as an Observer of the specified MIPS register.
      */
@@ -527,6 +618,24 @@ public abstract class AbstractMarsToolAndApplication extends JFrame implements M
 
     void deleteAsObserver() {
         Globals.memory.deleteObserver(thisMarsApp);
+        deleteAsStreamObserver();
+    }
+
+    /**
+     * Remove the registration made by addAsStreamObserver(), if any.  Accesses already recorded
+     * are processed before this returns, and a final display refresh is scheduled.
+     */
+
+    void deleteAsStreamObserver() {
+        if (accessStream != null) {
+            Globals.memory.deleteAccessStream(accessStream);
+            accessStream.stop();
+            accessStream = null;
+            streamDisplayTimer.stop();
+            streamDisplayTimer = null;
+            displayOutOfDate = false;
+            SwingUtilities.invokeLater(interactiveGUIUpdater);
+        }
     }
 
     /**
@@ -783,7 +892,9 @@ public abstract class AbstractMarsToolAndApplication extends JFrame implements M
     //  For scheduling GUI update on timed runs...used only by stand-alone app.
     private class GUIUpdater implements Runnable {
         public void run() {
-            updateDisplay();
+            synchronized (streamLock) {
+                updateDisplay();
+            }
         }
     }
 
@@ -188,7 +188,9 @@ public class CacheSimulator extends AbstractMarsToolAndApplication {
         cachePlacementSelector.addActionListener(
                 e -> {
                     updateCacheSetSizeSelector();
-                    reset();
+                    synchronized (streamLock) {
+                        reset();
+                    }
                 });
 
         cacheReplacementSelector = new JComboBox(replacementPolicyChoices);
@@ -204,7 +206,9 @@ public class CacheSimulator extends AbstractMarsToolAndApplication {
         cacheBlockSizeSelector.addActionListener(
                 e -> {
                     updateCacheSizeDisplay();
-                    reset();
+                    synchronized (streamLock) {
+                        reset();
+                    }
                 });
         cacheBlockCountSelector = new JComboBox(cacheBlockCountChoices);
         cacheBlockCountSelector.setEditable(false);
@@ -213,11 +217,13 @@ public class CacheSimulator extends AbstractMarsToolAndApplication {
         cacheBlockCountSelector.addActionListener(
                 e -> {
                     updateCacheSetSizeSelector();
-                    theCache = createNewCache();
-                    resetCounts();
-                    updateDisplay();
-                    updateCacheSizeDisplay();
-                    animations.fillAnimationBoxWithCacheBlocks();
+                    synchronized (streamLock) {
+                        theCache = createNewCache();
+                        resetCounts();
+                        updateDisplay();
+                        updateCacheSizeDisplay();
+                        animations.fillAnimationBoxWithCacheBlocks();
+                    }
                 });
 
         cacheSetSizeSelector = new JComboBox(cacheSetSizeChoices);
@@ -226,7 +232,11 @@ public class CacheSimulator extends AbstractMarsToolAndApplication {
         int defaultCacheSetSizeIndex = 0;
         cacheSetSizeSelector.setSelectedIndex(defaultCacheSetSizeIndex);
         cacheSetSizeSelector.addActionListener(
-                e -> reset());
+                e -> {
+                    synchronized (streamLock) {
+                        reset();
+                    }
+                });
 
         // ALL COMPONENTS FOR "CACHE ORGANIZATION" SECTION
         JPanel placementPolicyRow = getPanelWithBorderLayout();
@@ -404,13 +414,29 @@ public class CacheSimulator extends AbstractMarsToolAndApplication {
     //////////////////////////////////////////////////////////////////////////////////////
 
     /**
-     * Apply caching policies and update display when connected MIPS program accesses (data) memory.
-     *  @param accessNotice information provided by memory in MemoryAccessNotice object
+     * Register for (data) memory accesses in batches rather than one notice at a time.
+     * The cache only needs to see every access, in order, not react to each one
+     * immediately, and the display is refreshed at a fixed rate.
+     */
+    protected void addAsObserver() {
+        addAsStreamObserver(Memory.dataSegmentBaseAddress, Memory.stackBaseAddress);
+    }
+
+    /**
+     * Apply caching policies when connected MIPS program accesses (data) memory.
+     * Called on the stream's thread with streamLock held.
+     *  @param batch the memory accesses recorded since the previous batch
      */
-    protected void processMIPSUpdate(AccessNotice accessNotice) {
-        MemoryAccessNotice notice = (MemoryAccessNotice) accessNotice;
+    void processMIPSUpdates(MemoryAccessStream.Batch batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            processMemoryAccess(batch.getAddress(i));
+        }
+    }
+
+    // Apply caching policies to a single memory access.
+    private void processMemoryAccess(int address) {
         memoryAccessCount++;
-        CacheAccessResult cacheAccessResult = theCache.isItAHitThenReadOnMiss(notice.getAddress());
+        CacheAccessResult cacheAccessResult = theCache.isItAHitThenReadOnMiss(address);
         if (cacheAccessResult.isHit()) {
             cacheHitCount++;
             animations.showHit(cacheAccessResult.getBlock());
@@ -470,7 +496,7 @@ public class CacheSimulator extends AbstractMarsToolAndApplication {
     }
 
     /**
-     * Updates display immediately after each update (AccessNotice) is processed, after
+     * Updates display at a fixed rate while memory accesses are being processed, after
      * cache configuration changes as needed, and after each execution step when Mars
      * is running in timed mode.  Overrides inherited method that does nothing.
      */
@@ -40,7 +40,7 @@ import mars.ProgramStatement;
 import mars.mips.hardware.AccessNotice;
 import mars.mips.hardware.AddressErrorException;
 import mars.mips.hardware.Memory;
-import mars.mips.hardware.MemoryAccessNotice;
+import mars.mips.hardware.MemoryAccessStream;
 import mars.mips.instructions.BasicInstruction;
 import mars.mips.instructions.BasicInstructionFormat;
 
@@ -196,34 +196,36 @@ public class InstructionCounter extends AbstractMarsToolAndApplication {
 
     //	@Override
     protected void addAsObserver() {
-        addAsObserver(Memory.textBaseAddress, Memory.textLimitAddress);
+        addAsStreamObserver(Memory.textBaseAddress, Memory.textLimitAddress);
     }
 
     //	@Override
-    protected void processMIPSUpdate(AccessNotice notice) {
-        if (!notice.accessIsFromMIPS()) return;
-        if (notice.getAccessType() != AccessNotice.READ) return;
-        MemoryAccessNotice m = (MemoryAccessNotice) notice;
-        int a = m.getAddress();
-        if (a == lastAddress) return;
-        lastAddress = a;
-        counter++;
-        try {
-            ProgramStatement stmt = Memory.getInstance().getStatement(a);
-            BasicInstruction instr = (BasicInstruction) stmt.getInstruction();
-            BasicInstructionFormat format = instr.getInstructionFormat();
-            if (format == BasicInstructionFormat.R_FORMAT)
-                counterR++;
-            else if (format == BasicInstructionFormat.I_FORMAT
-                    || format == BasicInstructionFormat.I_BRANCH_FORMAT)
-                counterI++;
-            else if (format == BasicInstructionFormat.J_FORMAT)
-                counterJ++;
-        } catch (AddressErrorException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
+    // Instruction fetches arrive in batches (see addAsStreamObserver) and the display
+    // is refreshed on a timer, so counting costs the simulator little.
+    void processMIPSUpdates(MemoryAccessStream.Batch batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            if (batch.getAccessType(i) != AccessNotice.READ) continue;
+            int a = batch.getAddress(i);
+            if (a == lastAddress) continue;
+            lastAddress = a;
+            counter++;
+            try {
+                ProgramStatement stmt = Memory.getInstance().getStatementNoNotify(a);
+                if (stmt == null) continue;
+                BasicInstruction instr = (BasicInstruction) stmt.getInstruction();
+                BasicInstructionFormat format = instr.getInstructionFormat();
+                if (format == BasicInstructionFormat.R_FORMAT)
+                    counterR++;
+                else if (format == BasicInstructionFormat.I_FORMAT
+                        || format == BasicInstructionFormat.I_BRANCH_FORMAT)
+                    counterI++;
+                else if (format == BasicInstructionFormat.J_FORMAT)
+                    counterJ++;
+            } catch (AddressErrorException e) {
+                // TODO Auto-generated catch block
+                e.printStackTrace();
+            }
         }
-        updateDisplay();
     }
 
     //	@Override
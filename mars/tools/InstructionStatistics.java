@@ -41,7 +41,7 @@ import mars.ProgramStatement;
 import mars.mips.hardware.AccessNotice;
 import mars.mips.hardware.AddressErrorException;
 import mars.mips.hardware.Memory;
-import mars.mips.hardware.MemoryAccessNotice;
+import mars.mips.hardware.MemoryAccessStream;
 
 
 /**
@@ -228,7 +228,7 @@ public class InstructionStatistics extends AbstractMarsToolAndApplication {
      * registers the tool as observer for the text segment of the MIPS program
      */
     protected void addAsObserver() {
-        addAsObserver(Memory.textBaseAddress, Memory.textLimitAddress);
+        addAsStreamObserver(Memory.textBaseAddress, Memory.textLimitAddress);
     }
 
 
@@ -287,34 +287,31 @@ public class InstructionStatistics extends AbstractMarsToolAndApplication {
 
 
     /**
-     * method that is called each time the MIPS simulator accesses the text segment.
+     * method that is called with each batch of MIPS simulator accesses to the text segment.
      * Before an instruction is executed by the simulator, the instruction is fetched from the program memory.
-     * This memory access is observed and the corresponding instruction is decoded and categorized by the tool.
-     * According to the category the counter values are increased and the display gets updated.
+     * These memory accesses are observed and the corresponding instructions are decoded and categorized by the tool.
+     * According to the category the counter values are increased.  The display is refreshed separately, at a fixed rate.
      *
-     * @param notice   signals the type of access (memory, register etc.)
+     * @param batch   the recorded memory accesses, oldest first
      */
-    protected void processMIPSUpdate(AccessNotice notice) {
+    void processMIPSUpdates(MemoryAccessStream.Batch batch) {
 
-        if (!notice.accessIsFromMIPS())
-            return;
+        for (int i = 0; i < batch.size(); i++) {
 
-        // check for a read access in the text segment
-        if (notice.getAccessType() == AccessNotice.READ && notice instanceof MemoryAccessNotice) {
-
-            // now it is safe to make a cast of the notice
-            MemoryAccessNotice memAccNotice = (MemoryAccessNotice) notice;
+            // check for a read access in the text segment
+            if (batch.getAccessType(i) != AccessNotice.READ)
+                continue;
 
             // The next three statments are from Felipe Lessa's instruction counter.  Prevents double-counting.
-            int a = memAccNotice.getAddress();
+            int a = batch.getAddress(i);
             if (a == lastAddress)
-                return;
+                continue;
             lastAddress = a;
 
             try {
 
                 // access the statement in the text segment without notifying other tools etc.
-                ProgramStatement stmt = Memory.getInstance().getStatementNoNotify(memAccNotice.getAddress());
+                ProgramStatement stmt = Memory.getInstance().getStatementNoNotify(a);
 
                 // necessary to handle possible null pointers at the end of the program
                 // (e.g., if the simulator tries to execute the next instruction after the last instruction in the text segment)
@@ -323,7 +320,6 @@ public class InstructionStatistics extends AbstractMarsToolAndApplication {
 
                     m_totalCounter++;
                     m_counters[category]++;
-                    updateDisplay();
                 }
             } catch (AddressErrorException e) {
                 // silently ignore these exceptions
@@ -0,0 +1,302 @@
+package mars.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal JSON reading and writing, enough for the line-oriented protocol of the MARS
+ * simulation server.  Values are represented by plain Java objects: JSON objects by
+ * Map (keeping member order), arrays by List, strings by String, numbers by Long if
+ * integral and Double otherwise, true and false by Boolean, and null by null.
+ *
+ * @version October 2026
+ */
+
+public class Json {
+    private final String text;
+    private int position;
+
+    private Json(String text) {
+        this.text = text;
+        this.position = 0;
+    }
+
+    /**
+     * Parse a complete JSON value.
+     *
+     * @param text JSON text
+     * @return the value, represented as described for this class
+     * @throws IllegalArgumentException if the text is not valid JSON
+     */
+    public static Object parse(String text) {
+        Json parser = new Json(text);
+        Object value = parser.readValue();
+        parser.skipWhitespace();
+        if (parser.position < text.length()) {
+            throw parser.error("unexpected text after value");
+        }
+        return value;
+    }
+
+    /**
+     * Produce JSON text for a value represented as described for this class.  Any
+     * other kind of Number is written as a number, and any other object as a string.
+     *
+     * @param value the value
+     * @return JSON text on one line
+     */
+    public static String toJson(Object value) {
+        StringBuilder result = new StringBuilder();
+        write(value, result);
+        return result.toString();
+    }
+
+    private static void write(Object value, StringBuilder result) {
+        if (value == null) {
+            result.append("null");
+        } else if (value instanceof Boolean || value instanceof Number) {
+            result.append(value);
+        } else if (value instanceof Map) {
+            result.append('{');
+            Iterator<? extends Map.Entry<?, ?>> entries = ((Map<?, ?>) value).entrySet().iterator();
+            while (entries.hasNext()) {
+                Map.Entry<?, ?> entry = entries.next();
+                writeString(String.valueOf(entry.getKey()), result);
+                result.append(':');
+                write(entry.getValue(), result);
+                if (entries.hasNext()) {
+                    result.append(',');
+                }
+            }
+            result.append('}');
+        } else if (value instanceof List) {
+            result.append('[');
+            Iterator<?> elements = ((List<?>) value).iterator();
+            while (elements.hasNext()) {
+                write(elements.next(), result);
+                if (elements.hasNext()) {
+                    result.append(',');
+                }
+            }
+            result.append(']');
+        } else if (value instanceof int[]) {
+            int[] values = (int[]) value;
+            result.append('[');
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    result.append(',');
+                }
+                result.append(values[i]);
+            }
+            result.append(']');
+        } else {
+            writeString(value.toString(), result);
+        }
+    }
+
+    private static void writeString(String value, StringBuilder result) {
+        result.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    result.append("\\\"");
+                    break;
+                case '\\':
+                    result.append("\\\\");
+                    break;
+                case '\n':
+                    result.append("\\n");
+                    break;
+                case '\r':
+                    result.append("\\r");
+                    break;
+                case '\t':
+                    result.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20 || c >= 0x7f) {
+                        result.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        result.append(c);
+                    }
+            }
+        }
+        result.append('"');
+    }
+
+    private Object readValue() {
+        skipWhitespace();
+        if (position >= text.length()) {
+            throw error("value expected");
+        }
+        char c = text.charAt(position);
+        switch (c) {
+            case '{':
+                return readObject();
+            case '[':
+                return readArray();
+            case '"':
+                return readString();
+            case 't':
+                return readLiteral("true", Boolean.TRUE);
+            case 'f':
+                return readLiteral("false", Boolean.FALSE);
+            case 'n':
+                return readLiteral("null", null);
+            default:
+                if (c == '-' || Character.isDigit(c)) {
+                    return readNumber();
+                }
+                throw error("unexpected character '" + c + "'");
+        }
+    }
+
+    private Map<String, Object> readObject() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        position++; // '{'
+        skipWhitespace();
+        if (peek() == '}') {
+            position++;
+            return result;
+        }
+        while (true) {
+            skipWhitespace();
+            if (peek() != '"') {
+                throw error("member name expected");
+            }
+            String name = readString();
+            skipWhitespace();
+            expect(':');
+            result.put(name, readValue());
+            skipWhitespace();
+            if (peek() == ',') {
+                position++;
+            } else {
+                expect('}');
+                return result;
+            }
+        }
+    }
+
+    private List<Object> readArray() {
+        List<Object> result = new ArrayList<>();
+        position++; // '['
+        skipWhitespace();
+        if (peek() == ']') {
+            position++;
+            return result;
+        }
+        while (true) {
+            result.add(readValue());
+            skipWhitespace();
+            if (peek() == ',') {
+                position++;
+            } else {
+                expect(']');
+                return result;
+            }
+        }
+    }
+
+    private String readString() {
+        StringBuilder result = new StringBuilder();
+        position++; // opening quote
+        while (true) {
+            if (position >= text.length()) {
+                throw error("unterminated string");
+            }
+            char c = text.charAt(position++);
+            if (c == '"') {
+                return result.toString();
+            }
+            if (c != '\\') {
+                result.append(c);
+                continue;
+            }
+            if (position >= text.length()) {
+                throw error("unterminated string");
+            }
+            c = text.charAt(position++);
+            switch (c) {
+                case 'b':
+                    result.append('\b');
+                    break;
+                case 'f':
+                    result.append('\f');
+                    break;
+                case 'n':
+                    result.append('\n');
+                    break;
+                case 'r':
+                    result.append('\r');
+                    break;
+                case 't':
+                    result.append('\t');
+                    break;
+                case 'u':
+                    if (position + 4 > text.length()) {
+                        throw error("bad unicode escape");
+                    }
+                    try {
+                        result.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw error("bad unicode escape");
+                    }
+                    position += 4;
+                    break;
+                default: // '"', '\\', '/'
+                    result.append(c);
+            }
+        }
+    }
+
+    private Object readNumber() {
+        int start = position;
+        boolean integral = true;
+        while (position < text.length() && "+-0123456789.eE".indexOf(text.charAt(position)) >= 0) {
+            char c = text.charAt(position++);
+            if (c == '.' || c == 'e' || c == 'E') {
+                integral = false;
+            }
+        }
+        String number = text.substring(start, position);
+        try {
+            return integral ? (Object) Long.valueOf(number) : (Object) Double.valueOf(number);
+        } catch (NumberFormatException e) {
+            throw error("bad number " + number);
+        }
+    }
+
+    private Object readLiteral(String literal, Object value) {
+        if (!text.startsWith(literal, position)) {
+            throw error("unexpected text");
+        }
+        position += literal.length();
+        return value;
+    }
+
+    private char peek() {
+        return (position < text.length()) ? text.charAt(position) : 0;
+    }
+
+    private void expect(char c) {
+        if (peek() != c) {
+            throw error("'" + c + "' expected");
+        }
+        position++;
+    }
+
+    private void skipWhitespace() {
+        while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+            position++;
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException("JSON error at position " + position + ": " + message);
+    }
+}
@@ -0,0 +1,115 @@
+package mars.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Collects the output of a MIPS program in memory, for running a program without a console
+ * (with the "out" and "outlimit" command line options, or in a batch or server run).  The
+ * buffer grows as needed, up to an optional maximum size; output beyond that is discarded
+ * and the buffer is marked as truncated, so a program that prints without end cannot use
+ * up the JVM's memory.
+ *
+ * @version October 2026
+ */
+
+public class OutputBuffer extends OutputStream {
+    private static final int INITIAL_SIZE = 8192;
+
+    private final int limit;
+    private byte[] bytes = new byte[INITIAL_SIZE];
+    private int size = 0;
+    private boolean truncated = false;
+
+    /**
+     * Create a buffer with no maximum size.
+     */
+    public OutputBuffer() {
+        this(0);
+    }
+
+    /**
+     * Create a buffer that keeps at most the given number of bytes.
+     *
+     * @param limit maximum number of bytes kept, or 0 (or less) for no maximum
+     */
+    public OutputBuffer(int limit) {
+        this.limit = (limit > 0) ? limit : Integer.MAX_VALUE - 8;
+    }
+
+    public synchronized void write(int b) {
+        if (size == limit) {
+            truncated = true;
+            return;
+        }
+        ensureCapacity(size + 1);
+        bytes[size++] = (byte) b;
+    }
+
+    public synchronized void write(byte[] b, int off, int len) {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        int kept = Math.min(len, limit - size);
+        if (kept < len) {
+            truncated = true;
+        }
+        ensureCapacity(size + kept);
+        System.arraycopy(b, off, bytes, size, kept);
+        size += kept;
+    }
+
+    /**
+     * @return number of bytes kept
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return true if output was discarded because the buffer had reached its maximum size
+     */
+    public synchronized boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * @return a copy of the bytes kept
+     */
+    public synchronized byte[] toByteArray() {
+        return Arrays.copyOf(bytes, size);
+    }
+
+    /**
+     * Write the bytes kept to another stream.
+     *
+     * @param out the stream
+     * @throws IOException if the stream cannot be written
+     */
+    public synchronized void writeTo(OutputStream out) throws IOException {
+        out.write(bytes, 0, size);
+        out.flush();
+    }
+
+    /**
+     * Discard the bytes kept, and the truncated mark, so the buffer can be reused.
+     */
+    public synchronized void reset() {
+        size = 0;
+        truncated = false;
+    }
+
+    /**
+     * @return the bytes kept, decoded with the platform's default character set
+     */
+    public synchronized String toString() {
+        return new String(bytes, 0, size);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > bytes.length) {
+            bytes = Arrays.copyOf(bytes, (int) Math.min(limit, Math.max(capacity, 2L * bytes.length)));
+        }
+    }
+}
@@ -1,8 +1,14 @@
 package mars.util;
 
 import mars.*;
+import mars.mips.hardware.AddressErrorException;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 	/*
 Copyright (c) 2003-2013,  Pete Sanderson and Kenneth Vollmar
@@ -73,6 +79,18 @@ public class SystemIO {
     // Added by DPS 28 Feb 2008.  See getInputReader() below.
     private static BufferedReader inputReader = null;
 
+    // Standard input and output for MIPS programs when there is no GUI.  Null means
+    // System.in and System.out.  See setStandardStreams() below.
+    private static InputStream standardInput = null;
+    private static PrintStream standardOutput = null;
+
+    // Console output from print syscalls is collected here and written out at a newline, when
+    // the buffer is full, before input is read and when the program stops.  See flushOutput().
+    private static final int OUTPUT_BUFFER_SIZE = 8192;
+    private static final StringBuilder outputBuffer = new StringBuilder(OUTPUT_BUFFER_SIZE);
+    // Bytes of a string being printed from MIPS memory, reused by each print.
+    private static final byte[] stringBytes = new byte[OUTPUT_BUFFER_SIZE];
+
     /**
      * Implements syscall to read an integer value.
      * Client is responsible for catching NumberFormatException.
@@ -83,6 +101,7 @@ public class SystemIO {
 
     public static int readInteger(int serviceNumber) {
         String input = "0";
+        flushOutput();
         if (Globals.getGui() == null) {
             try {
                 input = getInputReader().readLine();
@@ -112,6 +131,7 @@ public class SystemIO {
      */
     public static float readFloat(int serviceNumber) {
         String input = "0";
+        flushOutput();
         if (Globals.getGui() == null) {
             try {
                 input = getInputReader().readLine();
@@ -139,6 +159,7 @@ public class SystemIO {
      */
     public static double readDouble(int serviceNumber) {
         String input = "0";
+        flushOutput();
         if (Globals.getGui() == null) {
             try {
                 input = getInputReader().readLine();
@@ -158,15 +179,61 @@ public class SystemIO {
 
 
     /**
-     * Implements syscall having 4 in $v0, to print a string.
+     * Implements syscall having 4 in $v0, to print a string.  The output may be held
+     * back until a newline is printed; see flushOutput().
      */
     public static void printString(String string) {
-        if (Globals.getGui() == null) {
-            System.out.print(string);
-        } else {
-            Globals.getGui().getMessagesPane().postRunMessage(string);
+        synchronized (outputBuffer) {
+            outputBuffer.append(string);
+            if (outputBuffer.length() >= OUTPUT_BUFFER_SIZE || string.indexOf('\n') >= 0) {
+                flushOutput();
+            }
         }
+    }
 
+    /**
+     * Print the null-terminated string at the given address in MIPS memory, each byte as
+     * one character, as printString(String) does.
+     *
+     * @param address address of the first byte of the string
+     * @throws AddressErrorException if the string runs into an address that cannot be read
+     */
+    public static void printStringAt(int address) throws AddressErrorException {
+        synchronized (outputBuffer) {
+            int length;
+            do {
+                length = Globals.memory.getNullTerminatedBytes(address, stringBytes);
+                boolean newline = false;
+                for (int i = 0; i < length; i++) {
+                    outputBuffer.append((char) (stringBytes[i] & 0xFF));
+                    newline |= stringBytes[i] == '\n';
+                }
+                if (outputBuffer.length() >= OUTPUT_BUFFER_SIZE || newline) {
+                    flushOutput();
+                }
+                address += length;
+            } while (length == stringBytes.length);
+        }
+    }
+
+    /**
+     * Write out any console output held back by printString, to standard output or to the
+     * Run I/O pane of the GUI.
+     */
+    public static void flushOutput() {
+        synchronized (outputBuffer) {
+            if (outputBuffer.length() == 0) {
+                return;
+            }
+            String output = outputBuffer.toString();
+            outputBuffer.setLength(0);
+            if (Globals.getGui() == null) {
+                getStandardOutput().print(output);
+                getStandardOutput().flush();
+            } else {
+                Globals.getGui().getMessagesPane().postRunMessage(output);
+            }
+        }
     }
 
 
@@ -179,6 +246,7 @@ public class SystemIO {
      */
     public static String readString(int serviceNumber, int maxLength) {
         String input = "";
+        flushOutput();
         if (Globals.getGui() == null) {
             try {
                 input = getInputReader().readLine();
@@ -215,6 +283,7 @@ public class SystemIO {
     public static int readChar(int serviceNumber) {
         String input = "0";
         int returnValue;
+        flushOutput();
         if (Globals.getGui() == null) {
             try {
                 input = getInputReader().readLine();
@@ -248,6 +317,9 @@ public class SystemIO {
      */
 
     public static int writeToFile(int fd, byte[] myBuffer, int lengthRequested) {
+        if (fd == STDOUT || fd == STDERR) {
+            flushOutput();
+        }
         /////////////// DPS 8-Jan-2013  ////////////////////////////////////////////////////
         /// Write to STDOUT or STDERR file descriptor while using IDE - write to Messages pane.
         if ((fd == STDOUT || fd == STDERR) && Globals.getGui() != null) {
@@ -263,25 +335,19 @@ public class SystemIO {
             fileErrorString = "File descriptor " + fd + " is not open for writing";
             return -1;
         }
-        // retrieve FileOutputStream from storage
-        OutputStream outputStream = (OutputStream) FileIOData.getStreamInUse(fd);
+        // retrieve FileChannel, or standard output or error stream, from storage
+        Object stream = FileIOData.getStreamInUse(fd);
         try {
-            // Oct. 9 2005 Ken Vollmar
-            // Observation: made a call to outputStream.write(myBuffer, 0, lengthRequested)
-            //     with myBuffer containing 6(ten) 32-bit-words <---> 24(ten) bytes, where the
-            //     words are MIPS integers with values such that many of the bytes are ZEROES.
-            //     The effect is apparently that the write stops after encountering a zero-valued
-            //     byte. (The method write does not return a value and so this can't be verified
-            //     by the return value.)
-            // Writes up to lengthRequested bytes of data to this output stream from an array of bytes.
-            // outputStream.write(myBuffer, 0, lengthRequested); // write is a void method -- no verification value returned
-
             // Oct. 9 2005 Ken Vollmar  Force the write statement to write exactly
             // the number of bytes requested, even though those bytes include many ZERO values.
-            for (int ii = 0; ii < lengthRequested; ii++) {
-                outputStream.write(myBuffer[ii]);
+            // They are written in one bulk transfer, rather than a byte at a time.
+            if (stream instanceof FileChannel) {
+                FileIOData.write((FileChannel) stream, myBuffer, lengthRequested);
+            } else {
+                OutputStream outputStream = (OutputStream) stream;
+                outputStream.write(myBuffer, 0, lengthRequested);
+                outputStream.flush();// DPS 7-Jan-2013
             }
-            outputStream.flush();// DPS 7-Jan-2013
         } catch (IOException e) {
             fileErrorString = "IO Exception on write of file with fd " + fd;
             return -1;
@@ -305,6 +371,9 @@ public class SystemIO {
      */
     public static int readFromFile(int fd, byte[] myBuffer, int lengthRequested) {
         int retValue;
+        if (fd == STDIN) {
+            flushOutput();
+        }
         /////////////// DPS 8-Jan-2013  //////////////////////////////////////////////////
         /// Read from STDIN file descriptor while using IDE - get input from Messages pane.
         if (fd == STDIN && Globals.getGui() != null) {
@@ -323,11 +392,15 @@ public class SystemIO {
             fileErrorString = "File descriptor " + fd + " is not open for reading";
             return -1;
         }
-        // retrieve FileInputStream from storage
-        InputStream InputStream = (InputStream) FileIOData.getStreamInUse(fd);
+        // retrieve FileChannel, or standard input stream, from storage
+        Object stream = FileIOData.getStreamInUse(fd);
         try {
-            // Reads up to lengthRequested bytes of data from this Input stream into an array of bytes.
-            retValue = InputStream.read(myBuffer, 0, lengthRequested);
+            // Reads up to lengthRequested bytes of data from this file into an array of bytes.
+            if (stream instanceof FileChannel) {
+                retValue = FileIOData.read((FileChannel) stream, myBuffer, lengthRequested);
+            } else {
+                retValue = ((InputStream) stream).read(myBuffer, 0, lengthRequested);
+            }
             // This method will return -1 upon EOF, but our spec says that negative
             // value represents an error, so we return 0 for EOF.  DPS 10-July-2008.
             if (retValue == -1) {
@@ -355,15 +428,16 @@ public class SystemIO {
      */
     public static int openFile(String filename, int flags) {
         // Internally, a "file descriptor" is an index into a table
-        // of the filename, flag, and the File???putStream associated with
+        // of the filename, flag, and the FileChannel associated with
         // that file descriptor.
 
         int retValue;
-        char ch[] = {' '}; // Need an array to convert to String
-        FileInputStream inputStream;
-        FileOutputStream outputStream;
         int fdToUse;
 
+        if (!Globals.fileAccessAllowed) {
+            fileErrorString = "File access is not allowed";
+            return -1;
+        }
         // Check internal plausibility of opening this file
         fdToUse = FileIOData.nowOpening(filename, flags);
         retValue = fdToUse; // return value is the fd
@@ -375,20 +449,25 @@ public class SystemIO {
         if (flags == O_RDONLY) // Open for reading only
         {
             try {
-                // Set up input stream from disk file
-                inputStream = new FileInputStream(filename);
-                FileIOData.setStreamInUse(fdToUse, inputStream); // Save stream for later use
-            } catch (FileNotFoundException e) {
+                // Set up channel from disk file
+                if (new File(filename).isDirectory()) {
+                    throw new FileNotFoundException(filename);
+                }
+                FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+                FileIOData.setStreamInUse(fdToUse, channel); // Save channel for later use
+            } catch (IOException | InvalidPathException e) {
                 fileErrorString = "File " + filename + " not found, open for input.";
                 retValue = -1;
             }
         } else if ((flags & O_WRONLY) != 0) // Open for writing only
         {
-            // Set up output stream to disk file
+            // Set up channel to disk file
             try {
-                outputStream = new FileOutputStream(filename, ((flags & O_APPEND) != 0));
-                FileIOData.setStreamInUse(fdToUse, outputStream); // Save stream for later use
-            } catch (FileNotFoundException e) {
+                FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.WRITE,
+                        StandardOpenOption.CREATE,
+                        ((flags & O_APPEND) != 0) ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+                FileIOData.setStreamInUse(fdToUse, channel); // Save channel for later use
+            } catch (IOException | InvalidPathException e) {
                 fileErrorString = "File " + filename + " not found, open for output.";
                 retValue = -1;
             }
@@ -410,6 +489,7 @@ public class SystemIO {
      * Reset all files -- clears out the file descriptor table.
      */
     public static void resetFiles() {
+        flushOutput();
         FileIOData.resetFiles();
     }
 
@@ -422,6 +502,37 @@ public class SystemIO {
         return fileErrorString;
     }
 
+    /**
+     * Set the streams used as MIPS program standard input and output when running without
+     * the GUI, in place of System.in and System.out.  Lets a program run in one thread
+     * use its own input and output while other threads use theirs (each
+     * SimulationContext has its own SystemIO).
+     *
+     * @param in  standard input for MIPS programs, or null for System.in
+     * @param out standard output for MIPS programs, or null for System.out
+     */
+    public static void setStandardStreams(InputStream in, PrintStream out) {
+        flushOutput();
+        standardInput = in;
+        standardOutput = out;
+        inputReader = null;
+        FileIOData.setupStdio();
+    }
+
+    /**
+     * @return the stream used as MIPS program standard input when running without the GUI
+     */
+    public static InputStream getStandardInput() {
+        return (standardInput == null) ? System.in : standardInput;
+    }
+
+    /**
+     * @return the stream used as MIPS program standard output when running without the GUI
+     */
+    public static PrintStream getStandardOutput() {
+        return (standardOutput == null) ? System.out : standardOutput;
+    }
+
     ///////////////////////////////////////////////////////////////////////
     // Private method to simply return the BufferedReader used for
     // keyboard input, redirected input, or piped input.
@@ -430,7 +541,7 @@ public class SystemIO {
 
     private static BufferedReader getInputReader() {
         if (inputReader == null) {
-            inputReader = new BufferedReader(new InputStreamReader(System.in));
+            inputReader = new BufferedReader(new InputStreamReader(getStandardInput()));
         }
         return inputReader;
     }
@@ -439,11 +550,17 @@ public class SystemIO {
     // //////////////////////////////////////////////////////////////////////////////
     // Maintain information on files in use. The index to the arrays is the "file descriptor."
     // Ken Vollmar, August 2005
+    //
+    // Disk files are FileChannels.  Each read or write syscall is one bulk transfer between
+    // the channel and a direct buffer, with no flush; a file written to is synced to disk
+    // once, when it is closed.
 
     private static class FileIOData {
         private static final String[] fileNames = new String[SYSCALL_MAXFILES]; // The filenames in use. Null if file descriptor i is not in use.
         private static final int[] fileFlags = new int[SYSCALL_MAXFILES]; // The flags of this file, 0=READ, 1=WRITE. Invalid if this file descriptor is not in use.
-        private static final Object[] streams = new Object[SYSCALL_MAXFILES]; // The streams in use, associated with the filenames
+        private static final Object[] streams = new Object[SYSCALL_MAXFILES]; // The FileChannels (or standard streams) in use, associated with the filenames
+        private static final int TRANSFER_BUFFER_SIZE = 64 * 1024;
+        private static final ByteBuffer transferBuffer = ByteBuffer.allocateDirect(TRANSFER_BUFFER_SIZE);
 
         // Reset all file information. Closes any open files and resets the arrays
         private static void resetFiles() {
@@ -461,10 +578,10 @@ public class SystemIO {
             fileFlags[STDIN] = SystemIO.O_RDONLY;
             fileFlags[STDOUT] = SystemIO.O_WRONLY;
             fileFlags[STDERR] = SystemIO.O_WRONLY;
-            streams[STDIN] = System.in;
-            streams[STDOUT] = System.out;
+            streams[STDIN] = getStandardInput();
+            streams[STDOUT] = getStandardOutput();
             streams[STDERR] = System.err;
-            System.out.flush();
+            getStandardOutput().flush();
             System.err.flush();
         }
 
@@ -521,10 +638,10 @@ public class SystemIO {
                 fileFlags[fd] = -1;
                 streams[fd] = null;
                 try {
-                    if (keepFlag == O_RDONLY)
-                        ((FileInputStream) keepStream).close();
-                    else
-                        ((FileOutputStream) keepStream).close();
+                    FileChannel channel = (FileChannel) keepStream;
+                    if (keepFlag != O_RDONLY)
+                        channel.force(true);
+                    channel.close();
                 } catch (IOException ioe) {
                     // not concerned with this exception
                 }
@@ -562,6 +679,46 @@ public class SystemIO {
 
         }
 
+        // Write length bytes to a channel, through the direct buffer.
+        private static void write(FileChannel channel, byte[] bytes, int length) throws IOException {
+            if (length < 0 || length > bytes.length) {
+                throw new IndexOutOfBoundsException();
+            }
+            for (int done = 0; done < length; ) {
+                int chunk = Math.min(length - done, TRANSFER_BUFFER_SIZE);
+                transferBuffer.clear();
+                transferBuffer.put(bytes, done, chunk).flip();
+                while (transferBuffer.hasRemaining()) {
+                    channel.write(transferBuffer);
+                }
+                done += chunk;
+            }
+        }
+
+        // Read up to length bytes from a channel, through the direct buffer.  Stops early,
+        // as a stream read would, at end of file or when fewer bytes are available.
+        private static int read(FileChannel channel, byte[] bytes, int length) throws IOException {
+            if (length < 0 || length > bytes.length) {
+                throw new IndexOutOfBoundsException();
+            }
+            int done = 0;
+            while (done < length) {
+                int chunk = Math.min(length - done, TRANSFER_BUFFER_SIZE);
+                transferBuffer.clear().limit(chunk);
+                int read = channel.read(transferBuffer);
+                if (read <= 0) {
+                    return (done == 0 && length > 0) ? read : done;
+                }
+                transferBuffer.flip();
+                transferBuffer.get(bytes, done, read);
+                done += read;
+                if (read < chunk) {
+                    break;
+                }
+            }
+            return done;
+        }
+
     } // end private class FileIOData
     ////////////////////////////////////////////////////////////////////////////////
 
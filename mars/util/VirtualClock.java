@@ -0,0 +1,114 @@
+package mars.util;
+
+import java.io.PrintStream;
+
+/**
+ * Simulated time for the Time, Sleep and MIDI output syscalls, used for the command line
+ * "vclock" option.  While the clock is running, Time returns the virtual time rather than
+ * the system time, Sleep advances the virtual time at once instead of waiting, and MIDI
+ * output is recorded to an event log instead of played (MidiOutSync also advances the
+ * virtual time by the note's duration).  Each Time call also advances the virtual time by
+ * {@value #READ_MILLIS} ms, so a program that waits by reading the time until it reaches some
+ * value, without sleeping, still gets there.  A program that animates or plays music then
+ * runs at full speed without a console, and gets the same times on every run.
+ * <p>
+ * Virtual time is in milliseconds and starts at 0 each time the clock is started.  The
+ * event log has one line per MIDI call: virtual time, syscall name, pitch, duration,
+ * instrument and volume, separated by tabs.  Like SystemIO, this keeps its state in static
+ * fields; each SimulationContext has its own.
+ *
+ * @version October 2026
+ */
+
+public class VirtualClock {
+    /**
+     * Virtual milliseconds that pass with each reading of the time.
+     */
+    public static final int READ_MILLIS = 1;
+
+    private static boolean running = false;
+    private static long time = 0;
+    private static PrintStream midiLog = null;
+
+    /**
+     * Start the virtual clock at time 0.
+     *
+     * @param log stream to record MIDI output to, or null to discard it
+     */
+    public static void start(PrintStream log) {
+        time = 0;
+        midiLog = log;
+        running = true;
+    }
+
+    /**
+     * Stop the virtual clock, so the syscalls use system time, sleep and sound again.
+     * The MIDI log stream is flushed but not closed.
+     */
+    public static void stop() {
+        if (midiLog != null) {
+            midiLog.flush();
+        }
+        midiLog = null;
+        running = false;
+    }
+
+    /**
+     * @return true if the virtual clock is running
+     */
+    public static boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Read the time.  If the clock is running, this advances the virtual time by
+     * {@value #READ_MILLIS} ms after reading it.
+     *
+     * @return virtual time if the clock is running, else system time, in milliseconds
+     */
+    public static long currentTimeMillis() {
+        if (!running) {
+            return System.currentTimeMillis();
+        }
+        long now = time;
+        time += READ_MILLIS;
+        return now;
+    }
+
+    /**
+     * Advance the virtual time if the clock is running, else wait for the given time.
+     *
+     * @param millis milliseconds to sleep
+     */
+    public static void sleep(int millis) {
+        if (running) {
+            time += Math.max(0, millis);
+        } else {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt(); // stop sleeping, but leave the interrupt to be seen
+            }
+        }
+    }
+
+    /**
+     * Record a MIDI output call to the event log, if any.  Only to be called while the
+     * clock is running.
+     *
+     * @param name       name of the syscall
+     * @param pitch      pitch (note), 0-127
+     * @param duration   duration in milliseconds
+     * @param instrument instrument, 0-127
+     * @param volume     volume, 0-127
+     * @param wait       true to advance the virtual time by the duration, as for MidiOutSync
+     */
+    public static void recordMidi(String name, int pitch, int duration, int instrument, int volume, boolean wait) {
+        if (midiLog != null) {
+            midiLog.println(time + "\t" + name + "\t" + pitch + "\t" + duration + "\t" + instrument + "\t" + volume);
+        }
+        if (wait) {
+            time += duration;
+        }
+    }
+}
@@ -315,16 +315,30 @@ public class LabelsWindow extends JInternalFrame {
                     ? Globals.symbolTable
                     : myMIPSprogram.getLocalSymbolTable();
             int addressBase = Globals.getGui().getMainPane().getExecutePane().getAddressDisplayBase();
-            if (textLabels.isSelected() && dataLabels.isSelected()) {
-                symbols = symbolTable.getAllSymbols();
-            } else if (textLabels.isSelected() && !dataLabels.isSelected()) {
-                symbols = symbolTable.getTextSymbols();
-            } else if (!textLabels.isSelected() && dataLabels.isSelected()) {
-                symbols = symbolTable.getDataSymbols();
+            if (sortState < 4) {
+                // Sorted by address: take them in order from the symbol table's address index.
+                ArrayList<Object> inOrder = new ArrayList<>();
+                for (Object symbol : symbolTable.getSymbolsInAddressOrder()) {
+                    if (((Symbol) symbol).getType() ? dataLabels.isSelected() : textLabels.isSelected()) {
+                        inOrder.add(symbol);
+                    }
+                }
+                if (sortState % 2 == 1) {
+                    Collections.reverse(inOrder);
+                }
+                symbols = inOrder;
             } else {
-                symbols = new ArrayList();
+                if (textLabels.isSelected() && dataLabels.isSelected()) {
+                    symbols = symbolTable.getAllSymbols();
+                } else if (textLabels.isSelected() && !dataLabels.isSelected()) {
+                    symbols = symbolTable.getTextSymbols();
+                } else if (!textLabels.isSelected() && dataLabels.isSelected()) {
+                    symbols = symbolTable.getDataSymbols();
+                } else {
+                    symbols = new ArrayList();
+                }
+                symbols.sort(tableSortComparator); // DPS 25 Dec 2008
             }
-            symbols.sort(tableSortComparator); // DPS 25 Dec 2008
             labelData = new Object[symbols.size()][2];
 
             for (int i = 0; i < symbols.size(); i++) {//sets up the label table
@@ -62,6 +62,11 @@ public class MessagesPane extends JTabbedPane {
     // must obviously be smaller than the former.
     private static final int MAXIMUM_SCROLLED_CHARACTERS = Globals.maximumMessageCharacters;
     private static final int NUMBER_OF_CHARACTERS_TO_CUT = Globals.maximumMessageCharacters / 10; // 10%
+    // Text posted to the runtime display is collected and appended at most once per frame,
+    // as one document update, however many print syscalls produced it.
+    private static final int FRAME_MILLISECONDS = 1000 / 60;
+    private final StringBuilder pendingRunText = new StringBuilder();
+    private final Timer runTextTimer = new Timer(FRAME_MILLISECONDS, e -> appendPendingRunText());
 
     /**
      * Constructor for the class, sets up two fresh tabbed text areas for program feedback.
@@ -74,6 +79,7 @@ public class MessagesPane extends JTabbedPane {
         run = new JTextArea();
         assemble.setEditable(false);
         run.setEditable(false);
+        runTextTimer.setRepeats(false);
         // Set both text areas to mono font.  For assemble
         // pane, will make messages more readable.  For run
         // pane, will allow properly aligned "text graphics"
@@ -284,29 +290,45 @@ public class MessagesPane extends JTabbedPane {
      *
      * @param message String to append to runtime display text
      */
-    // The work of this method is done by "invokeLater" because
+    // The work of this method is done in the event-processing thread because
     // its JTextArea is maintained by the main event thread
     // but also used, via this method, by the execution thread for
-    // "print" syscalls. "invokeLater" schedules the code to be
-    // run under the event-processing thread no matter what.
+    // "print" syscalls.  The text is appended by appendPendingRunText() when
+    // runTextTimer fires, together with anything else posted in the meantime.
     // DPS, 23 Aug 2005.
     public void postRunMessage(String message) {
-        final String mess = message;
-        SwingUtilities.invokeLater(
-                () -> {
-                    setSelectedComponent(runTab);
-                    run.append(mess);
-                    // can do some crude cutting here.  If the document gets "very large",
-                    // let's cut off the oldest text. This will limit scrolling but the limit
-                    // can be set reasonably high.
-                    if (run.getDocument().getLength() > MAXIMUM_SCROLLED_CHARACTERS) {
-                        try {
-                            run.getDocument().remove(0, NUMBER_OF_CHARACTERS_TO_CUT);
-                        } catch (BadLocationException ble) {
-                            // only if NUMBER_OF_CHARACTERS_TO_CUT > MAXIMUM_SCROLLED_CHARACTERS
-                        }
-                    }
-                });
+        synchronized (pendingRunText) {
+            boolean idle = pendingRunText.length() == 0;
+            pendingRunText.append(message);
+            if (idle) {
+                runTextTimer.start();
+            }
+        }
+    }
+
+    // Append all text posted to the runtime display since the last time.  Must be called
+    // from the GUI thread.
+    private void appendPendingRunText() {
+        String text;
+        synchronized (pendingRunText) {
+            if (pendingRunText.length() == 0) {
+                return;
+            }
+            text = pendingRunText.toString();
+            pendingRunText.setLength(0);
+        }
+        setSelectedComponent(runTab);
+        run.append(text);
+        // can do some crude cutting here.  If the document gets "very large",
+        // let's cut off the oldest text. This will limit scrolling but the limit
+        // can be set reasonably high.
+        if (run.getDocument().getLength() > MAXIMUM_SCROLLED_CHARACTERS) {
+            try {
+                run.getDocument().remove(0, NUMBER_OF_CHARACTERS_TO_CUT);
+            } catch (BadLocationException ble) {
+                // only if NUMBER_OF_CHARACTERS_TO_CUT > MAXIMUM_SCROLLED_CHARACTERS
+            }
+        }
     }
 
     /**
@@ -438,6 +460,7 @@ public class MessagesPane extends JTabbedPane {
                 this::returnResponse;
 
         public void run() { // must be invoked from the GUI thread
+            appendPendingRunText(); // output the input is for
             setSelectedComponent(runTab);
             run.setEditable(true);
             run.requestFocusInWindow();
@@ -102,6 +102,10 @@ public class RunAssembleAction extends GuiAction {
                 if (warnings.warningsOccurred()) {
                     mainUI.messagesPane.postMarsMessage(warnings.generateWarningReport());
                 }
+                String storageWarning = Globals.memory.takeStorageWarning();
+                if (storageWarning != null) {
+                    mainUI.messagesPane.postMarsMessage(storageWarning + "\n");
+                }
                 mainUI.messagesPane.postMarsMessage(
                         name + ": operation completed successfully.\n\n");
                 FileStatus.setAssembled(true);
@@ -109,6 +113,7 @@ public class RunAssembleAction extends GuiAction {
                 RegisterFile.resetRegisters();
                 Coprocessor1.resetRegisters();
                 Coprocessor0.resetRegisters();
+                Globals.instructionSet.resetSyscallInvocationCounts();
                 executePane.getTextSegmentWindow().setupTable();
                 executePane.getDataSegmentWindow().setupTable();
                 executePane.getDataSegmentWindow().highlightCellForAddress(Memory.dataBaseAddress);
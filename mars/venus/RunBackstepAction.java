@@ -2,6 +2,7 @@ package mars.venus;
 
 import mars.*;
 import mars.mips.hardware.*;
+import mars.simulator.*;
 
 import java.awt.event.*;
 import javax.swing.*;
@@ -61,14 +62,23 @@ public class RunBackstepAction extends GuiAction {
         executePane.getTextSegmentWindow().setCodeHighlighting(true);
 
         if (Globals.getSettings().getBackSteppingEnabled()) {
-            boolean inDelaySlot = Globals.program.getBackStepper().inDelaySlot(); // Added 25 June 2007
-            Memory.getInstance().addObserver(executePane.getDataSegmentWindow());
-            RegisterFile.addRegistersObserver(executePane.getRegistersWindow());
-            Coprocessor0.addRegistersObserver(executePane.getCoprocessor0Window());
-            Coprocessor1.addRegistersObserver(executePane.getCoprocessor1Window());
-            Globals.program.getBackStepper().backStep();
-            Memory.getInstance().deleteObserver(executePane.getDataSegmentWindow());
-            RegisterFile.deleteRegistersObserver(executePane.getRegistersWindow());
+            BackStepper backStepper = Globals.program.getBackStepper();
+            boolean inDelaySlot;
+            if (backStepper.hasRecentSteps()) {
+                inDelaySlot = backStepper.inDelaySlot(); // Added 25 June 2007
+                Memory.getInstance().addObserver(executePane.getDataSegmentWindow());
+                RegisterFile.addRegistersObserver(executePane.getRegistersWindow());
+                Coprocessor0.addRegistersObserver(executePane.getCoprocessor0Window());
+                Coprocessor1.addRegistersObserver(executePane.getCoprocessor1Window());
+                backStepper.backStep();
+                Memory.getInstance().deleteObserver(executePane.getDataSegmentWindow());
+                RegisterFile.deleteRegistersObserver(executePane.getRegistersWindow());
+            } else {
+                // Returns to the previous step by executing forward from a checkpoint, so
+                // no observers: the windows are updated once below.
+                backStepper.backStep();
+                inDelaySlot = Simulator.inDelaySlot();
+            }
             executePane.getRegistersWindow().updateRegisters();
             executePane.getCoprocessor1Window().updateRegisters();
             executePane.getCoprocessor0Window().updateRegisters();
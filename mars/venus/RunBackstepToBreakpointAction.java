@@ -0,0 +1,54 @@
+package mars.venus;
+
+import mars.*;
+import mars.simulator.*;
+
+import java.awt.event.*;
+import javax.swing.*;
+
+/**
+ * Action for the Run -> Backstep to breakpoint menu item.  Returns to the latest earlier
+ * point in the execution at which a breakpoint was reached, using the execution history
+ * kept while backstepping is enabled.
+ *
+ * @version October 2026
+ */
+public class RunBackstepToBreakpointAction extends GuiAction {
+    private static final long serialVersionUID = 1L;
+
+    public RunBackstepToBreakpointAction(String name, Icon icon, String descrip,
+                                         Integer mnemonic, KeyStroke accel, VenusUI gui) {
+        super(name, icon, descrip, mnemonic, accel, gui);
+    }
+
+    public void actionPerformed(ActionEvent e) {
+        String name = this.getValue(Action.NAME).toString();
+        ExecutePane executePane = mainUI.getMainPane().getExecutePane();
+        if (!FileStatus.isAssembled()) {
+            JOptionPane.showMessageDialog(mainUI, "The program must be assembled before it can be run.");
+            return;
+        }
+        if (!Globals.getSettings().getBackSteppingEnabled()) {
+            return;
+        }
+        int[] breakPoints = executePane.getTextSegmentWindow().getSortedBreakPointsArray();
+        if (breakPoints == null) {
+            mainUI.messagesPane.postMarsMessage(name + ": there are no breakpoints set.\n");
+            return;
+        }
+        VenusUI.setStarted(true);
+        mainUI.messagesPane.setSelectedComponent(mainUI.messagesPane.runTab);
+        executePane.getTextSegmentWindow().setCodeHighlighting(true);
+        if (!Globals.program.getBackStepper().backStepToBreakpoint(breakPoints)) {
+            mainUI.messagesPane.postMarsMessage(name + ": no earlier breakpoint in execution history.\n");
+            return;
+        }
+        executePane.getRegistersWindow().updateRegisters();
+        executePane.getCoprocessor1Window().updateRegisters();
+        executePane.getCoprocessor0Window().updateRegisters();
+        executePane.getDataSegmentWindow().updateValues();
+        executePane.getTextSegmentWindow().highlightStepAtPC(Simulator.inDelaySlot());
+        FileStatus.set(FileStatus.RUNNABLE);
+        VenusUI.setReset(false);
+    }
+}
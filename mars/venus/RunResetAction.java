@@ -73,6 +73,7 @@ public class RunResetAction extends GuiAction {
         RegisterFile.resetRegisters();
         Coprocessor1.resetRegisters();
         Coprocessor0.resetRegisters();
+        Globals.instructionSet.resetSyscallInvocationCounts();
 
         executePane.getRegistersWindow().clearHighlighting();
         executePane.getRegistersWindow().updateRegisters();
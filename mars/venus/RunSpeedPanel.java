@@ -1,6 +1,7 @@
 package mars.venus;
 
 import mars.*;
+import mars.simulator.Simulator;
 
 import javax.swing.*;
 import javax.swing.event.*;
@@ -140,6 +141,7 @@ public class RunSpeedPanel extends JPanel {
             JSlider source = (JSlider) e.getSource();
             if (!source.getValueIsAdjusting()) {
                 runSpeedIndex = source.getValue();
+                Simulator.getInstance().requestAttention(); // so that a running simulation sees the new speed
             } else {
                 sliderLabel.setText(setLabel(source.getValue()));
             }
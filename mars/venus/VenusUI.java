@@ -77,7 +77,7 @@ public class VenusUI extends JFrame {
     EditUndoAction editUndoAction;
     EditRedoAction editRedoAction;
     private Action editCutAction, editCopyAction, editPasteAction, editFindReplaceAction, editSelectAllAction;
-    private Action runAssembleAction, runGoAction, runStepAction, runBackstepAction, runResetAction,
+    private Action runAssembleAction, runGoAction, runStepAction, runBackstepAction, runBackstepToBreakpointAction, runResetAction,
             runStopAction, runPauseAction, runClearBreakpointsAction, runToggleBreakpointsAction;
     private Action settingsLabelAction, settingsPopupInputAction, settingsValueDisplayBaseAction, settingsAddressDisplayBaseAction,
             settingsExtendedAction, settingsAssembleOnOpenAction, settingsAssembleAllAction,
@@ -319,6 +319,10 @@ public class VenusUI extends JFrame {
                     "Undo the last step", KeyEvent.VK_B,
                     KeyStroke.getKeyStroke(KeyEvent.VK_F8, 0),
                     mainUI);
+            runBackstepToBreakpointAction = new RunBackstepToBreakpointAction("Backstep to breakpoint",
+                    null, "Return to the last breakpoint reached", KeyEvent.VK_O,
+                    KeyStroke.getKeyStroke(KeyEvent.VK_F8, InputEvent.SHIFT_DOWN_MASK),
+                    mainUI);
             runPauseAction = new RunPauseAction("Pause",
                     new ImageIcon(tk.getImage(cs.getResource(Globals.imagesPath + "Pause22.png"))),
                     "Pause the currently running program", KeyEvent.VK_P,
@@ -534,6 +538,8 @@ public class VenusUI extends JFrame {
         runStep.setIcon(new ImageIcon(tk.getImage(cs.getResource(Globals.imagesPath + "StepForward16.png"))));//"MyStepForward16.gif"))));
         JMenuItem runBackstep = new JMenuItem(runBackstepAction);
         runBackstep.setIcon(new ImageIcon(tk.getImage(cs.getResource(Globals.imagesPath + "StepBack16.png"))));//"MyStepBack16.gif"))));
+        JMenuItem runBackstepToBreakpoint = new JMenuItem(runBackstepToBreakpointAction);
+        runBackstepToBreakpoint.setIcon(new ImageIcon(tk.getImage(cs.getResource(Globals.imagesPath + "MyBlank16.gif"))));
         JMenuItem runReset = new JMenuItem(runResetAction);
         runReset.setIcon(new ImageIcon(tk.getImage(cs.getResource(Globals.imagesPath + "Reset16.png"))));//"MyReset16.gif"))));
         JMenuItem runStop = new JMenuItem(runStopAction);
@@ -549,6 +555,7 @@ public class VenusUI extends JFrame {
         run.add(runGo);
         run.add(runStep);
         run.add(runBackstep);
+        run.add(runBackstepToBreakpoint);
         run.add(runPause);
         run.add(runStop);
         run.add(runReset);
@@ -786,6 +793,7 @@ public class VenusUI extends JFrame {
         runGoAction.setEnabled(false);
         runStepAction.setEnabled(false);
         runBackstepAction.setEnabled(false);
+        runBackstepToBreakpointAction.setEnabled(false);
         runResetAction.setEnabled(false);
         runStopAction.setEnabled(false);
         runPauseAction.setEnabled(false);
@@ -826,6 +834,7 @@ public class VenusUI extends JFrame {
             runGoAction.setEnabled(false);
             runStepAction.setEnabled(false);
             runBackstepAction.setEnabled(false);
+            runBackstepToBreakpointAction.setEnabled(false);
             runResetAction.setEnabled(false);
             runStopAction.setEnabled(false);
             runPauseAction.setEnabled(false);
@@ -862,6 +871,7 @@ public class VenusUI extends JFrame {
         runGoAction.setEnabled(false);
         runStepAction.setEnabled(false);
         runBackstepAction.setEnabled(false);
+        runBackstepToBreakpointAction.setEnabled(false);
         runResetAction.setEnabled(false);
         runStopAction.setEnabled(false);
         runPauseAction.setEnabled(false);
@@ -898,6 +908,7 @@ public class VenusUI extends JFrame {
         runGoAction.setEnabled(false);
         runStepAction.setEnabled(false);
         runBackstepAction.setEnabled(false);
+        runBackstepToBreakpointAction.setEnabled(false);
         runResetAction.setEnabled(false);
         runStopAction.setEnabled(false);
         runPauseAction.setEnabled(false);
@@ -935,6 +946,8 @@ public class VenusUI extends JFrame {
         runStepAction.setEnabled(true);
         runBackstepAction.setEnabled(
                 Globals.getSettings().getBackSteppingEnabled() && Globals.program.getBackStepper().notEmpty());
+        runBackstepToBreakpointAction.setEnabled(
+                Globals.getSettings().getBackSteppingEnabled() && Globals.program.getBackStepper().notEmpty());
         runResetAction.setEnabled(true);
         runStopAction.setEnabled(false);
         runPauseAction.setEnabled(false);
@@ -970,6 +983,7 @@ public class VenusUI extends JFrame {
         runGoAction.setEnabled(false);
         runStepAction.setEnabled(false);
         runBackstepAction.setEnabled(false);
+        runBackstepToBreakpointAction.setEnabled(false);
         runResetAction.setEnabled(false);
         runStopAction.setEnabled(true);
         runPauseAction.setEnabled(true);
@@ -1006,6 +1020,8 @@ public class VenusUI extends JFrame {
         runStepAction.setEnabled(false);
         runBackstepAction.setEnabled(
                 Globals.getSettings().getBackSteppingEnabled() && Globals.program.getBackStepper().notEmpty());
+        runBackstepToBreakpointAction.setEnabled(
+                Globals.getSettings().getBackSteppingEnabled() && Globals.program.getBackStepper().notEmpty());
         runResetAction.setEnabled(true);
         runStopAction.setEnabled(false);
         runPauseAction.setEnabled(false);
@@ -444,7 +444,7 @@ public class MIPSTokenMarker extends TokenMarker {
         if (cKeywords == null) {
             cKeywords = new KeywordMap(false);
             // add Instruction mnemonics
-            java.util.ArrayList instructionSet = mars.Globals.instructionSet.getInstructionList();
+            java.util.List instructionSet = mars.Globals.instructionSet.getInstructionList();
             for (Object anInstructionSet : instructionSet) {
                 cKeywords.add(((Instruction) anInstructionSet).getName(), Token.KEYWORD1);
             }